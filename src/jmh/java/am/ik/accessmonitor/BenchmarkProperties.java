@@ -0,0 +1,44 @@
+package am.ik.accessmonitor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Properties;
+
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+
+/**
+ * Loads {@link AccessMonitorProperties} from the real {@code application.properties} so
+ * that benchmarks run against the production path patterns and allowed hosts.
+ */
+public final class BenchmarkProperties {
+
+	private BenchmarkProperties() {
+	}
+
+	public static AccessMonitorProperties load() {
+		return load(Map.of());
+	}
+
+	/**
+	 * Loads the properties with the given entries overriding those in
+	 * {@code application.properties}.
+	 */
+	public static AccessMonitorProperties load(Map<String, String> overrides) {
+		try {
+			Properties properties = PropertiesLoaderUtils
+				.loadProperties(new ClassPathResource("application.properties"));
+			properties.putAll(overrides);
+			return new Binder(new MapConfigurationPropertySource(properties))
+				.bind("access-monitor", AccessMonitorProperties.class)
+				.get();
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+}
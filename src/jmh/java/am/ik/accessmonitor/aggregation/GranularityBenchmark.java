@@ -0,0 +1,55 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link Granularity#format} for timestamps that advance within and across
+ * slots, as they do while consuming a live stream of access events.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GranularityBenchmark {
+
+	private static final int TIMESTAMPS = 1024;
+
+	@Param({ "ONE_MINUTE", "FIVE_MINUTES", "ONE_HOUR", "ONE_DAY" })
+	Granularity granularity;
+
+	Instant[] timestamps;
+
+	int index;
+
+	@Setup
+	public void setUp() {
+		Instant start = Instant.parse("2026-02-06T15:30:00.123Z");
+		this.timestamps = new Instant[TIMESTAMPS];
+		for (int i = 0; i < TIMESTAMPS; i++) {
+			// About 2 events per second
+			this.timestamps[i] = start.plusMillis(i * 487L);
+		}
+	}
+
+	@Benchmark
+	public String format() {
+		Instant timestamp = this.timestamps[this.index++ & (TIMESTAMPS - 1)];
+		return this.granularity.format(timestamp);
+	}
+
+}
@@ -0,0 +1,52 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import am.ik.accessmonitor.BenchmarkProperties;
+import am.ik.accessmonitor.aggregation.PathPatternMatcher.MatchResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link PathPatternMatcher#match} with the path patterns configured in
+ * {@code application.properties}, with and without the path match result cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathPatternMatcherBenchmark {
+
+	@Param({ "/entries/896", "/entries/896/en.md", "/tags/java/entries?page=2", "/wp-admin/setup-config.php",
+			"/about" })
+	String path;
+
+	@Param({ "10000", "0" })
+	int pathMatchCacheSize;
+
+	PathPatternMatcher matcher;
+
+	@Setup
+	public void setUp() {
+		this.matcher = new PathPatternMatcher(BenchmarkProperties
+			.load(Map.of("access-monitor.aggregation.path-match-cache-size", String.valueOf(this.pathMatchCacheSize))));
+	}
+
+	@Benchmark
+	public MatchResult match() {
+		return this.matcher.match(this.path);
+	}
+
+}
@@ -0,0 +1,89 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the {@link ValkeyKeyBuilder} key builders used for every aggregated series.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ValkeyKeyBuilderBenchmark {
+
+	Granularity granularity = Granularity.ONE_MINUTE;
+
+	String timestamp = "202602061530";
+
+	String host = "ik.am";
+
+	String path = "/entries/896";
+
+	int status = 200;
+
+	String method = "GET";
+
+	KeyBuffer series = new KeyBuffer();
+
+	@Benchmark
+	public String countKey() {
+		return ValkeyKeyBuilder.countKey(this.granularity, this.timestamp, this.host, this.path, this.status,
+				this.method);
+	}
+
+	@Benchmark
+	public String durationKey() {
+		return ValkeyKeyBuilder.durationKey(this.granularity, this.timestamp, this.host, this.path, this.status,
+				this.method);
+	}
+
+	@Benchmark
+	public String pathsIndexKey() {
+		return ValkeyKeyBuilder.pathsIndexKey(this.granularity, this.timestamp, this.host);
+	}
+
+	@Benchmark
+	public byte[] countKeyBytes() {
+		return ValkeyKeyBuilder.countKey(this.granularity, this.timestamp, this.host, this.path, this.status,
+				this.method)
+			.getBytes();
+	}
+
+	@Benchmark
+	public byte[] countKeyFromKeyBuffer() {
+		return ValkeyKeyBuilder.countKey(ValkeyKeyBuilder.series(this.series, this.granularity, this.timestamp,
+				this.host, this.path, this.status, this.method));
+	}
+
+	@Benchmark
+	public void seriesKeys(Blackhole blackhole) {
+		blackhole.consume(ValkeyKeyBuilder
+			.countKey(this.granularity, this.timestamp, this.host, this.path, this.status, this.method)
+			.getBytes());
+		blackhole.consume(ValkeyKeyBuilder
+			.durationKey(this.granularity, this.timestamp, this.host, this.path, this.status, this.method)
+			.getBytes());
+	}
+
+	@Benchmark
+	public void seriesKeysFromKeyBuffer(Blackhole blackhole) {
+		ValkeyKeyBuilder.series(this.series, this.granularity, this.timestamp, this.host, this.path, this.status,
+				this.method);
+		blackhole.consume(ValkeyKeyBuilder.countKey(this.series));
+		blackhole.consume(ValkeyKeyBuilder.durationKey(this.series));
+	}
+
+}
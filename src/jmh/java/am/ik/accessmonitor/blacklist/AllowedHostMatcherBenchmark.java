@@ -0,0 +1,45 @@
+package am.ik.accessmonitor.blacklist;
+
+import java.util.concurrent.TimeUnit;
+
+import am.ik.accessmonitor.BenchmarkProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link AllowedHostMatcher#isAllowed} with the allowed hosts configured in
+ * {@code application.properties}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AllowedHostMatcherBenchmark {
+
+	@Param({ "ik.am", "foo.gw.ik.am", "203.0.113.10", "www.example.com" })
+	String host;
+
+	AllowedHostMatcher matcher;
+
+	@Setup
+	public void setUp() {
+		this.matcher = new AllowedHostMatcher(BenchmarkProperties.load().blacklist().allowedHosts());
+	}
+
+	@Benchmark
+	public boolean isAllowed() {
+		return this.matcher.isAllowed(this.host);
+	}
+
+}
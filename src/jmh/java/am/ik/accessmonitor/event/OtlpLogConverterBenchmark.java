@@ -0,0 +1,121 @@
+package am.ik.accessmonitor.event;
+
+import java.time.Instant;
+import java.time.InstantSource;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.logs.v1.ScopeLogs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link OtlpLogConverter#convert} with requests carrying 1, 100 and 1000
+ * Traefik access log records, for both the generated protobuf parser and the
+ * {@link StreamingOtlpLogConverter}, against decoding the same events from an
+ * {@link AccessEventBatchCodec access event batch}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OtlpLogConverterBenchmark {
+
+	@Param({ "1", "100", "1000" })
+	int records;
+
+	@Param({ "object", "streaming", "event-batch" })
+	String decoder;
+
+	byte[] request;
+
+	byte[] batch;
+
+	OtlpLogConverter converter;
+
+	@Setup
+	public void setUp() {
+		InstantSource instantSource = InstantSource.system();
+		this.converter = "streaming".equals(this.decoder) ? new StreamingOtlpLogConverter(instantSource)
+				: new OtlpLogConverter(instantSource);
+		this.request = request(this.records);
+		this.batch = AccessEventBatchCodec.encode(this.converter.convert(this.request));
+	}
+
+	@Benchmark
+	public List<AccessEvent> convert() {
+		if ("event-batch".equals(this.decoder)) {
+			return AccessEventBatchCodec.decodeEvents(this.batch);
+		}
+		return this.converter.convert(this.request);
+	}
+
+	/**
+	 * Returns an OTLP export request of Traefik access log records, as sent by the
+	 * OpenTelemetry Collector.
+	 */
+	public static byte[] request(int records) {
+		ScopeLogs.Builder scopeLogs = ScopeLogs.newBuilder();
+		Instant start = Instant.parse("2026-02-06T15:30:00.123Z");
+		for (int i = 0; i < records; i++) {
+			scopeLogs.addLogRecords(logRecord(i, start.plusMillis(i)));
+		}
+		return ExportLogsServiceRequest.newBuilder()
+			.addResourceLogs(ResourceLogs.newBuilder().addScopeLogs(scopeLogs))
+			.build()
+			.toByteArray();
+	}
+
+	private static LogRecord logRecord(int i, Instant timestamp) {
+		// Mirrors the attributes Traefik emits, including ones the converter ignores
+		return LogRecord.newBuilder()
+			.setTimeUnixNano(timestamp.getEpochSecond() * 1_000_000_000L + timestamp.getNano())
+			.addAttributes(stringKv("RequestHost", "ik.am"))
+			.addAttributes(stringKv("RequestPath", "/entries/" + (800 + i % 100)))
+			.addAttributes(stringKv("RequestMethod", "GET"))
+			.addAttributes(intKv("DownstreamStatus", 200))
+			.addAttributes(intKv("Duration", 114720000L))
+			.addAttributes(stringKv("StartUTC", timestamp.toString()))
+			.addAttributes(stringKv("ClientHost", "47.128.110." + (i % 256)))
+			.addAttributes(stringKv("RequestScheme", "https"))
+			.addAttributes(stringKv("RequestProtocol", "HTTP/2.0"))
+			.addAttributes(stringKv("ServiceName", "web-service@kubernetes"))
+			.addAttributes(stringKv("RouterName", "web-router@kubernetes"))
+			.addAttributes(intKv("OriginStatus", 200))
+			.addAttributes(intKv("OriginDuration", 100000000L))
+			.addAttributes(intKv("Overhead", 14720000L))
+			.addAttributes(stringKv("TraceId", "4bf92f3577b34da6a3ce929d0e0e4736"))
+			.addAttributes(stringKv("SpanId", "00f067aa0ba902b7"))
+			.addAttributes(intKv("RetryAttempts", 0))
+			.addAttributes(stringKv("RequestAddr", "ik.am"))
+			.addAttributes(intKv("RequestContentSize", 0))
+			.addAttributes(stringKv("request_User-Agent", "Mozilla/5.0 (compatible; Googlebot/2.1)"))
+			.addAttributes(intKv("DownstreamContentSize", 5321))
+			.build();
+	}
+
+	private static KeyValue stringKv(String key, String value) {
+		return KeyValue.newBuilder().setKey(key).setValue(AnyValue.newBuilder().setStringValue(value)).build();
+	}
+
+	private static KeyValue intKv(String key, long value) {
+		return KeyValue.newBuilder().setKey(key).setValue(AnyValue.newBuilder().setIntValue(value)).build();
+	}
+
+}
@@ -0,0 +1,122 @@
+package am.ik.accessmonitor.ingest.encoding;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import am.ik.accessmonitor.event.OtlpLogConverterBenchmark;
+import am.ik.accessmonitor.ingest.PayloadBuffer;
+import am.ik.accessmonitor.ingest.PayloadBufferPool;
+import io.airlift.compress.snappy.SnappyCompressor;
+import io.airlift.compress.snappy.SnappyFramedOutputStream;
+import io.airlift.compress.zstd.ZstdOutputStream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the {@link ContentDecoder content decoders} on an OTLP request of 1000
+ * Traefik access log records, compressed the way the OpenTelemetry Collector compresses
+ * it, against reading the uncompressed request ({@code identity}).
+ * <p>
+ * The {@code bytes} counter reports the decoded bytes per second on one thread, whose
+ * inverse is the CPU time per decoded megabyte, and the {@code compressedBytes} counter
+ * the compressed bytes read per second; their quotient is the compression ratio.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentDecoderBenchmark {
+
+	@Param({ "1000" })
+	int records;
+
+	@Param({ "identity", "gzip", "deflate", "zstd", "snappy", "x-snappy-framed" })
+	String encoding;
+
+	byte[] body;
+
+	PayloadBufferPool pool;
+
+	ContentDecoder decoder;
+
+	@Setup
+	public void setUp() throws IOException {
+		byte[] request = OtlpLogConverterBenchmark.request(this.records);
+		this.pool = new PayloadBufferPool(16 * 1024 * 1024);
+		this.decoder = new ContentDecoders(List.of(new GzipContentDecoder(), new DeflateContentDecoder(),
+				new ZstdContentDecoder(), new SnappyContentDecoder(this.pool), new SnappyFramedContentDecoder()))
+			.find(this.encoding);
+		this.body = compress(this.encoding, request);
+	}
+
+	@Benchmark
+	public int decode(DecodedBytes decoded) throws IOException {
+		try (PayloadBuffer payload = this.pool.acquire()) {
+			ByteArrayInputStream input = new ByteArrayInputStream(this.body);
+			if (this.decoder != null) {
+				this.decoder.decode(input, payload);
+			}
+			else {
+				payload.readFrom(input);
+			}
+			decoded.bytes += payload.size();
+			decoded.compressedBytes += this.body.length;
+			return payload.size();
+		}
+	}
+
+	private static byte[] compress(String encoding, byte[] data) throws IOException {
+		if (encoding.equals("identity")) {
+			return data;
+		}
+		if (encoding.equals("snappy")) {
+			SnappyCompressor compressor = new SnappyCompressor();
+			byte[] compressed = new byte[compressor.maxCompressedLength(data.length)];
+			return Arrays.copyOf(compressed, compressor.compress(data, 0, data.length, compressed, 0, compressed.length));
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = switch (encoding) {
+			case "gzip" -> new GZIPOutputStream(bytes);
+			case "deflate" -> new DeflaterOutputStream(bytes);
+			case "zstd" -> new ZstdOutputStream(bytes);
+			case "x-snappy-framed" -> new SnappyFramedOutputStream(bytes);
+			default -> throw new IllegalArgumentException(encoding);
+		}) {
+			out.write(data);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Counts the decoded bytes and the compressed bytes they were decoded from.
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class DecodedBytes {
+
+		public long bytes;
+
+		public long compressedBytes;
+
+	}
+
+}
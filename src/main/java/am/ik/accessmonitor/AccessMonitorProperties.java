@@ -5,13 +5,14 @@ import java.util.List;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
 
 /**
  * Configuration properties for the access monitoring system.
  */
 @ConfigurationProperties(prefix = "access-monitor")
 public record AccessMonitorProperties(SseProperties sse, AggregationProperties aggregation, ValkeyProperties valkey,
-		AlertsProperties alerts, BlacklistProperties blacklist, QueryProperties query) {
+		AlertsProperties alerts, BlacklistProperties blacklist, QueryProperties query, OtlpProperties otlp) {
 
 	/**
 	 * SSE streaming configuration.
@@ -20,10 +21,14 @@ public record AccessMonitorProperties(SseProperties sse, AggregationProperties a
 	}
 
 	/**
-	 * Aggregation consumer configuration.
+	 * Aggregation consumer configuration. {@code pathMatchCacheSize} bounds the number of
+	 * raw paths whose path pattern match results are cached; 0 disables the cache.
 	 */
 	public record AggregationProperties(@DefaultValue("200") int prefetchCount,
-			@DefaultValue List<PathPatternProperties> pathPatterns) {
+			@DefaultValue List<PathPatternProperties> pathPatterns, @DefaultValue BufferProperties buffer,
+			@DefaultValue BatchProperties batch, @DefaultValue RollupProperties rollup,
+			@DefaultValue("10000") int pathMatchCacheSize, @DefaultValue UniqueClientsProperties uniqueClients,
+			@DefaultValue TopKProperties topK, @DefaultValue CardinalityGuardProperties cardinalityGuard) {
 
 		/**
 		 * Path pattern definition for aggregation grouping.
@@ -31,12 +36,90 @@ public record AccessMonitorProperties(SseProperties sse, AggregationProperties a
 		public record PathPatternProperties(String label, String regex,
 				@DefaultValue("false") boolean dropOriginalPath) {
 		}
+
+		/**
+		 * In-memory pre-aggregation buffer configuration. When enabled, increments are
+		 * merged in memory and flushed to Valkey every {@code flushInterval} or as soon
+		 * as {@code flushThreshold} distinct keys are pending. {@code maxPendingKeys}
+		 * bounds the buffer while flushes are failing, separately for the series keys and
+		 * for the totals, unique client and top-K entries.
+		 */
+		public record BufferProperties(@DefaultValue("false") boolean enabled,
+				@DefaultValue("1s") Duration flushInterval, @DefaultValue("5000") int flushThreshold,
+				@DefaultValue("100000") int maxPendingKeys) {
+		}
+
+		/**
+		 * Batch consumption configuration. When enabled, up to {@code size} messages are
+		 * consumed as one batch, waiting at most {@code receiveTimeout} for a batch to
+		 * fill up. A batch that fails to be written is retried up to {@code maxRetries}
+		 * times, {@code retryDelay} apart, before it is moved to the dead letter queue.
+		 */
+		public record BatchProperties(@DefaultValue("false") boolean enabled, @DefaultValue("100") int size,
+				@DefaultValue("1s") Duration receiveTimeout, @DefaultValue("3") int maxRetries,
+				@DefaultValue("1s") Duration retryDelay) {
+		}
+
+		/**
+		 * Rollup configuration. When enabled, only 1-minute keys are written on the hot
+		 * path and a scheduled job folds each 1-minute slot into the coarser
+		 * granularities once it has been closed for {@code delay}, processing at most
+		 * {@code maxSlotsPerRun} slots every {@code interval}.
+		 */
+		public record RollupProperties(@DefaultValue("false") boolean enabled, @DefaultValue("30s") Duration interval,
+				@DefaultValue("2m") Duration delay, @DefaultValue("60") int maxSlotsPerRun) {
+		}
+
+		/**
+		 * Unique client tracking configuration. When enabled, the client IPs of each host
+		 * and path pattern label are added to a HyperLogLog per granularity and slot.
+		 * Disabled by default, since every event then costs an extra script call per key.
+		 */
+		public record UniqueClientsProperties(@DefaultValue("false") boolean enabled) {
+		}
+
+		/**
+		 * Top-K leaderboard configuration. When enabled, per-slot sorted sets track the
+		 * paths of each host, the paths of each host that responded with 4xx and 5xx, and
+		 * the client IPs. Each leaderboard keeps at most {@code maxMembers} members.
+		 * Disabled by default, like unique client tracking.
+		 */
+		public record TopKProperties(@DefaultValue("false") boolean enabled, @DefaultValue("1000") int maxMembers) {
+		}
+
+		/**
+		 * Path cardinality guard configuration. When enabled, each host admits at most
+		 * {@code maxPathsPerSlot} distinct paths per granularity and slot, and requests
+		 * to further paths are aggregated under {@code __other__}. When
+		 * {@code stripQueryString} is {@code true}, the query string is removed from the
+		 * path before aggregation.
+		 */
+		public record CardinalityGuardProperties(@DefaultValue("false") boolean enabled,
+				@DefaultValue("5000") int maxPathsPerSlot, @DefaultValue("false") boolean stripQueryString) {
+		}
 	}
 
 	/**
-	 * Valkey (Redis) TTL configuration.
+	 * Valkey (Redis) TTL and storage layout configuration.
 	 */
-	public record ValkeyProperties(TtlProperties ttl) {
+	public record ValkeyProperties(TtlProperties ttl, @DefaultValue("key-per-series") StorageLayout layout) {
+
+		/**
+		 * Storage layout of aggregated access metrics.
+		 */
+		public enum StorageLayout {
+
+			/**
+			 * One count key and one duration hash per series.
+			 */
+			KEY_PER_SERIES,
+
+			/**
+			 * One hash per granularity, slot and host holding all its series.
+			 */
+			HASH_PER_SLOT
+
+		}
 
 		/**
 		 * TTL values for each granularity.
@@ -51,7 +134,8 @@ public record AccessMonitorProperties(SseProperties sse, AggregationProperties a
 	 */
 	public record AlertsProperties(@DefaultValue("true") boolean enabled, String alertmanagerUrl,
 			String alertmanagerExternalUrl, @DefaultValue("15s") Duration evaluationInterval,
-			@DefaultValue List<AlertRuleProperties> rules) {
+			@DefaultValue List<AlertRuleProperties> rules, @DefaultValue StreamingProperties streaming,
+			@DefaultValue ShardingProperties sharding) {
 
 		/**
 		 * Returns the external URL for Alertmanager, falling back to
@@ -70,6 +154,25 @@ public record AccessMonitorProperties(SseProperties sse, AggregationProperties a
 				@DefaultValue("0") int thresholdMs, @DefaultValue("0") int percentile,
 				@DefaultValue("warning") String severity, @DefaultValue List<String> dimensions) {
 		}
+
+		/**
+		 * Streaming alert evaluation configuration. When enabled, the aggregation
+		 * consumers also feed every event into in-memory sliding windows per rule and
+		 * host, which fire as soon as a threshold is crossed. At most {@code maxWindows}
+		 * windows are held; events that would need another window are not evaluated.
+		 */
+		public record StreamingProperties(@DefaultValue("false") boolean enabled,
+				@DefaultValue("10000") int maxWindows) {
+		}
+
+		/**
+		 * Sharded evaluation configuration. Per-host rules are split into {@code shards}
+		 * shards by host hash, and the shards are leased to the running instances through
+		 * Valkey and evaluated concurrently on up to {@code parallelism} virtual threads
+		 * per instance.
+		 */
+		public record ShardingProperties(@DefaultValue("8") int shards, @DefaultValue("4") int parallelism) {
+		}
 	}
 
 	/**
@@ -94,8 +197,60 @@ public record AccessMonitorProperties(SseProperties sse, AggregationProperties a
 	}
 
 	/**
-	 * Query API configuration.
+	 * Query API configuration. {@code fetchChunkSize} bounds the number of count and
+	 * duration keys fetched per pipeline.
 	 */
-	public record QueryProperties(@DefaultValue("2880") int maxSlots) {
+	public record QueryProperties(@DefaultValue("2880") int maxSlots, @DefaultValue("500") int fetchChunkSize) {
+	}
+
+	/**
+	 * OTLP decoding configuration. When {@code streamingDecoder} is {@code true}, log
+	 * messages are decoded directly from the protobuf wire format instead of being parsed
+	 * into generated message objects. {@code publishFormat} selects the format in which
+	 * the ingest endpoints publish received logs to the access exchange; it defaults to
+	 * OTLP, which every consumer version understands, and is switched to
+	 * {@code event-batch} once all instances have been updated. {@code maxPayloadSize}
+	 * limits the size of a received OTLP payload after decompression; larger requests are
+	 * rejected. {@code grpc} configures the OTLP/gRPC receiver.
+	 */
+	public record OtlpProperties(@DefaultValue("false") boolean streamingDecoder,
+			@DefaultValue("otlp") PublishFormat publishFormat, @DefaultValue("16MB") DataSize maxPayloadSize,
+			@DefaultValue GrpcProperties grpc) {
+
+		/**
+		 * OTLP/gRPC receiver configuration. When enabled, {@code LogsService/Export} is
+		 * served over cleartext HTTP/2 on {@code port}, separately from the HTTP server,
+		 * with at most {@code maxConcurrentStreams} exports in flight per connection.
+		 * Exports are published by {@code publishThreads} threads; up to
+		 * {@code publishQueueCapacity} further exports wait for a thread, and exports
+		 * beyond that are rejected with {@code UNAVAILABLE}. {@code maxBufferedSize}
+		 * limits the request bytes buffered across all connections until their export has
+		 * been published, and {@code requestTimeout} the time to receive a request; calls
+		 * exceeding either are rejected.
+		 */
+		public record GrpcProperties(@DefaultValue("false") boolean enabled, @DefaultValue("4317") int port,
+				@DefaultValue("8") int maxConcurrentStreams, @DefaultValue("16") int publishThreads,
+				@DefaultValue("64") int publishQueueCapacity, @DefaultValue("64MB") DataSize maxBufferedSize,
+				@DefaultValue("30s") Duration requestTimeout) {
+		}
+
+		/**
+		 * Format of the messages published by the ingest endpoints.
+		 */
+		public enum PublishFormat {
+
+			/**
+			 * Forward the OTLP protobuf payload as received.
+			 */
+			OTLP,
+
+			/**
+			 * Decode the OTLP payload once and publish the events as an
+			 * {@link am.ik.accessmonitor.event.AccessEventBatchCodec access event batch}.
+			 */
+			EVENT_BATCH
+
+		}
+
 	}
 }
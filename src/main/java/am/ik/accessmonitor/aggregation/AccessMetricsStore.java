@@ -0,0 +1,97 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.data.redis.connection.RedisConnection;
+
+/**
+ * Storage layout of aggregated access metrics in Valkey. All reads and writes of series
+ * values and dimension indexes go through this interface, so that the aggregation,
+ * rollup, query and alerting components do not depend on how series are laid out in keys.
+ * <p>
+ * The layout is selected with {@code access-monitor.valkey.layout}:
+ * <ul>
+ * <li>{@code key-per-series} (default): one count key and one duration hash per series,
+ * plus per-host dimension indexes ({@link KeyPerSeriesStore})</li>
+ * <li>{@code hash-per-slot}: one hash per granularity, slot and host whose fields hold
+ * the values of all its series ({@link HashPerSlotStore})</li>
+ * </ul>
+ */
+public interface AccessMetricsStore {
+
+	/**
+	 * Appends the commands writing the given increments, including any indexes, to the
+	 * connection, so that the caller can combine them with other writes into a single
+	 * pipeline or transaction.
+	 */
+	void write(RedisConnection connection, Map<SeriesKey, SeriesDelta> deltas);
+
+	/**
+	 * Returns the hosts that have series in each of the given slots, sorted, in the order
+	 * of the timestamps.
+	 */
+	List<List<String>> hosts(Granularity granularity, List<String> timestamps);
+
+	/**
+	 * Reads the series of the given host slots matching the filter. Series without any
+	 * stored value are omitted.
+	 */
+	Map<SeriesKey, SeriesDelta> read(Granularity granularity, List<HostSlot> hostSlots, SeriesFilter filter);
+
+	/**
+	 * Reads every series of a slot.
+	 */
+	default Map<SeriesKey, SeriesDelta> readSlot(Granularity granularity, String timestamp) {
+		List<HostSlot> hostSlots = new ArrayList<>();
+		for (String host : hosts(granularity, List.of(timestamp)).getFirst()) {
+			hostSlots.add(new HostSlot(timestamp, host));
+		}
+		if (hostSlots.isEmpty()) {
+			return Map.of();
+		}
+		return read(granularity, hostSlots, SeriesFilter.ALL);
+	}
+
+	/**
+	 * Returns the dimension values present in the given slots. Paths, statuses and
+	 * methods are restricted to the given host, or cover all hosts if it is {@code null}.
+	 */
+	Dimensions dimensions(Granularity granularity, List<String> timestamps, String host);
+
+	/**
+	 * A host within a time slot.
+	 *
+	 * @param timestamp the formatted slot timestamp (see {@link Granularity#format})
+	 * @param host the request host
+	 */
+	record HostSlot(String timestamp, String host) {
+	}
+
+	/**
+	 * Restricts the series read by {@link #read}. {@code null} components match any
+	 * value.
+	 */
+	record SeriesFilter(String path, Integer status, String method) {
+
+		/**
+		 * Filter matching every series.
+		 */
+		public static final SeriesFilter ALL = new SeriesFilter(null, null, null);
+
+		public boolean matches(String path, int status, String method) {
+			return (this.path == null || this.path.equals(path)) && (this.status == null || this.status == status)
+					&& (this.method == null || this.method.equals(method));
+		}
+
+	}
+
+	/**
+	 * Dimension values present in a range of slots.
+	 */
+	record Dimensions(Set<String> hosts, Set<String> paths, Set<String> statuses, Set<String> methods) {
+	}
+
+}
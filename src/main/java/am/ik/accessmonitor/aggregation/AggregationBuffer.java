@@ -0,0 +1,118 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process pre-aggregation buffer holding pending {@link SeriesDelta}s keyed by
+ * {@link SeriesKey}. The buffer is split into lock-striped maps so that concurrent
+ * consumers rarely contend, and it is bounded by a maximum number of distinct keys to cap
+ * memory usage while Valkey is slow or unavailable.
+ */
+public class AggregationBuffer {
+
+	private static final int STRIPES = 16;
+
+	private final Stripe[] stripes;
+
+	private final AtomicInteger size = new AtomicInteger();
+
+	private final int maxKeys;
+
+	public AggregationBuffer(int maxKeys) {
+		this.maxKeys = maxKeys;
+		this.stripes = new Stripe[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			this.stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * Merges the given delta into the pending delta for the key.
+	 * @param key the series key
+	 * @param delta the increments to add
+	 * @return {@code false} if the key is new and the buffer is already at its maximum
+	 * number of distinct keys, in which case nothing is added
+	 */
+	public boolean add(SeriesKey key, SeriesDelta delta) {
+		Stripe stripe = stripeFor(key);
+		stripe.lock.lock();
+		try {
+			SeriesDelta pending = stripe.deltas.get(key);
+			if (pending == null) {
+				if (this.size.get() >= this.maxKeys) {
+					return false;
+				}
+				pending = new SeriesDelta();
+				stripe.deltas.put(key, pending);
+				this.size.incrementAndGet();
+			}
+			pending.merge(delta);
+			return true;
+		}
+		finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes and returns all pending deltas. Each stripe is swapped atomically, so no
+	 * increment is lost or returned twice.
+	 */
+	public Map<SeriesKey, SeriesDelta> drain() {
+		Map<SeriesKey, SeriesDelta> drained = new HashMap<>();
+		for (Stripe stripe : this.stripes) {
+			Map<SeriesKey, SeriesDelta> deltas;
+			stripe.lock.lock();
+			try {
+				if (stripe.deltas.isEmpty()) {
+					continue;
+				}
+				deltas = stripe.deltas;
+				stripe.deltas = new HashMap<>();
+				this.size.addAndGet(-deltas.size());
+			}
+			finally {
+				stripe.lock.unlock();
+			}
+			drained.putAll(deltas);
+		}
+		return drained;
+	}
+
+	/**
+	 * Puts previously drained deltas back into the buffer, e.g. after a failed flush.
+	 * @return the number of keys that could not be restored because the buffer is full
+	 */
+	public int restore(Map<SeriesKey, SeriesDelta> deltas) {
+		int rejected = 0;
+		for (Map.Entry<SeriesKey, SeriesDelta> entry : deltas.entrySet()) {
+			if (!add(entry.getKey(), entry.getValue())) {
+				rejected++;
+			}
+		}
+		return rejected;
+	}
+
+	/**
+	 * Returns the current number of distinct pending keys.
+	 */
+	public int size() {
+		return this.size.get();
+	}
+
+	private Stripe stripeFor(SeriesKey key) {
+		return this.stripes[Math.floorMod(key.hashCode(), STRIPES)];
+	}
+
+	private static final class Stripe {
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private Map<SeriesKey, SeriesDelta> deltas = new HashMap<>();
+
+	}
+
+}
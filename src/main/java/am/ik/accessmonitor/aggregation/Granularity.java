@@ -3,48 +3,65 @@ package am.ik.accessmonitor.aggregation;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 
 import am.ik.accessmonitor.AccessMonitorProperties;
 
 /**
  * Time granularity for access metrics aggregation. Defines 4 granularity levels with
  * corresponding timestamp formatting, truncation, and TTL resolution.
+ * <p>
+ * Slots are aligned to multiples of the slot length since the epoch, which matches UTC
+ * calendar boundaries for all granularities. Formatted slots are cached per granularity,
+ * so formatting a timestamp in a recently formatted slot costs a lookup instead of a
+ * formatter run.
  */
 public enum Granularity {
 
 	/**
 	 * 1-minute granularity.
 	 */
-	ONE_MINUTE("1m", DateTimeFormatter.ofPattern("yyyyMMddHHmm"), ChronoUnit.MINUTES),
+	ONE_MINUTE("1m", "yyyyMMddHHmm", Duration.ofMinutes(1)),
 
 	/**
 	 * 5-minute granularity.
 	 */
-	FIVE_MINUTES("5m", DateTimeFormatter.ofPattern("yyyyMMddHHmm"), ChronoUnit.MINUTES),
+	FIVE_MINUTES("5m", "yyyyMMddHHmm", Duration.ofMinutes(5)),
 
 	/**
 	 * 1-hour granularity.
 	 */
-	ONE_HOUR("1h", DateTimeFormatter.ofPattern("yyyyMMddHH"), ChronoUnit.HOURS),
+	ONE_HOUR("1h", "yyyyMMddHH", Duration.ofHours(1)),
 
 	/**
 	 * 1-day granularity.
 	 */
-	ONE_DAY("1d", DateTimeFormatter.ofPattern("yyyyMMdd"), ChronoUnit.DAYS);
+	ONE_DAY("1d", "yyyyMMdd", Duration.ofDays(1));
+
+	/**
+	 * Number of formatted slots cached per granularity. Must be a power of two.
+	 */
+	private static final int FORMAT_CACHE_SIZE = 8;
 
 	private final String label;
 
 	private final DateTimeFormatter formatter;
 
-	private final ChronoUnit truncationUnit;
+	private final Duration slotDuration;
+
+	private final long slotSeconds;
 
-	Granularity(String label, DateTimeFormatter formatter, ChronoUnit truncationUnit) {
+	/**
+	 * Direct-mapped cache indexed by slot number. Entries are immutable, so racy reads
+	 * and writes only cost an extra formatter run.
+	 */
+	private final FormattedSlot[] formatCache = new FormattedSlot[FORMAT_CACHE_SIZE];
+
+	Granularity(String label, String pattern, Duration slotDuration) {
 		this.label = label;
-		this.formatter = formatter.withZone(ZoneOffset.UTC);
-		this.truncationUnit = truncationUnit;
+		this.formatter = DateTimeFormatter.ofPattern(pattern).withZone(ZoneOffset.UTC);
+		this.slotDuration = slotDuration;
+		this.slotSeconds = slotDuration.toSeconds();
 	}
 
 	/**
@@ -58,20 +75,26 @@ public enum Granularity {
 	 * Truncates the given instant to this granularity boundary.
 	 */
 	public Instant truncate(Instant instant) {
-		if (this == FIVE_MINUTES) {
-			ZonedDateTime zdt = instant.atZone(ZoneOffset.UTC);
-			int minute = zdt.getMinute();
-			int truncatedMinute = (minute / 5) * 5;
-			return zdt.withMinute(truncatedMinute).withSecond(0).withNano(0).toInstant();
-		}
-		return instant.truncatedTo(this.truncationUnit);
+		return Instant.ofEpochSecond(slotStart(instant));
 	}
 
 	/**
 	 * Formats the given instant as a timestamp string for use in Valkey keys.
 	 */
 	public String format(Instant instant) {
-		return this.formatter.format(truncate(instant));
+		long slotStart = slotStart(instant);
+		int index = (int) (slotStart / this.slotSeconds) & (FORMAT_CACHE_SIZE - 1);
+		FormattedSlot cached = this.formatCache[index];
+		if (cached != null && cached.slotStart() == slotStart) {
+			return cached.formatted();
+		}
+		String formatted = this.formatter.format(Instant.ofEpochSecond(slotStart));
+		this.formatCache[index] = new FormattedSlot(slotStart, formatted);
+		return formatted;
+	}
+
+	private long slotStart(Instant instant) {
+		return Math.floorDiv(instant.getEpochSecond(), this.slotSeconds) * this.slotSeconds;
 	}
 
 	/**
@@ -91,12 +114,7 @@ public enum Granularity {
 	 * Returns the duration of one slot for this granularity.
 	 */
 	public Duration slotDuration() {
-		return switch (this) {
-			case ONE_MINUTE -> Duration.ofMinutes(1);
-			case FIVE_MINUTES -> Duration.ofMinutes(5);
-			case ONE_HOUR -> Duration.ofHours(1);
-			case ONE_DAY -> Duration.ofDays(1);
-		};
+		return this.slotDuration;
 	}
 
 	/**
@@ -130,4 +148,7 @@ public enum Granularity {
 		}
 	}
 
+	private record FormattedSlot(long slotStart, String formatted) {
+	}
+
 }
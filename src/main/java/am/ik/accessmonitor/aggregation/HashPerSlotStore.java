@@ -0,0 +1,239 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import am.ik.accessmonitor.AccessMonitorProperties;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link AccessMetricsStore} layout with one hash per granularity, slot and host. Each
+ * series contributes the fields {@code {path}US{status}US{method}UScount},
+ * {@code {path}US{status}US{method}USsum} and one
+ * {@code {path}US{status}US{method}USb{n}} per non-empty latency histogram bucket, where
+ * {@code US} is the ASCII unit separator, so a whole host slot is read with a single
+ * HGETALL and its dimensions with a single HKEYS.
+ * <p>
+ * Compared to the key-per-series layout this replaces two keys per series, each with its
+ * own TTL and per-key overhead, and the per-host path, status and method indexes by one
+ * hash per host slot. Only the hosts index is kept. The number of requests with a
+ * duration is not stored separately since every write increments it together with the
+ * count.
+ */
+@Component
+@ConditionalOnProperty(name = "access-monitor.valkey.layout", havingValue = "hash-per-slot")
+public class HashPerSlotStore implements AccessMetricsStore {
+
+	private static final String SEPARATOR = "\u001f";
+
+	private static final String COUNT_SUFFIX = SEPARATOR + "count";
+
+	private static final String SUM_SUFFIX = SEPARATOR + "sum";
+
+	private final StringRedisTemplate redisTemplate;
+
+	private final AccessMonitorProperties.ValkeyProperties.TtlProperties ttlProperties;
+
+	public HashPerSlotStore(StringRedisTemplate redisTemplate, AccessMonitorProperties properties) {
+		this.redisTemplate = redisTemplate;
+		this.ttlProperties = properties.valkey().ttl();
+	}
+
+	/**
+	 * Writes each host slot hash and each hosts index with a single script call that sets
+	 * the TTL only when the key is created (see {@link ValkeyScripts}).
+	 */
+	@Override
+	public void write(RedisConnection connection, Map<SeriesKey, SeriesDelta> deltas) {
+		if (deltas.isEmpty()) {
+			return;
+		}
+		Map<SlotKey, List<byte[]>> increments = new LinkedHashMap<>();
+		Map<SlotKey, Set<String>> hosts = new LinkedHashMap<>();
+		for (Map.Entry<SeriesKey, SeriesDelta> entry : deltas.entrySet()) {
+			SeriesKey key = entry.getKey();
+			SeriesDelta delta = entry.getValue();
+			List<byte[]> fields = increments.computeIfAbsent(
+					new SlotKey(key.granularity(),
+							ValkeyKeyBuilder.slotKey(key.granularity(), key.timestamp(), key.host())),
+					k -> new ArrayList<>());
+			String field = field(key.path(), key.status(), key.method());
+			fields.add((field + COUNT_SUFFIX).getBytes());
+			fields.add(String.valueOf(delta.count()).getBytes());
+			fields.add((field + SUM_SUFFIX).getBytes());
+			fields.add(String.valueOf(delta.durationSum()).getBytes());
+			LatencyHistogram histogram = delta.histogram();
+			for (int i = 0; i < histogram.size(); i++) {
+				fields.add((field + SEPARATOR + ValkeyKeyBuilder.histogramField(histogram.bucket(i))).getBytes());
+				fields.add(String.valueOf(histogram.count(i)).getBytes());
+			}
+			hosts
+				.computeIfAbsent(
+						new SlotKey(key.granularity(),
+								ValkeyKeyBuilder.hostsIndexKey(key.granularity(), key.timestamp())),
+						k -> new LinkedHashSet<>())
+				.add(key.host());
+		}
+
+		for (Map.Entry<SlotKey, List<byte[]>> entry : increments.entrySet()) {
+			ValkeyScripts.incrementHashFields(connection, entry.getKey().key().getBytes(),
+					entry.getValue().toArray(byte[][]::new),
+					entry.getKey().granularity().ttlSeconds(this.ttlProperties));
+		}
+		for (Map.Entry<SlotKey, Set<String>> entry : hosts.entrySet()) {
+			byte[][] members = entry.getValue().stream().map(String::getBytes).toArray(byte[][]::new);
+			ValkeyScripts.addIndexMembers(connection, entry.getKey().key().getBytes(), members,
+					entry.getKey().granularity().ttlSeconds(this.ttlProperties));
+		}
+	}
+
+	@Override
+	public List<List<String>> hosts(Granularity granularity, List<String> timestamps) {
+		List<Object> results = this.redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
+			for (String ts : timestamps) {
+				connection.setCommands().sMembers(ValkeyKeyBuilder.hostsIndexKey(granularity, ts).getBytes());
+			}
+			return null;
+		});
+		List<List<String>> hostsBySlot = new ArrayList<>(timestamps.size());
+		for (Object result : results) {
+			List<String> hosts = new ArrayList<>();
+			if (result != null) {
+				for (Object host : (Collection<?>) result) {
+					hosts.add(host.toString());
+				}
+			}
+			hostsBySlot.add(hosts.stream().sorted().toList());
+		}
+		return hostsBySlot;
+	}
+
+	/**
+	 * Reads all host slots with one pipeline of HGETALL and filters the series locally.
+	 */
+	@Override
+	public Map<SeriesKey, SeriesDelta> read(Granularity granularity, List<HostSlot> hostSlots, SeriesFilter filter) {
+		if (hostSlots.isEmpty()) {
+			return Map.of();
+		}
+		List<Object> results = this.redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
+			for (HostSlot hostSlot : hostSlots) {
+				connection.hashCommands()
+					.hGetAll(ValkeyKeyBuilder.slotKey(granularity, hostSlot.timestamp(), hostSlot.host()).getBytes());
+			}
+			return null;
+		});
+		Map<SeriesKey, SeriesDelta> values = new LinkedHashMap<>();
+		for (int i = 0; i < hostSlots.size(); i++) {
+			HostSlot hostSlot = hostSlots.get(i);
+			Map<?, ?> fields = (Map<?, ?>) results.get(i);
+			if (fields == null) {
+				continue;
+			}
+			for (Map.Entry<?, ?> field : fields.entrySet()) {
+				String name = field.getKey().toString();
+				int end = name.lastIndexOf(SEPARATOR);
+				if (end < 0) {
+					continue;
+				}
+				String[] parts = name.substring(0, end).split(SEPARATOR, -1);
+				if (parts.length != 3) {
+					continue;
+				}
+				int status = Integer.parseInt(parts[1]);
+				if (!filter.matches(parts[0], status, parts[2])) {
+					continue;
+				}
+				SeriesDelta delta = values.computeIfAbsent(
+						new SeriesKey(granularity, hostSlot.timestamp(), hostSlot.host(), parts[0], status, parts[2]),
+						k -> new SeriesDelta());
+				String suffix = name.substring(end);
+				long value = Long.parseLong(field.getValue().toString());
+				if (suffix.equals(COUNT_SUFFIX)) {
+					delta.merge(value, 0);
+				}
+				else if (suffix.equals(SUM_SUFFIX)) {
+					delta.merge(0, value);
+				}
+				else {
+					int bucket = ValkeyKeyBuilder.histogramBucket(suffix.substring(SEPARATOR.length()));
+					if (bucket >= 0) {
+						delta.mergeBucket(bucket, value);
+					}
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Reads the hosts with SUNION and the paths, statuses and methods from the field
+	 * names of the host slots with one pipeline of HKEYS.
+	 */
+	@Override
+	public Dimensions dimensions(Granularity granularity, List<String> timestamps, String host) {
+		List<String> hostsKeys = timestamps.stream()
+			.map(ts -> ValkeyKeyBuilder.hostsIndexKey(granularity, ts))
+			.toList();
+		Set<String> hosts = null;
+		if (hostsKeys.size() == 1) {
+			hosts = this.redisTemplate.opsForSet().members(hostsKeys.getFirst());
+		}
+		else if (!hostsKeys.isEmpty()) {
+			hosts = this.redisTemplate.opsForSet().union(hostsKeys.getFirst(), hostsKeys.subList(1, hostsKeys.size()));
+		}
+		if (hosts == null) {
+			hosts = Set.of();
+		}
+		List<String> hostsForDetail = (host != null) ? List.of(host) : List.copyOf(hosts);
+		Set<String> paths = new LinkedHashSet<>();
+		Set<String> statuses = new LinkedHashSet<>();
+		Set<String> methods = new LinkedHashSet<>();
+		if (!hostsForDetail.isEmpty()) {
+			List<Object> results = this.redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
+				for (String ts : timestamps) {
+					for (String h : hostsForDetail) {
+						connection.hashCommands().hKeys(ValkeyKeyBuilder.slotKey(granularity, ts, h).getBytes());
+					}
+				}
+				return null;
+			});
+			for (Object result : results) {
+				if (result == null) {
+					continue;
+				}
+				for (Object field : (Collection<?>) result) {
+					String name = field.toString();
+					if (!name.endsWith(COUNT_SUFFIX)) {
+						continue;
+					}
+					String[] parts = name.substring(0, name.length() - COUNT_SUFFIX.length()).split(SEPARATOR, -1);
+					if (parts.length == 3) {
+						paths.add(parts[0]);
+						statuses.add(parts[1]);
+						methods.add(parts[2]);
+					}
+				}
+			}
+		}
+		return new Dimensions(hosts, paths, statuses, methods);
+	}
+
+	private static String field(String path, int status, String method) {
+		return path + SEPARATOR + status + SEPARATOR + method;
+	}
+
+	private record SlotKey(Granularity granularity, String key) {
+	}
+
+}
@@ -0,0 +1,124 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable, growable byte buffer for building Valkey keys directly as UTF-8 without an
+ * intermediate {@link String}. Not thread-safe; intended to be reused within a single
+ * batch of writes.
+ *
+ * @see ValkeyKeyBuilder#series(KeyBuffer, Granularity, String, String, String, int,
+ * String)
+ */
+public final class KeyBuffer {
+
+	private byte[] bytes;
+
+	private int length;
+
+	public KeyBuffer() {
+		this(128);
+	}
+
+	public KeyBuffer(int initialCapacity) {
+		this.bytes = new byte[initialCapacity];
+	}
+
+	/**
+	 * Discards the current content.
+	 */
+	public KeyBuffer reset() {
+		this.length = 0;
+		return this;
+	}
+
+	public KeyBuffer append(byte[] value) {
+		ensureCapacity(value.length);
+		System.arraycopy(value, 0, this.bytes, this.length, value.length);
+		this.length += value.length;
+		return this;
+	}
+
+	/**
+	 * Appends the UTF-8 encoding of the given string. ASCII characters, which make up
+	 * almost all hosts and paths, are copied without an encoder.
+	 */
+	public KeyBuffer append(String value) {
+		int size = value.length();
+		ensureCapacity(size);
+		byte[] dst = this.bytes;
+		int position = this.length;
+		for (int i = 0; i < size; i++) {
+			char c = value.charAt(i);
+			if (c >= 0x80) {
+				this.length = position;
+				return append(value.substring(i).getBytes(StandardCharsets.UTF_8));
+			}
+			dst[position++] = (byte) c;
+		}
+		this.length = position;
+		return this;
+	}
+
+	/**
+	 * Appends the decimal representation of the value.
+	 */
+	public KeyBuffer append(int value) {
+		if (value < 0) {
+			return append(Integer.toString(value));
+		}
+		int digits = 1;
+		for (int v = value; v >= 10; v /= 10) {
+			digits++;
+		}
+		ensureCapacity(digits);
+		int position = this.length + digits;
+		for (int v = value; position > this.length; v /= 10) {
+			this.bytes[--position] = (byte) ('0' + v % 10);
+		}
+		this.length += digits;
+		return this;
+	}
+
+	public KeyBuffer append(char c) {
+		if (c >= 0x80) {
+			return append(String.valueOf(c));
+		}
+		ensureCapacity(1);
+		this.bytes[this.length++] = (byte) c;
+		return this;
+	}
+
+	/**
+	 * Returns the number of bytes written.
+	 */
+	public int length() {
+		return this.length;
+	}
+
+	/**
+	 * Returns a copy of the content.
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(this.bytes, this.length);
+	}
+
+	/**
+	 * Returns a copy of the content preceded by the given prefix.
+	 */
+	public byte[] toByteArray(byte[] prefix) {
+		byte[] result = new byte[prefix.length + this.length];
+		System.arraycopy(prefix, 0, result, 0, prefix.length);
+		System.arraycopy(this.bytes, 0, result, prefix.length, this.length);
+		return result;
+	}
+
+	private void ensureCapacity(int additional) {
+		int required = this.length + additional;
+		if (required > this.bytes.length) {
+			this.bytes = Arrays.copyOf(this.bytes, Math.max(required, this.bytes.length * 2));
+		}
+	}
+
+}
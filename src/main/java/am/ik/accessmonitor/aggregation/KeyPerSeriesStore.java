@@ -0,0 +1,291 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import am.ik.accessmonitor.AccessMonitorProperties;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Default {@link AccessMetricsStore} layout: one count key and one duration hash per
+ * series, with per-host dimension indexes (hosts, paths, statuses, methods) per slot.
+ * <p>
+ * Series are read in two phases: the dimension indexes of all host slots are resolved
+ * with one pipeline of SMEMBERS, then all candidate count and duration keys are fetched
+ * with pipelined MGET/HMGET in chunks of {@code access-monitor.query.fetch-chunk-size}
+ * keys, so that the number of round trips does not grow with the number of keys.
+ */
+@Component
+@ConditionalOnProperty(name = "access-monitor.valkey.layout", havingValue = "key-per-series", matchIfMissing = true)
+public class KeyPerSeriesStore implements AccessMetricsStore {
+
+	private static final String DURATION_SUM_FIELD = new String(ValkeyKeyBuilder.DURATION_SUM_FIELD,
+			StandardCharsets.UTF_8);
+
+	private static final String DURATION_COUNT_FIELD = new String(ValkeyKeyBuilder.DURATION_COUNT_FIELD,
+			StandardCharsets.UTF_8);
+
+	private final StringRedisTemplate redisTemplate;
+
+	private final AccessMonitorProperties.ValkeyProperties.TtlProperties ttlProperties;
+
+	private final boolean rollupEnabled;
+
+	private final int fetchChunkSize;
+
+	public KeyPerSeriesStore(StringRedisTemplate redisTemplate, AccessMonitorProperties properties) {
+		this.redisTemplate = redisTemplate;
+		this.ttlProperties = properties.valkey().ttl();
+		this.rollupEnabled = properties.aggregation().rollup().enabled();
+		this.fetchChunkSize = properties.query().fetchChunkSize();
+	}
+
+	/**
+	 * Writes each series and each index key with a single script call that sets the TTL
+	 * only when the key is created (see {@link ValkeyScripts}). When rollup is enabled,
+	 * the 1-minute series are also added to the series index of their slot.
+	 */
+	@Override
+	public void write(RedisConnection connection, Map<SeriesKey, SeriesDelta> deltas) {
+		if (deltas.isEmpty()) {
+			return;
+		}
+		// Dimension index members are deduplicated so that each index key is written once
+		Map<IndexKey, Set<String>> indexes = new LinkedHashMap<>();
+		for (SeriesKey key : deltas.keySet()) {
+			Granularity granularity = key.granularity();
+			String ts = key.timestamp();
+			String host = key.host();
+			addIndexMember(indexes, granularity, ValkeyKeyBuilder.hostsIndexKey(granularity, ts), host);
+			addIndexMember(indexes, granularity, ValkeyKeyBuilder.pathsIndexKey(granularity, ts, host), key.path());
+			addIndexMember(indexes, granularity, ValkeyKeyBuilder.statusesIndexKey(granularity, ts, host),
+					String.valueOf(key.status()));
+			addIndexMember(indexes, granularity, ValkeyKeyBuilder.methodsIndexKey(granularity, ts, host), key.method());
+			if (this.rollupEnabled && granularity == Granularity.ONE_MINUTE) {
+				addIndexMember(indexes, granularity, ValkeyKeyBuilder.seriesIndexKey(granularity, ts), key.member());
+			}
+		}
+
+		KeyBuffer series = new KeyBuffer();
+		for (Map.Entry<SeriesKey, SeriesDelta> entry : deltas.entrySet()) {
+			SeriesKey key = entry.getKey();
+			SeriesDelta delta = entry.getValue();
+			key.writeTo(series);
+			ValkeyScripts.incrementSeries(connection, ValkeyKeyBuilder.countKey(series),
+					ValkeyKeyBuilder.durationKey(series), delta.count(), delta.durationSum(), delta.histogram(),
+					key.granularity().ttlSeconds(this.ttlProperties));
+		}
+
+		for (Map.Entry<IndexKey, Set<String>> entry : indexes.entrySet()) {
+			byte[] indexKey = entry.getKey().key().getBytes();
+			byte[][] members = entry.getValue().stream().map(String::getBytes).toArray(byte[][]::new);
+			ValkeyScripts.addIndexMembers(connection, indexKey, members,
+					entry.getKey().granularity().ttlSeconds(this.ttlProperties));
+		}
+	}
+
+	@Override
+	public List<List<String>> hosts(Granularity granularity, List<String> timestamps) {
+		List<Object> results = this.redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
+			for (String ts : timestamps) {
+				connection.setCommands().sMembers(ValkeyKeyBuilder.hostsIndexKey(granularity, ts).getBytes());
+			}
+			return null;
+		});
+		List<List<String>> hostsBySlot = new ArrayList<>(timestamps.size());
+		for (Object result : results) {
+			hostsBySlot.add(members(result).stream().sorted().toList());
+		}
+		return hostsBySlot;
+	}
+
+	@Override
+	public Map<SeriesKey, SeriesDelta> read(Granularity granularity, List<HostSlot> hostSlots, SeriesFilter filter) {
+		List<SeriesKey> candidates = resolveCandidates(granularity, hostSlots, filter);
+		return fetch(candidates);
+	}
+
+	/**
+	 * Reads the slot through its series index when rollup is enabled, which avoids
+	 * expanding the dimension indexes into candidate series.
+	 */
+	@Override
+	public Map<SeriesKey, SeriesDelta> readSlot(Granularity granularity, String timestamp) {
+		if (!this.rollupEnabled || granularity != Granularity.ONE_MINUTE) {
+			return AccessMetricsStore.super.readSlot(granularity, timestamp);
+		}
+		Set<String> members = this.redisTemplate.opsForSet()
+			.members(ValkeyKeyBuilder.seriesIndexKey(granularity, timestamp));
+		if (members == null || members.isEmpty()) {
+			return Map.of();
+		}
+		List<SeriesKey> keys = new ArrayList<>(members.size());
+		for (String member : members) {
+			keys.add(SeriesKey.fromMember(granularity, timestamp, member));
+		}
+		return fetch(keys);
+	}
+
+	/**
+	 * Uses SUNION to merge the dimension indexes across all slots.
+	 */
+	@Override
+	public Dimensions dimensions(Granularity granularity, List<String> timestamps, String host) {
+		Set<String> hosts = unionSets(
+				timestamps.stream().map(ts -> ValkeyKeyBuilder.hostsIndexKey(granularity, ts)).toList());
+		List<String> hostsForDetail = (host != null) ? List.of(host) : List.copyOf(hosts);
+		List<String> pathKeys = new ArrayList<>();
+		List<String> methodKeys = new ArrayList<>();
+		List<String> statusKeys = new ArrayList<>();
+		for (String ts : timestamps) {
+			for (String h : hostsForDetail) {
+				pathKeys.add(ValkeyKeyBuilder.pathsIndexKey(granularity, ts, h));
+				methodKeys.add(ValkeyKeyBuilder.methodsIndexKey(granularity, ts, h));
+				statusKeys.add(ValkeyKeyBuilder.statusesIndexKey(granularity, ts, h));
+			}
+		}
+		return new Dimensions(hosts, unionSets(pathKeys), unionSets(statusKeys), unionSets(methodKeys));
+	}
+
+	/**
+	 * Expands the host slots into candidate series, reading all path, method and status
+	 * indexes that are not fixed by the filter with a single pipeline.
+	 */
+	private List<SeriesKey> resolveCandidates(Granularity granularity, List<HostSlot> hostSlots, SeriesFilter filter) {
+		if (hostSlots.isEmpty()) {
+			return List.of();
+		}
+		List<Object> results = this.redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
+			for (HostSlot hostSlot : hostSlots) {
+				String ts = hostSlot.timestamp();
+				String host = hostSlot.host();
+				if (filter.path() == null) {
+					connection.setCommands().sMembers(ValkeyKeyBuilder.pathsIndexKey(granularity, ts, host).getBytes());
+				}
+				if (filter.method() == null) {
+					connection.setCommands()
+						.sMembers(ValkeyKeyBuilder.methodsIndexKey(granularity, ts, host).getBytes());
+				}
+				if (filter.status() == null) {
+					connection.setCommands()
+						.sMembers(ValkeyKeyBuilder.statusesIndexKey(granularity, ts, host).getBytes());
+				}
+			}
+			return null;
+		});
+		Iterator<Object> iterator = results.iterator();
+		List<SeriesKey> candidates = new ArrayList<>();
+		for (HostSlot hostSlot : hostSlots) {
+			List<String> paths = (filter.path() != null) ? List.of(filter.path()) : members(iterator.next());
+			List<String> methods = (filter.method() != null) ? List.of(filter.method()) : members(iterator.next());
+			List<String> statuses = (filter.status() != null) ? List.of(String.valueOf(filter.status()))
+					: members(iterator.next());
+			for (String path : paths) {
+				for (String method : methods) {
+					for (String status : statuses) {
+						candidates.add(new SeriesKey(granularity, hostSlot.timestamp(), hostSlot.host(), path,
+								Integer.parseInt(status), method));
+					}
+				}
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Fetches the count and duration keys of the given series with one pipeline per chunk
+	 * of {@code fetchChunkSize} series, using MGET for the counts and HGETALL for the
+	 * duration hashes, which also hold the latency histogram buckets.
+	 */
+	private Map<SeriesKey, SeriesDelta> fetch(List<SeriesKey> keys) {
+		Map<SeriesKey, SeriesDelta> values = new LinkedHashMap<>();
+		KeyBuffer series = new KeyBuffer();
+		for (int from = 0; from < keys.size(); from += this.fetchChunkSize) {
+			List<SeriesKey> chunk = keys.subList(from, Math.min(from + this.fetchChunkSize, keys.size()));
+			List<Object> results = this.redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
+				byte[][] countKeys = new byte[chunk.size()][];
+				byte[][] durationKeys = new byte[chunk.size()][];
+				for (int i = 0; i < chunk.size(); i++) {
+					chunk.get(i).writeTo(series);
+					countKeys[i] = ValkeyKeyBuilder.countKey(series);
+					durationKeys[i] = ValkeyKeyBuilder.durationKey(series);
+				}
+				connection.stringCommands().mGet(countKeys);
+				for (byte[] durationKey : durationKeys) {
+					connection.hashCommands().hGetAll(durationKey);
+				}
+				return null;
+			});
+			List<?> counts = (List<?>) results.getFirst();
+			for (int i = 0; i < chunk.size(); i++) {
+				Object count = counts.get(i);
+				Map<?, ?> duration = (Map<?, ?>) results.get(i + 1);
+				Object durationSum = (duration != null) ? duration.get(DURATION_SUM_FIELD) : null;
+				Object durationCount = (duration != null) ? duration.get(DURATION_COUNT_FIELD) : null;
+				if (count == null && (durationSum == null || durationCount == null)) {
+					continue;
+				}
+				SeriesDelta delta = new SeriesDelta();
+				delta.merge(parseLong((count != null) ? count : durationCount), parseLong(durationSum));
+				if (duration != null) {
+					for (Map.Entry<?, ?> field : duration.entrySet()) {
+						int bucket = ValkeyKeyBuilder.histogramBucket(field.getKey().toString());
+						if (bucket >= 0) {
+							delta.mergeBucket(bucket, parseLong(field.getValue()));
+						}
+					}
+				}
+				values.put(chunk.get(i), delta);
+			}
+		}
+		return values;
+	}
+
+	private Set<String> unionSets(List<String> keys) {
+		if (keys.isEmpty()) {
+			return Set.of();
+		}
+		if (keys.size() == 1) {
+			Set<String> result = this.redisTemplate.opsForSet().members(keys.getFirst());
+			return result != null ? result : Set.of();
+		}
+		Set<String> result = this.redisTemplate.opsForSet().union(keys.getFirst(), keys.subList(1, keys.size()));
+		return result != null ? result : Set.of();
+	}
+
+	private static List<String> members(Object members) {
+		if (members == null) {
+			return List.of();
+		}
+		List<String> values = new ArrayList<>();
+		for (Object member : (Collection<?>) members) {
+			values.add(member.toString());
+		}
+		return values;
+	}
+
+	private static long parseLong(Object value) {
+		return (value != null) ? Long.parseLong(value.toString()) : 0;
+	}
+
+	private static void addIndexMember(Map<IndexKey, Set<String>> indexes, Granularity granularity, String key,
+			String member) {
+		indexes.computeIfAbsent(new IndexKey(granularity, key), k -> new LinkedHashSet<>()).add(member);
+	}
+
+	private record IndexKey(Granularity granularity, String key) {
+	}
+
+}
@@ -0,0 +1,155 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.util.Arrays;
+
+/**
+ * Sparse, mergeable latency histogram with log-linear buckets. Durations are bucketed in
+ * microseconds: values below {@value #SUB_BUCKET_COUNT} µs have one bucket each, and
+ * every power of two above is split into {@value #SUB_BUCKET_COUNT} linear sub-buckets,
+ * so that a bucket is at most 1/16 (6.25%) of its lower bound wide. Bucket indexes do not
+ * depend on the data, hence histograms of different series and slots are merged by adding
+ * the counts of equal buckets.
+ * <p>
+ * Only non-empty buckets are held, sorted by index. Instances are not thread-safe.
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+
+	static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	private static final int[] EMPTY_BUCKETS = new int[0];
+
+	private static final long[] EMPTY_COUNTS = new long[0];
+
+	private int[] buckets = EMPTY_BUCKETS;
+
+	private long[] counts = EMPTY_COUNTS;
+
+	private int size;
+
+	/**
+	 * Returns the bucket index of the given duration.
+	 */
+	public static int bucketOf(long durationNs) {
+		long micros = Math.max(0, durationNs / 1_000);
+		if (micros < SUB_BUCKET_COUNT) {
+			return (int) micros;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+		int subBucket = (int) (micros >>> shift) & (SUB_BUCKET_COUNT - 1);
+		return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	/**
+	 * Returns the smallest duration in nanoseconds that falls into the given bucket.
+	 */
+	public static long lowerBoundNs(int bucket) {
+		if (bucket < SUB_BUCKET_COUNT) {
+			return bucket * 1_000L;
+		}
+		int shift = bucket / SUB_BUCKET_COUNT - 1;
+		long subBucket = bucket % SUB_BUCKET_COUNT;
+		return ((SUB_BUCKET_COUNT + subBucket) << shift) * 1_000L;
+	}
+
+	/**
+	 * Adds a single observation with the given duration.
+	 */
+	public void record(long durationNs) {
+		add(bucketOf(durationNs), 1);
+	}
+
+	/**
+	 * Adds {@code count} observations to the given bucket.
+	 */
+	public void add(int bucket, long count) {
+		int index = Arrays.binarySearch(this.buckets, 0, this.size, bucket);
+		if (index >= 0) {
+			this.counts[index] += count;
+			return;
+		}
+		int insertion = -index - 1;
+		if (this.size == this.buckets.length) {
+			int capacity = Math.max(4, this.size * 2);
+			this.buckets = Arrays.copyOf(this.buckets, capacity);
+			this.counts = Arrays.copyOf(this.counts, capacity);
+		}
+		System.arraycopy(this.buckets, insertion, this.buckets, insertion + 1, this.size - insertion);
+		System.arraycopy(this.counts, insertion, this.counts, insertion + 1, this.size - insertion);
+		this.buckets[insertion] = bucket;
+		this.counts[insertion] = count;
+		this.size++;
+	}
+
+	/**
+	 * Adds the buckets of another histogram to this one.
+	 */
+	public void merge(LatencyHistogram other) {
+		for (int i = 0; i < other.size; i++) {
+			add(other.buckets[i], other.counts[i]);
+		}
+	}
+
+	/**
+	 * Returns the number of non-empty buckets.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Returns the index of the {@code i}-th non-empty bucket in ascending order.
+	 */
+	public int bucket(int i) {
+		return this.buckets[i];
+	}
+
+	/**
+	 * Returns the count of the {@code i}-th non-empty bucket in ascending order.
+	 */
+	public long count(int i) {
+		return this.counts[i];
+	}
+
+	/**
+	 * Returns the total number of observations.
+	 */
+	public long totalCount() {
+		long total = 0;
+		for (int i = 0; i < this.size; i++) {
+			total += this.counts[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Estimates the duration at the given percentile as the midpoint of the bucket that
+	 * contains it.
+	 * @param percentile the percentile in the range {@code (0, 100]}
+	 * @return the estimated duration in nanoseconds, or {@code -1} if the histogram is
+	 * empty
+	 */
+	public long percentileNs(double percentile) {
+		long total = totalCount();
+		if (total == 0) {
+			return -1;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+		long cumulative = 0;
+		int i = 0;
+		for (; i < this.size - 1; i++) {
+			cumulative += this.counts[i];
+			if (cumulative >= rank) {
+				break;
+			}
+		}
+		int bucket = this.buckets[i];
+		return (lowerBoundNs(bucket) + lowerBoundNs(bucket + 1)) / 2;
+	}
+
+}
@@ -0,0 +1,176 @@
+package am.ik.accessmonitor.aggregation;
+
+/**
+ * Cheap necessary condition for a path pattern regex, derived from the literal prefix and
+ * suffix that every matching path must have. For example {@code ^/.+\.php(\?.*)?$} can
+ * only match paths ending with {@code .php} or containing {@code .php?}, so the regex
+ * does not need to run for any other path.
+ * <p>
+ * Extraction is conservative: anything that is not a plain literal, such as character
+ * classes, groups or quantified characters, ends the literal. Regexes containing an
+ * alternation or a special construct ({@code (?...)}) get no prefilter at all, and no
+ * suffix is derived when the regex contains escape sequences other than escaped meta
+ * characters.
+ */
+final class LiteralPrefilter {
+
+	/**
+	 * Optional query string group commonly appended to path pattern regexes.
+	 */
+	private static final String OPTIONAL_QUERY = "(\\?.*)?";
+
+	private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+	private final String prefix;
+
+	private final String suffix;
+
+	private final String suffixBeforeQuery;
+
+	private LiteralPrefilter(String prefix, String suffix, boolean optionalQuery) {
+		this.prefix = prefix;
+		this.suffix = suffix;
+		this.suffixBeforeQuery = (optionalQuery && !suffix.isEmpty()) ? suffix + "?" : null;
+	}
+
+	/**
+	 * Derives the prefilter for a regex used with
+	 * {@link java.util.regex.Matcher#matches}, i.e. matching the whole path.
+	 */
+	static LiteralPrefilter of(String regex) {
+		if (hasAlternation(regex) || regex.contains("(?")) {
+			return new LiteralPrefilter("", "", false);
+		}
+		String body = regex.startsWith("^") ? regex.substring(1) : regex;
+		if (body.endsWith("$") && !isEscaped(body, body.length() - 1)) {
+			body = body.substring(0, body.length() - 1);
+		}
+		boolean optionalQuery = false;
+		if (body.endsWith(OPTIONAL_QUERY)) {
+			body = body.substring(0, body.length() - OPTIONAL_QUERY.length());
+			optionalQuery = true;
+		}
+		String suffix = hasEscapeSequence(body) ? "" : literalSuffix(body);
+		return new LiteralPrefilter(literalPrefix(body), suffix, optionalQuery);
+	}
+
+	/**
+	 * Returns {@code false} if the regex cannot match the given path.
+	 */
+	boolean mayMatch(String path) {
+		if (!path.startsWith(this.prefix)) {
+			return false;
+		}
+		if (this.suffix.isEmpty() || path.endsWith(this.suffix)) {
+			return true;
+		}
+		return this.suffixBeforeQuery != null && path.contains(this.suffixBeforeQuery);
+	}
+
+	String prefix() {
+		return this.prefix;
+	}
+
+	String suffix() {
+		return this.suffix;
+	}
+
+	private static String literalPrefix(String body) {
+		StringBuilder literal = new StringBuilder();
+		int i = 0;
+		while (i < body.length()) {
+			int length;
+			char c = body.charAt(i);
+			if (c == '\\') {
+				if (i + 1 >= body.length() || !isMeta(body.charAt(i + 1))) {
+					break;
+				}
+				c = body.charAt(i + 1);
+				length = 2;
+			}
+			else if (isMeta(c)) {
+				break;
+			}
+			else {
+				length = 1;
+			}
+			// A quantified character is optional or repeated, so it ends the literal
+			if (i + length < body.length() && isQuantifier(body.charAt(i + length))) {
+				break;
+			}
+			literal.append(c);
+			i += length;
+		}
+		return literal.toString();
+	}
+
+	/**
+	 * Reads the literal at the end of a regex that has no escape sequences other than
+	 * escaped meta characters.
+	 */
+	private static String literalSuffix(String body) {
+		StringBuilder literal = new StringBuilder();
+		int i = body.length() - 1;
+		while (i >= 0) {
+			char c = body.charAt(i);
+			if (isMeta(c)) {
+				// Only an escaped meta character is a literal
+				if (isEscaped(body, i)) {
+					literal.append(c);
+					i -= 2;
+					continue;
+				}
+				break;
+			}
+			literal.append(c);
+			i--;
+		}
+		return literal.reverse().toString();
+	}
+
+	/**
+	 * Returns whether the regex contains an escape sequence such as {@code \d} or
+	 * {@code \u0041} whose extent cannot be determined by scanning backwards.
+	 */
+	private static boolean hasEscapeSequence(String body) {
+		for (int i = 0; i < body.length() - 1; i++) {
+			if (body.charAt(i) == '\\') {
+				if (!isMeta(body.charAt(i + 1))) {
+					return true;
+				}
+				i++;
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasAlternation(String regex) {
+		for (int i = 0; i < regex.length(); i++) {
+			if (regex.charAt(i) == '|' && !isEscaped(regex, i)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the character at the index is preceded by an odd number of
+	 * backslashes.
+	 */
+	private static boolean isEscaped(String regex, int index) {
+		int backslashes = 0;
+		for (int i = index - 1; i >= 0 && regex.charAt(i) == '\\'; i--) {
+			backslashes++;
+		}
+		return backslashes % 2 == 1;
+	}
+
+	private static boolean isMeta(char c) {
+		return META_CHARACTERS.indexOf(c) >= 0;
+	}
+
+	private static boolean isQuantifier(char c) {
+		return c == '?' || c == '*' || c == '+' || c == '{';
+	}
+
+}
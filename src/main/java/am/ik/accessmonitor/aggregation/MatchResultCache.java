@@ -0,0 +1,91 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import am.ik.accessmonitor.aggregation.PathPatternMatcher.MatchResult;
+
+/**
+ * Bounded LRU cache from raw request path to {@link MatchResult}. The cache is split into
+ * lock-striped access-ordered maps, each evicting its least recently used entry once it
+ * holds its share of the maximum size, so that concurrent consumers rarely contend.
+ */
+final class MatchResultCache {
+
+	private static final int STRIPES = 16;
+
+	private final Stripe[] stripes;
+
+	MatchResultCache(int maxSize) {
+		int stripeSize = Math.max(1, (maxSize + STRIPES - 1) / STRIPES);
+		this.stripes = new Stripe[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			this.stripes[i] = new Stripe(stripeSize);
+		}
+	}
+
+	/**
+	 * Returns the cached result for the path, or {@code null} if there is none.
+	 */
+	MatchResult get(String path) {
+		Stripe stripe = stripeFor(path);
+		stripe.lock.lock();
+		try {
+			return stripe.entries.get(path);
+		}
+		finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	void put(String path, MatchResult result) {
+		Stripe stripe = stripeFor(path);
+		stripe.lock.lock();
+		try {
+			stripe.entries.put(path, result);
+		}
+		finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the current number of cached paths.
+	 */
+	int size() {
+		int size = 0;
+		for (Stripe stripe : this.stripes) {
+			stripe.lock.lock();
+			try {
+				size += stripe.entries.size();
+			}
+			finally {
+				stripe.lock.unlock();
+			}
+		}
+		return size;
+	}
+
+	private Stripe stripeFor(String path) {
+		return this.stripes[Math.floorMod(path.hashCode(), STRIPES)];
+	}
+
+	private static final class Stripe {
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private final Map<String, MatchResult> entries;
+
+		Stripe(int maxSize) {
+			this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, MatchResult> eldest) {
+					return size() > maxSize;
+				}
+			};
+		}
+
+	}
+
+}
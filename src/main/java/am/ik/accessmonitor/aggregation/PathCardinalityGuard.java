@@ -0,0 +1,110 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of distinct paths written per host and time slot. Each (granularity,
+ * slot, host) admits up to {@code maxPathsPerSlot} distinct paths; further paths are
+ * collapsed into {@link #OVERFLOW_PATH}, so that scanners requesting random URLs cannot
+ * create an unbounded number of series and index members.
+ * <p>
+ * The admitted paths are tracked in memory for the current and the previous slot of each
+ * granularity and host; older slots are evicted when a newer slot is first seen. The
+ * tracked slots are ordered by granularity and slot, so that eviction only visits the
+ * evicted entries instead of scanning all tracked slots. The budget is therefore enforced
+ * per instance: N consumer instances admit up to N times {@code maxPathsPerSlot} paths
+ * into a slot, and a restarted instance admits up to {@code maxPathsPerSlot} new paths
+ * into a slot again, unless the slot is {@linkplain #seed seeded} with the paths already
+ * written to it. This class is thread-safe; the budget may be exceeded by a few paths
+ * under concurrent admission.
+ */
+public class PathCardinalityGuard {
+
+	/**
+	 * Path under which the requests to paths beyond the budget are aggregated.
+	 */
+	public static final String OVERFLOW_PATH = "__other__";
+
+	private static final Comparator<SlotKey> SLOT_ORDER = Comparator.comparing(SlotKey::granularity)
+		.thenComparing(SlotKey::slot)
+		.thenComparing(SlotKey::host);
+
+	private final int maxPathsPerSlot;
+
+	private final ConcurrentNavigableMap<SlotKey, Set<String>> paths = new ConcurrentSkipListMap<>(SLOT_ORDER);
+
+	public PathCardinalityGuard(int maxPathsPerSlot) {
+		this.maxPathsPerSlot = maxPathsPerSlot;
+	}
+
+	/**
+	 * Returns the given path if it is already admitted to the slot of the host or the
+	 * budget allows admitting it, otherwise {@link #OVERFLOW_PATH}.
+	 * @param granularity the granularity of the slot
+	 * @param slot the start of the slot
+	 * @param host the host
+	 * @param path the request path
+	 * @return the path to aggregate the request under
+	 */
+	public String admit(Granularity granularity, Instant slot, String host, String path) {
+		SlotKey key = new SlotKey(granularity, slot, host);
+		Set<String> admitted = this.paths.get(key);
+		if (admitted == null) {
+			admitted = this.paths.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+			evictBefore(granularity, slot.minus(granularity.slotDuration()));
+		}
+		if (admitted.contains(path)) {
+			return path;
+		}
+		if (admitted.size() >= this.maxPathsPerSlot) {
+			return OVERFLOW_PATH;
+		}
+		admitted.add(path);
+		return path;
+	}
+
+	/**
+	 * Starts tracking the slot of the host with the paths that have already been written
+	 * to it, e.g. by another instance, unless the slot is tracked already. These paths
+	 * are admitted regardless of the budget.
+	 * @param granularity the granularity of the slot
+	 * @param slot the start of the slot
+	 * @param host the host
+	 * @param paths supplies the paths written to the slot; only called if the slot is not
+	 * tracked yet
+	 */
+	public void seed(Granularity granularity, Instant slot, String host, Supplier<? extends Collection<String>> paths) {
+		SlotKey key = new SlotKey(granularity, slot, host);
+		if (this.paths.containsKey(key)) {
+			return;
+		}
+		Set<String> admitted = ConcurrentHashMap.newKeySet();
+		admitted.addAll(paths.get());
+		if (this.paths.putIfAbsent(key, admitted) == null) {
+			evictBefore(granularity, slot.minus(granularity.slotDuration()));
+		}
+	}
+
+	/**
+	 * Returns the number of tracked (granularity, slot, host) entries.
+	 */
+	int trackedSlots() {
+		return this.paths.size();
+	}
+
+	private void evictBefore(Granularity granularity, Instant oldest) {
+		// The empty host sorts before every host of a slot
+		this.paths.subMap(new SlotKey(granularity, Instant.MIN, ""), new SlotKey(granularity, oldest, "")).clear();
+	}
+
+	private record SlotKey(Granularity granularity, Instant slot, String host) {
+	}
+
+}
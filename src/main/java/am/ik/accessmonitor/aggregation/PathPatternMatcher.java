@@ -2,7 +2,9 @@ package am.ik.accessmonitor.aggregation;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import am.ik.accessmonitor.AccessMonitorProperties;
 import am.ik.accessmonitor.AccessMonitorProperties.AggregationProperties.PathPatternProperties;
@@ -13,18 +15,49 @@ import org.springframework.stereotype.Component;
  * Matches request paths against configured path patterns and returns the corresponding
  * labels along with aggregation options. Used by the aggregation service to write
  * pattern-based aggregation keys.
+ * <p>
+ * Each pattern is guarded by a {@link LiteralPrefilter}, so that a regex only runs for
+ * paths that have its literal prefix and suffix. Paths matching no pattern share a single
+ * immutable result, and results are kept in a bounded LRU cache keyed by the raw path
+ * when {@code access-monitor.aggregation.path-match-cache-size} is positive.
  */
 @Component
 public class PathPatternMatcher {
 
+	private static final MatchResult NO_MATCH = new MatchResult(List.of(), false);
+
 	private final List<CompiledPattern> compiledPatterns;
 
+	private final MatchResultCache cache;
+
+	private final Set<String> labels;
+
 	public PathPatternMatcher(AccessMonitorProperties properties) {
 		this.compiledPatterns = properties.aggregation()
 			.pathPatterns()
 			.stream()
-			.map(pp -> new CompiledPattern(pp.label(), Pattern.compile(pp.regex()), pp.dropOriginalPath()))
+			.map(pp -> new CompiledPattern(pp.label(), Pattern.compile(pp.regex()), LiteralPrefilter.of(pp.regex()),
+					pp.dropOriginalPath(), new MatchResult(List.of(pp.label()), pp.dropOriginalPath())))
 			.toList();
+		this.labels = this.compiledPatterns.stream()
+			.map(CompiledPattern::label)
+			.collect(Collectors.toUnmodifiableSet());
+		int cacheSize = properties.aggregation().pathMatchCacheSize();
+		this.cache = cacheSize > 0 ? new MatchResultCache(cacheSize) : null;
+	}
+
+	/**
+	 * Returns the labels of all configured path patterns.
+	 */
+	public Set<String> labels() {
+		return this.labels;
+	}
+
+	/**
+	 * Returns whether the given path is the label of a configured path pattern.
+	 */
+	public boolean isLabel(String path) {
+		return this.labels.contains(path);
 	}
 
 	/**
@@ -35,16 +68,45 @@ public class PathPatternMatcher {
 	 * @return match result with labels and dropOriginalPath flag
 	 */
 	public MatchResult match(String path) {
-		List<String> labels = new ArrayList<>();
+		if (this.cache == null) {
+			return doMatch(path);
+		}
+		MatchResult result = this.cache.get(path);
+		if (result == null) {
+			result = doMatch(path);
+			this.cache.put(path, result);
+		}
+		return result;
+	}
+
+	private MatchResult doMatch(String path) {
+		CompiledPattern first = null;
+		List<String> labels = null;
 		boolean drop = false;
 		for (CompiledPattern cp : this.compiledPatterns) {
-			if (cp.pattern().matcher(path).matches()) {
-				labels.add(cp.label());
-				if (cp.dropOriginalPath()) {
-					drop = true;
+			if (!cp.prefilter().mayMatch(path) || !cp.pattern().matcher(path).matches()) {
+				continue;
+			}
+			if (first == null) {
+				first = cp;
+			}
+			else {
+				if (labels == null) {
+					labels = new ArrayList<>();
+					labels.add(first.label());
 				}
+				labels.add(cp.label());
+			}
+			if (cp.dropOriginalPath()) {
+				drop = true;
 			}
 		}
+		if (first == null) {
+			return NO_MATCH;
+		}
+		if (labels == null) {
+			return first.singleMatch();
+		}
 		return new MatchResult(List.copyOf(labels), drop);
 	}
 
@@ -58,7 +120,8 @@ public class PathPatternMatcher {
 	public record MatchResult(List<String> labels, boolean dropOriginalPath) {
 	}
 
-	private record CompiledPattern(String label, Pattern pattern, boolean dropOriginalPath) {
+	private record CompiledPattern(String label, Pattern pattern, LiteralPrefilter prefilter, boolean dropOriginalPath,
+			MatchResult singleMatch) {
 	}
 
 }
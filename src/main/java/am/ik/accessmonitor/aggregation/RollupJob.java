@@ -0,0 +1,325 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.InstantSource;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import am.ik.accessmonitor.AccessMonitorProperties;
+import am.ik.accessmonitor.AccessMonitorProperties.AggregationProperties.CardinalityGuardProperties;
+import am.ik.accessmonitor.AccessMonitorProperties.AggregationProperties.RollupProperties;
+import am.ik.accessmonitor.AccessMonitorProperties.ValkeyProperties.TtlProperties;
+import am.ik.accessmonitor.InstanceId;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Derives the 5-minute, 1-hour and 1-day aggregation keys from closed 1-minute slots.
+ * <p>
+ * While rollup is enabled, {@link ValkeyAggregationService} writes only 1-minute series.
+ * This job reads each 1-minute slot through the {@link AccessMetricsStore} once it has
+ * been closed for the configured delay and adds its counts and duration sums to the
+ * coarser series, and likewise for the {@link TrafficTotals} of each host and of all
+ * hosts. When unique clients are tracked, the 1-minute HyperLogLogs of each host and path
+ * pattern label are merged into the coarser ones with PFMERGE, and when top-K is enabled,
+ * the 1-minute leaderboards are summed into the coarser ones with ZUNIONSTORE and trimmed
+ * to the maximum number of members.
+ * <p>
+ * When the cardinality guard is enabled, the distinct paths folded into each coarser slot
+ * of a host are bounded by a {@link PathCardinalityGuard} of this job, with the same
+ * budget as the 1-minute slots, and further paths are folded into
+ * {@value PathCardinalityGuard#OVERFLOW_PATH}. A coarser slot seen for the first time,
+ * e.g. after another instance rolled up its earlier minutes, is seeded with the paths
+ * already written to it.
+ * <p>
+ * A watermark holding the last rolled-up slot is advanced in the same transaction as the
+ * writes, so every slot is rolled up exactly once and the job resumes where it stopped
+ * after a restart. Events arriving after their slot has been rolled up are only reflected
+ * in the 1-minute keys.
+ */
+@Component
+@ConditionalOnProperty(name = "access-monitor.aggregation.rollup.enabled", havingValue = "true")
+public class RollupJob {
+
+	private static final Logger log = LoggerFactory.getLogger(RollupJob.class);
+
+	private static final String LOCK_KEY = "access-monitor:lock:rollup";
+
+	private static final List<Granularity> TARGET_GRANULARITIES = List.of(Granularity.FIVE_MINUTES,
+			Granularity.ONE_HOUR, Granularity.ONE_DAY);
+
+	private final StringRedisTemplate redisTemplate;
+
+	private final AccessMetricsStore store;
+
+	private final PathPatternMatcher pathPatternMatcher;
+
+	private final boolean uniqueClientsEnabled;
+
+	private final boolean topKEnabled;
+
+	private final int topKMaxMembers;
+
+	private final RollupProperties rollupProperties;
+
+	private final TtlProperties ttlProperties;
+
+	private final InstantSource instantSource;
+
+	private final InstanceId instanceId;
+
+	private final PathCardinalityGuard cardinalityGuard;
+
+	private final Map<Granularity, Counter> collapsedPaths = new EnumMap<>(Granularity.class);
+
+	public RollupJob(StringRedisTemplate redisTemplate, AccessMetricsStore store, PathPatternMatcher pathPatternMatcher,
+			AccessMonitorProperties properties, InstantSource instantSource, InstanceId instanceId,
+			MeterRegistry meterRegistry) {
+		this.redisTemplate = redisTemplate;
+		this.store = store;
+		this.pathPatternMatcher = pathPatternMatcher;
+		this.uniqueClientsEnabled = properties.aggregation().uniqueClients().enabled();
+		this.topKEnabled = properties.aggregation().topK().enabled();
+		this.topKMaxMembers = properties.aggregation().topK().maxMembers();
+		this.rollupProperties = properties.aggregation().rollup();
+		this.ttlProperties = properties.valkey().ttl();
+		this.instantSource = instantSource;
+		this.instanceId = instanceId;
+		CardinalityGuardProperties cardinalityGuardProperties = properties.aggregation().cardinalityGuard();
+		this.cardinalityGuard = cardinalityGuardProperties.enabled()
+				? new PathCardinalityGuard(cardinalityGuardProperties.maxPathsPerSlot()) : null;
+		for (Granularity granularity : TARGET_GRANULARITIES) {
+			this.collapsedPaths.put(granularity,
+					Counter.builder("access.monitor.aggregation.paths.collapsed")
+						.description("Number of requests aggregated under the overflow path")
+						.tag("granularity", granularity.label())
+						.register(meterRegistry));
+		}
+	}
+
+	/**
+	 * Rolls up the closed 1-minute slots following the watermark. Uses a distributed lock
+	 * to prevent concurrent rollups across multiple instances.
+	 */
+	@Scheduled(fixedDelayString = "${access-monitor.aggregation.rollup.interval}")
+	public void rollup() {
+		Boolean acquired = this.redisTemplate.opsForValue()
+			.setIfAbsent(LOCK_KEY, this.instanceId.value(), this.rollupProperties.interval());
+		if (!Boolean.TRUE.equals(acquired)) {
+			return;
+		}
+		Duration slotDuration = Granularity.ONE_MINUTE.slotDuration();
+		Instant closedBefore = Granularity.ONE_MINUTE
+			.truncate(this.instantSource.instant().minus(this.rollupProperties.delay()));
+		String watermark = this.redisTemplate.opsForValue().get(ValkeyKeyBuilder.rollupWatermarkKey());
+		Instant slot = (watermark != null) ? Instant.ofEpochSecond(Long.parseLong(watermark)).plus(slotDuration)
+				: closedBefore.minus(slotDuration.multipliedBy(this.rollupProperties.maxSlotsPerRun()));
+		for (int i = 0; i < this.rollupProperties.maxSlotsPerRun() && slot.isBefore(closedBefore); i++) {
+			try {
+				if (!rollupSlot(slot, watermark)) {
+					log.warn("Rollup watermark changed concurrently, stopping at slot {}", slot);
+					return;
+				}
+			}
+			catch (RuntimeException ex) {
+				log.error("Failed to roll up slot {}", slot, ex);
+				return;
+			}
+			watermark = String.valueOf(slot.getEpochSecond());
+			slot = slot.plus(slotDuration);
+		}
+	}
+
+	/**
+	 * Rolls up a single 1-minute slot and advances the watermark to it.
+	 * @return {@code true} if the slot has been committed, {@code false} if the watermark
+	 * no longer matches the expected value
+	 */
+	private boolean rollupSlot(Instant slot, String expectedWatermark) {
+		Map<SeriesKey, SeriesDelta> deltas = readSlot(slot);
+		List<String> hosts = this.store.hosts(Granularity.ONE_MINUTE, List.of(Granularity.ONE_MINUTE.format(slot)))
+			.getFirst();
+		TotalsDelta totals = readTotals(slot, hosts);
+		String watermarkKey = ValkeyKeyBuilder.rollupWatermarkKey();
+		String newWatermark = String.valueOf(slot.getEpochSecond());
+		try {
+			this.redisTemplate.execute((RedisCallback<Object>) (connection) -> {
+				byte[] key = watermarkKey.getBytes();
+				connection.watch(key);
+				byte[] current = connection.stringCommands().get(key);
+				String currentWatermark = (current != null) ? new String(current) : null;
+				if (!Objects.equals(currentWatermark, expectedWatermark)) {
+					connection.unwatch();
+					return null;
+				}
+				connection.multi();
+				// The watermark is set in the same transaction, so the scripts must not
+				// fail with NOSCRIPT
+				ValkeyScripts.load(connection);
+				this.store.write(connection, deltas);
+				totals.write(connection, this.ttlProperties);
+				if (this.uniqueClientsEnabled) {
+					mergeUniqueClients(connection, slot, hosts);
+				}
+				if (this.topKEnabled) {
+					mergeTopK(connection, slot, hosts);
+				}
+				connection.stringCommands().set(key, newWatermark.getBytes());
+				return connection.exec();
+			});
+		}
+		catch (DataAccessException ex) {
+			// An aborted transaction is reported as an exception by some drivers; the
+			// watermark check below decides whether the slot has been committed
+			log.debug("Rollup transaction for slot {} did not complete", slot, ex);
+		}
+		return newWatermark.equals(this.redisTemplate.opsForValue().get(watermarkKey));
+	}
+
+	private Map<SeriesKey, SeriesDelta> readSlot(Instant slot) {
+		Map<SeriesKey, SeriesDelta> values = this.store.readSlot(Granularity.ONE_MINUTE,
+				Granularity.ONE_MINUTE.format(slot));
+		Map<SeriesKey, SeriesDelta> deltas = new HashMap<>();
+		for (Map.Entry<SeriesKey, SeriesDelta> entry : values.entrySet()) {
+			SeriesKey key = entry.getKey();
+			SeriesDelta value = entry.getValue();
+			if (value.count() == 0) {
+				continue;
+			}
+			for (Granularity granularity : TARGET_GRANULARITIES) {
+				String path = admit(granularity, slot, key.host(), key.path(), value.count());
+				deltas
+					.computeIfAbsent(new SeriesKey(granularity, granularity.format(slot), key.host(), path,
+							key.status(), key.method()), k -> new SeriesDelta())
+					.merge(value);
+			}
+		}
+		return deltas;
+	}
+
+	/**
+	 * Returns the path to fold a 1-minute series into the coarser slot under. Path
+	 * pattern labels and the overflow path are not subject to the budget.
+	 */
+	private String admit(Granularity granularity, Instant slot, String host, String path, long count) {
+		if (this.cardinalityGuard == null || PathCardinalityGuard.OVERFLOW_PATH.equals(path)
+				|| this.pathPatternMatcher.isLabel(path)) {
+			return path;
+		}
+		Instant targetSlot = granularity.truncate(slot);
+		this.cardinalityGuard.seed(granularity, targetSlot, host,
+				() -> this.store.dimensions(granularity, List.of(granularity.format(slot)), host).paths());
+		String admitted = this.cardinalityGuard.admit(granularity, targetSlot, host, path);
+		if (!admitted.equals(path)) {
+			this.collapsedPaths.get(granularity).increment(count);
+		}
+		return admitted;
+	}
+
+	private TotalsDelta readTotals(Instant slot, List<String> slotHosts) {
+		String ts = Granularity.ONE_MINUTE.format(slot);
+		List<String> keys = new ArrayList<>();
+		List<String> hosts = new ArrayList<>();
+		for (String host : slotHosts) {
+			keys.add(ValkeyKeyBuilder.totalsKey(Granularity.ONE_MINUTE, ts, host));
+			hosts.add(host);
+		}
+		keys.add(ValkeyKeyBuilder.totalsKey(Granularity.ONE_MINUTE, ts));
+		hosts.add(null);
+		List<Object> results = this.redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
+			for (String key : keys) {
+				connection.hashCommands().hGetAll(key.getBytes(StandardCharsets.UTF_8));
+			}
+			return null;
+		});
+		TotalsDelta delta = new TotalsDelta();
+		for (int i = 0; i < keys.size(); i++) {
+			if (!(results.get(i) instanceof Map<?, ?> fields) || fields.isEmpty()) {
+				continue;
+			}
+			TrafficTotals totals = TrafficTotals.of(fields);
+			String host = hosts.get(i);
+			for (Granularity granularity : TARGET_GRANULARITIES) {
+				String targetTs = granularity.format(slot);
+				delta.merge(granularity, (host != null) ? ValkeyKeyBuilder.totalsKey(granularity, targetTs, host)
+						: ValkeyKeyBuilder.totalsKey(granularity, targetTs), totals);
+			}
+		}
+		return delta;
+	}
+
+	/**
+	 * Appends the PFMERGE of the unique clients HyperLogLogs of each host, and of each of
+	 * its path pattern labels, into the coarser slots to the connection. HyperLogLogs
+	 * that do not exist in the 1-minute slot are skipped by the script.
+	 */
+	private void mergeUniqueClients(RedisConnection connection, Instant slot, List<String> hosts) {
+		String ts = Granularity.ONE_MINUTE.format(slot);
+		for (String host : hosts) {
+			mergeUniqueClients(connection, ValkeyKeyBuilder.uniqueClientsKey(Granularity.ONE_MINUTE, ts, host),
+					granularity -> ValkeyKeyBuilder.uniqueClientsKey(granularity, granularity.format(slot), host));
+			for (String label : this.pathPatternMatcher.labels()) {
+				mergeUniqueClients(connection,
+						ValkeyKeyBuilder.uniqueClientsKey(Granularity.ONE_MINUTE, ts, host, label),
+						granularity -> ValkeyKeyBuilder.uniqueClientsKey(granularity, granularity.format(slot), host,
+								label));
+			}
+		}
+	}
+
+	private void mergeUniqueClients(RedisConnection connection, String sourceKey,
+			Function<Granularity, String> targetKey) {
+		byte[] source = sourceKey.getBytes(StandardCharsets.UTF_8);
+		for (Granularity granularity : TARGET_GRANULARITIES) {
+			ValkeyScripts.mergeHyperLogLog(connection, targetKey.apply(granularity).getBytes(StandardCharsets.UTF_8),
+					source, granularity.ttlSeconds(this.ttlProperties));
+		}
+	}
+
+	/**
+	 * Appends the merge of the path leaderboards of each host, including its 4xx and 5xx
+	 * paths, and of the client IP leaderboard into the coarser slots to the connection.
+	 * Members trimmed from a 1-minute leaderboard are missing from the coarser ones as
+	 * well, so their counts are approximate in the same way.
+	 */
+	private void mergeTopK(RedisConnection connection, Instant slot, List<String> hosts) {
+		String ts = Granularity.ONE_MINUTE.format(slot);
+		for (String host : hosts) {
+			mergeTopK(connection, ValkeyKeyBuilder.topPathsKey(Granularity.ONE_MINUTE, ts, host),
+					granularity -> ValkeyKeyBuilder.topPathsKey(granularity, granularity.format(slot), host));
+			for (String statusClass : List.of("4xx", "5xx")) {
+				mergeTopK(connection, ValkeyKeyBuilder.topErrorPathsKey(Granularity.ONE_MINUTE, ts, host, statusClass),
+						granularity -> ValkeyKeyBuilder.topErrorPathsKey(granularity, granularity.format(slot), host,
+								statusClass));
+			}
+		}
+		mergeTopK(connection, ValkeyKeyBuilder.topClientsKey(Granularity.ONE_MINUTE, ts),
+				granularity -> ValkeyKeyBuilder.topClientsKey(granularity, granularity.format(slot)));
+	}
+
+	private void mergeTopK(RedisConnection connection, String sourceKey, Function<Granularity, String> targetKey) {
+		byte[] source = sourceKey.getBytes(StandardCharsets.UTF_8);
+		for (Granularity granularity : TARGET_GRANULARITIES) {
+			ValkeyScripts.mergeTopK(connection, targetKey.apply(granularity).getBytes(StandardCharsets.UTF_8), source,
+					granularity.ttlSeconds(this.ttlProperties), this.topKMaxMembers);
+		}
+	}
+
+}
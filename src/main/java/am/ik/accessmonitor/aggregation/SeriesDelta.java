@@ -0,0 +1,70 @@
+package am.ik.accessmonitor.aggregation;
+
+/**
+ * Mutable accumulator of pending increments for a single {@link SeriesKey}. Instances are
+ * not thread-safe; callers must guard concurrent access externally.
+ */
+public final class SeriesDelta {
+
+	private long count;
+
+	private long durationSum;
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	/**
+	 * Adds a single observation with the given duration.
+	 */
+	public void add(long durationNs) {
+		this.count++;
+		this.durationSum += durationNs;
+		this.histogram.record(durationNs);
+	}
+
+	/**
+	 * Merges the increments of another delta into this one.
+	 */
+	public void merge(SeriesDelta other) {
+		this.count += other.count;
+		this.durationSum += other.durationSum;
+		this.histogram.merge(other.histogram);
+	}
+
+	/**
+	 * Merges already aggregated increments, e.g. the stored values of a finer slot.
+	 */
+	public void merge(long count, long durationSum) {
+		this.count += count;
+		this.durationSum += durationSum;
+	}
+
+	/**
+	 * Merges an already aggregated latency histogram bucket.
+	 */
+	public void mergeBucket(int bucket, long count) {
+		this.histogram.add(bucket, count);
+	}
+
+	/**
+	 * Returns the number of observations.
+	 */
+	public long count() {
+		return this.count;
+	}
+
+	/**
+	 * Returns the sum of observed durations in nanoseconds.
+	 */
+	public long durationSum() {
+		return this.durationSum;
+	}
+
+	/**
+	 * Returns the latency histogram of the observations. Series written before histograms
+	 * were introduced have an empty histogram.
+	 */
+	public LatencyHistogram histogram() {
+		return this.histogram;
+	}
+
+}
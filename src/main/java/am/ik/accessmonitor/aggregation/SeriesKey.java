@@ -0,0 +1,72 @@
+package am.ik.accessmonitor.aggregation;
+
+/**
+ * Identifies a single aggregation series: one count key and one duration hash key for a
+ * given granularity, time slot and dimension combination.
+ *
+ * @param granularity the aggregation granularity
+ * @param timestamp the formatted slot timestamp (see {@link Granularity#format})
+ * @param host the request host
+ * @param path the request path or path pattern label
+ * @param status the response status code
+ * @param method the HTTP method
+ */
+public record SeriesKey(Granularity granularity, String timestamp, String host, String path, int status,
+		String method) {
+
+	/**
+	 * Separator between dimensions in a series index member. The ASCII unit separator
+	 * cannot appear in request hosts, paths or methods.
+	 */
+	private static final String MEMBER_SEPARATOR = "\u001f";
+
+	/**
+	 * Restores a series key from a member of the series index.
+	 * @throws IllegalArgumentException if the member is malformed
+	 * @see #member()
+	 */
+	public static SeriesKey fromMember(Granularity granularity, String timestamp, String member) {
+		String[] parts = member.split(MEMBER_SEPARATOR, -1);
+		if (parts.length != 4) {
+			throw new IllegalArgumentException("Malformed series member: " + member);
+		}
+		return new SeriesKey(granularity, timestamp, parts[0], parts[1], Integer.parseInt(parts[2]), parts[3]);
+	}
+
+	/**
+	 * Returns the count key for this series.
+	 */
+	public String countKey() {
+		return ValkeyKeyBuilder.countKey(this.granularity, this.timestamp, this.host, this.path, this.status,
+				this.method);
+	}
+
+	/**
+	 * Writes the dimensions of this series to the buffer so that its count and duration
+	 * keys can be built as bytes.
+	 * @see ValkeyKeyBuilder#countKey(KeyBuffer)
+	 * @see ValkeyKeyBuilder#durationKey(KeyBuffer)
+	 */
+	public KeyBuffer writeTo(KeyBuffer buffer) {
+		return ValkeyKeyBuilder.series(buffer, this.granularity, this.timestamp, this.host, this.path, this.status,
+				this.method);
+	}
+
+	/**
+	 * Returns the member representing this series in the series index, i.e. the host,
+	 * path, status and method joined by a separator.
+	 */
+	public String member() {
+		return this.host + MEMBER_SEPARATOR + this.path + MEMBER_SEPARATOR + this.status + MEMBER_SEPARATOR
+				+ this.method;
+	}
+
+	/**
+	 * Returns the duration hash key for this series.
+	 */
+	public String durationKey() {
+		return ValkeyKeyBuilder.durationKey(this.granularity, this.timestamp, this.host, this.path, this.status,
+				this.method);
+	}
+
+}
@@ -0,0 +1,113 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import am.ik.accessmonitor.AccessMonitorProperties.ValkeyProperties.TtlProperties;
+
+import org.springframework.data.redis.connection.RedisConnection;
+
+/**
+ * Mutable accumulator of pending leaderboard increments per top-K sorted set key (see
+ * {@link ValkeyKeyBuilder#topPathsKey}). Increments of the same member are merged in
+ * memory so that each key is written with a single script call per batch. Instances are
+ * not thread-safe; callers must guard concurrent access externally.
+ */
+public final class TopKDelta {
+
+	private final Map<Key, Map<String, Long>> scores = new HashMap<>();
+
+	private int entries;
+
+	/**
+	 * Increments the score of a member of the given leaderboard key by one.
+	 */
+	public void increment(Granularity granularity, String key, String member) {
+		if (this.scores.computeIfAbsent(new Key(granularity, key), k -> new HashMap<>())
+			.merge(member, 1L, Long::sum) == 1L) {
+			this.entries++;
+		}
+	}
+
+	/**
+	 * Merges the increments of another delta into this one.
+	 */
+	public void merge(TopKDelta other) {
+		merge(other, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Merges the increments of another delta into this one, adding at most
+	 * {@code maxNewEntries} members that are not pending yet for their key. Increments of
+	 * pending members are always merged.
+	 * @return the number of member increments dropped
+	 */
+	public int merge(TopKDelta other, int maxNewEntries) {
+		int dropped = 0;
+		for (Map.Entry<Key, Map<String, Long>> entry : other.scores.entrySet()) {
+			Map<String, Long> pending = this.scores.get(entry.getKey());
+			for (Map.Entry<String, Long> score : entry.getValue().entrySet()) {
+				if (pending != null && pending.containsKey(score.getKey())) {
+					pending.merge(score.getKey(), score.getValue(), Long::sum);
+					continue;
+				}
+				if (maxNewEntries <= 0) {
+					dropped++;
+					continue;
+				}
+				if (pending == null) {
+					pending = new HashMap<>();
+					this.scores.put(entry.getKey(), pending);
+				}
+				pending.put(score.getKey(), score.getValue());
+				this.entries++;
+				maxNewEntries--;
+			}
+		}
+		return dropped;
+	}
+
+	/**
+	 * Returns the number of pending leaderboard keys.
+	 */
+	public int size() {
+		return this.scores.size();
+	}
+
+	/**
+	 * Returns the number of pending members summed over all keys.
+	 */
+	public int entries() {
+		return this.entries;
+	}
+
+	public boolean isEmpty() {
+		return this.scores.isEmpty();
+	}
+
+	/**
+	 * Appends one ZINCRBY script call per key to the connection, setting the TTL of the
+	 * granularity on keys that did not exist and trimming each leaderboard to its
+	 * {@code maxMembers} highest scores.
+	 */
+	public void write(RedisConnection connection, TtlProperties ttlProperties, int maxMembers) {
+		if (this.scores.isEmpty()) {
+			return;
+		}
+		for (Map.Entry<Key, Map<String, Long>> entry : this.scores.entrySet()) {
+			byte[][] membersAndIncrements = new byte[entry.getValue().size() * 2][];
+			int i = 0;
+			for (Map.Entry<String, Long> score : entry.getValue().entrySet()) {
+				membersAndIncrements[i++] = score.getKey().getBytes(StandardCharsets.UTF_8);
+				membersAndIncrements[i++] = Long.toString(score.getValue()).getBytes(StandardCharsets.UTF_8);
+			}
+			ValkeyScripts.incrementTopK(connection, entry.getKey().key().getBytes(StandardCharsets.UTF_8),
+					membersAndIncrements, entry.getKey().granularity().ttlSeconds(ttlProperties), maxMembers);
+		}
+	}
+
+	private record Key(Granularity granularity, String key) {
+	}
+
+}
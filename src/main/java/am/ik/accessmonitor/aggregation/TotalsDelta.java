@@ -0,0 +1,94 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import am.ik.accessmonitor.AccessMonitorProperties.ValkeyProperties.TtlProperties;
+
+import org.springframework.data.redis.connection.RedisConnection;
+
+/**
+ * Mutable accumulator of pending {@link TrafficTotals} per totals hash key (see
+ * {@link ValkeyKeyBuilder#totalsKey}), so that each key is written with a single script
+ * call per batch. Instances are not thread-safe; callers must guard concurrent access
+ * externally.
+ */
+public final class TotalsDelta {
+
+	private final Map<Key, TrafficTotals> totals = new HashMap<>();
+
+	/**
+	 * Adds a single request to the totals of the given key.
+	 */
+	public void add(Granularity granularity, String key, int status, long durationNs) {
+		this.totals.computeIfAbsent(new Key(granularity, key), k -> new TrafficTotals()).add(status, durationNs);
+	}
+
+	/**
+	 * Merges already aggregated totals, e.g. the stored totals of a finer slot, into the
+	 * totals of the given key.
+	 */
+	public void merge(Granularity granularity, String key, TrafficTotals totals) {
+		this.totals.computeIfAbsent(new Key(granularity, key), k -> new TrafficTotals()).merge(totals);
+	}
+
+	/**
+	 * Merges the totals of another delta into this one.
+	 */
+	public void merge(TotalsDelta other) {
+		merge(other, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Merges the totals of another delta into this one, adding at most {@code maxNewKeys}
+	 * keys that are not pending yet. Totals of pending keys are always merged.
+	 * @return the number of keys dropped
+	 */
+	public int merge(TotalsDelta other, int maxNewKeys) {
+		int dropped = 0;
+		for (Map.Entry<Key, TrafficTotals> entry : other.totals.entrySet()) {
+			TrafficTotals pending = this.totals.get(entry.getKey());
+			if (pending == null) {
+				if (maxNewKeys <= 0) {
+					dropped++;
+					continue;
+				}
+				pending = new TrafficTotals();
+				this.totals.put(entry.getKey(), pending);
+				maxNewKeys--;
+			}
+			pending.merge(entry.getValue());
+		}
+		return dropped;
+	}
+
+	/**
+	 * Returns the number of pending totals keys.
+	 */
+	public int size() {
+		return this.totals.size();
+	}
+
+	public boolean isEmpty() {
+		return this.totals.isEmpty();
+	}
+
+	/**
+	 * Appends one HINCRBY script call per key to the connection, setting the TTL of the
+	 * granularity on keys that did not exist.
+	 */
+	public void write(RedisConnection connection, TtlProperties ttlProperties) {
+		if (this.totals.isEmpty()) {
+			return;
+		}
+		for (Map.Entry<Key, TrafficTotals> entry : this.totals.entrySet()) {
+			ValkeyScripts.incrementHashFields(connection, entry.getKey().key().getBytes(StandardCharsets.UTF_8),
+					entry.getValue().toFieldsAndIncrements(), entry.getKey().granularity().ttlSeconds(ttlProperties));
+		}
+	}
+
+	private record Key(Granularity granularity, String key) {
+	}
+
+}
@@ -0,0 +1,184 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mutable accumulator of the request totals of a time slot, either of a single host or of
+ * all hosts (see {@link ValkeyKeyBuilder#totalsKey}). Totals are broken down by status
+ * code and status class and are stored as the fields of one hash:
+ * <ul>
+ * <li>{@code count}, {@code sum}: number of requests and sum of their durations in
+ * nanoseconds</li>
+ * <li>{@code status:{code}}, {@code status:{code}:sum}: the same per status code</li>
+ * <li>{@code class:{n}xx}, {@code class:{n}xx:sum}: the same per status class</li>
+ * <li>{@code b{n}}: the buckets of the latency histogram</li>
+ * </ul>
+ * Instances are not thread-safe; callers must guard concurrent access externally.
+ */
+public final class TrafficTotals {
+
+	private static final String COUNT_FIELD = "count";
+
+	private static final String SUM_FIELD = "sum";
+
+	private static final String STATUS_FIELD_PREFIX = "status:";
+
+	private static final String CLASS_FIELD_PREFIX = "class:";
+
+	private static final String SUM_FIELD_SUFFIX = ":sum";
+
+	private long count;
+
+	private long durationSum;
+
+	private final Map<Integer, long[]> statuses = new TreeMap<>();
+
+	private final long[][] classes = new long[6][];
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	/**
+	 * Adds a single request with the given status code and duration.
+	 */
+	public void add(int status, long durationNs) {
+		this.count++;
+		this.durationSum += durationNs;
+		addStatus(status, 1, durationNs);
+		this.histogram.record(durationNs);
+	}
+
+	/**
+	 * Merges the totals of another instance into this one.
+	 */
+	public void merge(TrafficTotals other) {
+		this.count += other.count;
+		this.durationSum += other.durationSum;
+		for (Map.Entry<Integer, long[]> entry : other.statuses.entrySet()) {
+			addStatus(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+		}
+		this.histogram.merge(other.histogram);
+	}
+
+	/**
+	 * Returns the number of requests.
+	 */
+	public long count() {
+		return this.count;
+	}
+
+	/**
+	 * Returns the sum of request durations in nanoseconds.
+	 */
+	public long durationSum() {
+		return this.durationSum;
+	}
+
+	/**
+	 * Returns the number of requests with the given status code.
+	 */
+	public long statusCount(int status) {
+		long[] values = this.statuses.get(status);
+		return (values != null) ? values[0] : 0;
+	}
+
+	/**
+	 * Returns the number of requests of the given status class, e.g. {@code 5} for 5xx.
+	 */
+	public long classCount(int statusClass) {
+		long[] values = (statusClass >= 1 && statusClass <= 5) ? this.classes[statusClass] : null;
+		return (values != null) ? values[0] : 0;
+	}
+
+	/**
+	 * Returns the latency histogram of the requests.
+	 */
+	public LatencyHistogram histogram() {
+		return this.histogram;
+	}
+
+	/**
+	 * Returns the totals as alternating hash field names and increments.
+	 */
+	public byte[][] toFieldsAndIncrements() {
+		List<byte[]> fields = new ArrayList<>();
+		addField(fields, COUNT_FIELD, this.count);
+		addField(fields, SUM_FIELD, this.durationSum);
+		for (Map.Entry<Integer, long[]> entry : this.statuses.entrySet()) {
+			addField(fields, STATUS_FIELD_PREFIX + entry.getKey(), entry.getValue()[0]);
+			addField(fields, STATUS_FIELD_PREFIX + entry.getKey() + SUM_FIELD_SUFFIX, entry.getValue()[1]);
+		}
+		for (int statusClass = 1; statusClass < this.classes.length; statusClass++) {
+			long[] values = this.classes[statusClass];
+			if (values != null) {
+				addField(fields, CLASS_FIELD_PREFIX + statusClass + "xx", values[0]);
+				addField(fields, CLASS_FIELD_PREFIX + statusClass + "xx" + SUM_FIELD_SUFFIX, values[1]);
+			}
+		}
+		for (int i = 0; i < this.histogram.size(); i++) {
+			addField(fields, ValkeyKeyBuilder.histogramField(this.histogram.bucket(i)), this.histogram.count(i));
+		}
+		return fields.toArray(byte[][]::new);
+	}
+
+	/**
+	 * Parses the totals from the fields of a totals hash. Class fields are derived from
+	 * the status code fields and therefore ignored. Unknown fields are ignored.
+	 * @param fields the field names and values, as returned by HGETALL
+	 */
+	public static TrafficTotals of(Map<?, ?> fields) {
+		TrafficTotals totals = new TrafficTotals();
+		for (Map.Entry<?, ?> entry : fields.entrySet()) {
+			String field = String.valueOf(entry.getKey());
+			long value = Long.parseLong(String.valueOf(entry.getValue()));
+			if (COUNT_FIELD.equals(field)) {
+				totals.count += value;
+			}
+			else if (SUM_FIELD.equals(field)) {
+				totals.durationSum += value;
+			}
+			else if (field.startsWith(STATUS_FIELD_PREFIX)) {
+				boolean sum = field.endsWith(SUM_FIELD_SUFFIX);
+				String code = field.substring(STATUS_FIELD_PREFIX.length(),
+						sum ? field.length() - SUM_FIELD_SUFFIX.length() : field.length());
+				try {
+					int status = Integer.parseInt(code);
+					totals.addStatus(status, sum ? 0 : value, sum ? value : 0);
+				}
+				catch (NumberFormatException ex) {
+					// Not a status field
+				}
+			}
+			else {
+				int bucket = ValkeyKeyBuilder.histogramBucket(field);
+				if (bucket >= 0) {
+					totals.histogram.add(bucket, value);
+				}
+			}
+		}
+		return totals;
+	}
+
+	private void addStatus(int status, long count, long durationSum) {
+		long[] values = this.statuses.computeIfAbsent(status, k -> new long[2]);
+		values[0] += count;
+		values[1] += durationSum;
+		int statusClass = status / 100;
+		if (statusClass >= 1 && statusClass <= 5) {
+			if (this.classes[statusClass] == null) {
+				this.classes[statusClass] = new long[2];
+			}
+			this.classes[statusClass][0] += count;
+			this.classes[statusClass][1] += durationSum;
+		}
+	}
+
+	private static void addField(List<byte[]> fields, String field, long increment) {
+		fields.add(field.getBytes(StandardCharsets.UTF_8));
+		fields.add(Long.toString(increment).getBytes(StandardCharsets.UTF_8));
+	}
+
+}
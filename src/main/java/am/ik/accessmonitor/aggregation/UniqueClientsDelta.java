@@ -0,0 +1,109 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import am.ik.accessmonitor.AccessMonitorProperties.ValkeyProperties.TtlProperties;
+
+import org.springframework.data.redis.connection.RedisConnection;
+
+/**
+ * Mutable accumulator of pending client IPs per unique clients HyperLogLog key (see
+ * {@link ValkeyKeyBuilder#uniqueClientsKey}). Client IPs are deduplicated in memory so
+ * that each key is written with a single PFADD per batch. Instances are not thread-safe;
+ * callers must guard concurrent access externally.
+ */
+public final class UniqueClientsDelta {
+
+	private final Map<Key, Set<String>> clients = new HashMap<>();
+
+	private int entries;
+
+	/**
+	 * Adds a client IP to the given HyperLogLog key.
+	 */
+	public void add(Granularity granularity, String key, String clientIp) {
+		if (this.clients.computeIfAbsent(new Key(granularity, key), k -> new HashSet<>()).add(clientIp)) {
+			this.entries++;
+		}
+	}
+
+	/**
+	 * Merges the client IPs of another delta into this one.
+	 */
+	public void merge(UniqueClientsDelta other) {
+		merge(other, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Merges the client IPs of another delta into this one, adding at most
+	 * {@code maxNewEntries} client IPs that are not pending yet for their key.
+	 * @return the number of client IPs dropped
+	 */
+	public int merge(UniqueClientsDelta other, int maxNewEntries) {
+		int dropped = 0;
+		for (Map.Entry<Key, Set<String>> entry : other.clients.entrySet()) {
+			Set<String> pending = this.clients.get(entry.getKey());
+			for (String clientIp : entry.getValue()) {
+				if (pending != null && pending.contains(clientIp)) {
+					continue;
+				}
+				if (maxNewEntries <= 0) {
+					dropped++;
+					continue;
+				}
+				if (pending == null) {
+					pending = new HashSet<>();
+					this.clients.put(entry.getKey(), pending);
+				}
+				pending.add(clientIp);
+				this.entries++;
+				maxNewEntries--;
+			}
+		}
+		return dropped;
+	}
+
+	/**
+	 * Returns the number of pending HyperLogLog keys.
+	 */
+	public int size() {
+		return this.clients.size();
+	}
+
+	/**
+	 * Returns the number of pending client IPs summed over all keys.
+	 */
+	public int entries() {
+		return this.entries;
+	}
+
+	public boolean isEmpty() {
+		return this.clients.isEmpty();
+	}
+
+	/**
+	 * Appends one PFADD script call per key to the connection, setting the TTL of the
+	 * granularity on keys that did not exist.
+	 */
+	public void write(RedisConnection connection, TtlProperties ttlProperties) {
+		if (this.clients.isEmpty()) {
+			return;
+		}
+		for (Map.Entry<Key, Set<String>> entry : this.clients.entrySet()) {
+			byte[][] elements = entry.getValue()
+				.stream()
+				.map(ip -> ip.getBytes(StandardCharsets.UTF_8))
+				.toArray(byte[][]::new);
+			ValkeyScripts.addHyperLogLogElements(connection, entry.getKey().key().getBytes(StandardCharsets.UTF_8),
+					elements, entry.getKey().granularity().ttlSeconds(ttlProperties));
+		}
+	}
+
+	private record Key(Granularity granularity, String key) {
+	}
+
+}
@@ -1,107 +1,431 @@
 package am.ik.accessmonitor.aggregation;
 
 import java.time.Instant;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import am.ik.accessmonitor.AccessMonitorProperties;
+import am.ik.accessmonitor.AccessMonitorProperties.AggregationProperties.BufferProperties;
+import am.ik.accessmonitor.AccessMonitorProperties.AggregationProperties.CardinalityGuardProperties;
+import am.ik.accessmonitor.AccessMonitorProperties.ValkeyProperties.TtlProperties;
 import am.ik.accessmonitor.aggregation.PathPatternMatcher.MatchResult;
 import am.ik.accessmonitor.event.AccessEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 /**
  * Aggregates access events into Valkey using pipelined commands. For each event, writes
- * count keys, duration hash keys, dimension indexes, and optionally path pattern keys
- * across all 4 granularity levels.
+ * the series of the request path, and of every matching path pattern, across all 4
+ * granularity levels through the {@link AccessMetricsStore}. Each event is also added
+ * once to the {@link TrafficTotals} of its host and of all hosts, which alert rules read
+ * instead of summing the series.
+ * <p>
+ * When {@code access-monitor.aggregation.rollup.enabled} is {@code true}, only the
+ * 1-minute series and totals are written here and {@link RollupJob} derives the coarser
+ * granularities from them.
+ * <p>
+ * When {@code access-monitor.aggregation.buffer.enabled} is {@code true}, increments are
+ * pre-aggregated in an {@link AggregationBuffer} and written with one merged pipeline per
+ * flush, so that Valkey traffic follows the number of distinct keys rather than the
+ * number of events. The buffer is flushed periodically, when it reaches the configured
+ * flush threshold, and on shutdown. While flushes fail, {@code max-pending-keys} bounds
+ * both the pending series keys and the pending totals, unique client and top-K entries;
+ * increments beyond it are dropped and counted by the
+ * {@code access.monitor.aggregation.buffer.dropped} meter. Batches aggregated into a
+ * caller's connection bypass the buffer.
+ * <p>
+ * When {@code access-monitor.aggregation.unique-clients.enabled} is {@code true}, the
+ * client IP of each event is also added to the unique clients HyperLogLogs of its host
+ * and of every matching path pattern label, across the same granularity levels as the
+ * series. HyperLogLogs are merged losslessly with PFMERGE, so under rollup
+ * {@link RollupJob} folds the 1-minute ones into the coarser granularities. Client IPs
+ * are buffered and flushed together with the increments.
+ * <p>
+ * When {@code access-monitor.aggregation.top-k.enabled} is {@code true}, each event also
+ * increments the leaderboards of the paths of its host (and of its 4xx or 5xx paths) and
+ * of the client IPs, across the same granularity levels; under rollup, {@link RollupJob}
+ * sums the 1-minute leaderboards into the coarser ones with ZUNIONSTORE. The path of an
+ * event is the path of its series, i.e. its request path or
+ * {@value PathCardinalityGuard#OVERFLOW_PATH}, or its path pattern labels if the original
+ * path is dropped.
+ * <p>
+ * When {@code access-monitor.aggregation.cardinality-guard.enabled} is {@code true}, the
+ * request paths written per host and slot are bounded by a {@link PathCardinalityGuard};
+ * requests to paths beyond the budget are aggregated under
+ * {@value PathCardinalityGuard#OVERFLOW_PATH} and counted by the
+ * {@code access.monitor.aggregation.paths.collapsed} meter, and likewise in the top-K
+ * leaderboards. Path pattern labels are not subject to the budget. Under rollup, only the
+ * 1-minute slots are bounded here and {@link RollupJob} applies the budget to the coarser
+ * ones.
  */
 @Service
-public class ValkeyAggregationService {
+public class ValkeyAggregationService implements DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(ValkeyAggregationService.class);
 
 	private final StringRedisTemplate redisTemplate;
 
 	private final PathPatternMatcher pathPatternMatcher;
 
-	private final AccessMonitorProperties.ValkeyProperties.TtlProperties ttlProperties;
+	private final AccessMetricsStore store;
+
+	private final List<Granularity> granularities;
+
+	private final boolean uniqueClientsEnabled;
+
+	private final TtlProperties ttlProperties;
+
+	private final PathCardinalityGuard cardinalityGuard;
+
+	private final boolean stripQueryString;
+
+	private final Map<Granularity, Counter> collapsedPaths = new EnumMap<>(Granularity.class);
+
+	private final AggregationBuffer buffer;
+
+	private final boolean topKEnabled;
+
+	private final int topKMaxMembers;
+
+	private final ReentrantLock pendingLock = new ReentrantLock();
+
+	private SideDeltas pendingSideDeltas = new SideDeltas();
+
+	private final int maxPendingKeys;
+
+	private final int flushThreshold;
+
+	private final Counter droppedSeriesKeys;
+
+	private final Counter droppedSideEntries;
+
+	private final ReentrantLock flushLock = new ReentrantLock();
 
 	public ValkeyAggregationService(StringRedisTemplate redisTemplate, PathPatternMatcher pathPatternMatcher,
-			AccessMonitorProperties properties) {
+			AccessMetricsStore store, AccessMonitorProperties properties, MeterRegistry meterRegistry) {
 		this.redisTemplate = redisTemplate;
 		this.pathPatternMatcher = pathPatternMatcher;
+		this.store = store;
+		this.granularities = properties.aggregation().rollup().enabled() ? List.of(Granularity.ONE_MINUTE)
+				: List.of(Granularity.values());
+		this.uniqueClientsEnabled = properties.aggregation().uniqueClients().enabled();
+		this.topKEnabled = properties.aggregation().topK().enabled();
+		this.topKMaxMembers = properties.aggregation().topK().maxMembers();
 		this.ttlProperties = properties.valkey().ttl();
+		CardinalityGuardProperties cardinalityGuardProperties = properties.aggregation().cardinalityGuard();
+		this.cardinalityGuard = cardinalityGuardProperties.enabled()
+				? new PathCardinalityGuard(cardinalityGuardProperties.maxPathsPerSlot()) : null;
+		this.stripQueryString = cardinalityGuardProperties.stripQueryString();
+		for (Granularity granularity : Granularity.values()) {
+			this.collapsedPaths.put(granularity,
+					Counter.builder("access.monitor.aggregation.paths.collapsed")
+						.description("Number of requests aggregated under the overflow path")
+						.tag("granularity", granularity.label())
+						.register(meterRegistry));
+		}
+		BufferProperties bufferProperties = properties.aggregation().buffer();
+		this.buffer = bufferProperties.enabled() ? new AggregationBuffer(bufferProperties.maxPendingKeys()) : null;
+		this.maxPendingKeys = bufferProperties.maxPendingKeys();
+		this.flushThreshold = bufferProperties.flushThreshold();
+		this.droppedSeriesKeys = droppedCounter(meterRegistry, "series");
+		this.droppedSideEntries = droppedCounter(meterRegistry, "side");
+	}
+
+	private static Counter droppedCounter(MeterRegistry meterRegistry, String kind) {
+		return Counter.builder("access.monitor.aggregation.buffer.dropped")
+			.description("Number of pending increments dropped because the aggregation buffer is full")
+			.tag("kind", kind)
+			.register(meterRegistry);
 	}
 
 	/**
-	 * Aggregates a single access event across all 4 granularity levels.
+	 * Aggregates a single access event across all 4 granularity levels, or only the
+	 * 1-minute granularity when rollup is enabled.
 	 */
 	public void aggregate(AccessEvent event) {
+		Map<SeriesKey, SeriesDelta> deltas = new HashMap<>();
+		SideDeltas sideDeltas = new SideDeltas();
+		collect(event, deltas, sideDeltas);
+		if (this.buffer == null) {
+			write(deltas, sideDeltas);
+		}
+		else {
+			buffer(deltas, sideDeltas);
+		}
+	}
+
+	/**
+	 * Aggregates a batch of access events by appending the merged commands to the given
+	 * connection, so that the caller can combine them with other writes into a single
+	 * pipeline or transaction. The increments are always written to the connection, even
+	 * when the buffer is enabled, so that they are committed together with the caller's
+	 * transaction before the batch is acknowledged.
+	 * @param events the events to aggregate
+	 * @param connection an open (typically pipelined) connection
+	 */
+	public void aggregate(List<AccessEvent> events, RedisConnection connection) {
+		Map<SeriesKey, SeriesDelta> deltas = new HashMap<>();
+		SideDeltas sideDeltas = new SideDeltas();
+		for (AccessEvent event : events) {
+			collect(event, deltas, sideDeltas);
+		}
+		this.store.write(connection, deltas);
+		sideDeltas.write(connection, this.ttlProperties, this.topKMaxMembers);
+	}
+
+	/**
+	 * Writes all pending increments of the aggregation buffer to Valkey with a single
+	 * pipeline. Does nothing when the buffer is disabled or empty. If the write fails,
+	 * the drained increments are put back into the buffer as far as its capacity allows
+	 * and the rest are dropped.
+	 */
+	@Scheduled(fixedDelayString = "${access-monitor.aggregation.buffer.flush-interval}")
+	public void flush() {
+		if (this.buffer == null || (this.buffer.size() == 0 && !hasPendingSideDeltas())) {
+			return;
+		}
+		this.flushLock.lock();
+		try {
+			Map<SeriesKey, SeriesDelta> deltas = this.buffer.drain();
+			SideDeltas sideDeltas;
+			this.pendingLock.lock();
+			try {
+				sideDeltas = this.pendingSideDeltas;
+				this.pendingSideDeltas = new SideDeltas();
+			}
+			finally {
+				this.pendingLock.unlock();
+			}
+			if (deltas.isEmpty() && sideDeltas.isEmpty()) {
+				return;
+			}
+			try {
+				write(deltas, sideDeltas);
+			}
+			catch (RuntimeException ex) {
+				int rejected = this.buffer.restore(deltas);
+				this.droppedSeriesKeys.increment(rejected);
+				int rejectedSideEntries = mergeSideDeltas(sideDeltas);
+				log.error(
+						"Failed to flush {} aggregation keys and {} side entries, {} keys and {} side entries dropped",
+						deltas.size(), sideDeltas.size(), rejected, rejectedSideEntries, ex);
+			}
+		}
+		finally {
+			this.flushLock.unlock();
+		}
+	}
+
+	@Override
+	public void destroy() {
+		flush();
+	}
+
+	private void buffer(Map<SeriesKey, SeriesDelta> deltas, SideDeltas sideDeltas) {
+		bufferSideDeltas(sideDeltas);
+		for (Map.Entry<SeriesKey, SeriesDelta> entry : deltas.entrySet()) {
+			if (!this.buffer.add(entry.getKey(), entry.getValue())) {
+				// The buffer is full, most likely because previous flushes failed
+				flush();
+				if (!this.buffer.add(entry.getKey(), entry.getValue())) {
+					this.droppedSeriesKeys.increment();
+					log.warn("Aggregation buffer is full, dropping increment for {}", entry.getKey());
+				}
+			}
+		}
+		if (this.buffer.size() >= this.flushThreshold || pendingSideEntries() >= this.flushThreshold) {
+			flush();
+		}
+	}
+
+	private void bufferSideDeltas(SideDeltas sideDeltas) {
+		if (sideDeltas.isEmpty()) {
+			return;
+		}
+		if (pendingSideEntries() + sideDeltas.size() > this.maxPendingKeys) {
+			// The buffer is full, most likely because previous flushes failed
+			flush();
+		}
+		int dropped = mergeSideDeltas(sideDeltas);
+		if (dropped > 0) {
+			log.warn("Aggregation buffer is full, dropping {} totals, unique client and top-K increments", dropped);
+		}
+	}
+
+	/**
+	 * Merges side deltas into the pending ones as far as {@code maxPendingKeys} allows.
+	 * @return the number of entries dropped
+	 */
+	private int mergeSideDeltas(SideDeltas sideDeltas) {
+		int dropped;
+		this.pendingLock.lock();
+		try {
+			dropped = this.pendingSideDeltas.merge(sideDeltas, this.maxPendingKeys);
+		}
+		finally {
+			this.pendingLock.unlock();
+		}
+		this.droppedSideEntries.increment(dropped);
+		return dropped;
+	}
+
+	private boolean hasPendingSideDeltas() {
+		return pendingSideEntries() > 0;
+	}
+
+	private int pendingSideEntries() {
+		this.pendingLock.lock();
+		try {
+			return this.pendingSideDeltas.size();
+		}
+		finally {
+			this.pendingLock.unlock();
+		}
+	}
+
+	private void collect(AccessEvent event, Map<SeriesKey, SeriesDelta> deltas, SideDeltas sideDeltas) {
 		Instant timestamp = event.timestamp();
 		String host = event.host();
-		String path = event.path();
+		String path = this.stripQueryString ? stripQueryString(event.path()) : event.path();
 		int status = event.statusCode();
 		String method = event.method();
 		long durationNs = event.durationNs();
 		MatchResult matchResult = this.pathPatternMatcher.match(path);
 		List<String> matchingLabels = matchResult.labels();
 		boolean dropOriginalPath = matchResult.dropOriginalPath();
+		// The path admitted by the cardinality guard per granularity ordinal
+		String[] seriesPaths = dropOriginalPath ? null : new String[Granularity.values().length];
 
-		this.redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
-			for (Granularity granularity : Granularity.values()) {
-				String ts = granularity.format(timestamp);
-				long ttl = granularity.ttlSeconds(this.ttlProperties);
-
-				if (!dropOriginalPath) {
-					// Count key for individual path
-					String countKey = ValkeyKeyBuilder.countKey(granularity, ts, host, path, status, method);
-					connection.stringCommands().incr(countKey.getBytes());
-					connection.keyCommands().expire(countKey.getBytes(), ttl);
-
-					// Duration hash key for individual path
-					String durKey = ValkeyKeyBuilder.durationKey(granularity, ts, host, path, status, method);
-					connection.hashCommands().hIncrBy(durKey.getBytes(), "sum".getBytes(), durationNs);
-					connection.hashCommands().hIncrBy(durKey.getBytes(), "count".getBytes(), 1);
-					connection.keyCommands().expire(durKey.getBytes(), ttl);
+		for (Granularity granularity : this.granularities) {
+			String ts = granularity.format(timestamp);
+			if (!dropOriginalPath) {
+				String seriesPath = path;
+				if (this.cardinalityGuard != null) {
+					seriesPath = this.cardinalityGuard.admit(granularity, granularity.truncate(timestamp), host, path);
+					if (!seriesPath.equals(path)) {
+						this.collapsedPaths.get(granularity).increment();
+					}
 				}
+				seriesPaths[granularity.ordinal()] = seriesPath;
+				deltas
+					.computeIfAbsent(new SeriesKey(granularity, ts, host, seriesPath, status, method),
+							key -> new SeriesDelta())
+					.add(durationNs);
+			}
+			for (String patternLabel : matchingLabels) {
+				deltas
+					.computeIfAbsent(new SeriesKey(granularity, ts, host, patternLabel, status, method),
+							key -> new SeriesDelta())
+					.add(durationNs);
+			}
+		}
 
-				// Path pattern aggregation
+		for (Granularity granularity : this.granularities) {
+			String ts = granularity.format(timestamp);
+			sideDeltas.totals.add(granularity, ValkeyKeyBuilder.totalsKey(granularity, ts, host), status, durationNs);
+			sideDeltas.totals.add(granularity, ValkeyKeyBuilder.totalsKey(granularity, ts), status, durationNs);
+		}
+
+		String clientIp = event.clientIp();
+		if (this.uniqueClientsEnabled && clientIp != null && !clientIp.isEmpty()) {
+			for (Granularity granularity : this.granularities) {
+				String ts = granularity.format(timestamp);
+				sideDeltas.clients.add(granularity, ValkeyKeyBuilder.uniqueClientsKey(granularity, ts, host), clientIp);
 				for (String patternLabel : matchingLabels) {
-					String patternCountKey = ValkeyKeyBuilder.countKey(granularity, ts, host, patternLabel, status,
-							method);
-					connection.stringCommands().incr(patternCountKey.getBytes());
-					connection.keyCommands().expire(patternCountKey.getBytes(), ttl);
-
-					String patternDurKey = ValkeyKeyBuilder.durationKey(granularity, ts, host, patternLabel, status,
-							method);
-					connection.hashCommands().hIncrBy(patternDurKey.getBytes(), "sum".getBytes(), durationNs);
-					connection.hashCommands().hIncrBy(patternDurKey.getBytes(), "count".getBytes(), 1);
-					connection.keyCommands().expire(patternDurKey.getBytes(), ttl);
+					sideDeltas.clients.add(granularity,
+							ValkeyKeyBuilder.uniqueClientsKey(granularity, ts, host, patternLabel), clientIp);
 				}
+			}
+		}
 
-				// Dimension indexes
-				String hostsKey = ValkeyKeyBuilder.hostsIndexKey(granularity, ts);
-				connection.setCommands().sAdd(hostsKey.getBytes(), host.getBytes());
-				connection.keyCommands().expire(hostsKey.getBytes(), ttl);
-
-				String pathsKey = ValkeyKeyBuilder.pathsIndexKey(granularity, ts, host);
-				if (!dropOriginalPath) {
-					connection.setCommands().sAdd(pathsKey.getBytes(), path.getBytes());
+		if (this.topKEnabled) {
+			String statusClass = (status >= 500 && status <= 599) ? "5xx"
+					: (status >= 400 && status <= 499) ? "4xx" : null;
+			for (Granularity granularity : this.granularities) {
+				String ts = granularity.format(timestamp);
+				List<String> topPaths = dropOriginalPath ? matchingLabels : List.of(seriesPaths[granularity.ordinal()]);
+				String pathsKey = ValkeyKeyBuilder.topPathsKey(granularity, ts, host);
+				String errorPathsKey = (statusClass != null)
+						? ValkeyKeyBuilder.topErrorPathsKey(granularity, ts, host, statusClass) : null;
+				for (String topPath : topPaths) {
+					sideDeltas.topK.increment(granularity, pathsKey, topPath);
+					if (errorPathsKey != null) {
+						sideDeltas.topK.increment(granularity, errorPathsKey, topPath);
+					}
 				}
-				for (String patternLabel : matchingLabels) {
-					connection.setCommands().sAdd(pathsKey.getBytes(), patternLabel.getBytes());
+				if (clientIp != null && !clientIp.isEmpty()) {
+					sideDeltas.topK.increment(granularity, ValkeyKeyBuilder.topClientsKey(granularity, ts), clientIp);
 				}
-				connection.keyCommands().expire(pathsKey.getBytes(), ttl);
+			}
+		}
+	}
 
-				String statusesKey = ValkeyKeyBuilder.statusesIndexKey(granularity, ts, host);
-				connection.setCommands().sAdd(statusesKey.getBytes(), String.valueOf(status).getBytes());
-				connection.keyCommands().expire(statusesKey.getBytes(), ttl);
+	private static String stripQueryString(String path) {
+		int index = path.indexOf('?');
+		return (index < 0) ? path : path.substring(0, index);
+	}
 
-				String methodsKey = ValkeyKeyBuilder.methodsIndexKey(granularity, ts, host);
-				connection.setCommands().sAdd(methodsKey.getBytes(), method.getBytes());
-				connection.keyCommands().expire(methodsKey.getBytes(), ttl);
-			}
+	private void write(Map<SeriesKey, SeriesDelta> deltas, SideDeltas sideDeltas) {
+		ValkeyScripts.executePipelined(this.redisTemplate, (RedisCallback<Object>) (connection) -> {
+			this.store.write(connection, deltas);
+			sideDeltas.write(connection, this.ttlProperties, this.topKMaxMembers);
 			return null;
 		});
 	}
 
+	/**
+	 * Pending writes besides the series: totals, unique clients and top-K leaderboards.
+	 */
+	private static final class SideDeltas {
+
+		private final TotalsDelta totals = new TotalsDelta();
+
+		private final UniqueClientsDelta clients = new UniqueClientsDelta();
+
+		private final TopKDelta topK = new TopKDelta();
+
+		/**
+		 * Merges another instance into this one, keeping at most {@code maxEntries}
+		 * entries.
+		 * @return the number of entries dropped
+		 */
+		int merge(SideDeltas other, int maxEntries) {
+			int dropped = this.totals.merge(other.totals, maxEntries - size());
+			dropped += this.clients.merge(other.clients, maxEntries - size());
+			dropped += this.topK.merge(other.topK, maxEntries - size());
+			return dropped;
+		}
+
+		/**
+		 * Returns the number of pending entries: totals keys, client IPs per HyperLogLog
+		 * key and members per leaderboard key.
+		 */
+		int size() {
+			return this.totals.size() + this.clients.entries() + this.topK.entries();
+		}
+
+		boolean isEmpty() {
+			return this.totals.isEmpty() && this.clients.isEmpty() && this.topK.isEmpty();
+		}
+
+		void write(RedisConnection connection, TtlProperties ttlProperties, int topKMaxMembers) {
+			this.totals.write(connection, ttlProperties);
+			this.clients.write(connection, ttlProperties);
+			this.topK.write(connection, ttlProperties, topKMaxMembers);
+		}
+
+	}
+
 }
@@ -1,11 +1,41 @@
 package am.ik.accessmonitor.aggregation;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Builds Valkey key strings for access metrics aggregation. Centralizes the key naming
  * conventions documented in the design.
+ * <p>
+ * Count and duration keys can also be built as UTF-8 bytes through a {@link KeyBuffer}:
+ * the dimensions are written once by
+ * {@link #series(KeyBuffer, Granularity, String, String, String, int, String)} and then
+ * copied behind each key prefix, which avoids building and encoding a {@link String} per
+ * key on the aggregation write path.
  */
 public final class ValkeyKeyBuilder {
 
+	/**
+	 * Duration hash field holding the sum of durations in nanoseconds. Shared constant;
+	 * must not be modified.
+	 */
+	public static final byte[] DURATION_SUM_FIELD = "sum".getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * Duration hash field holding the number of requests. Shared constant; must not be
+	 * modified.
+	 */
+	public static final byte[] DURATION_COUNT_FIELD = "count".getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * Prefix of the duration hash fields holding the counts of the
+	 * {@link LatencyHistogram} buckets, followed by the bucket index.
+	 */
+	public static final String HISTOGRAM_FIELD_PREFIX = "b";
+
+	private static final byte[] COUNT_KEY_PREFIX = "access:cnt:".getBytes(StandardCharsets.UTF_8);
+
+	private static final byte[] DURATION_KEY_PREFIX = "access:dur:".getBytes(StandardCharsets.UTF_8);
+
 	private ValkeyKeyBuilder() {
 	}
 
@@ -34,12 +64,155 @@ public final class ValkeyKeyBuilder {
 	}
 
 	/**
-	 * Builds a disallowed host count key for the given client IP.
+	 * Writes the dimensions shared by the count and duration keys of a series to the
+	 * buffer, replacing its content.
+	 * <p>
+	 * Format: {@code {granularity}:{timestamp}:{host}:{path}:{status}:{method}}
+	 * @return the buffer, to be passed to {@link #countKey(KeyBuffer)} and
+	 * {@link #durationKey(KeyBuffer)}
+	 */
+	public static KeyBuffer series(KeyBuffer buffer, Granularity granularity, String timestamp, String host,
+			String path, int status, String method) {
+		return buffer.reset()
+			.append(granularity.label())
+			.append(':')
+			.append(timestamp)
+			.append(':')
+			.append(host)
+			.append(':')
+			.append(path)
+			.append(':')
+			.append(status)
+			.append(':')
+			.append(method);
+	}
+
+	/**
+	 * Builds the UTF-8 encoded count key for the series written to the buffer.
+	 * @see #countKey(Granularity, String, String, String, int, String)
+	 */
+	public static byte[] countKey(KeyBuffer series) {
+		return series.toByteArray(COUNT_KEY_PREFIX);
+	}
+
+	/**
+	 * Builds the UTF-8 encoded duration hash key for the series written to the buffer.
+	 * @see #durationKey(Granularity, String, String, String, int, String)
+	 */
+	public static byte[] durationKey(KeyBuffer series) {
+		return series.toByteArray(DURATION_KEY_PREFIX);
+	}
+
+	/**
+	 * Returns the duration hash field of a latency histogram bucket.
+	 */
+	public static String histogramField(int bucket) {
+		return HISTOGRAM_FIELD_PREFIX + bucket;
+	}
+
+	/**
+	 * Returns the bucket index of a latency histogram field, or {@code -1} if the field
+	 * is not a histogram field.
+	 */
+	public static int histogramBucket(String field) {
+		if (field.length() < 2 || !field.startsWith(HISTOGRAM_FIELD_PREFIX)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(field, HISTOGRAM_FIELD_PREFIX.length(), field.length(), 10);
+		}
+		catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Builds the key of the hash holding every series of a host in a time slot. Only used
+	 * by the hash-per-slot storage layout.
+	 * <p>
+	 * Format: {@code access:slot:{granularity}:{timestamp}:{host}}
+	 * @see HashPerSlotStore
+	 */
+	public static String slotKey(Granularity granularity, String timestamp, String host) {
+		return "access:slot:" + granularity.label() + ":" + timestamp + ":" + host;
+	}
+
+	/**
+	 * Builds the key of the hash holding the request totals of a host in a time slot.
 	 * <p>
-	 * Format: {@code access:disallowed-host:cnt:{granularity}:{timestamp}:{clientIp}}
+	 * Format: {@code access:tot:{granularity}:{timestamp}:{host}}
+	 * @see TrafficTotals
 	 */
-	public static String disallowedHostCountKey(Granularity granularity, String timestamp, String clientIp) {
-		return "access:disallowed-host:cnt:" + granularity.label() + ":" + timestamp + ":" + clientIp;
+	public static String totalsKey(Granularity granularity, String timestamp, String host) {
+		return "access:tot:" + granularity.label() + ":" + timestamp + ":" + host;
+	}
+
+	/**
+	 * Builds the key of the hash holding the request totals of all hosts in a time slot.
+	 * <p>
+	 * Format: {@code access:tot:{granularity}:{timestamp}}
+	 * @see TrafficTotals
+	 */
+	public static String totalsKey(Granularity granularity, String timestamp) {
+		return "access:tot:" + granularity.label() + ":" + timestamp;
+	}
+
+	/**
+	 * Builds the key of the HyperLogLog holding the client IPs of a host in a time slot.
+	 * <p>
+	 * Format: {@code access:hll:{granularity}:{timestamp}:{host}}
+	 */
+	public static String uniqueClientsKey(Granularity granularity, String timestamp, String host) {
+		return "access:hll:" + granularity.label() + ":" + timestamp + ":" + host;
+	}
+
+	/**
+	 * Builds the key of the HyperLogLog holding the client IPs of a path pattern label of
+	 * a host in a time slot.
+	 * <p>
+	 * Format: {@code access:hll:{granularity}:{timestamp}:{host}:{pathPattern}}
+	 */
+	public static String uniqueClientsKey(Granularity granularity, String timestamp, String host, String label) {
+		return "access:hll:" + granularity.label() + ":" + timestamp + ":" + host + ":" + label;
+	}
+
+	/**
+	 * Builds the key of the leaderboard sorted set of the paths of a host in a time slot.
+	 * <p>
+	 * Format: {@code access:top:{granularity}:{timestamp}:{host}:paths}
+	 */
+	public static String topPathsKey(Granularity granularity, String timestamp, String host) {
+		return "access:top:" + granularity.label() + ":" + timestamp + ":" + host + ":paths";
+	}
+
+	/**
+	 * Builds the key of the leaderboard sorted set of the paths of a host in a time slot
+	 * that responded with a status of the given class.
+	 * <p>
+	 * Format: {@code access:top:{granularity}:{timestamp}:{host}:paths:{statusClass}}
+	 * @param statusClass the status class, e.g. {@code 4xx}
+	 */
+	public static String topErrorPathsKey(Granularity granularity, String timestamp, String host, String statusClass) {
+		return "access:top:" + granularity.label() + ":" + timestamp + ":" + host + ":paths:" + statusClass;
+	}
+
+	/**
+	 * Builds the key of the leaderboard sorted set of the client IPs in a time slot.
+	 * <p>
+	 * Format: {@code access:top:{granularity}:{timestamp}:clients}
+	 */
+	public static String topClientsKey(Granularity granularity, String timestamp) {
+		return "access:top:" + granularity.label() + ":" + timestamp + ":clients";
+	}
+
+	/**
+	 * Builds the key of the sorted set of disallowed host access counts per client IP in
+	 * a time slot.
+	 * <p>
+	 * Format: {@code access:disallowed-host:clients:{granularity}:{timestamp}}
+	 */
+	public static String disallowedHostClientsKey(Granularity granularity, String timestamp) {
+		return "access:disallowed-host:clients:" + granularity.label() + ":" + timestamp;
 	}
 
 	/**
@@ -78,4 +251,24 @@ public final class ValkeyKeyBuilder {
 		return "access:idx:" + granularity.label() + ":" + timestamp + ":" + host + ":methods";
 	}
 
+	/**
+	 * Builds an index key listing every series written in a time slot. Only maintained
+	 * for the 1-minute granularity when rollup is enabled.
+	 * <p>
+	 * Format: {@code access:idx:{granularity}:{timestamp}:series}
+	 */
+	public static String seriesIndexKey(Granularity granularity, String timestamp) {
+		return "access:idx:" + granularity.label() + ":" + timestamp + ":series";
+	}
+
+	/**
+	 * Builds the key holding the rollup watermark, i.e. the epoch second of the last
+	 * 1-minute slot folded into the coarser granularities.
+	 * <p>
+	 * Format: {@code access:rollup:watermark}
+	 */
+	public static String rollupWatermarkKey() {
+		return "access:rollup:watermark";
+	}
+
 }
@@ -0,0 +1,432 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+/**
+ * Lua scripts that increment aggregation keys and set their TTL only when the increment
+ * created the key, so that a write costs a single command instead of an increment
+ * followed by an EXPIRE that refreshes an already set TTL.
+ * <p>
+ * Scripts are invoked with EVALSHA, so that a write sends only the SHA1 digest of its
+ * script. The scripts are loaded once when the application starts (see
+ * {@code ValkeyConfig}); pipelines of script calls are run with {@link #executePipelined}
+ * or {@link #executeInTransaction}, which recover from NOSCRIPT replies, e.g. after the
+ * server has been restarted or its script cache has been flushed.
+ */
+public final class ValkeyScripts {
+
+	/**
+	 * KEYS: count key, duration hash key. ARGV: count, duration sum, TTL in seconds, then
+	 * histogram bucket field and count pairs.
+	 */
+	private static final RedisScript<Long> INCREMENT_SERIES = RedisScript.of("""
+			local count = tonumber(ARGV[1])
+			if redis.call('INCRBY', KEYS[1], count) == count then
+				redis.call('EXPIRE', KEYS[1], ARGV[3])
+			end
+			redis.call('HINCRBY', KEYS[2], 'sum', ARGV[2])
+			for i = 4, #ARGV, 2 do
+				redis.call('HINCRBY', KEYS[2], ARGV[i], ARGV[i + 1])
+			end
+			if redis.call('HINCRBY', KEYS[2], 'count', count) == count then
+				redis.call('EXPIRE', KEYS[2], ARGV[3])
+			end
+			return count
+			""", Long.class);
+
+	/**
+	 * KEYS: counter key. ARGV: increment, TTL in seconds.
+	 */
+	private static final RedisScript<Long> INCREMENT_COUNTER = RedisScript.of("""
+			local delta = tonumber(ARGV[1])
+			local value = redis.call('INCRBY', KEYS[1], delta)
+			if value == delta then
+				redis.call('EXPIRE', KEYS[1], ARGV[2])
+			end
+			return value
+			""", Long.class);
+
+	/**
+	 * KEYS: index set key. ARGV: TTL in seconds, members... The set was created by this
+	 * call if every member in it has just been added. Members are added in chunks to stay
+	 * within the Lua stack limit of unpack.
+	 */
+	private static final RedisScript<Long> ADD_INDEX_MEMBERS = RedisScript.of("""
+			local added = 0
+			for i = 2, #ARGV, 1000 do
+				added = added + redis.call('SADD', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV)))
+			end
+			if added > 0 and added == redis.call('SCARD', KEYS[1]) then
+				redis.call('EXPIRE', KEYS[1], ARGV[1])
+			end
+			return added
+			""", Long.class);
+
+	/**
+	 * KEYS: hash key. ARGV: TTL in seconds, then field and increment pairs.
+	 */
+	private static final RedisScript<Long> INCREMENT_HASH_FIELDS = RedisScript.of("""
+			local created = redis.call('EXISTS', KEYS[1]) == 0
+			for i = 2, #ARGV, 2 do
+				redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1])
+			end
+			if created then
+				redis.call('EXPIRE', KEYS[1], ARGV[1])
+			end
+			return (#ARGV - 1) / 2
+			""", Long.class);
+
+	/**
+	 * KEYS: HyperLogLog key. ARGV: TTL in seconds, elements... Elements are added in
+	 * chunks to stay within the Lua stack limit of unpack.
+	 */
+	private static final RedisScript<Long> ADD_HYPER_LOG_LOG_ELEMENTS = RedisScript.of("""
+			local created = redis.call('EXISTS', KEYS[1]) == 0
+			local changed = 0
+			for i = 2, #ARGV, 1000 do
+				changed = math.max(changed, redis.call('PFADD', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV))))
+			end
+			if created then
+				redis.call('EXPIRE', KEYS[1], ARGV[1])
+			end
+			return changed
+			""", Long.class);
+
+	/**
+	 * KEYS: destination HyperLogLog key, source HyperLogLog key. ARGV: TTL in seconds.
+	 * Does nothing if the source does not exist, so that no empty destination is created.
+	 */
+	private static final RedisScript<Long> MERGE_HYPER_LOG_LOG = RedisScript.of("""
+			if redis.call('EXISTS', KEYS[2]) == 0 then
+				return 0
+			end
+			local created = redis.call('EXISTS', KEYS[1]) == 0
+			redis.call('PFMERGE', KEYS[1], KEYS[2])
+			if created then
+				redis.call('EXPIRE', KEYS[1], ARGV[1])
+			end
+			return 1
+			""", Long.class);
+
+	/**
+	 * KEYS: sorted set key. ARGV: TTL in seconds, maximum number of members, then member
+	 * and increment pairs. Members beyond the maximum are removed from the lowest score.
+	 */
+	private static final RedisScript<Long> INCREMENT_TOP_K = RedisScript.of("""
+			local created = redis.call('EXISTS', KEYS[1]) == 0
+			for i = 3, #ARGV, 2 do
+				redis.call('ZINCRBY', KEYS[1], ARGV[i + 1], ARGV[i])
+			end
+			if created then
+				redis.call('EXPIRE', KEYS[1], ARGV[1])
+			end
+			local max = tonumber(ARGV[2])
+			if redis.call('ZCARD', KEYS[1]) > max then
+				redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(max + 1))
+			end
+			return (#ARGV - 2) / 2
+			""", Long.class);
+
+	/**
+	 * KEYS: destination sorted set key, source sorted set key. ARGV: TTL in seconds,
+	 * maximum number of members. The scores of the source are added to the destination
+	 * and members beyond the maximum are removed from the lowest score. ZUNIONSTORE
+	 * replaces the destination, so its remaining TTL is restored afterwards. Does nothing
+	 * if the source does not exist.
+	 */
+	private static final RedisScript<Long> MERGE_TOP_K = RedisScript.of("""
+			if redis.call('EXISTS', KEYS[2]) == 0 then
+				return 0
+			end
+			local ttl = redis.call('PTTL', KEYS[1])
+			local size = redis.call('ZUNIONSTORE', KEYS[1], 2, KEYS[1], KEYS[2], 'AGGREGATE', 'SUM')
+			if ttl > 0 then
+				redis.call('PEXPIRE', KEYS[1], ttl)
+			else
+				redis.call('EXPIRE', KEYS[1], ARGV[1])
+			end
+			local max = tonumber(ARGV[2])
+			if size > max then
+				redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(max + 1))
+			end
+			return size
+			""", Long.class);
+
+	private static final RedisScript<?>[] SCRIPTS = { INCREMENT_SERIES, INCREMENT_COUNTER, ADD_INDEX_MEMBERS,
+			INCREMENT_HASH_FIELDS, ADD_HYPER_LOG_LOG_ELEMENTS, MERGE_HYPER_LOG_LOG, INCREMENT_TOP_K, MERGE_TOP_K };
+
+	/**
+	 * Script calls made on the current thread while {@link #executePipelined} runs its
+	 * callback, in the order of the pipeline results.
+	 */
+	private static final ThreadLocal<List<ScriptCall>> recordedCalls = new ThreadLocal<>();
+
+	private ValkeyScripts() {
+	}
+
+	/**
+	 * Loads all scripts on the connection. On a transactional connection, loading the
+	 * scripts ahead of the script calls guarantees that none of them fails with NOSCRIPT.
+	 */
+	public static void load(RedisConnection connection) {
+		for (RedisScript<?> script : SCRIPTS) {
+			connection.scriptingCommands().scriptLoad(bytes(script.getScriptAsString()));
+		}
+	}
+
+	/**
+	 * Loads all scripts into the script cache of the server. The scripts are loaded in a
+	 * single transaction, so that a transaction of script calls finds either all of them
+	 * or none.
+	 */
+	public static void load(StringRedisTemplate redisTemplate) {
+		redisTemplate.execute((RedisCallback<Object>) (connection) -> {
+			connection.multi();
+			load(connection);
+			return connection.exec();
+		});
+	}
+
+	/**
+	 * Runs a pipeline of script calls. The callback must issue nothing but the script
+	 * calls of this class, so that each result of the pipeline belongs to one of them. If
+	 * some of the calls fail because their script is missing from the script cache of the
+	 * server, only those calls are run once more with EVAL, which sends the script
+	 * itself, and the scripts are loaded for later calls. The calls that succeeded are
+	 * not run again.
+	 * @return the results of the pipeline
+	 */
+	public static List<Object> executePipelined(StringRedisTemplate redisTemplate, RedisCallback<?> callback) {
+		List<ScriptCall> calls = new ArrayList<>();
+		recordedCalls.set(calls);
+		try {
+			return redisTemplate.executePipelined(callback);
+		}
+		catch (RuntimeException ex) {
+			List<Object> results = pipelineResult(ex);
+			if (!isNoScript(ex) || results.size() != calls.size()) {
+				throw ex;
+			}
+			return retryNoScript(redisTemplate, calls, results);
+		}
+		finally {
+			recordedCalls.remove();
+		}
+	}
+
+	/**
+	 * Runs script calls as a single {@code MULTI}/{@code EXEC} transaction in a pipeline.
+	 * The callback must issue nothing but the script calls of this class. {@code EXEC}
+	 * runs atomically and {@link #load(StringRedisTemplate)} loads all scripts
+	 * atomically, so a NOSCRIPT reply means that none of the scripts of the transaction
+	 * has run; the scripts are then loaded and the transaction is run once more.
+	 * @return the results of the pipeline, whose only element is the list of results of
+	 * the transaction unless it was discarded
+	 */
+	public static List<Object> executeInTransaction(StringRedisTemplate redisTemplate, RedisCallback<?> callback) {
+		RedisCallback<Object> transaction = (connection) -> {
+			connection.multi();
+			callback.doInRedis(connection);
+			connection.exec();
+			return null;
+		};
+		try {
+			return redisTemplate.executePipelined(transaction);
+		}
+		catch (RuntimeException ex) {
+			if (!isNoScript(ex)) {
+				throw ex;
+			}
+			load(redisTemplate);
+			return redisTemplate.executePipelined(transaction);
+		}
+	}
+
+	private static List<Object> retryNoScript(StringRedisTemplate redisTemplate, List<ScriptCall> calls,
+			List<Object> results) {
+		List<Integer> failed = new ArrayList<>();
+		for (int i = 0; i < results.size(); i++) {
+			if (results.get(i) instanceof Throwable failure && isNoScript(failure)) {
+				failed.add(i);
+			}
+		}
+		List<Object> retried = redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
+			for (int index : failed) {
+				ScriptCall call = calls.get(index);
+				connection.scriptingCommands()
+					.eval(bytes(call.script().getScriptAsString()), ReturnType.INTEGER, call.numKeys(),
+							call.keysAndArgs());
+			}
+			return null;
+		});
+		load(redisTemplate);
+		List<Object> merged = new ArrayList<>(results);
+		for (int i = 0; i < failed.size(); i++) {
+			merged.set(failed.get(i), retried.get(i));
+		}
+		for (Object result : merged) {
+			if (result instanceof RuntimeException failure) {
+				throw new RedisPipelineException(failure, merged);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Returns the per-command results carried by a pipeline failure, which the driver may
+	 * wrap into another {@link RedisPipelineException} without results.
+	 */
+	public static List<Object> pipelineResult(Throwable ex) {
+		for (Throwable cause = ex; cause != null; cause = (cause.getCause() != cause) ? cause.getCause() : null) {
+			if (cause instanceof RedisPipelineException pipelineException
+					&& !pipelineException.getPipelineResult().isEmpty()) {
+				return pipelineException.getPipelineResult();
+			}
+		}
+		return List.of();
+	}
+
+	/**
+	 * Returns whether the failure is caused by a script missing from the script cache of
+	 * the server.
+	 */
+	public static boolean isNoScript(Throwable ex) {
+		for (Object result : pipelineResult(ex)) {
+			if (result instanceof Throwable failure && isNoScript(failure)) {
+				return true;
+			}
+		}
+		for (Throwable cause = ex; cause != null; cause = (cause.getCause() != cause) ? cause.getCause() : null) {
+			if (cause.getMessage() != null && cause.getMessage().startsWith("NOSCRIPT")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Increments a series' count key and duration hash, including the buckets of its
+	 * latency histogram, setting the TTL of each key that did not exist.
+	 */
+	public static void incrementSeries(RedisConnection connection, byte[] countKey, byte[] durationKey, long count,
+			long durationSum, LatencyHistogram histogram, long ttlSeconds) {
+		byte[][] keysAndArgs = new byte[5 + histogram.size() * 2][];
+		keysAndArgs[0] = countKey;
+		keysAndArgs[1] = durationKey;
+		keysAndArgs[2] = bytes(count);
+		keysAndArgs[3] = bytes(durationSum);
+		keysAndArgs[4] = bytes(ttlSeconds);
+		for (int i = 0; i < histogram.size(); i++) {
+			keysAndArgs[5 + i * 2] = bytes(ValkeyKeyBuilder.histogramField(histogram.bucket(i)));
+			keysAndArgs[6 + i * 2] = bytes(histogram.count(i));
+		}
+		evalSha(connection, INCREMENT_SERIES, 2, keysAndArgs);
+	}
+
+	/**
+	 * Increments a counter key, setting its TTL if it did not exist.
+	 */
+	public static void incrementCounter(RedisConnection connection, byte[] key, long delta, long ttlSeconds) {
+		evalSha(connection, INCREMENT_COUNTER, 1, key, bytes(delta), bytes(ttlSeconds));
+	}
+
+	/**
+	 * Adds members to an index set, setting its TTL if it did not exist.
+	 */
+	public static void addIndexMembers(RedisConnection connection, byte[] key, byte[][] members, long ttlSeconds) {
+		byte[][] keysAndArgs = new byte[members.length + 2][];
+		keysAndArgs[0] = key;
+		keysAndArgs[1] = bytes(ttlSeconds);
+		System.arraycopy(members, 0, keysAndArgs, 2, members.length);
+		evalSha(connection, ADD_INDEX_MEMBERS, 1, keysAndArgs);
+	}
+
+	/**
+	 * Increments fields of a hash, setting its TTL if it did not exist.
+	 * @param fieldsAndIncrements alternating field names and increments
+	 */
+	public static void incrementHashFields(RedisConnection connection, byte[] key, byte[][] fieldsAndIncrements,
+			long ttlSeconds) {
+		byte[][] keysAndArgs = new byte[fieldsAndIncrements.length + 2][];
+		keysAndArgs[0] = key;
+		keysAndArgs[1] = bytes(ttlSeconds);
+		System.arraycopy(fieldsAndIncrements, 0, keysAndArgs, 2, fieldsAndIncrements.length);
+		evalSha(connection, INCREMENT_HASH_FIELDS, 1, keysAndArgs);
+	}
+
+	/**
+	 * Adds elements to a HyperLogLog, setting its TTL if it did not exist.
+	 */
+	public static void addHyperLogLogElements(RedisConnection connection, byte[] key, byte[][] elements,
+			long ttlSeconds) {
+		byte[][] keysAndArgs = new byte[elements.length + 2][];
+		keysAndArgs[0] = key;
+		keysAndArgs[1] = bytes(ttlSeconds);
+		System.arraycopy(elements, 0, keysAndArgs, 2, elements.length);
+		evalSha(connection, ADD_HYPER_LOG_LOG_ELEMENTS, 1, keysAndArgs);
+	}
+
+	/**
+	 * Merges a HyperLogLog into another one, setting the TTL of the destination if it did
+	 * not exist. Does nothing if the source does not exist.
+	 */
+	public static void mergeHyperLogLog(RedisConnection connection, byte[] destination, byte[] source,
+			long ttlSeconds) {
+		evalSha(connection, MERGE_HYPER_LOG_LOG, 2, destination, source, bytes(ttlSeconds));
+	}
+
+	/**
+	 * Increments members of a leaderboard sorted set, setting its TTL if it did not exist
+	 * and keeping at most {@code maxMembers} members.
+	 * @param membersAndIncrements alternating members and increments
+	 */
+	public static void incrementTopK(RedisConnection connection, byte[] key, byte[][] membersAndIncrements,
+			long ttlSeconds, int maxMembers) {
+		byte[][] keysAndArgs = new byte[membersAndIncrements.length + 3][];
+		keysAndArgs[0] = key;
+		keysAndArgs[1] = bytes(ttlSeconds);
+		keysAndArgs[2] = bytes(maxMembers);
+		System.arraycopy(membersAndIncrements, 0, keysAndArgs, 3, membersAndIncrements.length);
+		evalSha(connection, INCREMENT_TOP_K, 1, keysAndArgs);
+	}
+
+	/**
+	 * Adds the scores of a leaderboard sorted set to another one, setting the TTL of the
+	 * destination if it did not exist and keeping at most {@code maxMembers} members.
+	 * Does nothing if the source does not exist.
+	 */
+	public static void mergeTopK(RedisConnection connection, byte[] destination, byte[] source, long ttlSeconds,
+			int maxMembers) {
+		evalSha(connection, MERGE_TOP_K, 2, destination, source, bytes(ttlSeconds), bytes(maxMembers));
+	}
+
+	private static void evalSha(RedisConnection connection, RedisScript<?> script, int numKeys, byte[]... keysAndArgs) {
+		List<ScriptCall> calls = recordedCalls.get();
+		if (calls != null) {
+			calls.add(new ScriptCall(script, numKeys, keysAndArgs));
+		}
+		connection.scriptingCommands().evalSha(script.getSha1(), ReturnType.INTEGER, numKeys, keysAndArgs);
+	}
+
+	private static byte[] bytes(long value) {
+		return bytes(Long.toString(value));
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private record ScriptCall(RedisScript<?> script, int numKeys, byte[][] keysAndArgs) {
+
+	}
+
+}
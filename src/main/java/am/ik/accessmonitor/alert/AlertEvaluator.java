@@ -1,20 +1,39 @@
 package am.ik.accessmonitor.alert;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.InstantSource;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import am.ik.accessmonitor.AccessMonitorProperties;
 import am.ik.accessmonitor.InstanceId;
 import am.ik.accessmonitor.AccessMonitorProperties.AlertsProperties.AlertRuleProperties;
+import am.ik.accessmonitor.aggregation.AccessMetricsStore;
 import am.ik.accessmonitor.aggregation.Granularity;
+import am.ik.accessmonitor.aggregation.TrafficTotals;
 import am.ik.accessmonitor.aggregation.ValkeyKeyBuilder;
+import am.ik.accessmonitor.alert.AlertShardLeases.AlertShard;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
@@ -22,6 +41,19 @@ import org.springframework.stereotype.Component;
 /**
  * Evaluates alert rules on a scheduled basis by polling Valkey aggregation data. Fires
  * alerts to the Alertmanager when conditions are met, respecting cooldown periods.
+ * <p>
+ * Each condition is evaluated over a sliding window that ends at the time of evaluation:
+ * the pre-aggregated {@link TrafficTotals} of the host, or of all hosts for global rules,
+ * are read for every slot covering the window (see {@link WindowSlots}) in one pipeline
+ * and summed by the share of each slot within the window into {@link WeightedTotals}. The
+ * hosts of per-host rules are read from the {@link AccessMetricsStore}. While rollup is
+ * enabled, the rollup watermark is read once per pass, and the part of a window that has
+ * not been rolled up yet is read from the 1-minute slots.
+ * <p>
+ * Rules are evaluated in shards: each per-host rule is split into {@code sharding.shards}
+ * shards by host hash, and each global rule forms a single shard. The shards are spread
+ * across the running instances through Valkey leases instead of a single lock, so that
+ * all instances share the work of a pass.
  */
 @Component
 @ConditionalOnProperty(name = "access-monitor.alerts.enabled", havingValue = "true", matchIfMissing = true)
@@ -29,10 +61,10 @@ public class AlertEvaluator {
 
 	private static final Logger log = LoggerFactory.getLogger(AlertEvaluator.class);
 
-	private static final String LOCK_KEY = "access-monitor:lock:alert-evaluator";
-
 	private final StringRedisTemplate redisTemplate;
 
+	private final AccessMetricsStore store;
+
 	private final AccessMonitorProperties properties;
 
 	private final AlertManagerClient alertManagerClient;
@@ -41,80 +73,179 @@ public class AlertEvaluator {
 
 	private final InstantSource instantSource;
 
-	private final InstanceId instanceId;
+	private final AlertShardLeases leases;
+
+	private final boolean rollupEnabled;
+
+	private final Timer passTimer;
+
+	private final AtomicLong lastPassNanos = new AtomicLong();
 
-	public AlertEvaluator(StringRedisTemplate redisTemplate, AccessMonitorProperties properties,
-			AlertManagerClient alertManagerClient, InstantSource instantSource, InstanceId instanceId) {
+	public AlertEvaluator(StringRedisTemplate redisTemplate, AccessMetricsStore store,
+			AccessMonitorProperties properties, AlertManagerClient alertManagerClient, CooldownManager cooldownManager,
+			InstantSource instantSource, InstanceId instanceId, MeterRegistry meterRegistry) {
 		this.redisTemplate = redisTemplate;
+		this.store = store;
 		this.properties = properties;
 		this.alertManagerClient = alertManagerClient;
 		this.instantSource = instantSource;
-		this.cooldownManager = new CooldownManager(instantSource);
-		this.instanceId = instanceId;
+		this.cooldownManager = cooldownManager;
+		this.rollupEnabled = properties.aggregation().rollup().enabled();
+		Duration interval = properties.alerts().evaluationInterval();
+		this.leases = new AlertShardLeases(redisTemplate, instanceId, interval);
+		this.passTimer = Timer.builder("access.monitor.alert.evaluation.duration")
+			.description("Duration of an alert evaluation pass of this instance")
+			.register(meterRegistry);
+		Gauge
+			.builder("access.monitor.alert.evaluation.utilization", this.lastPassNanos,
+					nanos -> (double) nanos.get() / interval.toNanos())
+			.description("Duration of the last alert evaluation pass relative to the evaluation interval")
+			.register(meterRegistry);
 	}
 
 	/**
-	 * Evaluates all configured alert rules. Uses a distributed lock to prevent concurrent
-	 * evaluation across multiple instances.
+	 * Evaluates the configured alert rules. Per-host rules are split into shards by host
+	 * hash; this instance evaluates the shards it holds a lease for (see
+	 * {@link AlertShardLeases}) concurrently on virtual threads, at most
+	 * {@code sharding.parallelism} at a time.
 	 */
 	@Scheduled(fixedDelayString = "${access-monitor.alerts.evaluation-interval}")
 	public void evaluate() {
-		Boolean acquired = this.redisTemplate.opsForValue()
-			.setIfAbsent(LOCK_KEY, this.instanceId.value(), this.properties.alerts().evaluationInterval());
-		if (!Boolean.TRUE.equals(acquired)) {
-			return;
-		}
-		for (AlertRuleProperties rule : this.properties.alerts().rules()) {
-			try {
-				evaluateRule(rule);
+		long start = System.nanoTime();
+		Instant now = this.instantSource.instant();
+		List<AlertRuleProperties> rules = this.properties.alerts().rules();
+		List<AlertShard> claimed = this.leases.claim(shards(rules), now);
+		if (!claimed.isEmpty()) {
+			Instant rolledUpUntil = this.rollupEnabled ? rolledUpUntil() : null;
+			// Hosts are looked up once per rule and shared by the shards of the rule
+			Map<Integer, List<String>> hostsByRule = new HashMap<>();
+			for (AlertShard shard : claimed) {
+				AlertRuleProperties rule = rules.get(shard.rule());
+				if (rule.dimensions().contains("host") && !hostsByRule.containsKey(shard.rule())) {
+					try {
+						hostsByRule.put(shard.rule(), hosts(rule, now, rolledUpUntil));
+					}
+					catch (Exception ex) {
+						log.error("Failed to read hosts for alert rule: {}", rule.name(), ex);
+						hostsByRule.put(shard.rule(), List.of());
+					}
+				}
 			}
-			catch (Exception ex) {
-				log.error("Failed to evaluate alert rule: {}", rule.name(), ex);
+			Semaphore permits = new Semaphore(Math.max(1, this.properties.alerts().sharding().parallelism()));
+			try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+				for (AlertShard shard : claimed) {
+					AlertRuleProperties rule = rules.get(shard.rule());
+					List<String> hosts = rule.dimensions().contains("host")
+							? shardHosts(hostsByRule.get(shard.rule()), shard) : Collections.singletonList(null);
+					executor.execute(() -> {
+						permits.acquireUninterruptibly();
+						try {
+							evaluateRule(rule, hosts, now, rolledUpUntil);
+						}
+						catch (Exception ex) {
+							log.error("Failed to evaluate alert rule: {} (shard {})", rule.name(), shard.shard(), ex);
+						}
+						finally {
+							permits.release();
+						}
+					});
+				}
 			}
 		}
+		long elapsed = System.nanoTime() - start;
+		this.passTimer.record(elapsed, TimeUnit.NANOSECONDS);
+		this.lastPassNanos.set(elapsed);
+		if (elapsed > this.properties.alerts().evaluationInterval().toNanos()) {
+			log.warn("Alert evaluation of {} shards took {}ms, longer than the evaluation interval {}", claimed.size(),
+					TimeUnit.NANOSECONDS.toMillis(elapsed), this.properties.alerts().evaluationInterval());
+		}
 	}
 
-	private void evaluateRule(AlertRuleProperties rule) {
-		if (rule.dimensions().contains("host")) {
-			evaluatePerHost(rule);
-		}
-		else {
-			evaluateGlobal(rule);
+	/**
+	 * Returns all shards in a deterministic order: {@code sharding.shards} shards per
+	 * per-host rule and a single shard per global rule.
+	 */
+	private List<AlertShard> shards(List<AlertRuleProperties> rules) {
+		int shardsPerRule = Math.max(1, this.properties.alerts().sharding().shards());
+		List<AlertShard> shards = new ArrayList<>();
+		for (int i = 0; i < rules.size(); i++) {
+			int count = rules.get(i).dimensions().contains("host") ? shardsPerRule : 1;
+			for (int shard = 0; shard < count; shard++) {
+				shards.add(new AlertShard(i, shard));
+			}
 		}
+		return shards;
 	}
 
-	private void evaluatePerHost(AlertRuleProperties rule) {
-		Granularity granularity = Granularity.fromWindow(rule.window());
-		String ts = granularity.format(this.instantSource.instant());
-		String hostsKey = ValkeyKeyBuilder.hostsIndexKey(granularity, ts);
-		Set<String> hosts = this.redisTemplate.opsForSet().members(hostsKey);
-		if (hosts == null || hosts.isEmpty()) {
-			return;
-		}
+	private List<String> shardHosts(List<String> hosts, AlertShard shard) {
+		int shardsPerRule = Math.max(1, this.properties.alerts().sharding().shards());
+		List<String> shardHosts = new ArrayList<>();
 		for (String host : hosts) {
-			evaluateCondition(rule, granularity, ts, host);
+			// String#hashCode is specified, so every instance assigns a host to the same
+			// shard
+			if (Math.floorMod(host.hashCode(), shardsPerRule) == shard.shard()) {
+				shardHosts.add(host);
+			}
 		}
+		return shardHosts;
 	}
 
-	private void evaluateGlobal(AlertRuleProperties rule) {
-		Granularity granularity = Granularity.fromWindow(rule.window());
-		String ts = granularity.format(this.instantSource.instant());
-		evaluateCondition(rule, granularity, ts, null);
+	/**
+	 * Returns the end of the last 1-minute slot rolled up into the coarser granularities,
+	 * or the epoch if no slot has been rolled up yet.
+	 */
+	private Instant rolledUpUntil() {
+		String watermark = this.redisTemplate.opsForValue().get(ValkeyKeyBuilder.rollupWatermarkKey());
+		return (watermark != null)
+				? Instant.ofEpochSecond(Long.parseLong(watermark)).plus(Granularity.ONE_MINUTE.slotDuration())
+				: Instant.EPOCH;
 	}
 
-	private void evaluateCondition(AlertRuleProperties rule, Granularity granularity, String ts, String host) {
-		switch (rule.condition()) {
-			case "error_rate" -> evaluateErrorRate(rule, granularity, ts, host);
-			case "traffic_spike" -> evaluateTrafficSpike(rule, granularity, ts, host);
-			case "slow_response" -> evaluateSlowResponse(rule, granularity, ts, host);
-			case "zero_requests" -> evaluateZeroRequests(rule, granularity, ts, host);
-			default -> log.warn("Unknown alert condition: {}", rule.condition());
+	private void evaluateRule(AlertRuleProperties rule, List<String> hosts, Instant now, Instant rolledUpUntil) {
+		if (hosts.isEmpty()) {
+			return;
+		}
+		// zero_requests counts every overlapping slot fully, so that a host is not
+		// reported as down while it may still have served requests within the window
+		WindowSlots window = WindowSlots.of(rule.window(), now, !"zero_requests".equals(rule.condition()),
+				rolledUpUntil);
+		List<WeightedTotals> totals = readTotals(window, hosts);
+		List<WeightedTotals> baselines = "traffic_spike".equals(rule.condition())
+				? readTotals(WindowSlots.of(rule.baselineWindow(), now, true, rolledUpUntil), hosts) : null;
+		for (int i = 0; i < hosts.size(); i++) {
+			String host = hosts.get(i);
+			switch (rule.condition()) {
+				case "error_rate" -> evaluateErrorRate(rule, host, totals.get(i));
+				case "traffic_spike" -> evaluateTrafficSpike(rule, host, totals.get(i), baselines.get(i));
+				case "slow_response" -> evaluateSlowResponse(rule, host, totals.get(i));
+				case "zero_requests" -> evaluateZeroRequests(rule, host, totals.get(i));
+				default -> log.warn("Unknown alert condition: {}", rule.condition());
+			}
 		}
 	}
 
-	private void evaluateErrorRate(AlertRuleProperties rule, Granularity granularity, String ts, String host) {
-		long totalCount = sumCountsByStatusPrefix(granularity, ts, host);
-		long errorCount = sumCountsByStatusRange(granularity, ts, host, 500, 599);
+	/**
+	 * Returns the hosts a per-host rule is evaluated for: the hosts that have requests
+	 * within the window. For {@code zero_requests}, hosts that only had requests during
+	 * the preceding window are included as well, since a host that stopped receiving
+	 * requests is absent from the slots of the window itself.
+	 */
+	private List<String> hosts(AlertRuleProperties rule, Instant now, Instant rolledUpUntil) {
+		WindowSlots lookup = "zero_requests".equals(rule.condition())
+				? WindowSlots.of(rule.window().multipliedBy(2), now, false, rolledUpUntil)
+				: WindowSlots.of(rule.window(), now, true, rolledUpUntil);
+		Set<String> hosts = new TreeSet<>();
+		for (Map.Entry<Granularity, List<String>> entry : lookup.timestampsByGranularity().entrySet()) {
+			for (List<String> slotHosts : this.store.hosts(entry.getKey(), entry.getValue())) {
+				hosts.addAll(slotHosts);
+			}
+		}
+		return List.copyOf(hosts);
+	}
+
+	private void evaluateErrorRate(AlertRuleProperties rule, String host, WeightedTotals totals) {
+		double totalCount = totals.count();
+		double errorCount = totals.classCount(5);
 
 		if (totalCount == 0) {
 			return;
@@ -122,100 +253,73 @@ public class AlertEvaluator {
 
 		double errorRate = (double) errorCount / totalCount;
 		if (errorRate > rule.threshold()) {
-			String alertKey = buildAlertKey(rule, host);
+			String alertKey = AlertLabels.alertKey(rule, host);
 			if (this.cooldownManager.canFire(alertKey, rule.cooldown())) {
-				Map<String, String> labels = buildLabels(rule, host);
+				Map<String, String> labels = AlertLabels.labels(rule, host);
 				Map<String, String> annotations = new LinkedHashMap<>();
 				annotations.put("summary",
 						"5xx rate exceeded %.0f%% on %s".formatted(rule.threshold() * 100, host != null ? host : "*"));
-				annotations.put("description", "5xx rate: %.1f%% (%d/%d) in last %s".formatted(errorRate * 100,
+				annotations.put("description", "5xx rate: %.1f%% (%.0f/%.0f) in last %s".formatted(errorRate * 100,
 						errorCount, totalCount, rule.window()));
 				fireAlert(alertKey, labels, annotations);
 			}
 		}
 	}
 
-	private void evaluateTrafficSpike(AlertRuleProperties rule, Granularity granularity, String ts, String host) {
-		long currentCount = sumCountsByStatusPrefix(granularity, ts, host);
+	private void evaluateTrafficSpike(AlertRuleProperties rule, String host, WeightedTotals current,
+			WeightedTotals baseline) {
+		// Normalize both windows to per-minute rates
+		double currentRate = current.count() * 60.0 / Math.max(1, rule.window().toSeconds());
+		double baselineRate = baseline.count() * 60.0 / Math.max(1, rule.baselineWindow().toSeconds());
 
-		// Calculate baseline from 1h granularity average
-		Granularity baselineGranularity = Granularity.fromWindow(rule.baselineWindow());
-		String baselineTs = baselineGranularity.format(this.instantSource.instant());
-		long baselineCount = sumCountsByStatusPrefix(baselineGranularity, baselineTs, host);
-
-		// Normalize baseline to per-minute rate
-		long baselineSlotsPerMinute = rule.baselineWindow().toMinutes();
-		double baselineRate = (baselineSlotsPerMinute > 0) ? (double) baselineCount / baselineSlotsPerMinute : 0;
-
-		if (baselineRate > 0 && currentCount > baselineRate * rule.multiplier()) {
-			String alertKey = buildAlertKey(rule, host);
+		if (baselineRate > 0 && currentRate > baselineRate * rule.multiplier()) {
+			String alertKey = AlertLabels.alertKey(rule, host);
 			if (this.cooldownManager.canFire(alertKey, rule.cooldown())) {
-				Map<String, String> labels = buildLabels(rule, host);
+				Map<String, String> labels = AlertLabels.labels(rule, host);
 				Map<String, String> annotations = new LinkedHashMap<>();
 				annotations.put("summary", "Traffic spike detected on %s".formatted(host != null ? host : "*"));
-				annotations.put("description", "Current: %d, Baseline avg: %.1f, Multiplier: %.1fx"
-					.formatted(currentCount, baselineRate, rule.multiplier()));
+				annotations.put("description", "Current: %.1f/min, Baseline avg: %.1f/min, Multiplier: %.1fx"
+					.formatted(currentRate, baselineRate, rule.multiplier()));
 				fireAlert(alertKey, labels, annotations);
 			}
 		}
 	}
 
-	private void evaluateSlowResponse(AlertRuleProperties rule, Granularity granularity, String ts, String host) {
-		// Use average response time as approximation (percentile not available in simple
-		// aggregation)
-		long totalDurationNs = 0;
-		long totalCount = 0;
-
-		Set<String> statuses = getStatuses(granularity, ts, host);
-		Set<String> methods = getMethods(granularity, ts, host);
-		Set<String> paths = getPaths(granularity, ts, host);
-
-		if (statuses == null || methods == null || paths == null) {
+	private void evaluateSlowResponse(AlertRuleProperties rule, String host, WeightedTotals totals) {
+		if (totals.count() == 0) {
 			return;
 		}
 
-		for (String status : statuses) {
-			for (String method : methods) {
-				for (String path : paths) {
-					String durKey = ValkeyKeyBuilder.durationKey(granularity, ts, host != null ? host : "*", path,
-							Integer.parseInt(status), method);
-					Map<Object, Object> durHash = this.redisTemplate.opsForHash().entries(durKey);
-					if (!durHash.isEmpty()) {
-						String sumStr = (String) durHash.get("sum");
-						String countStr = (String) durHash.get("count");
-						if (sumStr != null && countStr != null) {
-							totalDurationNs += Long.parseLong(sumStr);
-							totalCount += Long.parseLong(countStr);
-						}
-					}
-				}
-			}
+		// Evaluate the configured percentile from the merged latency histogram; fall back
+		// to the average when no percentile is configured or no histogram is stored
+		String statistic;
+		double durationMs;
+		if (rule.percentile() > 0 && !totals.histogram().isEmpty()) {
+			statistic = "p" + rule.percentile();
+			durationMs = totals.histogram().percentileNs(rule.percentile()) / 1_000_000.0;
 		}
-
-		if (totalCount == 0) {
-			return;
+		else {
+			statistic = "Avg";
+			durationMs = totals.durationSum() / totals.count() / 1_000_000.0;
 		}
-
-		double avgDurationMs = (double) totalDurationNs / totalCount / 1_000_000.0;
-		if (avgDurationMs > rule.thresholdMs()) {
-			String alertKey = buildAlertKey(rule, host);
+		if (durationMs > rule.thresholdMs()) {
+			String alertKey = AlertLabels.alertKey(rule, host);
 			if (this.cooldownManager.canFire(alertKey, rule.cooldown())) {
-				Map<String, String> labels = buildLabels(rule, host);
+				Map<String, String> labels = AlertLabels.labels(rule, host);
 				Map<String, String> annotations = new LinkedHashMap<>();
 				annotations.put("summary", "Slow response detected on %s".formatted(host != null ? host : "*"));
-				annotations.put("description", "Avg response time: %.2fms (threshold: %dms) in last %s"
-					.formatted(avgDurationMs, rule.thresholdMs(), rule.window()));
+				annotations.put("description", "%s response time: %.2fms (threshold: %dms) in last %s"
+					.formatted(statistic, durationMs, rule.thresholdMs(), rule.window()));
 				fireAlert(alertKey, labels, annotations);
 			}
 		}
 	}
 
-	private void evaluateZeroRequests(AlertRuleProperties rule, Granularity granularity, String ts, String host) {
-		long totalCount = sumCountsByStatusPrefix(granularity, ts, host);
-		if (totalCount == 0) {
-			String alertKey = buildAlertKey(rule, host);
+	private void evaluateZeroRequests(AlertRuleProperties rule, String host, WeightedTotals totals) {
+		if (totals.count() == 0) {
+			String alertKey = AlertLabels.alertKey(rule, host);
 			if (this.cooldownManager.canFire(alertKey, rule.cooldown())) {
-				Map<String, String> labels = buildLabels(rule, host);
+				Map<String, String> labels = AlertLabels.labels(rule, host);
 				Map<String, String> annotations = new LinkedHashMap<>();
 				annotations.put("summary", "No requests detected on %s".formatted(host != null ? host : "*"));
 				annotations.put("description", "Zero requests in last %s".formatted(rule.window()));
@@ -224,94 +328,34 @@ public class AlertEvaluator {
 		}
 	}
 
-	private long sumCountsByStatusPrefix(Granularity granularity, String ts, String host) {
-		Set<String> statuses = getStatuses(granularity, ts, host);
-		Set<String> methods = getMethods(granularity, ts, host);
-		Set<String> paths = getPaths(granularity, ts, host);
-
-		if (statuses == null || methods == null || paths == null) {
-			return 0;
-		}
-
-		long total = 0;
-		for (String status : statuses) {
-			for (String method : methods) {
-				for (String path : paths) {
-					String key = ValkeyKeyBuilder.countKey(granularity, ts, host != null ? host : "*", path,
-							Integer.parseInt(status), method);
-					String value = this.redisTemplate.opsForValue().get(key);
-					if (value != null) {
-						total += Long.parseLong(value);
-					}
+	/**
+	 * Reads the totals of each host within the window, or of all hosts for a {@code null}
+	 * host, with one pipelined HGETALL per host and slot. The totals of the slots are
+	 * summed by their weight; slots without requests yield zero totals.
+	 */
+	private List<WeightedTotals> readTotals(WindowSlots window, List<String> hosts) {
+		List<WindowSlots.Slot> slots = window.slots();
+		List<Object> results = this.redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
+			for (String host : hosts) {
+				for (WindowSlots.Slot slot : slots) {
+					String key = (host != null) ? ValkeyKeyBuilder.totalsKey(slot.granularity(), slot.timestamp(), host)
+							: ValkeyKeyBuilder.totalsKey(slot.granularity(), slot.timestamp());
+					connection.hashCommands().hGetAll(key.getBytes(StandardCharsets.UTF_8));
 				}
 			}
-		}
-		return total;
-	}
-
-	private long sumCountsByStatusRange(Granularity granularity, String ts, String host, int minStatus, int maxStatus) {
-		Set<String> statuses = getStatuses(granularity, ts, host);
-		Set<String> methods = getMethods(granularity, ts, host);
-		Set<String> paths = getPaths(granularity, ts, host);
-
-		if (statuses == null || methods == null || paths == null) {
-			return 0;
-		}
-
-		long total = 0;
-		for (String status : statuses) {
-			int statusCode = Integer.parseInt(status);
-			if (statusCode < minStatus || statusCode > maxStatus) {
-				continue;
-			}
-			for (String method : methods) {
-				for (String path : paths) {
-					String key = ValkeyKeyBuilder.countKey(granularity, ts, host != null ? host : "*", path, statusCode,
-							method);
-					String value = this.redisTemplate.opsForValue().get(key);
-					if (value != null) {
-						total += Long.parseLong(value);
-					}
+			return null;
+		});
+		List<WeightedTotals> totals = new ArrayList<>(hosts.size());
+		for (int i = 0; i < hosts.size(); i++) {
+			WeightedTotals hostTotals = new WeightedTotals();
+			for (int j = 0; j < slots.size(); j++) {
+				if (results.get(i * slots.size() + j) instanceof Map<?, ?> fields && !fields.isEmpty()) {
+					hostTotals.add(TrafficTotals.of(fields), slots.get(j).weight());
 				}
 			}
+			totals.add(hostTotals);
 		}
-		return total;
-	}
-
-	private Set<String> getStatuses(Granularity granularity, String ts, String host) {
-		if (host == null) {
-			return Set.of();
-		}
-		return this.redisTemplate.opsForSet().members(ValkeyKeyBuilder.statusesIndexKey(granularity, ts, host));
-	}
-
-	private Set<String> getMethods(Granularity granularity, String ts, String host) {
-		if (host == null) {
-			return Set.of();
-		}
-		return this.redisTemplate.opsForSet().members(ValkeyKeyBuilder.methodsIndexKey(granularity, ts, host));
-	}
-
-	private Set<String> getPaths(Granularity granularity, String ts, String host) {
-		if (host == null) {
-			return Set.of();
-		}
-		return this.redisTemplate.opsForSet().members(ValkeyKeyBuilder.pathsIndexKey(granularity, ts, host));
-	}
-
-	private String buildAlertKey(AlertRuleProperties rule, String host) {
-		return host != null ? rule.name() + ":" + host : rule.name();
-	}
-
-	private Map<String, String> buildLabels(AlertRuleProperties rule, String host) {
-		Map<String, String> labels = new HashMap<>();
-		labels.put("alertname", rule.name());
-		labels.put("severity", rule.severity());
-		labels.put("source", "access-monitor");
-		if (host != null) {
-			labels.put("host", host);
-		}
-		return labels;
+		return totals;
 	}
 
 	private void fireAlert(String alertKey, Map<String, String> labels, Map<String, String> annotations) {
@@ -0,0 +1,41 @@
+package am.ik.accessmonitor.alert;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import am.ik.accessmonitor.AccessMonitorProperties.AlertsProperties.AlertRuleProperties;
+
+/**
+ * Builds the cooldown keys and Alertmanager labels of alerts. Shared by all evaluators so
+ * that the same rule and host always produce identical labels, which Alertmanager
+ * deduplicates.
+ */
+final class AlertLabels {
+
+	private AlertLabels() {
+	}
+
+	/**
+	 * Returns the cooldown key of a rule for the given host, or for all hosts if
+	 * {@code host} is {@code null}.
+	 */
+	static String alertKey(AlertRuleProperties rule, String host) {
+		return host != null ? rule.name() + ":" + host : rule.name();
+	}
+
+	/**
+	 * Returns the Alertmanager labels of a rule for the given host, or for all hosts if
+	 * {@code host} is {@code null}.
+	 */
+	static Map<String, String> labels(AlertRuleProperties rule, String host) {
+		Map<String, String> labels = new HashMap<>();
+		labels.put("alertname", rule.name());
+		labels.put("severity", rule.severity());
+		labels.put("source", "access-monitor");
+		if (host != null) {
+			labels.put("host", host);
+		}
+		return labels;
+	}
+
+}
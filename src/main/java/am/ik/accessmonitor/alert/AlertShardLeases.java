@@ -0,0 +1,180 @@
+package am.ik.accessmonitor.alert;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import am.ik.accessmonitor.InstanceId;
+
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.types.Expiration;
+
+/**
+ * Leases alert evaluation shards to the running instances through Valkey.
+ * <p>
+ * Every instance registers itself in a sorted set of evaluators scored by the time of its
+ * last pass; members that have not evaluated for three intervals are removed. Each shard
+ * is owned by the live evaluator with the highest rendezvous hash of the evaluator and
+ * the shard, so that the assignment is stable between passes and the in-memory cooldowns
+ * stay with the instance that evaluates a shard, and an evaluator joining or leaving only
+ * moves the shards it gains or loses. A shard is only evaluated after its lease has been
+ * acquired with {@code SET NX}, which keeps two instances from evaluating the same shard
+ * while the set of live evaluators changes.
+ * <p>
+ * After its own shards, an instance also tries to lease the shards of owners that have
+ * not evaluated for {@link #STALE_INTERVALS} intervals, e.g. because they crashed, so
+ * that these shards are not left unevaluated until their owner is removed. The shards of
+ * owners that are merely behind within their interval are not taken over, which would
+ * otherwise move them to whichever instance runs first.
+ */
+final class AlertShardLeases {
+
+	static final String LEASE_KEY_PREFIX = "access-monitor:lock:alert-evaluator:";
+
+	static final String EVALUATORS_KEY = "access-monitor:alert-evaluators";
+
+	/**
+	 * Number of intervals since the last pass of an evaluator after which its shards may
+	 * be leased by other instances.
+	 */
+	static final double STALE_INTERVALS = 1.5;
+
+	private final StringRedisTemplate redisTemplate;
+
+	private final InstanceId instanceId;
+
+	private final Duration interval;
+
+	AlertShardLeases(StringRedisTemplate redisTemplate, InstanceId instanceId, Duration interval) {
+		this.redisTemplate = redisTemplate;
+		this.instanceId = instanceId;
+		this.interval = interval;
+	}
+
+	/**
+	 * Registers this instance as a live evaluator and acquires the leases of its shards,
+	 * and of the shards of stale evaluators, for one evaluation interval.
+	 * @param shards all shards in a deterministic order
+	 * @param now the time of the pass
+	 * @return the shards whose lease has been acquired
+	 */
+	List<AlertShard> claim(List<AlertShard> shards, Instant now) {
+		byte[] evaluatorsKey = EVALUATORS_KEY.getBytes(StandardCharsets.UTF_8);
+		byte[] member = this.instanceId.value().getBytes(StandardCharsets.UTF_8);
+		List<Object> registration = this.redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
+			connection.zSetCommands().zAdd(evaluatorsKey, now.toEpochMilli(), member);
+			connection.zSetCommands()
+				.zRemRangeByScore(evaluatorsKey, Double.NEGATIVE_INFINITY,
+						now.minus(this.interval.multipliedBy(3)).toEpochMilli() - 1);
+			connection.zSetCommands().zRangeWithScores(evaluatorsKey, 0, -1);
+			connection.keyCommands().pExpire(evaluatorsKey, this.interval.multipliedBy(3).toMillis());
+			return null;
+		});
+		Map<String, Double> evaluators = lastPasses(registration.get(2));
+		evaluators.put(this.instanceId.value(), (double) now.toEpochMilli());
+		double staleBefore = now.toEpochMilli() - this.interval.toMillis() * STALE_INTERVALS;
+		List<AlertShard> candidates = new ArrayList<>();
+		List<AlertShard> orphaned = new ArrayList<>();
+		for (AlertShard shard : shards) {
+			String owner = owner(shard, evaluators.keySet());
+			if (owner.equals(this.instanceId.value())) {
+				candidates.add(shard);
+			}
+			else if (evaluators.get(owner) < staleBefore) {
+				orphaned.add(shard);
+			}
+		}
+		candidates.addAll(orphaned);
+		if (candidates.isEmpty()) {
+			return List.of();
+		}
+		List<Object> results = this.redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
+			for (AlertShard shard : candidates) {
+				connection.stringCommands()
+					.set(leaseKey(shard).getBytes(StandardCharsets.UTF_8), member, Expiration.from(this.interval),
+							SetOption.ifAbsent());
+			}
+			return null;
+		});
+		List<AlertShard> claimed = new ArrayList<>();
+		for (int i = 0; i < candidates.size(); i++) {
+			if (Boolean.TRUE.equals(results.get(i))) {
+				claimed.add(candidates.get(i));
+			}
+		}
+		return claimed;
+	}
+
+	/**
+	 * Returns the evaluator owning the shard, i.e. the one with the highest rendezvous
+	 * hash of the evaluator and the shard.
+	 * @param shard the shard
+	 * @param evaluators the live evaluators, not empty
+	 */
+	static String owner(AlertShard shard, Collection<String> evaluators) {
+		String owner = null;
+		long highest = 0;
+		for (String evaluator : evaluators) {
+			long hash = rendezvousHash(evaluator, shard);
+			if (owner == null || hash > highest || (hash == highest && evaluator.compareTo(owner) < 0)) {
+				owner = evaluator;
+				highest = hash;
+			}
+		}
+		return owner;
+	}
+
+	/**
+	 * Mixes the evaluator and the shard with the finalizer of MurmurHash3, so that the
+	 * hashes of an evaluator are spread evenly across the shards.
+	 */
+	private static long rendezvousHash(String evaluator, AlertShard shard) {
+		long hash = evaluator.hashCode() * 0x9E3779B97F4A7C15L
+				+ (((long) shard.rule() << 32) | (shard.shard() & 0xFFFFFFFFL));
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	static String leaseKey(AlertShard shard) {
+		return LEASE_KEY_PREFIX + shard.rule() + ":" + shard.shard();
+	}
+
+	private static Map<String, Double> lastPasses(Object members) {
+		Map<String, Double> lastPasses = new TreeMap<>();
+		if (members instanceof Collection<?> values) {
+			for (Object value : values) {
+				if (value instanceof TypedTuple<?> tuple && tuple.getValue() != null && tuple.getScore() != null) {
+					lastPasses.put(String.valueOf(tuple.getValue()), tuple.getScore());
+				}
+				else if (value instanceof Tuple tuple) {
+					lastPasses.put(new String(tuple.getValue(), StandardCharsets.UTF_8), tuple.getScore());
+				}
+			}
+		}
+		return lastPasses;
+	}
+
+	/**
+	 * A shard of alert evaluation: the hosts of a rule whose hash modulo the number of
+	 * shards equals {@code shard}. Global rules have a single shard {@code 0}.
+	 *
+	 * @param rule the index of the rule
+	 * @param shard the index of the shard within the rule
+	 */
+	record AlertShard(int rule, int shard) {
+	}
+
+}
@@ -5,10 +5,16 @@ import java.time.Instant;
 import java.time.InstantSource;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.stereotype.Component;
+
 /**
  * Manages cooldown periods for alert firing to prevent duplicate notifications. Tracks
  * the last firing time per alert key and checks whether the cooldown period has elapsed.
+ * A single instance is shared by {@link AlertEvaluator} and
+ * {@link StreamingAlertEvaluator}, so that an alert fired by one of them is not posted
+ * again by the other within the cooldown.
  */
+@Component
 public class CooldownManager {
 
 	private final ConcurrentHashMap<String, Instant> lastFiredAt = new ConcurrentHashMap<>();
@@ -43,4 +49,13 @@ public class CooldownManager {
 		this.lastFiredAt.put(alertKey, this.instantSource.instant());
 	}
 
+	/**
+	 * Forgets the last firing time for the given alert key, e.g. when the alert recorded
+	 * as fired could not be posted.
+	 * @param alertKey unique key identifying the alert
+	 */
+	public void clearFiring(String alertKey) {
+		this.lastFiredAt.remove(alertKey);
+	}
+
 }
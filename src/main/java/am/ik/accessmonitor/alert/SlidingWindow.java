@@ -0,0 +1,146 @@
+package am.ik.accessmonitor.alert;
+
+import am.ik.accessmonitor.aggregation.LatencyHistogram;
+
+/**
+ * In-memory sliding window of request counters, held as a ring buffer of fixed-width time
+ * buckets. Running totals over all buckets are maintained on every add and bucket expiry,
+ * so reading the totals of the window costs O(1) regardless of its length.
+ * <p>
+ * The window ends at the latest second seen so far and slides forward as newer requests
+ * arrive; requests older than the window are ignored. Instances are not thread-safe;
+ * callers must guard concurrent access externally.
+ */
+public final class SlidingWindow {
+
+	private final long bucketSeconds;
+
+	private final long[] counts;
+
+	private final long[] serverErrorCounts;
+
+	private final long[] durationSums;
+
+	private final LatencyHistogram[] histograms;
+
+	private final LatencyHistogram histogram;
+
+	private long count;
+
+	private long serverErrorCount;
+
+	private long durationSum;
+
+	private long latestBucket = Long.MIN_VALUE;
+
+	/**
+	 * Creates a window.
+	 * @param windowSeconds the length of the window in seconds
+	 * @param bucketSeconds the width of a bucket in seconds
+	 * @param trackHistogram whether to track the latency histogram of the window
+	 */
+	public SlidingWindow(long windowSeconds, long bucketSeconds, boolean trackHistogram) {
+		int size = (int) Math.max(1, (windowSeconds + bucketSeconds - 1) / bucketSeconds);
+		this.bucketSeconds = bucketSeconds;
+		this.counts = new long[size];
+		this.serverErrorCounts = new long[size];
+		this.durationSums = new long[size];
+		this.histograms = trackHistogram ? new LatencyHistogram[size] : null;
+		this.histogram = trackHistogram ? new LatencyHistogram() : null;
+	}
+
+	/**
+	 * Adds a single request.
+	 * @param epochSecond the time of the request
+	 * @param status the response status code
+	 * @param durationNs the response time in nanoseconds
+	 * @return {@code false} if the request is older than the window and has been ignored
+	 */
+	public boolean add(long epochSecond, int status, long durationNs) {
+		long bucket = Math.floorDiv(epochSecond, this.bucketSeconds);
+		if (bucket > this.latestBucket) {
+			advanceTo(bucket);
+		}
+		else if (bucket <= this.latestBucket - this.counts.length) {
+			return false;
+		}
+		int index = (int) Math.floorMod(bucket, (long) this.counts.length);
+		this.counts[index]++;
+		this.count++;
+		if (status >= 500 && status <= 599) {
+			this.serverErrorCounts[index]++;
+			this.serverErrorCount++;
+		}
+		this.durationSums[index] += durationNs;
+		this.durationSum += durationNs;
+		if (this.histograms != null) {
+			if (this.histograms[index] == null) {
+				this.histograms[index] = new LatencyHistogram();
+			}
+			int histogramBucket = LatencyHistogram.bucketOf(durationNs);
+			this.histograms[index].add(histogramBucket, 1);
+			this.histogram.add(histogramBucket, 1);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of requests in the window.
+	 */
+	public long count() {
+		return this.count;
+	}
+
+	/**
+	 * Returns the number of requests in the window that responded with 5xx.
+	 */
+	public long serverErrorCount() {
+		return this.serverErrorCount;
+	}
+
+	/**
+	 * Returns the sum of response times in the window in nanoseconds.
+	 */
+	public long durationSum() {
+		return this.durationSum;
+	}
+
+	/**
+	 * Returns the latency histogram of the window, or {@code null} if it is not tracked.
+	 * Buckets whose requests have expired are kept with a zero count.
+	 */
+	public LatencyHistogram histogram() {
+		return this.histogram;
+	}
+
+	/**
+	 * Returns the start of the latest bucket in epoch seconds, or {@link Long#MIN_VALUE}
+	 * if no request has been added.
+	 */
+	public long latestSecond() {
+		return (this.latestBucket == Long.MIN_VALUE) ? Long.MIN_VALUE : this.latestBucket * this.bucketSeconds;
+	}
+
+	private void advanceTo(long bucket) {
+		long first = (this.latestBucket == Long.MIN_VALUE) ? bucket
+				: Math.max(this.latestBucket + 1, bucket - this.counts.length + 1);
+		for (long b = first; b <= bucket; b++) {
+			int index = (int) Math.floorMod(b, (long) this.counts.length);
+			this.count -= this.counts[index];
+			this.serverErrorCount -= this.serverErrorCounts[index];
+			this.durationSum -= this.durationSums[index];
+			this.counts[index] = 0;
+			this.serverErrorCounts[index] = 0;
+			this.durationSums[index] = 0;
+			if (this.histograms != null && this.histograms[index] != null) {
+				LatencyHistogram expired = this.histograms[index];
+				for (int i = 0; i < expired.size(); i++) {
+					this.histogram.add(expired.bucket(i), -expired.count(i));
+				}
+				this.histograms[index] = null;
+			}
+		}
+		this.latestBucket = bucket;
+	}
+
+}
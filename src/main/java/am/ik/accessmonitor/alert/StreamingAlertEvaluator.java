@@ -0,0 +1,378 @@
+package am.ik.accessmonitor.alert;
+
+import java.time.InstantSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import am.ik.accessmonitor.AccessMonitorProperties;
+import am.ik.accessmonitor.AccessMonitorProperties.AlertsProperties.AlertRuleProperties;
+import am.ik.accessmonitor.blacklist.AllowedHostMatcher;
+import am.ik.accessmonitor.event.AccessEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Evaluates alert rules in process on the consumer path. Every aggregated event is added
+ * to a {@link SlidingWindow} of 1-second buckets per rule and host (or per rule for
+ * global rules), and the rule is evaluated against the window right away, so that an
+ * alert fires within the processing time of the event that crossed the threshold instead
+ * of the next {@link AlertEvaluator} poll.
+ * <p>
+ * Supports the {@code error_rate}, {@code traffic_spike} and {@code slow_response}
+ * conditions; {@code zero_requests} cannot be detected from arriving events and is left
+ * to {@link AlertEvaluator}, which keeps running as the cross-instance reconciler. Since
+ * each consumer instance only receives its share of the events, the windows hold the
+ * traffic of this instance, which suits ratios and percentiles but underestimates
+ * absolute counts when several instances are running. Alerts carry the same labels as
+ * those of {@link AlertEvaluator} and share its {@link CooldownManager}, so an alert
+ * fired by one is not posted again by the other within the cooldown.
+ * <p>
+ * Alerts are posted from a small executor with a bounded queue, so that the consumers are
+ * not blocked by Alertmanager requests and a slow or unreachable Alertmanager cannot pile
+ * up threads. Alerts that do not fit into the queue are dropped and left to
+ * {@link AlertEvaluator}.
+ * <p>
+ * Event times are capped at the current time, so that a future-dated event cannot move a
+ * window ahead and make the following events look too old. When allowed hosts are
+ * configured, per-host rules skip the events of other hosts, and at most
+ * {@code access-monitor.alerts.streaming.max-windows} windows are held; events that would
+ * need another window are not evaluated and counted by the
+ * {@code access.monitor.alerts.streaming.windows.overflow} meter.
+ */
+@Component
+@ConditionalOnProperty(name = "access-monitor.alerts.enabled", havingValue = "true", matchIfMissing = true)
+@ConditionalOnProperty(name = "access-monitor.alerts.streaming.enabled", havingValue = "true")
+public class StreamingAlertEvaluator implements DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(StreamingAlertEvaluator.class);
+
+	private static final Set<String> SUPPORTED_CONDITIONS = Set.of("error_rate", "traffic_spike", "slow_response");
+
+	/**
+	 * Number of buckets of a traffic spike baseline window.
+	 */
+	private static final int BASELINE_BUCKETS = 60;
+
+	/**
+	 * Number of threads posting alerts to Alertmanager.
+	 */
+	private static final int POST_THREADS = 2;
+
+	/**
+	 * Number of alerts waiting to be posted beyond which new alerts are dropped.
+	 */
+	private static final int POST_QUEUE_CAPACITY = 100;
+
+	private final List<AlertRuleProperties> rules;
+
+	private final Map<WindowKey, RuleWindow> windows = new ConcurrentHashMap<>();
+
+	private final AccessMonitorProperties properties;
+
+	private final AlertManagerClient alertManagerClient;
+
+	private final CooldownManager cooldownManager;
+
+	private final InstantSource instantSource;
+
+	private final AllowedHostMatcher allowedHostMatcher;
+
+	private final int maxWindows;
+
+	private final Counter overflowedEvents;
+
+	private final ExecutorService postExecutor = new ThreadPoolExecutor(POST_THREADS, POST_THREADS, 0,
+			TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(POST_QUEUE_CAPACITY),
+			Thread.ofVirtual().name("streaming-alert-", 0).factory());
+
+	public StreamingAlertEvaluator(AccessMonitorProperties properties, AlertManagerClient alertManagerClient,
+			CooldownManager cooldownManager, InstantSource instantSource, MeterRegistry meterRegistry) {
+		this.rules = properties.alerts()
+			.rules()
+			.stream()
+			.filter(rule -> SUPPORTED_CONDITIONS.contains(rule.condition()))
+			.toList();
+		this.properties = properties;
+		this.alertManagerClient = alertManagerClient;
+		this.cooldownManager = cooldownManager;
+		this.instantSource = instantSource;
+		List<String> allowedHosts = properties.blacklist().allowedHosts();
+		this.allowedHostMatcher = allowedHosts.isEmpty() ? null : new AllowedHostMatcher(allowedHosts);
+		this.maxWindows = properties.alerts().streaming().maxWindows();
+		this.overflowedEvents = Counter.builder("access.monitor.alerts.streaming.windows.overflow")
+			.description("Number of rule evaluations skipped because the maximum number of windows is held")
+			.register(meterRegistry);
+	}
+
+	/**
+	 * Adds an event to the windows of all rules and fires the rules whose threshold is
+	 * crossed. Alerts are posted asynchronously, so the caller is not blocked by the
+	 * Alertmanager request.
+	 */
+	public void record(AccessEvent event) {
+		long second = Math.min(event.timestamp().getEpochSecond(), this.instantSource.instant().getEpochSecond());
+		boolean hostAllowed = this.allowedHostMatcher == null || this.allowedHostMatcher.isAllowed(event.host());
+		for (int i = 0; i < this.rules.size(); i++) {
+			AlertRuleProperties rule = this.rules.get(i);
+			String host = rule.dimensions().contains("host") ? event.host() : null;
+			if (host != null && !hostAllowed) {
+				continue;
+			}
+			RuleWindow window = window(new WindowKey(i, host), rule);
+			if (window == null) {
+				this.overflowedEvents.increment();
+				continue;
+			}
+			AlertManagerClient.AlertPayload payload;
+			window.lock.lock();
+			try {
+				if (!window.add(second, event.statusCode(), event.durationNs())) {
+					continue;
+				}
+				payload = evaluate(rule, host, window);
+			}
+			finally {
+				window.lock.unlock();
+			}
+			if (payload != null) {
+				post(AlertLabels.alertKey(rule, host), payload);
+			}
+		}
+	}
+
+	/**
+	 * Returns the window of the key, creating it unless the maximum number of windows is
+	 * held, in which case {@code null} is returned. The maximum may be exceeded by a few
+	 * windows under concurrent creation.
+	 */
+	private RuleWindow window(WindowKey key, AlertRuleProperties rule) {
+		RuleWindow window = this.windows.get(key);
+		if (window != null || this.windows.size() >= this.maxWindows) {
+			return window;
+		}
+		return this.windows.computeIfAbsent(key, k -> new RuleWindow(rule));
+	}
+
+	private void post(String alertKey, AlertManagerClient.AlertPayload payload) {
+		try {
+			this.postExecutor.execute(() -> {
+				try {
+					this.alertManagerClient.postAlert(payload);
+				}
+				catch (RuntimeException ex) {
+					log.error("Failed to post streaming alert: {}", payload.labels(), ex);
+				}
+			});
+		}
+		catch (RejectedExecutionException ex) {
+			// Let AlertEvaluator fire the alert on its next pass
+			this.cooldownManager.clearFiring(alertKey);
+			log.warn("Too many streaming alerts waiting to be posted, dropping alert: {}", payload.labels());
+		}
+	}
+
+	@Override
+	public void destroy() {
+		this.postExecutor.shutdown();
+	}
+
+	/**
+	 * Records a batch of events.
+	 */
+	public void record(List<AccessEvent> events) {
+		for (AccessEvent event : events) {
+			record(event);
+		}
+	}
+
+	/**
+	 * Removes the windows of hosts that have not received any request for longer than the
+	 * window, so that memory does not grow with hosts that stopped sending traffic.
+	 */
+	@Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+	public void evictIdleWindows() {
+		long now = this.instantSource.instant().getEpochSecond();
+		this.windows.values().removeIf(window -> window.isIdle(now));
+	}
+
+	/**
+	 * Returns the number of rule windows held in memory.
+	 */
+	int windowCount() {
+		return this.windows.size();
+	}
+
+	private AlertManagerClient.AlertPayload evaluate(AlertRuleProperties rule, String host, RuleWindow window) {
+		Map<String, String> annotations = switch (rule.condition()) {
+			case "error_rate" -> evaluateErrorRate(rule, host, window);
+			case "traffic_spike" -> evaluateTrafficSpike(rule, host, window);
+			case "slow_response" -> evaluateSlowResponse(rule, host, window.current);
+			default -> null;
+		};
+		if (annotations == null) {
+			return null;
+		}
+		String alertKey = AlertLabels.alertKey(rule, host);
+		if (!this.cooldownManager.canFire(alertKey, rule.cooldown())) {
+			return null;
+		}
+		this.cooldownManager.recordFiring(alertKey);
+		log.debug("Streaming evaluation fired alert rule {} for host {}", rule.name(), host);
+		return new AlertManagerClient.AlertPayload(AlertLabels.labels(rule, host), annotations,
+				this.instantSource.instant(), this.properties.alerts().effectiveAlertmanagerExternalUrl());
+	}
+
+	private Map<String, String> evaluateErrorRate(AlertRuleProperties rule, String host, RuleWindow window) {
+		// Wait until the window covers its whole duration, otherwise the first few
+		// requests after a restart or of a new host decide the rate on their own
+		if (!window.currentComplete()) {
+			return null;
+		}
+		long totalCount = window.current.count();
+		long errorCount = window.current.serverErrorCount();
+		if (totalCount == 0) {
+			return null;
+		}
+		double errorRate = (double) errorCount / totalCount;
+		if (errorRate <= rule.threshold()) {
+			return null;
+		}
+		Map<String, String> annotations = new LinkedHashMap<>();
+		annotations.put("summary",
+				"5xx rate exceeded %.0f%% on %s".formatted(rule.threshold() * 100, host != null ? host : "*"));
+		annotations.put("description", "5xx rate: %.1f%% (%d/%d) in last %s".formatted(errorRate * 100, errorCount,
+				totalCount, rule.window()));
+		return annotations;
+	}
+
+	private Map<String, String> evaluateTrafficSpike(AlertRuleProperties rule, String host, RuleWindow window) {
+		// Wait until the baseline covers its whole window, otherwise the traffic
+		// following a restart looks like a spike
+		if (!window.baselineComplete()) {
+			return null;
+		}
+		double currentRate = window.current.count() * 60.0 / rule.window().toSeconds();
+		double baselineRate = window.baseline.count() * 60.0 / rule.baselineWindow().toSeconds();
+		if (baselineRate <= 0 || currentRate <= baselineRate * rule.multiplier()) {
+			return null;
+		}
+		Map<String, String> annotations = new LinkedHashMap<>();
+		annotations.put("summary", "Traffic spike detected on %s".formatted(host != null ? host : "*"));
+		annotations.put("description", "Current: %.1f/min, Baseline avg: %.1f/min, Multiplier: %.1fx"
+			.formatted(currentRate, baselineRate, rule.multiplier()));
+		return annotations;
+	}
+
+	private Map<String, String> evaluateSlowResponse(AlertRuleProperties rule, String host, SlidingWindow window) {
+		if (window.count() == 0) {
+			return null;
+		}
+		String statistic;
+		double durationMs;
+		if (window.histogram() != null) {
+			statistic = "p" + rule.percentile();
+			durationMs = window.histogram().percentileNs(rule.percentile()) / 1_000_000.0;
+		}
+		else {
+			statistic = "Avg";
+			durationMs = (double) window.durationSum() / window.count() / 1_000_000.0;
+		}
+		if (durationMs <= rule.thresholdMs()) {
+			return null;
+		}
+		Map<String, String> annotations = new LinkedHashMap<>();
+		annotations.put("summary", "Slow response detected on %s".formatted(host != null ? host : "*"));
+		annotations.put("description", "%s response time: %.2fms (threshold: %dms) in last %s".formatted(statistic,
+				durationMs, rule.thresholdMs(), rule.window()));
+		return annotations;
+	}
+
+	private record WindowKey(int rule, String host) {
+	}
+
+	/**
+	 * Windows of a rule for a single host, guarded by a lock.
+	 */
+	private static final class RuleWindow {
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private final SlidingWindow current;
+
+		private final SlidingWindow baseline;
+
+		private final long windowSeconds;
+
+		private final long baselineSeconds;
+
+		private final long retentionSeconds;
+
+		private long firstSecond = Long.MIN_VALUE;
+
+		RuleWindow(AlertRuleProperties rule) {
+			long windowSeconds = rule.window().toSeconds();
+			this.windowSeconds = windowSeconds;
+			this.current = new SlidingWindow(windowSeconds, 1,
+					"slow_response".equals(rule.condition()) && rule.percentile() > 0);
+			if ("traffic_spike".equals(rule.condition())) {
+				this.baselineSeconds = rule.baselineWindow().toSeconds();
+				this.baseline = new SlidingWindow(this.baselineSeconds,
+						Math.max(1, this.baselineSeconds / BASELINE_BUCKETS), false);
+			}
+			else {
+				this.baselineSeconds = 0;
+				this.baseline = null;
+			}
+			this.retentionSeconds = Math.max(windowSeconds, this.baselineSeconds);
+		}
+
+		boolean add(long second, int status, long durationNs) {
+			if (!this.current.add(second, status, durationNs)) {
+				return false;
+			}
+			if (this.baseline != null) {
+				this.baseline.add(second, status, durationNs);
+			}
+			if (this.firstSecond == Long.MIN_VALUE || second < this.firstSecond) {
+				this.firstSecond = second;
+			}
+			return true;
+		}
+
+		boolean currentComplete() {
+			return this.current.latestSecond() - this.firstSecond >= this.windowSeconds;
+		}
+
+		boolean baselineComplete() {
+			return this.baseline != null && this.current.latestSecond() - this.firstSecond >= this.baselineSeconds;
+		}
+
+		boolean isIdle(long now) {
+			this.lock.lock();
+			try {
+				return this.current.latestSecond() < now - this.retentionSeconds;
+			}
+			finally {
+				this.lock.unlock();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,77 @@
+package am.ik.accessmonitor.alert;
+
+import am.ik.accessmonitor.aggregation.LatencyHistogram;
+import am.ik.accessmonitor.aggregation.TrafficTotals;
+
+/**
+ * Request totals of a sliding window, summed from the {@link TrafficTotals} of its slots
+ * scaled by the weight of each slot (see {@link WindowSlots}). The weighted counts are
+ * kept as fractions, so that the ratios between them, e.g. of 5xx to all requests, are
+ * not distorted by rounding each of them separately.
+ * <p>
+ * The latency histogram only serves percentiles, which do not depend on the scale of the
+ * counts, so its buckets count thousandths of a request to keep the weighted counts of
+ * single requests. Instances are not thread-safe.
+ */
+final class WeightedTotals {
+
+	private static final long HISTOGRAM_SCALE = 1000;
+
+	private double count;
+
+	private double durationSum;
+
+	private final double[] classCounts = new double[6];
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	/**
+	 * Adds the totals of a slot scaled by the given weight.
+	 * @param totals the totals of the slot
+	 * @param weight the weight in the range {@code [0, 1]}
+	 */
+	void add(TrafficTotals totals, double weight) {
+		this.count += totals.count() * weight;
+		this.durationSum += totals.durationSum() * weight;
+		for (int statusClass = 1; statusClass < this.classCounts.length; statusClass++) {
+			this.classCounts[statusClass] += totals.classCount(statusClass) * weight;
+		}
+		LatencyHistogram other = totals.histogram();
+		for (int i = 0; i < other.size(); i++) {
+			long scaled = Math.round(other.count(i) * weight * HISTOGRAM_SCALE);
+			if (scaled > 0) {
+				this.histogram.add(other.bucket(i), scaled);
+			}
+		}
+	}
+
+	/**
+	 * Returns the weighted number of requests.
+	 */
+	double count() {
+		return this.count;
+	}
+
+	/**
+	 * Returns the weighted sum of request durations in nanoseconds.
+	 */
+	double durationSum() {
+		return this.durationSum;
+	}
+
+	/**
+	 * Returns the weighted number of requests of the given status class, e.g. {@code 5}
+	 * for 5xx.
+	 */
+	double classCount(int statusClass) {
+		return (statusClass >= 1 && statusClass < this.classCounts.length) ? this.classCounts[statusClass] : 0;
+	}
+
+	/**
+	 * Returns the latency histogram, whose counts are scaled by a constant factor.
+	 */
+	LatencyHistogram histogram() {
+		return this.histogram;
+	}
+
+}
@@ -0,0 +1,148 @@
+package am.ik.accessmonitor.alert;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import am.ik.accessmonitor.aggregation.Granularity;
+
+/**
+ * The slots that cover a sliding window ending now, with the weight of each slot. The
+ * window is covered by the finest granularity that needs at most {@link #MAX_SLOTS}
+ * slots, so that a 5-minute window sums the last five 1-minute slots instead of reading
+ * the current calendar slot only.
+ * <p>
+ * A slot that only partially overlaps the window is weighted by the overlapping share of
+ * its elapsed time, assuming that requests are spread evenly within a slot. The current
+ * slot has elapsed only up to now and is weighted by {@code 1} unless it is longer than
+ * the window.
+ * <p>
+ * While rollup is enabled, coarser slots only hold the 1-minute slots rolled up so far.
+ * Such a window reads the coarser slots up to the end of the rolled-up slots and the
+ * 1-minute slots after it, at most {@link #MAX_SLOTS} of them, so that the open edge of
+ * the window is not read as empty.
+ *
+ * @param granularity the granularity covering the window
+ * @param slots the slots from the oldest to the current one
+ */
+record WindowSlots(Granularity granularity, List<Slot> slots) {
+
+	/**
+	 * Maximum number of slots read to cover a window.
+	 */
+	static final int MAX_SLOTS = 31;
+
+	/**
+	 * Returns the slots covering the window that ends at {@code now}.
+	 * @param window the length of the window
+	 * @param now the end of the window
+	 * @param weighted whether to weight partially overlapping slots; if {@code false},
+	 * every overlapping slot is weighted by {@code 1}, which errs on the side of counting
+	 * requests shortly before the window
+	 */
+	static WindowSlots of(Duration window, Instant now, boolean weighted) {
+		return of(window, now, weighted, null);
+	}
+
+	/**
+	 * Returns the slots covering the window that ends at {@code now}, reading coarser
+	 * slots only up to {@code rolledUpUntil}.
+	 * @param window the length of the window
+	 * @param now the end of the window
+	 * @param weighted whether to weight partially overlapping slots
+	 * @param rolledUpUntil the end of the last 1-minute slot rolled up into the coarser
+	 * granularities, or {@code null} if every granularity is written directly
+	 */
+	static WindowSlots of(Duration window, Instant now, boolean weighted, Instant rolledUpUntil) {
+		long end = now.getEpochSecond();
+		long start = end - Math.max(1, window.toSeconds());
+		Granularity[] granularities = Granularity.values();
+		Granularity granularity = granularities[granularities.length - 1];
+		for (Granularity candidate : granularities) {
+			long slotSeconds = candidate.slotDuration().toSeconds();
+			long slotCount = Math.floorDiv(end, slotSeconds) - Math.floorDiv(start, slotSeconds) + 1;
+			if (slotCount <= MAX_SLOTS) {
+				granularity = candidate;
+				break;
+			}
+		}
+		List<Slot> slots = new ArrayList<>();
+		if (rolledUpUntil == null || granularity == Granularity.ONE_MINUTE || rolledUpUntil.getEpochSecond() >= end) {
+			addSlots(slots, granularity, start, end, true, weighted);
+		}
+		else {
+			long minuteSeconds = Granularity.ONE_MINUTE.slotDuration().toSeconds();
+			long rolledUpEnd = rolledUpUntil.getEpochSecond();
+			if (rolledUpEnd > start) {
+				addSlots(slots, granularity, start, rolledUpEnd, false, weighted);
+			}
+			// If the rollup lags far behind, the slots between the rolled-up ones and
+			// the last MAX_SLOTS minutes are not read
+			long minuteStart = Math.max(Math.max(start, rolledUpEnd),
+					(Math.floorDiv(end, minuteSeconds) - (MAX_SLOTS - 1)) * minuteSeconds);
+			addSlots(slots, Granularity.ONE_MINUTE, minuteStart, end, true, weighted);
+		}
+		return new WindowSlots(granularity, List.copyOf(slots));
+	}
+
+	/**
+	 * Adds the slots of a granularity overlapping {@code [start, end]}. If {@code open},
+	 * the slot starting at {@code end} is the current one and is included; otherwise
+	 * {@code end} is the end of the data held by the slots.
+	 */
+	private static void addSlots(List<Slot> slots, Granularity granularity, long start, long end, boolean open,
+			boolean weighted) {
+		long slotSeconds = granularity.slotDuration().toSeconds();
+		for (long slotStart = Math.floorDiv(start, slotSeconds) * slotSeconds; (open) ? slotStart <= end
+				: slotStart < end; slotStart += slotSeconds) {
+			long observedEnd = Math.min(slotStart + slotSeconds, end);
+			long overlap = observedEnd - Math.max(slotStart, start);
+			long observed = observedEnd - slotStart;
+			double weight;
+			if (observed <= 0) {
+				// The current slot has just started; it can only hold requests of now
+				weight = 1.0;
+			}
+			else if (overlap <= 0) {
+				continue;
+			}
+			else {
+				weight = weighted ? Math.min(1.0, (double) overlap / observed) : 1.0;
+			}
+			Instant instant = Instant.ofEpochSecond(slotStart);
+			slots.add(new Slot(granularity, granularity.format(instant), weight));
+		}
+	}
+
+	/**
+	 * Returns the formatted timestamps of the slots.
+	 */
+	List<String> timestamps() {
+		return this.slots.stream().map(Slot::timestamp).toList();
+	}
+
+	/**
+	 * Returns the formatted timestamps of the slots by granularity.
+	 */
+	Map<Granularity, List<String>> timestampsByGranularity() {
+		Map<Granularity, List<String>> timestamps = new EnumMap<>(Granularity.class);
+		for (Slot slot : this.slots) {
+			timestamps.computeIfAbsent(slot.granularity(), key -> new ArrayList<>()).add(slot.timestamp());
+		}
+		return timestamps;
+	}
+
+	/**
+	 * A slot and its weight within the window.
+	 *
+	 * @param granularity the granularity of the slot
+	 * @param timestamp the formatted slot timestamp (see {@link Granularity#format})
+	 * @param weight the share of the slot's requests that fall into the window
+	 */
+	record Slot(Granularity granularity, String timestamp, double weight) {
+	}
+
+}
@@ -1,18 +1,19 @@
 package am.ik.accessmonitor.blacklist;
 
 import java.time.InstantSource;
+import java.util.Set;
 
 import am.ik.accessmonitor.AccessMonitorProperties;
 import am.ik.accessmonitor.InstanceId;
 import am.ik.accessmonitor.aggregation.Granularity;
+import am.ik.accessmonitor.aggregation.ValkeyKeyBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.data.redis.core.Cursor;
-import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -53,8 +54,8 @@ public class BlacklistEvaluator {
 	}
 
 	/**
-	 * Scans Valkey for disallowed host access counts that exceed the configured
-	 * threshold.
+	 * Reads the client IPs whose disallowed host access count in the current slot reaches
+	 * the configured threshold.
 	 */
 	@Scheduled(fixedDelayString = "${access-monitor.blacklist.evaluation-interval}")
 	public void evaluate() {
@@ -65,38 +66,29 @@ public class BlacklistEvaluator {
 		}
 		Granularity granularity = Granularity.fromWindow(this.blacklistProperties.window());
 		String ts = granularity.format(this.instantSource.instant());
-		String pattern = "access:disallowed-host:cnt:" + granularity.label() + ":" + ts + ":*";
-
-		ScanOptions scanOptions = ScanOptions.scanOptions().match(pattern).count(100).build();
-
-		try (Cursor<String> cursor = this.redisTemplate.scan(scanOptions)) {
-			while (cursor.hasNext()) {
-				String key = cursor.next();
-				String value = this.redisTemplate.opsForValue().get(key);
-				if (value == null) {
-					continue;
-				}
-
-				long requestCount = Long.parseLong(value);
-				if (requestCount >= this.blacklistProperties.threshold()) {
-					String clientIp = extractClientIp(key);
-					if (this.cooldownManager.canFire(clientIp, this.blacklistProperties.cooldown())) {
-						log.warn(
-								"msg=\"Blacklist candidate detected\" clientIp={} requestCount={} window={} threshold={}",
-								clientIp, requestCount, this.blacklistProperties.window(),
-								this.blacklistProperties.threshold());
-						this.cooldownManager.recordFiring(clientIp);
-						this.blacklistActionPublisher.ifAvailable(publisher -> publisher.publish(clientIp));
-					}
-				}
+		String key = ValkeyKeyBuilder.disallowedHostClientsKey(granularity, ts);
+
+		// Only the clients at or above the threshold are returned, so the cost of a pass
+		// grows with the number of offenders rather than with the number of clients
+		Set<TypedTuple<String>> candidates = this.redisTemplate.opsForZSet()
+			.rangeByScoreWithScores(key, this.blacklistProperties.threshold(), Double.POSITIVE_INFINITY);
+		if (candidates == null) {
+			return;
+		}
+		for (TypedTuple<String> candidate : candidates) {
+			String clientIp = candidate.getValue();
+			long requestCount = (candidate.getScore() != null) ? candidate.getScore().longValue() : 0;
+			if (clientIp == null) {
+				continue;
+			}
+			if (this.cooldownManager.canFire(clientIp, this.blacklistProperties.cooldown())) {
+				log.warn("msg=\"Blacklist candidate detected\" clientIp={} requestCount={} window={} threshold={}",
+						clientIp, requestCount, this.blacklistProperties.window(),
+						this.blacklistProperties.threshold());
+				this.cooldownManager.recordFiring(clientIp);
+				this.blacklistActionPublisher.ifAvailable(publisher -> publisher.publish(clientIp));
 			}
 		}
 	}
 
-	private String extractClientIp(String key) {
-		// Key format: access:disallowed-host:cnt:{granularity}:{timestamp}:{clientIp}
-		int lastColon = key.lastIndexOf(':');
-		return key.substring(lastColon + 1);
-	}
-
 }
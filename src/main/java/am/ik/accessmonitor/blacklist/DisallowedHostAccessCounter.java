@@ -1,24 +1,40 @@
 package am.ik.accessmonitor.blacklist;
 
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import am.ik.accessmonitor.AccessMonitorProperties;
 import am.ik.accessmonitor.aggregation.Granularity;
 import am.ik.accessmonitor.aggregation.ValkeyKeyBuilder;
+import am.ik.accessmonitor.aggregation.ValkeyScripts;
 import am.ik.accessmonitor.event.AccessEvent;
 
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
 /**
  * Counts disallowed host accesses per client IP in Valkey. Only increments when the
- * request host is not in the configured allowed hosts list. Uses 1-minute and 5-minute
- * granularity with a fixed 1-hour TTL.
+ * request host is not in the configured allowed hosts list. The counts of a time slot are
+ * held as the scores of a single sorted set (see
+ * {@link ValkeyKeyBuilder#disallowedHostClientsKey}), so that the clients above a
+ * threshold can be read with one range query. Uses 1-minute and 5-minute granularity with
+ * a fixed 1-hour TTL, which is set when a sorted set is created.
  */
 @Component
 public class DisallowedHostAccessCounter {
 
 	private static final long DISALLOWED_HOST_TTL_SECONDS = 3600;
 
+	/**
+	 * Maximum number of client IPs kept per sorted set. When exceeded, the clients with
+	 * the fewest accesses, which are furthest from any threshold, are removed.
+	 */
+	private static final int MAX_CLIENTS = 100_000;
+
 	private static final Granularity[] GRANULARITIES = { Granularity.ONE_MINUTE, Granularity.FIVE_MINUTES };
 
 	private final StringRedisTemplate redisTemplate;
@@ -39,15 +55,44 @@ public class DisallowedHostAccessCounter {
 			return;
 		}
 
-		this.redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
+		ValkeyScripts.executePipelined(this.redisTemplate, (RedisCallback<Object>) (connection) -> {
+			increment(List.of(event), connection);
+			return null;
+		});
+	}
+
+	/**
+	 * Appends the disallowed host access count increments for a batch of events to the
+	 * given connection. Increments of the same time slot are sent as a single command,
+	 * with the increments of the same client IP merged.
+	 * @param events the events to count
+	 * @param connection an open (typically pipelined) connection
+	 */
+	public void increment(List<AccessEvent> events, RedisConnection connection) {
+		Map<String, Map<String, Long>> counts = new LinkedHashMap<>();
+		for (AccessEvent event : events) {
+			if (this.allowedHostMatcher.isAllowed(event.host())) {
+				continue;
+			}
 			for (Granularity granularity : GRANULARITIES) {
 				String ts = granularity.format(event.timestamp());
-				String key = ValkeyKeyBuilder.disallowedHostCountKey(granularity, ts, event.clientIp());
-				connection.stringCommands().incr(key.getBytes());
-				connection.keyCommands().expire(key.getBytes(), DISALLOWED_HOST_TTL_SECONDS);
+				String key = ValkeyKeyBuilder.disallowedHostClientsKey(granularity, ts);
+				counts.computeIfAbsent(key, k -> new LinkedHashMap<>()).merge(event.clientIp(), 1L, Long::sum);
 			}
-			return null;
-		});
+		}
+		if (counts.isEmpty()) {
+			return;
+		}
+		for (Map.Entry<String, Map<String, Long>> entry : counts.entrySet()) {
+			byte[][] membersAndIncrements = new byte[entry.getValue().size() * 2][];
+			int i = 0;
+			for (Map.Entry<String, Long> client : entry.getValue().entrySet()) {
+				membersAndIncrements[i++] = client.getKey().getBytes(StandardCharsets.UTF_8);
+				membersAndIncrements[i++] = Long.toString(client.getValue()).getBytes(StandardCharsets.UTF_8);
+			}
+			ValkeyScripts.incrementTopK(connection, entry.getKey().getBytes(StandardCharsets.UTF_8),
+					membersAndIncrements, DISALLOWED_HOST_TTL_SECONDS, MAX_CLIENTS);
+		}
 	}
 
 }
@@ -8,8 +8,12 @@ import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+import org.springframework.amqp.rabbit.retry.RepublishMessageRecoverer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -21,6 +25,11 @@ import org.springframework.context.annotation.Configuration;
 @Configuration(proxyBeanMethods = false)
 public class RabbitMqTopologyConfig {
 
+	/**
+	 * Queue name for aggregation messages that could not be aggregated.
+	 */
+	public static final String AGGREGATION_DEAD_LETTER_QUEUE = "aggregation_dlq";
+
 	/**
 	 * Queue name for blacklist action messages.
 	 */
@@ -52,6 +61,15 @@ public class RabbitMqTopologyConfig {
 		return new Queue("aggregation_queue", true, false, false);
 	}
 
+	/**
+	 * Durable queue holding aggregation messages moved aside by the
+	 * {@link #aggregationMessageRecoverer aggregation message recoverer}, for inspection.
+	 */
+	@Bean
+	Queue aggregationDeadLetterQueue() {
+		return new Queue(AGGREGATION_DEAD_LETTER_QUEUE, true, false, false);
+	}
+
 	/**
 	 * Topic exchange for blacklist action messages.
 	 */
@@ -112,4 +130,43 @@ public class RabbitMqTopologyConfig {
 		return factory;
 	}
 
+	/**
+	 * Recoverer that republishes aggregation messages, with the exception that caused
+	 * them to be given up on in their headers, to the
+	 * {@value #AGGREGATION_DEAD_LETTER_QUEUE} queue through the default exchange.
+	 */
+	@Bean
+	MessageBatchRecoverer aggregationMessageRecoverer(RabbitTemplate rabbitTemplate) {
+		RepublishMessageRecoverer recoverer = new RepublishMessageRecoverer(rabbitTemplate, "",
+				AGGREGATION_DEAD_LETTER_QUEUE);
+		return (messages, cause) -> messages.forEach(message -> recoverer.recover(message, cause));
+	}
+
+	/**
+	 * Listener container factory for the batch aggregation consumer. Delivers up to
+	 * {@code access-monitor.aggregation.batch.size} messages to a single listener
+	 * invocation, waiting at most {@code receive-timeout} for a batch to fill up. A
+	 * failed batch is retried in place up to {@code max-retries} times and then moved to
+	 * the dead letter queue, so that a batch that keeps failing does not block the queue.
+	 */
+	@Bean
+	SimpleRabbitListenerContainerFactory aggregationBatchListenerContainerFactory(ConnectionFactory connectionFactory,
+			AccessMonitorProperties properties, MessageBatchRecoverer aggregationMessageRecoverer) {
+		AccessMonitorProperties.AggregationProperties aggregation = properties.aggregation();
+		SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+		factory.setConnectionFactory(connectionFactory);
+		factory.setPrefetchCount(Math.max(aggregation.prefetchCount(), aggregation.batch().size()));
+		factory.setBatchListener(true);
+		factory.setConsumerBatchEnabled(true);
+		factory.setBatchSize(aggregation.batch().size());
+		factory.setReceiveTimeout(aggregation.batch().receiveTimeout().toMillis());
+		long retryDelay = aggregation.batch().retryDelay().toMillis();
+		factory.setAdviceChain(RetryInterceptorBuilder.stateless()
+			.maxRetries(aggregation.batch().maxRetries())
+			.backOffOptions(retryDelay, 1.0, retryDelay)
+			.recoverer(aggregationMessageRecoverer)
+			.build());
+		return factory;
+	}
+
 }
@@ -1,13 +1,37 @@
 package am.ik.accessmonitor.config;
 
+import am.ik.accessmonitor.aggregation.ValkeyScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
 /**
  * Valkey (Redis) configuration. Relies on Spring Boot auto-configuration for
- * {@code StringRedisTemplate} via {@code spring.data.redis.*} properties. This class
- * serves as an extension point for future customizations.
+ * {@code StringRedisTemplate} via {@code spring.data.redis.*} properties.
  */
 @Configuration(proxyBeanMethods = false)
 public class ValkeyConfig {
 
+	private static final Logger log = LoggerFactory.getLogger(ValkeyConfig.class);
+
+	/**
+	 * Loads the {@link ValkeyScripts} once before the consumers start. If Valkey is not
+	 * available yet, the scripts are loaded on the first NOSCRIPT reply instead.
+	 */
+	@Bean
+	SmartInitializingSingleton valkeyScriptsLoader(StringRedisTemplate redisTemplate) {
+		return () -> {
+			try {
+				ValkeyScripts.load(redisTemplate);
+			}
+			catch (RuntimeException ex) {
+				log.warn("Failed to load Valkey scripts, they will be loaded on first use", ex);
+			}
+		};
+	}
+
 }
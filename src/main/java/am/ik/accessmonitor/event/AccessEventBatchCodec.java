@@ -0,0 +1,552 @@
+package am.ik.accessmonitor.event;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes and decodes batches of already decoded {@link AccessEvent} instances, which are
+ * published instead of OTLP protobuf messages so that the OTLP payload is decoded only
+ * once at ingest time and the attribute keys repeated by every OTLP log record are not
+ * sent through the broker.
+ * <p>
+ * Batches are encoded in the columnar format (version 2). Numbers are varints, signed
+ * numbers are zigzag encoded:
+ *
+ * <pre>
+ * magic 'A' 'E', version (1 byte), flags (1 byte), event count
+ * JSON section, if flag {@code 0x01} is set: byte length of the section, then the JSON
+ *   representation of each event as a string
+ * dictionary: entry count, entries as strings
+ * one column per field, holding the value of every event:
+ *   timestamp: seconds and nanos, each as the delta to the previous event (signed)
+ *   host, path, method, scheme, protocol, service name, router name:
+ *     dictionary index + 1 ({@code 0} for {@code null})
+ *   status code, duration, origin status code, origin duration, overhead,
+ *   retry attempts (signed)
+ *   client IP, trace ID, span ID: strings
+ * </pre>
+ *
+ * A string is written as a header followed by its bytes: {@code 0} for {@code null},
+ * {@code (length << 1) | 1} for a lowercase hexadecimal string packed into {@code length}
+ * bytes, e.g. trace and span IDs, or {@code (length + 1) << 1} for {@code length} UTF-8
+ * bytes.
+ * <p>
+ * The JSON section carries the representation of each event pre-rendered for SSE clients,
+ * so that the SSE consumer of every instance broadcasts it without serializing the events
+ * again. It precedes the columns so that it can be read without decoding them, and its
+ * length lets the events be decoded without reading it.
+ * <p>
+ * Batches of the row format (version 1) published by earlier versions are still decoded.
+ * They store each event as a record of fixed-width big-endian numbers and strings
+ * prefixed by their length ({@code -1} for {@code null}), always followed by the JSON
+ * section; the offset of the JSON section is stored after the event count.
+ */
+public final class AccessEventBatchCodec {
+
+	/**
+	 * Media type of messages holding an encoded batch of any version.
+	 */
+	public static final String MEDIA_TYPE = "application/vnd.access-monitor.event-batch";
+
+	/**
+	 * Content type of messages holding a batch encoded by {@link #encode(List)}.
+	 */
+	public static final String CONTENT_TYPE = MEDIA_TYPE + ";version=2";
+
+	private static final byte MAGIC_0 = 'A';
+
+	private static final byte MAGIC_1 = 'E';
+
+	private static final byte ROW_VERSION = 1;
+
+	private static final byte COLUMNAR_VERSION = 2;
+
+	private static final int ROW_HEADER_SIZE = 11;
+
+	private static final int COLUMNAR_HEADER_SIZE = 4;
+
+	private static final int FLAG_JSON = 0x01;
+
+	private static final int DICTIONARY_COLUMNS = 7;
+
+	private static final int NUMBER_COLUMNS = 6;
+
+	private static final int STRING_COLUMNS = 3;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private AccessEventBatchCodec() {
+	}
+
+	/**
+	 * Returns whether a content type denotes an access event batch of any version.
+	 */
+	public static boolean isEventBatch(String contentType) {
+		return contentType != null && contentType.startsWith(MEDIA_TYPE)
+				&& (contentType.length() == MEDIA_TYPE.length() || contentType.charAt(MEDIA_TYPE.length()) == ';');
+	}
+
+	/**
+	 * Encodes a batch of events in the columnar format without a JSON section.
+	 * @param events the events
+	 * @return the encoded batch
+	 */
+	public static byte[] encode(List<AccessEvent> events) {
+		return encode(events, null);
+	}
+
+	/**
+	 * Encodes a batch of events in the columnar format.
+	 * @param events the events
+	 * @param json the JSON representation of each event, in the order of the events, or
+	 * {@code null} to omit the JSON section
+	 * @return the encoded batch
+	 */
+	public static byte[] encode(List<AccessEvent> events, List<String> json) {
+		if (json != null && events.size() != json.size()) {
+			throw new IllegalArgumentException("Expected one JSON string per event but got %d for %d events"
+				.formatted(json.size(), events.size()));
+		}
+		int count = events.size();
+		Map<String, Integer> indexes = new HashMap<>();
+		List<String> dictionary = new ArrayList<>();
+		int[][] ids = new int[DICTIONARY_COLUMNS][count];
+		for (int i = 0; i < count; i++) {
+			AccessEvent event = events.get(i);
+			ids[0][i] = dictionaryId(event.host(), indexes, dictionary);
+			ids[1][i] = dictionaryId(event.path(), indexes, dictionary);
+			ids[2][i] = dictionaryId(event.method(), indexes, dictionary);
+			ids[3][i] = dictionaryId(event.scheme(), indexes, dictionary);
+			ids[4][i] = dictionaryId(event.protocol(), indexes, dictionary);
+			ids[5][i] = dictionaryId(event.serviceName(), indexes, dictionary);
+			ids[6][i] = dictionaryId(event.routerName(), indexes, dictionary);
+		}
+		Writer out = new Writer(16 + count * 96);
+		out.writeByte(MAGIC_0);
+		out.writeByte(MAGIC_1);
+		out.writeByte(COLUMNAR_VERSION);
+		out.writeByte((json != null) ? FLAG_JSON : 0);
+		out.writeVarint(count);
+		if (json != null) {
+			Writer section = new Writer(count * 256);
+			for (String value : json) {
+				section.writeString(value);
+			}
+			out.writeVarint(section.position);
+			out.writeBytes(section.buffer, section.position);
+		}
+		out.writeVarint(dictionary.size());
+		for (String entry : dictionary) {
+			out.writeString(entry);
+		}
+		long previousSeconds = 0;
+		for (AccessEvent event : events) {
+			out.writeSigned(event.timestamp().getEpochSecond() - previousSeconds);
+			previousSeconds = event.timestamp().getEpochSecond();
+		}
+		int previousNanos = 0;
+		for (AccessEvent event : events) {
+			out.writeSigned(event.timestamp().getNano() - previousNanos);
+			previousNanos = event.timestamp().getNano();
+		}
+		for (int[] column : ids) {
+			for (int id : column) {
+				out.writeVarint(id);
+			}
+		}
+		for (AccessEvent event : events) {
+			out.writeSigned(event.statusCode());
+		}
+		for (AccessEvent event : events) {
+			out.writeSigned(event.durationNs());
+		}
+		for (AccessEvent event : events) {
+			out.writeSigned(event.originStatusCode());
+		}
+		for (AccessEvent event : events) {
+			out.writeSigned(event.originDurationNs());
+		}
+		for (AccessEvent event : events) {
+			out.writeSigned(event.overheadNs());
+		}
+		for (AccessEvent event : events) {
+			out.writeSigned(event.retryAttempts());
+		}
+		for (AccessEvent event : events) {
+			out.writeString(event.clientIp());
+		}
+		for (AccessEvent event : events) {
+			out.writeString(event.traceId());
+		}
+		for (AccessEvent event : events) {
+			out.writeString(event.spanId());
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes the events of a batch of any version.
+	 * @throws IllegalArgumentException if the message is not a valid batch
+	 */
+	public static List<AccessEvent> decodeEvents(byte[] message) {
+		byte version = version(message);
+		try {
+			if (version == ROW_VERSION) {
+				return decodeRows(new Reader(message, ROW_HEADER_SIZE), new Reader(message, 3).readInt());
+			}
+			return decodeColumns(new Reader(message, COLUMNAR_HEADER_SIZE), (message[3] & FLAG_JSON) != 0);
+		}
+		catch (IndexOutOfBoundsException ex) {
+			throw new IllegalArgumentException("Truncated access event batch", ex);
+		}
+		catch (DateTimeException ex) {
+			throw new IllegalArgumentException("Invalid timestamp in access event batch", ex);
+		}
+	}
+
+	/**
+	 * Returns whether a batch carries the pre-rendered JSON representation of its events,
+	 * which is always the case for the row format and for columnar batches encoded with
+	 * JSON.
+	 * @throws IllegalArgumentException if the message is not a valid batch
+	 */
+	public static boolean hasJson(byte[] message) {
+		return version(message) == ROW_VERSION || (message[3] & FLAG_JSON) != 0;
+	}
+
+	/**
+	 * Decodes the pre-rendered JSON representations of the events of a batch, skipping
+	 * the events.
+	 * @throws IllegalArgumentException if the message is not a valid batch or does not
+	 * carry JSON (see {@link #hasJson})
+	 */
+	public static List<String> decodeJson(byte[] message) {
+		if (!hasJson(message)) {
+			throw new IllegalArgumentException("Access event batch does not carry JSON");
+		}
+		try {
+			if (version(message) == ROW_VERSION) {
+				Reader header = new Reader(message, 3);
+				int count = header.readInt();
+				Reader in = new Reader(message, header.readInt());
+				List<String> json = new ArrayList<>(Math.clamp(count, 0, message.length));
+				for (int i = 0; i < count; i++) {
+					json.add(in.readFixedString());
+				}
+				return json;
+			}
+			Reader in = new Reader(message, COLUMNAR_HEADER_SIZE);
+			int count = in.readCount();
+			// Byte length of the JSON section
+			in.readCount();
+			List<String> json = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				json.add(in.readString());
+			}
+			return json;
+		}
+		catch (IndexOutOfBoundsException ex) {
+			throw new IllegalArgumentException("Truncated access event batch", ex);
+		}
+	}
+
+	private static List<AccessEvent> decodeColumns(Reader in, boolean json) {
+		int count = in.readCount();
+		if (json) {
+			in.skip(in.readCount());
+		}
+		String[] dictionary = new String[in.readCount() + 1];
+		for (int i = 1; i < dictionary.length; i++) {
+			dictionary[i] = in.readString();
+		}
+		long[] seconds = new long[count];
+		long previousSeconds = 0;
+		for (int i = 0; i < count; i++) {
+			previousSeconds += in.readSigned();
+			seconds[i] = previousSeconds;
+		}
+		long[] nanos = new long[count];
+		long previousNanos = 0;
+		for (int i = 0; i < count; i++) {
+			previousNanos += in.readSigned();
+			nanos[i] = previousNanos;
+		}
+		String[][] values = new String[DICTIONARY_COLUMNS][count];
+		for (String[] column : values) {
+			for (int i = 0; i < count; i++) {
+				long id = in.readVarint();
+				if (id < 0 || id >= dictionary.length) {
+					throw new IllegalArgumentException("Invalid dictionary index in access event batch: " + id);
+				}
+				column[i] = dictionary[(int) id];
+			}
+		}
+		long[][] numbers = new long[NUMBER_COLUMNS][count];
+		for (long[] column : numbers) {
+			for (int i = 0; i < count; i++) {
+				column[i] = in.readSigned();
+			}
+		}
+		String[][] strings = new String[STRING_COLUMNS][count];
+		for (String[] column : strings) {
+			for (int i = 0; i < count; i++) {
+				column[i] = in.readString();
+			}
+		}
+		List<AccessEvent> events = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			events.add(new AccessEvent(Instant.ofEpochSecond(seconds[i], nanos[i]), values[0][i], values[1][i],
+					values[2][i], (int) numbers[0][i], numbers[1][i], strings[0][i], values[3][i], values[4][i],
+					values[5][i], values[6][i], (int) numbers[2][i], numbers[3][i], numbers[4][i], strings[1][i],
+					strings[2][i], (int) numbers[5][i]));
+		}
+		return events;
+	}
+
+	private static List<AccessEvent> decodeRows(Reader in, int count) {
+		List<AccessEvent> events = new ArrayList<>(Math.clamp(count, 0, in.remaining()));
+		for (int i = 0; i < count; i++) {
+			Instant timestamp = Instant.ofEpochSecond(in.readLong(), in.readInt());
+			String host = in.readFixedString();
+			String path = in.readFixedString();
+			String method = in.readFixedString();
+			int statusCode = in.readInt();
+			long durationNs = in.readLong();
+			String clientIp = in.readFixedString();
+			String scheme = in.readFixedString();
+			String protocol = in.readFixedString();
+			String serviceName = in.readFixedString();
+			String routerName = in.readFixedString();
+			int originStatusCode = in.readInt();
+			long originDurationNs = in.readLong();
+			long overheadNs = in.readLong();
+			String traceId = in.readFixedString();
+			String spanId = in.readFixedString();
+			int retryAttempts = in.readInt();
+			events.add(new AccessEvent(timestamp, host, path, method, statusCode, durationNs, clientIp, scheme,
+					protocol, serviceName, routerName, originStatusCode, originDurationNs, overheadNs, traceId, spanId,
+					retryAttempts));
+		}
+		return events;
+	}
+
+	private static byte version(byte[] message) {
+		if (message.length < 3 || message[0] != MAGIC_0 || message[1] != MAGIC_1) {
+			throw new IllegalArgumentException("Not an access event batch");
+		}
+		byte version = message[2];
+		if (version != ROW_VERSION && version != COLUMNAR_VERSION) {
+			throw new IllegalArgumentException("Unsupported access event batch version: " + version);
+		}
+		if (message.length < ((version == ROW_VERSION) ? ROW_HEADER_SIZE : COLUMNAR_HEADER_SIZE)) {
+			throw new IllegalArgumentException("Truncated access event batch");
+		}
+		return version;
+	}
+
+	private static int dictionaryId(String value, Map<String, Integer> indexes, List<String> dictionary) {
+		if (value == null) {
+			return 0;
+		}
+		Integer index = indexes.get(value);
+		if (index == null) {
+			dictionary.add(value);
+			index = dictionary.size();
+			indexes.put(value, index);
+		}
+		return index;
+	}
+
+	private static boolean isLowerHex(String value) {
+		if (value.isEmpty() || (value.length() & 1) != 0) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Growable output buffer.
+	 */
+	private static final class Writer {
+
+		private byte[] buffer;
+
+		private int position;
+
+		Writer(int capacity) {
+			this.buffer = new byte[capacity];
+		}
+
+		void writeByte(int value) {
+			ensureCapacity(1);
+			this.buffer[this.position++] = (byte) value;
+		}
+
+		void writeVarint(long value) {
+			ensureCapacity(10);
+			while ((value & ~0x7FL) != 0) {
+				this.buffer[this.position++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			this.buffer[this.position++] = (byte) value;
+		}
+
+		void writeSigned(long value) {
+			writeVarint((value << 1) ^ (value >> 63));
+		}
+
+		void writeString(String value) {
+			if (value == null) {
+				writeVarint(0);
+			}
+			else if (isLowerHex(value)) {
+				int length = value.length() / 2;
+				writeVarint(((long) length << 1) | 1);
+				ensureCapacity(length);
+				for (int i = 0; i < value.length(); i += 2) {
+					this.buffer[this.position++] = (byte) ((Character.digit(value.charAt(i), 16) << 4)
+							| Character.digit(value.charAt(i + 1), 16));
+				}
+			}
+			else {
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				writeVarint(((long) bytes.length + 1) << 1);
+				ensureCapacity(bytes.length);
+				System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+				this.position += bytes.length;
+			}
+		}
+
+		void writeBytes(byte[] bytes, int length) {
+			ensureCapacity(length);
+			System.arraycopy(bytes, 0, this.buffer, this.position, length);
+			this.position += length;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(this.buffer, this.position);
+		}
+
+		private void ensureCapacity(int length) {
+			if (this.position + length > this.buffer.length) {
+				this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.position + length));
+			}
+		}
+
+	}
+
+	/**
+	 * Input cursor over an encoded batch. Reading past the end throws
+	 * {@link IndexOutOfBoundsException}.
+	 */
+	private static final class Reader {
+
+		private final byte[] buffer;
+
+		private int position;
+
+		Reader(byte[] buffer, int position) {
+			this.buffer = buffer;
+			this.position = position;
+		}
+
+		int remaining() {
+			return this.buffer.length - this.position;
+		}
+
+		long readVarint() {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = this.buffer[this.position++];
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IllegalArgumentException("Malformed varint in access event batch");
+		}
+
+		long readSigned() {
+			long value = readVarint();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		/**
+		 * Reads the number of elements that follow. Every element takes at least one
+		 * byte, so a corrupt count cannot allocate more than the size of the message.
+		 */
+		int readCount() {
+			return checkLength(readVarint());
+		}
+
+		void skip(int length) {
+			this.position += checkLength(length);
+		}
+
+		String readString() {
+			long header = readVarint();
+			if (header == 0) {
+				return null;
+			}
+			if ((header & 1) != 0) {
+				int length = checkLength(header >>> 1);
+				char[] chars = new char[length * 2];
+				for (int i = 0; i < length; i++) {
+					int b = this.buffer[this.position++] & 0xFF;
+					chars[i * 2] = HEX[b >>> 4];
+					chars[i * 2 + 1] = HEX[b & 0x0F];
+				}
+				return new String(chars);
+			}
+			int length = checkLength((header >>> 1) - 1);
+			String value = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+			this.position += length;
+			return value;
+		}
+
+		int readInt() {
+			checkLength(4);
+			int value = ((this.buffer[this.position] & 0xFF) << 24) | ((this.buffer[this.position + 1] & 0xFF) << 16)
+					| ((this.buffer[this.position + 2] & 0xFF) << 8) | (this.buffer[this.position + 3] & 0xFF);
+			this.position += 4;
+			return value;
+		}
+
+		long readLong() {
+			return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+		}
+
+		String readFixedString() {
+			int length = readInt();
+			if (length < 0) {
+				return null;
+			}
+			checkLength(length);
+			String value = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+			this.position += length;
+			return value;
+		}
+
+		private int checkLength(long length) {
+			if (length < 0 || length > remaining()) {
+				throw new IndexOutOfBoundsException(
+						"Length %d exceeds the remaining %d bytes".formatted(length, remaining()));
+			}
+			return (int) length;
+		}
+
+	}
+
+}
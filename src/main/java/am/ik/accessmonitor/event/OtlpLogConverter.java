@@ -15,14 +15,19 @@ import io.opentelemetry.proto.logs.v1.ScopeLogs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 /**
  * Converts OTLP protobuf log messages to {@link AccessEvent} instances. Parses
  * {@link ExportLogsServiceRequest} from raw bytes and extracts Traefik attributes from
  * log record attributes.
+ * <p>
+ * Replaced by {@link StreamingOtlpLogConverter} when
+ * {@code access-monitor.otlp.streaming-decoder} is {@code true}.
  */
 @Component
+@ConditionalOnProperty(name = "access-monitor.otlp.streaming-decoder", havingValue = "false", matchIfMissing = true)
 public class OtlpLogConverter {
 
 	private static final Logger log = LoggerFactory.getLogger(OtlpLogConverter.class);
@@ -40,9 +45,20 @@ public class OtlpLogConverter {
 	 * @return list of converted access events
 	 */
 	public List<AccessEvent> convert(byte[] message) {
+		return convert(message, message.length);
+	}
+
+	/**
+	 * Converts the first {@code length} bytes of a buffer holding raw OTLP protobuf bytes
+	 * to a list of AccessEvent instances.
+	 * @param message buffer holding the raw protobuf bytes from its start
+	 * @param length number of bytes of the message
+	 * @return list of converted access events
+	 */
+	public List<AccessEvent> convert(byte[] message, int length) {
 		ExportLogsServiceRequest request;
 		try {
-			request = ExportLogsServiceRequest.parseFrom(message);
+			request = ExportLogsServiceRequest.parser().parseFrom(message, 0, length);
 		}
 		catch (InvalidProtocolBufferException ex) {
 			log.error("Failed to parse OTLP protobuf message", ex);
@@ -109,14 +125,18 @@ public class OtlpLogConverter {
 			}
 		}
 
-		Instant timestamp = parseTimestamp(startUtc, logRecord);
+		Instant timestamp = parseTimestamp(startUtc, logRecord.getTimeUnixNano());
 
 		return new AccessEvent(timestamp, host, path, method, statusCode, durationNs, clientIp, scheme, protocol,
 				serviceName, routerName, originStatusCode, originDurationNs, overheadNs, traceId, spanId,
 				retryAttempts);
 	}
 
-	private Instant parseTimestamp(String startUtc, LogRecord logRecord) {
+	/**
+	 * Resolves the event timestamp from the {@code StartUTC} attribute, falling back to
+	 * the log record time and finally to the current time.
+	 */
+	Instant parseTimestamp(String startUtc, long timeUnixNano) {
 		if (!startUtc.isEmpty()) {
 			try {
 				return Instant.parse(startUtc);
@@ -125,7 +145,6 @@ public class OtlpLogConverter {
 				log.debug("Failed to parse StartUTC '{}', falling back to timeUnixNano", startUtc);
 			}
 		}
-		long timeUnixNano = logRecord.getTimeUnixNano();
 		if (timeUnixNano > 0) {
 			return Instant.ofEpochSecond(timeUnixNano / 1_000_000_000L, timeUnixNano % 1_000_000_000L);
 		}
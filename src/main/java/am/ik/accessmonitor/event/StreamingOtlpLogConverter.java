@@ -0,0 +1,395 @@
+package am.ik.accessmonitor.event;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.InstantSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link OtlpLogConverter} that walks the protobuf wire format of an
+ * {@code ExportLogsServiceRequest} with a {@link CodedInputStream} instead of
+ * materializing the message. Attribute keys are matched by comparing their bytes in
+ * place, unknown fields are skipped without allocation, and strings are only decoded for
+ * the Traefik attributes that end up in an {@link AccessEvent}.
+ * <p>
+ * Produces the same events as {@link OtlpLogConverter} for valid messages. Unlike the
+ * generated parser, it does not validate the UTF-8 encoding of fields it skips.
+ */
+@Component
+@ConditionalOnProperty(name = "access-monitor.otlp.streaming-decoder", havingValue = "true")
+public class StreamingOtlpLogConverter extends OtlpLogConverter {
+
+	private static final Logger log = LoggerFactory.getLogger(StreamingOtlpLogConverter.class);
+
+	// ExportLogsServiceRequest.resource_logs = 1
+	private static final int RESOURCE_LOGS_TAG = lengthDelimitedTag(1);
+
+	// ResourceLogs.scope_logs = 2
+	private static final int SCOPE_LOGS_TAG = lengthDelimitedTag(2);
+
+	// ScopeLogs.log_records = 2
+	private static final int LOG_RECORDS_TAG = lengthDelimitedTag(2);
+
+	// LogRecord.time_unix_nano = 1
+	private static final int TIME_UNIX_NANO_TAG = tag(1, WireFormat.WIRETYPE_FIXED64);
+
+	// LogRecord.attributes = 6
+	private static final int ATTRIBUTES_TAG = lengthDelimitedTag(6);
+
+	// KeyValue.key = 1
+	private static final int KEY_TAG = lengthDelimitedTag(1);
+
+	// KeyValue.value = 2
+	private static final int VALUE_TAG = lengthDelimitedTag(2);
+
+	// AnyValue.string_value = 1
+	private static final int STRING_VALUE_TAG = lengthDelimitedTag(1);
+
+	// AnyValue.int_value = 3
+	private static final int INT_VALUE_TAG = tag(3, WireFormat.WIRETYPE_VARINT);
+
+	// AnyValue.bool_value = 2
+	private static final int BOOL_VALUE_TAG = tag(2, WireFormat.WIRETYPE_VARINT);
+
+	// AnyValue.double_value = 4
+	private static final int DOUBLE_VALUE_TAG = tag(4, WireFormat.WIRETYPE_FIXED64);
+
+	// AnyValue.array_value = 5
+	private static final int ARRAY_VALUE_TAG = lengthDelimitedTag(5);
+
+	// AnyValue.kvlist_value = 6
+	private static final int KVLIST_VALUE_TAG = lengthDelimitedTag(6);
+
+	// AnyValue.bytes_value = 7
+	private static final int BYTES_VALUE_TAG = lengthDelimitedTag(7);
+
+	private static final int VALUE_NOT_SET = 0;
+
+	private static final int VALUE_STRING = 1;
+
+	private static final int VALUE_INT = 2;
+
+	private static final int VALUE_OTHER = 3;
+
+	private static final String[] ATTRIBUTE_NAMES = { "RequestHost", "RequestPath", "RequestMethod", "DownstreamStatus",
+			"Duration", "StartUTC", "ClientHost", "RequestScheme", "RequestProtocol", "ServiceName", "RouterName",
+			"OriginStatus", "OriginDuration", "Overhead", "TraceId", "SpanId", "RetryAttempts" };
+
+	private static final byte[][] ATTRIBUTE_KEYS = Arrays.stream(ATTRIBUTE_NAMES)
+		.map(name -> name.getBytes(StandardCharsets.UTF_8))
+		.toArray(byte[][]::new);
+
+	public StreamingOtlpLogConverter(InstantSource instantSource) {
+		super(instantSource);
+	}
+
+	@Override
+	public List<AccessEvent> convert(byte[] message, int length) {
+		List<AccessEvent> events = new ArrayList<>();
+		CodedInputStream input = CodedInputStream.newInstance(message, 0, length);
+		RecordState state = new RecordState();
+		try {
+			int tag;
+			while ((tag = input.readTag()) != 0) {
+				if (tag == RESOURCE_LOGS_TAG) {
+					int oldLimit = input.pushLimit(input.readRawVarint32());
+					readResourceLogs(input, message, state, events);
+					input.popLimit(oldLimit);
+				}
+				else {
+					input.skipField(tag);
+				}
+			}
+		}
+		catch (IOException ex) {
+			log.error("Failed to parse OTLP protobuf message", ex);
+			return List.of();
+		}
+		return events;
+	}
+
+	private void readResourceLogs(CodedInputStream input, byte[] message, RecordState state, List<AccessEvent> events)
+			throws IOException {
+		int tag;
+		while ((tag = input.readTag()) != 0) {
+			if (tag == SCOPE_LOGS_TAG) {
+				int oldLimit = input.pushLimit(input.readRawVarint32());
+				readScopeLogs(input, message, state, events);
+				input.popLimit(oldLimit);
+			}
+			else {
+				input.skipField(tag);
+			}
+		}
+	}
+
+	private void readScopeLogs(CodedInputStream input, byte[] message, RecordState state, List<AccessEvent> events)
+			throws IOException {
+		int tag;
+		while ((tag = input.readTag()) != 0) {
+			if (tag == LOG_RECORDS_TAG) {
+				int oldLimit = input.pushLimit(input.readRawVarint32());
+				state.reset();
+				readLogRecord(input, message, state);
+				input.popLimit(oldLimit);
+				events.add(state.toEvent());
+			}
+			else {
+				input.skipField(tag);
+			}
+		}
+	}
+
+	private void readLogRecord(CodedInputStream input, byte[] message, RecordState state) throws IOException {
+		int tag;
+		while ((tag = input.readTag()) != 0) {
+			if (tag == TIME_UNIX_NANO_TAG) {
+				state.timeUnixNano = input.readFixed64();
+			}
+			else if (tag == ATTRIBUTES_TAG) {
+				int oldLimit = input.pushLimit(input.readRawVarint32());
+				readAttribute(input, message, state);
+				input.popLimit(oldLimit);
+			}
+			else {
+				input.skipField(tag);
+			}
+		}
+	}
+
+	private void readAttribute(CodedInputStream input, byte[] message, RecordState state) throws IOException {
+		// The key may follow the value on the wire, so only positions are recorded until
+		// the whole KeyValue has been read
+		int keyOffset = 0;
+		int keyLength = 0;
+		state.valueCase = VALUE_NOT_SET;
+		int tag;
+		while ((tag = input.readTag()) != 0) {
+			if (tag == KEY_TAG) {
+				keyLength = input.readRawVarint32();
+				keyOffset = input.getTotalBytesRead();
+				input.skipRawBytes(keyLength);
+			}
+			else if (tag == VALUE_TAG) {
+				int oldLimit = input.pushLimit(input.readRawVarint32());
+				readValue(input, state);
+				input.popLimit(oldLimit);
+			}
+			else {
+				input.skipField(tag);
+			}
+		}
+		int attribute = attributeIndex(message, keyOffset, keyLength);
+		if (attribute >= 0) {
+			state.apply(attribute, message);
+		}
+	}
+
+	private void readValue(CodedInputStream input, RecordState state) throws IOException {
+		int tag;
+		while ((tag = input.readTag()) != 0) {
+			if (tag == STRING_VALUE_TAG) {
+				state.valueLength = input.readRawVarint32();
+				state.valueOffset = input.getTotalBytesRead();
+				input.skipRawBytes(state.valueLength);
+				state.valueCase = VALUE_STRING;
+			}
+			else if (tag == INT_VALUE_TAG) {
+				state.intValue = input.readInt64();
+				state.valueCase = VALUE_INT;
+			}
+			else {
+				if (isOtherValueTag(tag)) {
+					state.valueCase = VALUE_OTHER;
+				}
+				input.skipField(tag);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the tag is one of the bool, double, array, kvlist or bytes value
+	 * fields, which replace a previously read string or int value of the oneof.
+	 */
+	private static boolean isOtherValueTag(int tag) {
+		return tag == BOOL_VALUE_TAG || tag == DOUBLE_VALUE_TAG || tag == ARRAY_VALUE_TAG || tag == KVLIST_VALUE_TAG
+				|| tag == BYTES_VALUE_TAG;
+	}
+
+	private static int attributeIndex(byte[] message, int offset, int length) {
+		for (int i = 0; i < ATTRIBUTE_KEYS.length; i++) {
+			byte[] key = ATTRIBUTE_KEYS[i];
+			if (key.length == length && Arrays.equals(key, 0, length, message, offset, offset + length)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int lengthDelimitedTag(int fieldNumber) {
+		return tag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+	}
+
+	private static int tag(int fieldNumber, int wireType) {
+		return (fieldNumber << 3) | wireType;
+	}
+
+	/**
+	 * Mutable decoding state of the current log record, reused across records.
+	 */
+	private final class RecordState {
+
+		private int valueCase;
+
+		private int valueOffset;
+
+		private int valueLength;
+
+		private long intValue;
+
+		private long timeUnixNano;
+
+		private String host;
+
+		private String path;
+
+		private String method;
+
+		private int statusCode;
+
+		private long durationNs;
+
+		private String startUtc;
+
+		private String clientIp;
+
+		private String scheme;
+
+		private String protocol;
+
+		private String serviceName;
+
+		private String routerName;
+
+		private int originStatusCode;
+
+		private long originDurationNs;
+
+		private long overheadNs;
+
+		private String traceId;
+
+		private String spanId;
+
+		private int retryAttempts;
+
+		void reset() {
+			this.timeUnixNano = 0;
+			this.host = "";
+			this.path = "";
+			this.method = "";
+			this.statusCode = 0;
+			this.durationNs = 0;
+			this.startUtc = "";
+			this.clientIp = "";
+			this.scheme = "";
+			this.protocol = "";
+			this.serviceName = "";
+			this.routerName = "";
+			this.originStatusCode = 0;
+			this.originDurationNs = 0;
+			this.overheadNs = 0;
+			this.traceId = "";
+			this.spanId = "";
+			this.retryAttempts = 0;
+		}
+
+		void apply(int attribute, byte[] message) {
+			switch (attribute) {
+				case 0 -> this.host = stringValue(message);
+				case 1 -> this.path = stringValue(message);
+				case 2 -> this.method = stringValue(message);
+				case 3 -> this.statusCode = intValue(message);
+				case 4 -> this.durationNs = longValue(message);
+				case 5 -> this.startUtc = stringValue(message);
+				case 6 -> this.clientIp = stringValue(message);
+				case 7 -> this.scheme = stringValue(message);
+				case 8 -> this.protocol = stringValue(message);
+				case 9 -> this.serviceName = stringValue(message);
+				case 10 -> this.routerName = stringValue(message);
+				case 11 -> this.originStatusCode = intValue(message);
+				case 12 -> this.originDurationNs = longValue(message);
+				case 13 -> this.overheadNs = longValue(message);
+				case 14 -> this.traceId = stringValue(message);
+				case 15 -> this.spanId = stringValue(message);
+				case 16 -> this.retryAttempts = intValue(message);
+				default -> throw new IllegalStateException("Unexpected attribute index: " + attribute);
+			}
+		}
+
+		private String stringValue(byte[] message) {
+			if (this.valueCase != VALUE_STRING || this.valueLength == 0) {
+				return "";
+			}
+			return new String(message, this.valueOffset, this.valueLength, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Mirrors {@code extractInt} of {@link OtlpLogConverter}: integer values are
+		 * narrowed, numeric strings are parsed, anything else is 0.
+		 */
+		private int intValue(byte[] message) {
+			if (this.valueCase == VALUE_INT) {
+				return (int) this.intValue;
+			}
+			String value = stringValue(message);
+			if (value.isEmpty()) {
+				return 0;
+			}
+			try {
+				return Integer.parseInt(value);
+			}
+			catch (NumberFormatException ex) {
+				return 0;
+			}
+		}
+
+		/**
+		 * Mirrors {@code extractLong} of {@link OtlpLogConverter}.
+		 */
+		private long longValue(byte[] message) {
+			if (this.valueCase == VALUE_INT) {
+				return this.intValue;
+			}
+			String value = stringValue(message);
+			if (value.isEmpty()) {
+				return 0;
+			}
+			try {
+				return Long.parseLong(value);
+			}
+			catch (NumberFormatException ex) {
+				return 0;
+			}
+		}
+
+		AccessEvent toEvent() {
+			return new AccessEvent(parseTimestamp(this.startUtc, this.timeUnixNano), this.host, this.path, this.method,
+					this.statusCode, this.durationNs, this.clientIp, this.scheme, this.protocol, this.serviceName,
+					this.routerName, this.originStatusCode, this.originDurationNs, this.overheadNs, this.traceId,
+					this.spanId, this.retryAttempts);
+		}
+
+	}
+
+}
@@ -0,0 +1,89 @@
+package am.ik.accessmonitor.ingest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import am.ik.accessmonitor.AccessMonitorProperties;
+import am.ik.accessmonitor.AccessMonitorProperties.OtlpProperties.PublishFormat;
+import am.ik.accessmonitor.event.AccessEvent;
+import am.ik.accessmonitor.event.AccessEventBatchCodec;
+import am.ik.accessmonitor.event.OtlpLogConverter;
+import tools.jackson.databind.json.JsonMapper;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes received OTLP log payloads to the access exchange. With the
+ * {@link PublishFormat#EVENT_BATCH event batch} format, the payload is decoded here once
+ * and published as a columnar {@link AccessEventBatchCodec access event batch} together
+ * with the JSON of each event, so that neither the aggregation consumers nor the SSE
+ * consumers of every instance decode OTLP again, the SSE consumers do not render the JSON
+ * again, and the attribute keys of every OTLP log record are not sent through the broker.
+ * With the {@link PublishFormat#OTLP OTLP} format, the payload is forwarded as is, e.g.
+ * while consumers that only understand OTLP are still running.
+ */
+@Component
+public class AccessEventPublisher {
+
+	static final String EXCHANGE = "access_exchange";
+
+	static final String ROUTING_KEY = "access_logs";
+
+	static final String OTLP_CONTENT_TYPE = "application/x-protobuf";
+
+	private final RabbitTemplate rabbitTemplate;
+
+	private final OtlpLogConverter otlpLogConverter;
+
+	private final JsonMapper jsonMapper;
+
+	private final PublishFormat publishFormat;
+
+	public AccessEventPublisher(RabbitTemplate rabbitTemplate, OtlpLogConverter otlpLogConverter, JsonMapper jsonMapper,
+			AccessMonitorProperties properties) {
+		this.rabbitTemplate = rabbitTemplate;
+		this.otlpLogConverter = otlpLogConverter;
+		this.jsonMapper = jsonMapper;
+		this.publishFormat = properties.otlp().publishFormat();
+	}
+
+	/**
+	 * Publishes an OTLP {@code ExportLogsServiceRequest} payload. A payload that does not
+	 * contain any access event is not published in the event batch format.
+	 */
+	public void publishOtlp(byte[] otlp) {
+		publishOtlp(otlp, otlp.length);
+	}
+
+	/**
+	 * Publishes an OTLP {@code ExportLogsServiceRequest} payload held by the first
+	 * {@code length} bytes of a buffer. The buffer is not retained, so that it can be
+	 * reused once this method returns.
+	 */
+	public void publishOtlp(byte[] otlp, int length) {
+		if (this.publishFormat == PublishFormat.OTLP) {
+			MessageProperties messageProperties = new MessageProperties();
+			messageProperties.setContentType(OTLP_CONTENT_TYPE);
+			this.rabbitTemplate.send(EXCHANGE, ROUTING_KEY,
+					new Message(Arrays.copyOf(otlp, length), messageProperties));
+			return;
+		}
+		List<AccessEvent> events = this.otlpLogConverter.convert(otlp, length);
+		if (events.isEmpty()) {
+			return;
+		}
+		List<String> json = new ArrayList<>(events.size());
+		for (AccessEvent event : events) {
+			json.add(this.jsonMapper.writeValueAsString(event));
+		}
+		MessageProperties messageProperties = new MessageProperties();
+		messageProperties.setContentType(AccessEventBatchCodec.CONTENT_TYPE);
+		this.rabbitTemplate.send(EXCHANGE, ROUTING_KEY,
+				new Message(AccessEventBatchCodec.encode(events, json), messageProperties));
+	}
+
+}
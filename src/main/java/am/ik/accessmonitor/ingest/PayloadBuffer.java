@@ -0,0 +1,124 @@
+package am.ik.accessmonitor.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer acquired from a {@link PayloadBufferPool}, holding at most
+ * {@link PayloadBufferPool#maxSize()} bytes. Instances are not thread-safe.
+ */
+public final class PayloadBuffer implements AutoCloseable {
+
+	private final PayloadBufferPool pool;
+
+	private byte[] array;
+
+	private int size;
+
+	PayloadBuffer(PayloadBufferPool pool, byte[] array) {
+		this.pool = pool;
+		this.array = array;
+	}
+
+	/**
+	 * Reads a stream to its end into this buffer, replacing its content. The stream is
+	 * not closed.
+	 * @throws PayloadTooLargeException if the stream holds more than the maximum size of
+	 * the pool; the stream is not read any further
+	 */
+	public void readFrom(InputStream input) throws IOException {
+		int maxSize = this.pool.maxSize();
+		this.size = 0;
+		while (true) {
+			if (this.size == this.array.length) {
+				if (this.array.length >= maxSize) {
+					if (input.read() < 0) {
+						return;
+					}
+					throw new PayloadTooLargeException(maxSize);
+				}
+				this.array = Arrays.copyOf(this.array,
+						(int) Math.min(maxSize, Math.max(1024L, this.array.length * 2L)));
+			}
+			int read = input.read(this.array, this.size, this.array.length - this.size);
+			if (read < 0) {
+				return;
+			}
+			this.size += read;
+		}
+	}
+
+	/**
+	 * Resizes this buffer to hold exactly {@code length} bytes, for content whose size is
+	 * known in advance, and returns the backing array to be filled in its first
+	 * {@code length} bytes.
+	 * @throws PayloadTooLargeException if {@code length} exceeds the maximum size of the
+	 * pool
+	 */
+	public byte[] allocate(int length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("Negative length: " + length);
+		}
+		if (length > this.pool.maxSize()) {
+			throw new PayloadTooLargeException(this.pool.maxSize());
+		}
+		if (this.array.length < length) {
+			this.array = new byte[length];
+		}
+		this.size = length;
+		return this.array;
+	}
+
+	/**
+	 * Grows the content of this buffer by {@code length} bytes, for content that arrives
+	 * in chunks, and returns the backing array to be filled with these bytes from the
+	 * previous {@link #size()} on. The array grows geometrically, so that it is not sized
+	 * from a length announced before the content has arrived.
+	 * @throws PayloadTooLargeException if the content would exceed the maximum size of
+	 * the pool
+	 */
+	public byte[] extend(int length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("Negative length: " + length);
+		}
+		int maxSize = this.pool.maxSize();
+		long required = (long) this.size + length;
+		if (required > maxSize) {
+			throw new PayloadTooLargeException(maxSize);
+		}
+		if (required > this.array.length) {
+			this.array = Arrays.copyOf(this.array,
+					(int) Math.min(maxSize, Math.max(required, Math.max(1024L, this.array.length * 2L))));
+		}
+		this.size = (int) required;
+		return this.array;
+	}
+
+	/**
+	 * Returns the backing array, which holds the content of this buffer in its first
+	 * {@link #size()} bytes. The array must not be used after this buffer is closed.
+	 */
+	public byte[] array() {
+		return this.array;
+	}
+
+	/**
+	 * Returns the number of bytes held by this buffer.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the backing array to the pool.
+	 */
+	@Override
+	public void close() {
+		if (this.array != null) {
+			this.pool.release(this.array);
+			this.array = null;
+		}
+	}
+
+}
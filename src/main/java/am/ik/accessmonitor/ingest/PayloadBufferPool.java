@@ -0,0 +1,69 @@
+package am.ik.accessmonitor.ingest;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+import am.ik.accessmonitor.AccessMonitorProperties;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Pool of the byte arrays that back {@link PayloadBuffer payload buffers}, so that
+ * received payloads are read into reused arrays instead of a fresh array, plus a second
+ * one for the decompressed payload, per request. Arrays that have grown beyond
+ * {@link #MAX_RETAINED_CAPACITY} are left to the garbage collector rather than pinned in
+ * the pool, and at most {@link #MAX_POOLED_ARRAYS} arrays are kept.
+ */
+@Component
+public class PayloadBufferPool {
+
+	static final int INITIAL_CAPACITY = 64 * 1024;
+
+	static final int MAX_RETAINED_CAPACITY = 4 * 1024 * 1024;
+
+	static final int MAX_POOLED_ARRAYS = 16;
+
+	private final ArrayBlockingQueue<byte[]> arrays = new ArrayBlockingQueue<>(MAX_POOLED_ARRAYS);
+
+	private final int maxSize;
+
+	public PayloadBufferPool(AccessMonitorProperties properties) {
+		this((int) Math.min(Integer.MAX_VALUE - 8, properties.otlp().maxPayloadSize().toBytes()));
+	}
+
+	/**
+	 * Creates a pool of buffers holding at most {@code maxSize} bytes.
+	 */
+	public PayloadBufferPool(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the maximum number of bytes a buffer of this pool holds.
+	 */
+	public int maxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * Acquires an empty buffer. The buffer must be closed to return its array to the
+	 * pool.
+	 */
+	public PayloadBuffer acquire() {
+		byte[] array = this.arrays.poll();
+		return new PayloadBuffer(this, (array != null) ? array : new byte[Math.min(INITIAL_CAPACITY, this.maxSize)]);
+	}
+
+	void release(byte[] array) {
+		if (array.length <= MAX_RETAINED_CAPACITY) {
+			this.arrays.offer(array);
+		}
+	}
+
+	/**
+	 * Returns the number of arrays held by the pool.
+	 */
+	int pooledArrays() {
+		return this.arrays.size();
+	}
+
+}
@@ -0,0 +1,22 @@
+package am.ik.accessmonitor.ingest;
+
+/**
+ * Thrown when a received payload exceeds the configured maximum size.
+ */
+public class PayloadTooLargeException extends RuntimeException {
+
+	private final long maxSize;
+
+	public PayloadTooLargeException(long maxSize) {
+		super("Payload exceeds the maximum size of %d bytes".formatted(maxSize));
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the maximum payload size in bytes.
+	 */
+	public long maxSize() {
+		return this.maxSize;
+	}
+
+}
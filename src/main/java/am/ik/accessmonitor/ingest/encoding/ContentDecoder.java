@@ -0,0 +1,31 @@
+package am.ik.accessmonitor.ingest.encoding;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import am.ik.accessmonitor.ingest.PayloadBuffer;
+import am.ik.accessmonitor.ingest.PayloadTooLargeException;
+
+/**
+ * Decodes request bodies compressed with a {@code Content-Encoding}. Implementations
+ * registered as beans are picked up by {@link ContentDecoders}.
+ */
+public interface ContentDecoder {
+
+	/**
+	 * Returns the content encoding handled by this decoder in lower case, as sent in the
+	 * {@code Content-Encoding} header.
+	 */
+	String encoding();
+
+	/**
+	 * Decodes a compressed body into a buffer, replacing its content.
+	 * @param body the compressed body, which is read to its end
+	 * @param payload the buffer receiving the decoded content
+	 * @throws MalformedContentException if the body is not valid for the encoding
+	 * @throws PayloadTooLargeException if the decoded content exceeds the maximum size of
+	 * the buffer
+	 */
+	void decode(InputStream body, PayloadBuffer payload) throws IOException;
+
+}
@@ -0,0 +1,55 @@
+package am.ik.accessmonitor.ingest.encoding;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Registry of the available {@link ContentDecoder content decoders}, keyed by their
+ * content encoding.
+ */
+@Component
+public class ContentDecoders {
+
+	/**
+	 * Content encoding of bodies that are not compressed.
+	 */
+	public static final String IDENTITY = "identity";
+
+	private final Map<String, ContentDecoder> decoders;
+
+	public ContentDecoders(List<ContentDecoder> decoders) {
+		this.decoders = decoders.stream()
+			.collect(Collectors.toUnmodifiableMap(ContentDecoder::encoding, Function.identity()));
+	}
+
+	/**
+	 * Returns whether a {@code Content-Encoding} header value denotes an uncompressed
+	 * body.
+	 */
+	public static boolean isIdentity(String contentEncoding) {
+		return contentEncoding == null || contentEncoding.isBlank()
+				|| IDENTITY.equalsIgnoreCase(contentEncoding.trim());
+	}
+
+	/**
+	 * Returns the decoder of a {@code Content-Encoding} header value, or {@code null} if
+	 * the encoding is not supported. Multiple encodings applied in sequence are not
+	 * supported.
+	 */
+	public ContentDecoder find(String contentEncoding) {
+		return this.decoders.get(contentEncoding.trim().toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * Returns the supported content encodings.
+	 */
+	public List<String> encodings() {
+		return this.decoders.keySet().stream().sorted().toList();
+	}
+
+}
@@ -0,0 +1,42 @@
+package am.ik.accessmonitor.ingest.encoding;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Decodes {@code deflate} bodies, i.e. the zlib format (RFC 1950) as defined by HTTP,
+ * inflating them while they are read.
+ */
+@Component
+public class DeflateContentDecoder extends StreamingContentDecoder {
+
+	private static final int INFLATER_BUFFER_SIZE = 8192;
+
+	@Override
+	public String encoding() {
+		return "deflate";
+	}
+
+	@Override
+	protected InputStream decoding(InputStream body) {
+		return new InflaterInputStream(body, new Inflater(), INFLATER_BUFFER_SIZE) {
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				}
+				finally {
+					// An inflater passed to the stream is not ended by the stream
+					this.inf.end();
+				}
+			}
+
+		};
+	}
+
+}
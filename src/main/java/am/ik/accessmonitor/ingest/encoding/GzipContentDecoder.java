@@ -0,0 +1,27 @@
+package am.ik.accessmonitor.ingest.encoding;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Decodes {@code gzip} bodies, inflating them while they are read.
+ */
+@Component
+public class GzipContentDecoder extends StreamingContentDecoder {
+
+	private static final int INFLATER_BUFFER_SIZE = 8192;
+
+	@Override
+	public String encoding() {
+		return "gzip";
+	}
+
+	@Override
+	protected InputStream decoding(InputStream body) throws IOException {
+		return new GZIPInputStream(body, INFLATER_BUFFER_SIZE);
+	}
+
+}
@@ -0,0 +1,14 @@
+package am.ik.accessmonitor.ingest.encoding;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request body cannot be decoded with its content encoding.
+ */
+public class MalformedContentException extends IOException {
+
+	public MalformedContentException(String encoding, Throwable cause) {
+		super("Malformed %s content: %s".formatted(encoding, cause.getMessage()), cause);
+	}
+
+}
@@ -0,0 +1,71 @@
+package am.ik.accessmonitor.ingest.encoding;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import am.ik.accessmonitor.ingest.PayloadBuffer;
+import am.ik.accessmonitor.ingest.PayloadBufferPool;
+import io.airlift.compress.MalformedInputException;
+import io.airlift.compress.snappy.SnappyDecompressor;
+import io.airlift.compress.snappy.SnappyFramedInputStream;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Decodes {@code snappy} bodies. The OpenTelemetry Collector sends the block format,
+ * while older versions sent the framing format, which is recognized by its stream
+ * identifier and decoded as well.
+ * <p>
+ * A block can only be decompressed as a whole, so the compressed body is read into a
+ * pooled buffer first; its declared length is checked against the maximum payload size
+ * before the output is allocated.
+ */
+@Component
+public class SnappyContentDecoder implements ContentDecoder {
+
+	private static final byte[] STREAM_IDENTIFIER = { (byte) 0xff, 0x06, 0x00, 0x00, 's', 'N', 'a', 'P', 'p', 'Y' };
+
+	private final PayloadBufferPool payloadBufferPool;
+
+	public SnappyContentDecoder(PayloadBufferPool payloadBufferPool) {
+		this.payloadBufferPool = payloadBufferPool;
+	}
+
+	@Override
+	public String encoding() {
+		return "snappy";
+	}
+
+	@Override
+	public void decode(InputStream body, PayloadBuffer payload) throws IOException {
+		try (PayloadBuffer compressed = this.payloadBufferPool.acquire()) {
+			compressed.readFrom(body);
+			try {
+				decode(compressed.array(), compressed.size(), payload);
+			}
+			catch (IOException | MalformedInputException | IllegalArgumentException ex) {
+				throw new MalformedContentException(encoding(), ex);
+			}
+		}
+	}
+
+	private static void decode(byte[] input, int inputLength, PayloadBuffer payload) throws IOException {
+		if (inputLength >= STREAM_IDENTIFIER.length
+				&& Arrays.equals(input, 0, STREAM_IDENTIFIER.length, STREAM_IDENTIFIER, 0, STREAM_IDENTIFIER.length)) {
+			try (SnappyFramedInputStream framed = new SnappyFramedInputStream(
+					new ByteArrayInputStream(input, 0, inputLength))) {
+				payload.readFrom(framed);
+			}
+			return;
+		}
+		int length = SnappyDecompressor.getUncompressedLength(input, 0);
+		byte[] output = payload.allocate(length);
+		int decompressed = new SnappyDecompressor().decompress(input, 0, inputLength, output, 0, length);
+		if (decompressed != length) {
+			throw new MalformedInputException(0, "Decompressed %d of %d bytes".formatted(decompressed, length));
+		}
+	}
+
+}
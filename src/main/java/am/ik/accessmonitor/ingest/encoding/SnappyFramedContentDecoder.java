@@ -0,0 +1,27 @@
+package am.ik.accessmonitor.ingest.encoding;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.airlift.compress.snappy.SnappyFramedInputStream;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Decodes {@code x-snappy-framed} bodies, i.e. the Snappy framing format, decompressing
+ * them chunk by chunk while they are read.
+ */
+@Component
+public class SnappyFramedContentDecoder extends StreamingContentDecoder {
+
+	@Override
+	public String encoding() {
+		return "x-snappy-framed";
+	}
+
+	@Override
+	protected InputStream decoding(InputStream body) throws IOException {
+		return new SnappyFramedInputStream(body);
+	}
+
+}
@@ -0,0 +1,79 @@
+package am.ik.accessmonitor.ingest.encoding;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import am.ik.accessmonitor.ingest.PayloadBuffer;
+import io.airlift.compress.MalformedInputException;
+
+/**
+ * Base class of decoders that decompress the body while it is read, so that the
+ * compressed body is never held in memory as a whole.
+ * <p>
+ * Decompressors report malformed input as plain {@link IOException IOExceptions}, which
+ * are indistinguishable from a failure to read the request. The body is therefore wrapped
+ * in a stream that records its own failures: exceptions thrown while the body could be
+ * read are reported as {@link MalformedContentException}.
+ */
+abstract class StreamingContentDecoder implements ContentDecoder {
+
+	@Override
+	public final void decode(InputStream body, PayloadBuffer payload) throws IOException {
+		SourceInputStream source = new SourceInputStream(body);
+		try (InputStream input = decoding(source)) {
+			payload.readFrom(input);
+		}
+		catch (IOException ex) {
+			if (source.failed) {
+				throw ex;
+			}
+			throw new MalformedContentException(encoding(), ex);
+		}
+		catch (MalformedInputException | IllegalArgumentException | IllegalStateException ex) {
+			throw new MalformedContentException(encoding(), ex);
+		}
+	}
+
+	/**
+	 * Returns a stream decompressing the body. Closing the stream must release the
+	 * resources of the decompressor.
+	 */
+	protected abstract InputStream decoding(InputStream body) throws IOException;
+
+	/**
+	 * Records whether reading the body failed.
+	 */
+	private static final class SourceInputStream extends FilterInputStream {
+
+		private boolean failed;
+
+		SourceInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			try {
+				return super.read();
+			}
+			catch (IOException ex) {
+				this.failed = true;
+				throw ex;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			try {
+				return super.read(b, off, len);
+			}
+			catch (IOException ex) {
+				this.failed = true;
+				throw ex;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,28 @@
+package am.ik.accessmonitor.ingest.encoding;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Decodes {@code zstd} bodies, decompressing them while they are read. The window of the
+ * decompressor only grows with the content produced, so the decoded size limit also
+ * bounds its memory regardless of the window size declared by the frame.
+ */
+@Component
+public class ZstdContentDecoder extends StreamingContentDecoder {
+
+	@Override
+	public String encoding() {
+		return "zstd";
+	}
+
+	@Override
+	protected InputStream decoding(InputStream body) throws IOException {
+		return new ZstdInputStream(body);
+	}
+
+}
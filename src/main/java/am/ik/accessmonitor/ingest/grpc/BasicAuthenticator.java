@@ -0,0 +1,59 @@
+package am.ik.accessmonitor.ingest.grpc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+/**
+ * Authenticates the {@code authorization} header of gRPC calls with HTTP Basic
+ * credentials against the same users as the HTTP endpoints.
+ */
+final class BasicAuthenticator {
+
+	private static final String BASIC_PREFIX = "Basic ";
+
+	private final AuthenticationProvider authenticationProvider;
+
+	BasicAuthenticator(UserDetailsService userDetailsService) {
+		this.authenticationProvider = new DaoAuthenticationProvider(userDetailsService);
+	}
+
+	/**
+	 * Returns whether an {@code authorization} header value carries valid Basic
+	 * credentials.
+	 */
+	boolean authenticate(CharSequence authorization) {
+		if (authorization == null || authorization.length() <= BASIC_PREFIX.length()
+				|| !authorization.toString().regionMatches(true, 0, BASIC_PREFIX, 0, BASIC_PREFIX.length())) {
+			return false;
+		}
+		String credentials;
+		try {
+			credentials = new String(Base64.getDecoder()
+				.decode(authorization.subSequence(BASIC_PREFIX.length(), authorization.length()).toString().trim()),
+					StandardCharsets.UTF_8);
+		}
+		catch (IllegalArgumentException ex) {
+			return false;
+		}
+		int colon = credentials.indexOf(':');
+		if (colon < 0) {
+			return false;
+		}
+		try {
+			Authentication authentication = this.authenticationProvider.authenticate(UsernamePasswordAuthenticationToken
+				.unauthenticated(credentials.substring(0, colon), credentials.substring(colon + 1)));
+			return authentication != null && authentication.isAuthenticated();
+		}
+		catch (AuthenticationException ex) {
+			return false;
+		}
+	}
+
+}
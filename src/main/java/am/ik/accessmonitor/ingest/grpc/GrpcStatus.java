@@ -0,0 +1,21 @@
+package am.ik.accessmonitor.ingest.grpc;
+
+/**
+ * The gRPC status codes returned by the OTLP/gRPC receiver.
+ */
+enum GrpcStatus {
+
+	OK(0), DEADLINE_EXCEEDED(4), RESOURCE_EXHAUSTED(8), UNIMPLEMENTED(12), INTERNAL(13), UNAVAILABLE(14),
+	UNAUTHENTICATED(16);
+
+	private final int code;
+
+	GrpcStatus(int code) {
+		this.code = code;
+	}
+
+	int code() {
+		return this.code;
+	}
+
+}
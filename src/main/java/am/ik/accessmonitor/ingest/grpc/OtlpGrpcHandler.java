@@ -0,0 +1,484 @@
+package am.ik.accessmonitor.ingest.grpc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import am.ik.accessmonitor.ingest.AccessEventPublisher;
+import am.ik.accessmonitor.ingest.PayloadBuffer;
+import am.ik.accessmonitor.ingest.PayloadBufferPool;
+import am.ik.accessmonitor.ingest.PayloadTooLargeException;
+import am.ik.accessmonitor.ingest.encoding.ContentDecoder;
+import am.ik.accessmonitor.ingest.encoding.ContentDecoders;
+import am.ik.accessmonitor.ingest.encoding.MalformedContentException;
+import io.micrometer.core.instrument.Counter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.DefaultHttp2ResetFrame;
+import io.netty.handler.codec.http2.DefaultHttp2WindowUpdateFrame;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2FrameStream;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2ResetFrame;
+import io.netty.handler.codec.http2.Http2Stream;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.collection.IntObjectHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the unary {@code LogsService/Export} call of one HTTP/2 connection, placed after
+ * the {@link io.netty.handler.codec.http2.Http2FrameCodec}.
+ * <p>
+ * The length-prefixed request message of a call is copied from its DATA frames into a
+ * pooled {@link PayloadBuffer}, rejecting messages above the maximum payload size from
+ * their prefix. The buffer grows with the bytes that have arrived, not with the announced
+ * length. Once the client has half-closed the stream, the message is decompressed
+ * according to {@code grpc-encoding} and published on the publish executor, so that the
+ * event loop never waits for the broker; the response is written back on the event loop.
+ * <p>
+ * Every buffered message byte is charged to a byte budget shared by all connections until
+ * the export has been published or the call has failed. A call whose bytes do not fit
+ * into the budget is rejected with {@code UNAVAILABLE}, so that the client retries it
+ * later; once charged, the flow-control credits of the bytes are returned to the client.
+ * A call whose request has not been received within the request timeout is rejected with
+ * {@code DEADLINE_EXCEEDED} and its stream is reset, so that a stalled client does not
+ * hold its buffer.
+ */
+final class OtlpGrpcHandler extends ChannelInboundHandlerAdapter {
+
+	static final String EXPORT_PATH = "/opentelemetry.proto.collector.logs.v1.LogsService/Export";
+
+	static final String GRPC_CONTENT_TYPE = "application/grpc";
+
+	private static final int MESSAGE_PREFIX_LENGTH = 5;
+
+	/**
+	 * An {@code ExportLogsServiceResponse} without partial success, which encodes to no
+	 * bytes, behind its length prefix.
+	 */
+	private static final byte[] EMPTY_RESPONSE = new byte[MESSAGE_PREFIX_LENGTH];
+
+	private static final Logger log = LoggerFactory.getLogger(OtlpGrpcHandler.class);
+
+	private final AccessEventPublisher accessEventPublisher;
+
+	private final PayloadBufferPool payloadBufferPool;
+
+	private final ContentDecoders contentDecoders;
+
+	private final BasicAuthenticator authenticator;
+
+	private final Executor executor;
+
+	private final Map<GrpcStatus, Counter> requestCounters;
+
+	private final int connectionWindowIncrement;
+
+	private final Semaphore bufferBudget;
+
+	private final int maxBufferedBytes;
+
+	private final Duration requestTimeout;
+
+	private final Map<Integer, Call> calls = new IntObjectHashMap<>();
+
+	private String authenticatedAuthorization;
+
+	OtlpGrpcHandler(AccessEventPublisher accessEventPublisher, PayloadBufferPool payloadBufferPool,
+			ContentDecoders contentDecoders, BasicAuthenticator authenticator, Executor executor,
+			Map<GrpcStatus, Counter> requestCounters, int connectionWindowIncrement, Semaphore bufferBudget,
+			int maxBufferedBytes, Duration requestTimeout) {
+		this.accessEventPublisher = accessEventPublisher;
+		this.payloadBufferPool = payloadBufferPool;
+		this.contentDecoders = contentDecoders;
+		this.authenticator = authenticator;
+		this.executor = executor;
+		this.requestCounters = requestCounters;
+		this.connectionWindowIncrement = connectionWindowIncrement;
+		this.bufferBudget = bufferBudget;
+		this.maxBufferedBytes = maxBufferedBytes;
+		this.requestTimeout = requestTimeout;
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception {
+		// The codec has sent its preface when it was added to the accepted channel. The
+		// connection window starts at 64 KB regardless of the settings.
+		if (this.connectionWindowIncrement > 0) {
+			ctx.writeAndFlush(new DefaultHttp2WindowUpdateFrame(this.connectionWindowIncrement));
+		}
+		super.channelActive(ctx);
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) {
+		try {
+			if (msg instanceof Http2HeadersFrame headers) {
+				onHeaders(ctx, headers);
+			}
+			else if (msg instanceof Http2DataFrame data) {
+				onData(ctx, data);
+			}
+			else if (msg instanceof Http2ResetFrame reset) {
+				onReset(reset);
+			}
+		}
+		finally {
+			ReferenceCountUtil.release(msg);
+		}
+	}
+
+	@Override
+	public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+		// Flushes the window updates returning the credits of the frames read
+		ctx.flush();
+		super.channelReadComplete(ctx);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		for (Call call : this.calls.values()) {
+			release(call);
+		}
+		this.calls.clear();
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+		log.warn("Closing OTLP/gRPC connection from {}", ctx.channel().remoteAddress(), cause);
+		ctx.close();
+	}
+
+	private void onHeaders(ChannelHandlerContext ctx, Http2HeadersFrame frame) {
+		Http2FrameStream stream = frame.stream();
+		Call call = this.calls.get(stream.id());
+		if (call != null) {
+			// Trailers of the client, which end the request like an empty DATA frame
+			if (frame.isEndStream() && !call.dispatched) {
+				call.halfClosed = true;
+				onHalfClosed(ctx, call);
+			}
+			return;
+		}
+		call = new Call(stream, frame.isEndStream());
+		Http2Headers headers = frame.headers();
+		CharSequence contentType = headers.get("content-type");
+		if (contentType == null || !contentType.toString().startsWith(GRPC_CONTENT_TYPE)) {
+			respond(ctx, call, new DefaultHttp2Headers().status("415"));
+			return;
+		}
+		if (!"POST".contentEquals(headers.method()) || !EXPORT_PATH.contentEquals(headers.path())) {
+			fail(ctx, call, GrpcStatus.UNIMPLEMENTED, "Method not found: " + headers.path());
+			return;
+		}
+		CharSequence authorizationHeader = headers.get("authorization");
+		String authorization = (authorizationHeader != null) ? authorizationHeader.toString() : null;
+		if (authorization == null || !authorization.equals(this.authenticatedAuthorization)) {
+			if (!this.authenticator.authenticate(authorization)) {
+				fail(ctx, call, GrpcStatus.UNAUTHENTICATED, "Invalid credentials");
+				return;
+			}
+			// Clients send the same credentials with every call of a connection
+			this.authenticatedAuthorization = authorization;
+		}
+		CharSequence encoding = headers.get("grpc-encoding");
+		if (!ContentDecoders.isIdentity((encoding != null) ? encoding.toString() : null)) {
+			call.decoder = this.contentDecoders.find(encoding.toString());
+			if (call.decoder == null) {
+				fail(ctx, call, GrpcStatus.UNIMPLEMENTED, "Unsupported grpc-encoding: " + encoding);
+				return;
+			}
+		}
+		this.calls.put(stream.id(), call);
+		Call timed = call;
+		call.deadline = ctx.executor()
+			.schedule(() -> onDeadline(ctx, timed), this.requestTimeout.toNanos(), TimeUnit.NANOSECONDS);
+		if (call.halfClosed) {
+			onHalfClosed(ctx, call);
+		}
+	}
+
+	private void onData(ChannelHandlerContext ctx, Http2DataFrame frame) {
+		Call call = this.calls.get(frame.stream().id());
+		if (call == null || call.dispatched) {
+			// The stream has been reset; its credits are returned when it is closed
+			return;
+		}
+		ByteBuf content = frame.content();
+		while (content.isReadable()) {
+			if (call.prefixRead < MESSAGE_PREFIX_LENGTH) {
+				int length = Math.min(MESSAGE_PREFIX_LENGTH - call.prefixRead, content.readableBytes());
+				content.readBytes(call.prefix, call.prefixRead, length);
+				call.prefixRead += length;
+				if (call.prefixRead == MESSAGE_PREFIX_LENGTH && !startMessage(ctx, call)) {
+					return;
+				}
+			}
+			else if (call.message.size() < call.messageLength) {
+				int length = Math.min(call.messageLength - call.message.size(), content.readableBytes());
+				if (!this.bufferBudget.tryAcquire(length)) {
+					fail(ctx, call, GrpcStatus.UNAVAILABLE, "Too many buffered exports");
+					return;
+				}
+				call.bufferedBytes += length;
+				int offset = call.message.size();
+				content.readBytes(call.message.extend(length), offset, length);
+			}
+			else {
+				fail(ctx, call, GrpcStatus.INTERNAL, "Too many requests for a unary call");
+				return;
+			}
+		}
+		// The bytes have been charged to the budget, so the client may send further ones
+		if (frame.initialFlowControlledBytes() > 0) {
+			ctx.write(new DefaultHttp2WindowUpdateFrame(frame.initialFlowControlledBytes()).stream(frame.stream()));
+		}
+		if (frame.isEndStream()) {
+			call.halfClosed = true;
+			onHalfClosed(ctx, call);
+		}
+	}
+
+	/**
+	 * Starts receiving the message announced by the length prefix of a call.
+	 * @return whether the call may continue
+	 */
+	private boolean startMessage(ChannelHandlerContext ctx, Call call) {
+		byte flag = call.prefix[0];
+		int length = ((call.prefix[1] & 0xff) << 24) | ((call.prefix[2] & 0xff) << 16) | ((call.prefix[3] & 0xff) << 8)
+				| (call.prefix[4] & 0xff);
+		if (flag != 0 && (flag != 1 || call.decoder == null)) {
+			fail(ctx, call, GrpcStatus.INTERNAL, "Invalid compression flag %d for grpc-encoding %s".formatted(flag,
+					(call.decoder != null) ? call.decoder.encoding() : ContentDecoders.IDENTITY));
+			return false;
+		}
+		int maxLength = Math.min(this.payloadBufferPool.maxSize(), this.maxBufferedBytes);
+		if (length < 0 || length > maxLength) {
+			fail(ctx, call, GrpcStatus.RESOURCE_EXHAUSTED, new PayloadTooLargeException(maxLength).getMessage());
+			return false;
+		}
+		call.compressed = (flag == 1);
+		call.messageLength = length;
+		call.message = this.payloadBufferPool.acquire();
+		return true;
+	}
+
+	private void onHalfClosed(ChannelHandlerContext ctx, Call call) {
+		if (call.message == null || call.message.size() < call.messageLength) {
+			fail(ctx, call, GrpcStatus.INTERNAL, "Half-closed without a request");
+			return;
+		}
+		call.dispatched = true;
+		call.deadline.cancel(false);
+		try {
+			this.executor.execute(() -> {
+				Result result = export(call);
+				try {
+					ctx.executor().execute(() -> complete(ctx, call, result));
+				}
+				catch (RejectedExecutionException ex) {
+					// The server is shutting down
+				}
+			});
+		}
+		catch (RejectedExecutionException ex) {
+			call.dispatched = false;
+			fail(ctx, call, GrpcStatus.UNAVAILABLE, "Too many concurrent exports");
+		}
+	}
+
+	private void onReset(Http2ResetFrame frame) {
+		Call call = this.calls.remove(frame.stream().id());
+		if (call != null) {
+			release(call);
+		}
+	}
+
+	private void onDeadline(ChannelHandlerContext ctx, Call call) {
+		if (this.calls.get(call.stream.id()) == call && !call.dispatched) {
+			fail(ctx, call, GrpcStatus.DEADLINE_EXCEEDED,
+					"Request not received within " + this.requestTimeout.toMillis() + "ms");
+		}
+	}
+
+	/**
+	 * Decodes and publishes the message of a call. Runs on the publish executor, which
+	 * owns the message buffer of the call from now on.
+	 */
+	private Result export(Call call) {
+		try (PayloadBuffer message = call.message) {
+			if (!call.compressed) {
+				this.accessEventPublisher.publishOtlp(message.array(), message.size());
+				return Result.OK;
+			}
+			try (PayloadBuffer payload = this.payloadBufferPool.acquire()) {
+				call.decoder.decode(new ByteArrayInputStream(message.array(), 0, message.size()), payload);
+				this.accessEventPublisher.publishOtlp(payload.array(), payload.size());
+				return Result.OK;
+			}
+		}
+		catch (PayloadTooLargeException ex) {
+			return new Result(GrpcStatus.RESOURCE_EXHAUSTED, ex.getMessage());
+		}
+		catch (MalformedContentException ex) {
+			return new Result(GrpcStatus.INTERNAL, ex.getMessage());
+		}
+		catch (IOException | RuntimeException ex) {
+			log.warn("Failed to publish OTLP logs received over gRPC", ex);
+			return new Result(GrpcStatus.UNAVAILABLE, "Failed to publish logs");
+		}
+		finally {
+			this.bufferBudget.release(call.bufferedBytes);
+		}
+	}
+
+	private void complete(ChannelHandlerContext ctx, Call call, Result result) {
+		if (this.calls.remove(call.stream.id()) != call) {
+			// Reset by the client or the connection has been closed meanwhile
+			return;
+		}
+		if (result.status() != GrpcStatus.OK) {
+			respond(ctx, call, trailers(result.status(), result.message()));
+			return;
+		}
+		this.requestCounters.get(GrpcStatus.OK).increment();
+		ctx.write(new DefaultHttp2HeadersFrame(responseHeaders()).stream(call.stream));
+		ctx.write(new DefaultHttp2DataFrame(Unpooled.wrappedBuffer(EMPTY_RESPONSE)).stream(call.stream));
+		ctx.writeAndFlush(new DefaultHttp2HeadersFrame(
+				new DefaultHttp2Headers().set("grpc-status", String.valueOf(GrpcStatus.OK.code())), true)
+			.stream(call.stream));
+	}
+
+	/**
+	 * Rejects a call with a trailers-only response.
+	 */
+	private void fail(ChannelHandlerContext ctx, Call call, GrpcStatus status, String message) {
+		this.calls.remove(call.stream.id());
+		release(call);
+		respond(ctx, call, trailers(status, message));
+	}
+
+	/**
+	 * Releases the message buffer of a call that has not been dispatched, and its bytes
+	 * charged to the budget.
+	 */
+	private void release(Call call) {
+		if (call.deadline != null) {
+			call.deadline.cancel(false);
+		}
+		if (!call.dispatched) {
+			if (call.message != null) {
+				call.message.close();
+				call.message = null;
+			}
+			this.bufferBudget.release(call.bufferedBytes);
+			call.bufferedBytes = 0;
+		}
+	}
+
+	private Http2Headers trailers(GrpcStatus status, String message) {
+		this.requestCounters.get(status).increment();
+		return responseHeaders().set("grpc-status", String.valueOf(status.code()))
+			.set("grpc-message", percentEncode(message));
+	}
+
+	private Http2Headers responseHeaders() {
+		return new DefaultHttp2Headers().status("200")
+			.set("content-type", GRPC_CONTENT_TYPE)
+			.set("grpc-accept-encoding", String.join(",", this.contentDecoders.encodings()));
+	}
+
+	/**
+	 * Writes headers ending the response of a call before the call is complete, and
+	 * resets the stream if the client is still sending, so that it stops sending.
+	 */
+	private void respond(ChannelHandlerContext ctx, Call call, Http2Headers headers) {
+		ctx.write(new DefaultHttp2HeadersFrame(headers, true).stream(call.stream));
+		if (!call.halfClosed && call.stream.state() != Http2Stream.State.CLOSED) {
+			ctx.write(new DefaultHttp2ResetFrame(Http2Error.NO_ERROR).stream(call.stream));
+		}
+		ctx.flush();
+	}
+
+	/**
+	 * Percent-encodes a {@code grpc-message} as required by the gRPC protocol.
+	 */
+	static String percentEncode(String message) {
+		StringBuilder encoded = new StringBuilder(message.length());
+		for (byte b : message.getBytes(StandardCharsets.UTF_8)) {
+			if (b >= 0x20 && b < 0x7f && b != '%') {
+				encoded.append((char) b);
+			}
+			else {
+				encoded.append('%')
+					.append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xf, 16)))
+					.append(Character.toUpperCase(Character.forDigit(b & 0xf, 16)));
+			}
+		}
+		return encoded.toString();
+	}
+
+	/**
+	 * The state of a call. Only accessed on the event loop, except for the message buffer
+	 * and its buffered bytes once the call has been dispatched.
+	 */
+	private static final class Call {
+
+		final Http2FrameStream stream;
+
+		final byte[] prefix = new byte[MESSAGE_PREFIX_LENGTH];
+
+		boolean halfClosed;
+
+		ContentDecoder decoder;
+
+		int prefixRead;
+
+		boolean compressed;
+
+		int messageLength;
+
+		PayloadBuffer message;
+
+		int bufferedBytes;
+
+		ScheduledFuture<?> deadline;
+
+		boolean dispatched;
+
+		Call(Http2FrameStream stream, boolean halfClosed) {
+			this.stream = stream;
+			this.halfClosed = halfClosed;
+		}
+
+	}
+
+	/**
+	 * The outcome of an export.
+	 *
+	 * @param status the status of the call
+	 * @param message the status message, or {@code null} on success
+	 */
+	private record Result(GrpcStatus status, String message) {
+
+		static final Result OK = new Result(GrpcStatus.OK, null);
+
+	}
+
+}
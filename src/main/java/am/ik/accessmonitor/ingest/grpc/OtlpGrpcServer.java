@@ -0,0 +1,192 @@
+package am.ik.accessmonitor.ingest.grpc;
+
+import java.net.InetSocketAddress;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import am.ik.accessmonitor.AccessMonitorProperties;
+import am.ik.accessmonitor.AccessMonitorProperties.OtlpProperties.GrpcProperties;
+import am.ik.accessmonitor.ingest.AccessEventPublisher;
+import am.ik.accessmonitor.ingest.PayloadBufferPool;
+import am.ik.accessmonitor.ingest.encoding.ContentDecoders;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2Settings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.context.SmartLifecycle;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Component;
+
+/**
+ * Embedded OTLP/gRPC receiver serving {@code LogsService/Export} over cleartext HTTP/2 on
+ * {@code access-monitor.otlp.grpc.port}, so that the collector's {@code otlp} exporter
+ * can keep persistent connections instead of sending one HTTP request per batch. Received
+ * logs take the same path as {@code POST /v1/logs}: the same Basic credentials, the same
+ * maximum payload size and decoders, and the {@link AccessEventPublisher}. The HTTP
+ * server is not involved.
+ * <p>
+ * Received request bytes are buffered until their export has been published, and charged
+ * to a budget of {@code max-buffered-size} bytes shared by all connections, which bounds
+ * the heap held by requests regardless of the number of connections. Calls whose bytes do
+ * not fit into the budget are rejected with {@code UNAVAILABLE}, so that a slow broker
+ * makes the client retry later rather than growing buffers here. The flow-control windows
+ * are sized from the budget: each of the {@code max-concurrent-streams} streams of a
+ * connection gets an equal share of it, capped at a request of the maximum payload size,
+ * so that a single connection cannot send more than the budget before its bytes have been
+ * charged. Calls whose request is not received within {@code request-timeout} are
+ * rejected with {@code DEADLINE_EXCEEDED}.
+ * <p>
+ * Exports are published on a dedicated executor of {@code publish-threads} threads with a
+ * queue of {@code publish-queue-capacity} exports, which bounds the exports in flight
+ * across all connections, and with them the decompressed payloads. Exports that do not
+ * fit are rejected with {@code UNAVAILABLE}, so that the client retries them later.
+ */
+@Component
+public class OtlpGrpcServer implements SmartLifecycle {
+
+	private static final Logger log = LoggerFactory.getLogger(OtlpGrpcServer.class);
+
+	private final GrpcProperties properties;
+
+	private final AccessEventPublisher accessEventPublisher;
+
+	private final PayloadBufferPool payloadBufferPool;
+
+	private final ContentDecoders contentDecoders;
+
+	private final BasicAuthenticator authenticator;
+
+	private final Map<GrpcStatus, Counter> requestCounters = new EnumMap<>(GrpcStatus.class);
+
+	private final int maxBufferedBytes;
+
+	private final Semaphore bufferBudget;
+
+	private EventLoopGroup eventLoopGroup;
+
+	private ExecutorService executor;
+
+	private volatile Channel channel;
+
+	public OtlpGrpcServer(AccessMonitorProperties properties, AccessEventPublisher accessEventPublisher,
+			PayloadBufferPool payloadBufferPool, ContentDecoders contentDecoders, UserDetailsService userDetailsService,
+			MeterRegistry meterRegistry) {
+		this(properties.otlp().grpc(), accessEventPublisher, payloadBufferPool, contentDecoders,
+				new BasicAuthenticator(userDetailsService), meterRegistry);
+	}
+
+	OtlpGrpcServer(GrpcProperties properties, AccessEventPublisher accessEventPublisher,
+			PayloadBufferPool payloadBufferPool, ContentDecoders contentDecoders, BasicAuthenticator authenticator,
+			MeterRegistry meterRegistry) {
+		this.properties = properties;
+		this.accessEventPublisher = accessEventPublisher;
+		this.payloadBufferPool = payloadBufferPool;
+		this.contentDecoders = contentDecoders;
+		this.authenticator = authenticator;
+		for (GrpcStatus status : GrpcStatus.values()) {
+			this.requestCounters.put(status,
+					Counter.builder("access.monitor.ingest.grpc.requests")
+						.description("Number of OTLP/gRPC export calls by gRPC status")
+						.tag("status", status.name())
+						.register(meterRegistry));
+		}
+		this.maxBufferedBytes = (int) Math.clamp(properties.maxBufferedSize().toBytes(), 1, Integer.MAX_VALUE);
+		this.bufferBudget = new Semaphore(this.maxBufferedBytes);
+		Gauge
+			.builder("access.monitor.ingest.grpc.buffered", this.bufferBudget,
+					budget -> this.maxBufferedBytes - budget.availablePermits())
+			.description("Bytes of OTLP/gRPC requests buffered until their export has been published")
+			.baseUnit("bytes")
+			.register(meterRegistry);
+	}
+
+	@Override
+	public void start() {
+		if (!this.properties.enabled()) {
+			return;
+		}
+		int maxConcurrentStreams = Math.max(1, this.properties.maxConcurrentStreams());
+		// Credits are returned once the bytes have been charged to the budget, so the
+		// windows only bound the bytes a connection has in transit
+		int streamWindow = (int) Math.max(Http2CodecUtil.DEFAULT_WINDOW_SIZE,
+				Math.min(this.payloadBufferPool.maxSize() + 5L, this.maxBufferedBytes / maxConcurrentStreams));
+		int connectionWindow = (int) Math.max(Http2CodecUtil.DEFAULT_WINDOW_SIZE,
+				Math.min((long) streamWindow * maxConcurrentStreams, this.maxBufferedBytes));
+		Http2Settings settings = Http2Settings.defaultSettings()
+			.maxConcurrentStreams(maxConcurrentStreams)
+			.initialWindowSize(streamWindow);
+		int publishThreads = Math.max(1, this.properties.publishThreads());
+		BlockingQueue<Runnable> publishQueue = (this.properties.publishQueueCapacity() > 0)
+				? new ArrayBlockingQueue<>(this.properties.publishQueueCapacity()) : new SynchronousQueue<>();
+		// The default abort policy lets the handler reject exports with UNAVAILABLE
+		this.executor = new ThreadPoolExecutor(publishThreads, publishThreads, 0, TimeUnit.MILLISECONDS, publishQueue,
+				Thread.ofVirtual().name("otlp-grpc-publish-", 0).factory());
+		this.eventLoopGroup = new MultiThreadIoEventLoopGroup(NioIoHandler.newFactory());
+		ServerBootstrap bootstrap = new ServerBootstrap().group(this.eventLoopGroup)
+			.channel(NioServerSocketChannel.class)
+			.childHandler(new ChannelInitializer<SocketChannel>() {
+
+				@Override
+				protected void initChannel(SocketChannel channel) {
+					channel.pipeline()
+						.addLast(Http2FrameCodecBuilder.forServer().initialSettings(settings).build(),
+								new OtlpGrpcHandler(OtlpGrpcServer.this.accessEventPublisher,
+										OtlpGrpcServer.this.payloadBufferPool, OtlpGrpcServer.this.contentDecoders,
+										OtlpGrpcServer.this.authenticator, OtlpGrpcServer.this.executor,
+										OtlpGrpcServer.this.requestCounters,
+										connectionWindow - Http2CodecUtil.DEFAULT_WINDOW_SIZE,
+										OtlpGrpcServer.this.bufferBudget, OtlpGrpcServer.this.maxBufferedBytes,
+										OtlpGrpcServer.this.properties.requestTimeout()));
+				}
+
+			});
+		this.channel = bootstrap.bind(this.properties.port()).syncUninterruptibly().channel();
+		log.info("Started OTLP/gRPC receiver on port {}", port());
+	}
+
+	@Override
+	public void stop() {
+		Channel channel = this.channel;
+		if (channel == null) {
+			return;
+		}
+		channel.close().syncUninterruptibly();
+		this.channel = null;
+		this.eventLoopGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS).syncUninterruptibly();
+		this.executor.shutdown();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.channel != null;
+	}
+
+	/**
+	 * Returns the port the receiver listens on, or {@code -1} if it is not running.
+	 */
+	public int port() {
+		Channel channel = this.channel;
+		return (channel != null) ? ((InetSocketAddress) channel.localAddress()).getPort() : -1;
+	}
+
+}
@@ -2,6 +2,7 @@ package am.ik.accessmonitor.ingest.web;
 
 import java.time.Instant;
 
+import am.ik.accessmonitor.ingest.AccessEventPublisher;
 import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
 import io.opentelemetry.proto.common.v1.AnyValue;
 import io.opentelemetry.proto.common.v1.KeyValue;
@@ -9,7 +10,6 @@ import io.opentelemetry.proto.logs.v1.LogRecord;
 import io.opentelemetry.proto.logs.v1.ResourceLogs;
 import io.opentelemetry.proto.logs.v1.ScopeLogs;
 
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -18,26 +18,27 @@ import org.springframework.web.bind.annotation.RestController;
 
 /**
  * Receives access log events in a simple JSON format, converts them to OTLP protobuf, and
- * forwards to RabbitMQ.
+ * publishes them to RabbitMQ through the {@link AccessEventPublisher}.
  */
 @RestController
 public class AccessLogController {
 
-	private final RabbitTemplate rabbitTemplate;
+	private final AccessEventPublisher accessEventPublisher;
 
-	public AccessLogController(RabbitTemplate rabbitTemplate) {
-		this.rabbitTemplate = rabbitTemplate;
+	public AccessLogController(AccessEventPublisher accessEventPublisher) {
+		this.accessEventPublisher = accessEventPublisher;
 	}
 
 	/**
-	 * Accepts a simple JSON access log and publishes it as OTLP protobuf to the access
-	 * exchange.
+	 * Accepts a simple JSON access log and publishes it to the access exchange. The log
+	 * is converted to OTLP protobuf first, so that it is decoded exactly like logs
+	 * received on {@code /v1/logs}.
 	 */
 	@PostMapping(path = "/api/ingest", consumes = "application/json")
 	@ResponseStatus(HttpStatus.ACCEPTED)
 	public void ingest(@RequestBody IngestRequest request) {
 		byte[] protobuf = toOtlpProtobuf(request);
-		this.rabbitTemplate.convertAndSend("access_exchange", "access_logs", protobuf);
+		this.accessEventPublisher.publishOtlp(protobuf);
 	}
 
 	private byte[] toOtlpProtobuf(IngestRequest request) {
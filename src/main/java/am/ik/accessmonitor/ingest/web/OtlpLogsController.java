@@ -1,44 +1,177 @@
 package am.ik.accessmonitor.ingest.web;
 
-import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.util.zip.GZIPInputStream;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import am.ik.accessmonitor.ingest.AccessEventPublisher;
+import am.ik.accessmonitor.ingest.PayloadBuffer;
+import am.ik.accessmonitor.ingest.PayloadBufferPool;
+import am.ik.accessmonitor.ingest.PayloadTooLargeException;
+import am.ik.accessmonitor.ingest.encoding.ContentDecoder;
+import am.ik.accessmonitor.ingest.encoding.ContentDecoders;
+import am.ik.accessmonitor.ingest.encoding.MalformedContentException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
-import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
- * Receives OTLP log export requests in protobuf format and forwards them to RabbitMQ.
+ * Receives OTLP log export requests in protobuf format and publishes them to RabbitMQ
+ * through the {@link AccessEventPublisher}.
+ * <p>
+ * The request body is streamed from the servlet input stream, through the
+ * {@link ContentDecoder} of its {@code Content-Encoding} if it is compressed, into a
+ * pooled {@link PayloadBuffer}, so that the decompressed body is not copied into an array
+ * of its own. Payloads exceeding {@code access-monitor.otlp.max-payload-size} after
+ * decompression are rejected with {@code 413 Content Too Large} as soon as the limit is
+ * crossed, which also stops decompression bombs. Encodings without a decoder are rejected
+ * with {@code 415 Unsupported Media Type}, listing the supported ones in
+ * {@code Accept-Encoding}, and bodies that cannot be decoded with
+ * {@code 400 Bad Request}.
  */
 @RestController
 public class OtlpLogsController {
 
-	private final RabbitTemplate rabbitTemplate;
+	private final AccessEventPublisher accessEventPublisher;
+
+	private final PayloadBufferPool payloadBufferPool;
+
+	private final ContentDecoders contentDecoders;
+
+	private final MeterRegistry meterRegistry;
 
-	public OtlpLogsController(RabbitTemplate rabbitTemplate) {
-		this.rabbitTemplate = rabbitTemplate;
+	private final Map<String, EncodingMetrics> metrics = new ConcurrentHashMap<>();
+
+	public OtlpLogsController(AccessEventPublisher accessEventPublisher, PayloadBufferPool payloadBufferPool,
+			ContentDecoders contentDecoders, MeterRegistry meterRegistry) {
+		this.accessEventPublisher = accessEventPublisher;
+		this.payloadBufferPool = payloadBufferPool;
+		this.contentDecoders = contentDecoders;
+		this.meterRegistry = meterRegistry;
 	}
 
 	/**
 	 * Accepts OTLP protobuf log messages and publishes them to the access exchange.
 	 */
 	@PostMapping(path = "/v1/logs", consumes = "application/x-protobuf")
-	@ResponseStatus(HttpStatus.ACCEPTED)
-	public void receiveLogs(@RequestBody byte[] body,
+	public ResponseEntity<?> receiveLogs(HttpServletRequest request,
 			@RequestHeader(name = "Content-Encoding", required = false) String encoding) throws IOException {
-		byte[] decoded = "gzip".equalsIgnoreCase(encoding) ? gunzip(body) : body;
-		this.rabbitTemplate.convertAndSend("access_exchange", "access_logs", decoded);
+		ContentDecoder decoder = null;
+		if (!ContentDecoders.isIdentity(encoding)) {
+			decoder = this.contentDecoders.find(encoding);
+			if (decoder == null) {
+				String supported = String.join(", ", this.contentDecoders.encodings());
+				return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+					.header(HttpHeaders.ACCEPT_ENCODING, supported)
+					.body(Map.of("message",
+							"Unsupported Content-Encoding: %s (supported: %s)".formatted(encoding, supported)));
+			}
+		}
+		else if (request.getContentLengthLong() > this.payloadBufferPool.maxSize()) {
+			return contentTooLarge(new PayloadTooLargeException(this.payloadBufferPool.maxSize()));
+		}
+		CountingInputStream body = new CountingInputStream(request.getInputStream());
+		try (PayloadBuffer payload = this.payloadBufferPool.acquire()) {
+			if (decoder != null) {
+				decoder.decode(body, payload);
+			}
+			else {
+				payload.readFrom(body);
+			}
+			metrics((decoder != null) ? decoder.encoding() : ContentDecoders.IDENTITY).record(body.count(),
+					payload.size());
+			this.accessEventPublisher.publishOtlp(payload.array(), payload.size());
+		}
+		catch (PayloadTooLargeException ex) {
+			return contentTooLarge(ex);
+		}
+		catch (MalformedContentException ex) {
+			return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
+		}
+		return ResponseEntity.accepted().build();
+	}
+
+	private ResponseEntity<?> contentTooLarge(PayloadTooLargeException ex) {
+		return ResponseEntity.status(HttpStatus.CONTENT_TOO_LARGE).body(Map.of("message", ex.getMessage()));
+	}
+
+	private EncodingMetrics metrics(String encoding) {
+		return this.metrics.computeIfAbsent(encoding, key -> new EncodingMetrics(
+				DistributionSummary.builder("access.monitor.ingest.request.size")
+					.description("Size of OTLP request bodies as received")
+					.baseUnit("bytes")
+					.tag("encoding", key)
+					.register(this.meterRegistry),
+				DistributionSummary.builder("access.monitor.ingest.payload.size")
+					.description("Size of OTLP payloads after decompression")
+					.baseUnit("bytes")
+					.tag("encoding", key)
+					.register(this.meterRegistry),
+				ContentDecoders.IDENTITY.equals(key) ? null
+						: DistributionSummary.builder("access.monitor.ingest.compression.ratio")
+							.description("Ratio of the decompressed to the received size of compressed OTLP requests")
+							.tag("encoding", key)
+							.register(this.meterRegistry)));
+	}
+
+	/**
+	 * Metrics of the requests with one content encoding.
+	 */
+	private record EncodingMetrics(DistributionSummary requestSize, DistributionSummary payloadSize,
+			DistributionSummary compressionRatio) {
+
+		void record(long requestSize, long payloadSize) {
+			this.requestSize.record(requestSize);
+			this.payloadSize.record(payloadSize);
+			if (this.compressionRatio != null && requestSize > 0) {
+				this.compressionRatio.record((double) payloadSize / requestSize);
+			}
+		}
+
 	}
 
-	private byte[] gunzip(byte[] data) throws IOException {
-		try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(data))) {
-			return gzipInputStream.readAllBytes();
+	/**
+	 * Counts the bytes read from the request body.
+	 */
+	private static final class CountingInputStream extends FilterInputStream {
+
+		private long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				this.count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				this.count += read;
+			}
+			return read;
+		}
+
+		long count() {
+			return this.count;
 		}
+
 	}
 
 }
@@ -0,0 +1,89 @@
+package am.ik.accessmonitor.messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import am.ik.accessmonitor.event.AccessEvent;
+import am.ik.accessmonitor.event.AccessEventBatchCodec;
+import am.ik.accessmonitor.event.OtlpLogConverter;
+import tools.jackson.databind.json.JsonMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads access events from messages of the access exchange. Messages whose content type
+ * is the {@link AccessEventBatchCodec#MEDIA_TYPE access event batch} media type, of any
+ * version, have been decoded at ingest time and are read with the
+ * {@link AccessEventBatchCodec}; any other message, e.g. one published by the
+ * OpenTelemetry Collector, is decoded as an OTLP protobuf payload. Messages that cannot
+ * be decoded yield no events.
+ */
+@Component
+public class AccessEventMessageReader {
+
+	private static final Logger log = LoggerFactory.getLogger(AccessEventMessageReader.class);
+
+	private final OtlpLogConverter otlpLogConverter;
+
+	private final JsonMapper jsonMapper;
+
+	public AccessEventMessageReader(OtlpLogConverter otlpLogConverter, JsonMapper jsonMapper) {
+		this.otlpLogConverter = otlpLogConverter;
+		this.jsonMapper = jsonMapper;
+	}
+
+	/**
+	 * Returns the access events of a message.
+	 */
+	public List<AccessEvent> events(Message message) {
+		if (isEventBatch(message)) {
+			try {
+				return AccessEventBatchCodec.decodeEvents(message.getBody());
+			}
+			catch (IllegalArgumentException ex) {
+				log.error("Failed to decode access event batch", ex);
+				return List.of();
+			}
+		}
+		try {
+			return this.otlpLogConverter.convert(message.getBody());
+		}
+		catch (RuntimeException ex) {
+			log.error("Failed to convert OTLP message", ex);
+			return List.of();
+		}
+	}
+
+	/**
+	 * Returns the JSON representation of each access event of a message. Batches
+	 * published by the ingest endpoints carry the JSON pre-rendered; the events of any
+	 * other message are rendered here.
+	 */
+	public List<String> json(Message message) {
+		if (isEventBatch(message)) {
+			try {
+				if (AccessEventBatchCodec.hasJson(message.getBody())) {
+					return AccessEventBatchCodec.decodeJson(message.getBody());
+				}
+			}
+			catch (IllegalArgumentException ex) {
+				log.error("Failed to decode access event batch", ex);
+				return List.of();
+			}
+		}
+		List<AccessEvent> events = events(message);
+		List<String> json = new ArrayList<>(events.size());
+		for (AccessEvent event : events) {
+			json.add(this.jsonMapper.writeValueAsString(event));
+		}
+		return json;
+	}
+
+	private static boolean isEventBatch(Message message) {
+		return AccessEventBatchCodec.isEventBatch(message.getMessageProperties().getContentType());
+	}
+
+}
@@ -3,47 +3,60 @@ package am.ik.accessmonitor.messaging;
 import java.util.List;
 
 import am.ik.accessmonitor.aggregation.ValkeyAggregationService;
+import am.ik.accessmonitor.alert.StreamingAlertEvaluator;
 import am.ik.accessmonitor.blacklist.DisallowedHostAccessCounter;
 import am.ik.accessmonitor.event.AccessEvent;
-import am.ik.accessmonitor.event.OtlpLogConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 /**
- * Consumes OTLP log messages from the aggregation queue and writes aggregated metrics to
- * Valkey. Also tracks disallowed host accesses for blacklist detection.
+ * Consumes access log messages from the aggregation queue and writes aggregated metrics
+ * to Valkey. Also tracks disallowed host accesses for blacklist detection and feeds the
+ * {@link StreamingAlertEvaluator} when streaming alert evaluation is enabled. Replaced by
+ * {@link BatchAggregationConsumer} when batch consumption is enabled.
  */
 @Component
+@ConditionalOnProperty(name = "access-monitor.aggregation.batch.enabled", havingValue = "false", matchIfMissing = true)
 public class AggregationConsumer {
 
 	private static final Logger log = LoggerFactory.getLogger(AggregationConsumer.class);
 
-	private final OtlpLogConverter otlpLogConverter;
+	private final AccessEventMessageReader messageReader;
 
 	private final ValkeyAggregationService aggregationService;
 
 	private final DisallowedHostAccessCounter disallowedHostAccessCounter;
 
-	public AggregationConsumer(OtlpLogConverter otlpLogConverter, ValkeyAggregationService aggregationService,
-			DisallowedHostAccessCounter disallowedHostAccessCounter) {
-		this.otlpLogConverter = otlpLogConverter;
+	private final StreamingAlertEvaluator streamingAlertEvaluator;
+
+	public AggregationConsumer(AccessEventMessageReader messageReader, ValkeyAggregationService aggregationService,
+			DisallowedHostAccessCounter disallowedHostAccessCounter,
+			ObjectProvider<StreamingAlertEvaluator> streamingAlertEvaluator) {
+		this.messageReader = messageReader;
 		this.aggregationService = aggregationService;
 		this.disallowedHostAccessCounter = disallowedHostAccessCounter;
+		this.streamingAlertEvaluator = streamingAlertEvaluator.getIfAvailable();
 	}
 
 	/**
-	 * Processes an OTLP log message from the aggregation queue.
+	 * Processes an access log message from the aggregation queue.
 	 */
 	@RabbitListener(queues = "aggregation_queue", containerFactory = "aggregationListenerContainerFactory")
-	public void onMessage(byte[] body) {
-		List<AccessEvent> events = this.otlpLogConverter.convert(body);
+	public void onMessage(Message message) {
+		List<AccessEvent> events = this.messageReader.events(message);
 		for (AccessEvent event : events) {
 			try {
 				this.aggregationService.aggregate(event);
 				this.disallowedHostAccessCounter.increment(event);
+				if (this.streamingAlertEvaluator != null) {
+					this.streamingAlertEvaluator.record(event);
+				}
 			}
 			catch (Exception ex) {
 				log.error("Failed to aggregate event: {}", event, ex);
@@ -0,0 +1,137 @@
+package am.ik.accessmonitor.messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import am.ik.accessmonitor.aggregation.ValkeyAggregationService;
+import am.ik.accessmonitor.aggregation.ValkeyScripts;
+import am.ik.accessmonitor.alert.StreamingAlertEvaluator;
+import am.ik.accessmonitor.blacklist.DisallowedHostAccessCounter;
+import am.ik.accessmonitor.config.RabbitMqTopologyConfig;
+import am.ik.accessmonitor.event.AccessEvent;
+import io.lettuce.core.RedisCommandExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Consumes access log messages from the aggregation queue in batches. All events of a
+ * batch are converted first and then written to Valkey as one unit: the aggregation
+ * increments and the disallowed host counts are merged and sent in a single pipelined
+ * {@code MULTI}/{@code EXEC} transaction, i.e. one round trip per batch.
+ * <p>
+ * Valkey does not roll back a transaction whose commands fail at execution time, so the
+ * reply of {@code EXEC} decides what happens to the batch:
+ * <ul>
+ * <li>all commands succeeded: the batch is acknowledged</li>
+ * <li>the transaction was not executed, e.g. because the connection failed: the exception
+ * is propagated and the batch is retried by the container up to
+ * {@code access-monitor.aggregation.batch.max-retries} times before it is moved to the
+ * {@value RabbitMqTopologyConfig#AGGREGATION_DEAD_LETTER_QUEUE} queue</li>
+ * <li>the transaction was executed but some of its commands failed: the other commands
+ * have been applied, so the batch is moved to the dead letter queue right away instead of
+ * being retried, which would count them twice</li>
+ * </ul>
+ * Redelivered messages are counted exactly once unless the reply of a committed
+ * {@code EXEC} is lost (at-least-once). Messages that cannot be decoded are skipped by
+ * the reader.
+ */
+@Component
+@ConditionalOnProperty(name = "access-monitor.aggregation.batch.enabled", havingValue = "true")
+public class BatchAggregationConsumer {
+
+	private static final Logger log = LoggerFactory.getLogger(BatchAggregationConsumer.class);
+
+	private final AccessEventMessageReader messageReader;
+
+	private final ValkeyAggregationService aggregationService;
+
+	private final DisallowedHostAccessCounter disallowedHostAccessCounter;
+
+	private final StringRedisTemplate redisTemplate;
+
+	private final MessageBatchRecoverer messageRecoverer;
+
+	private final StreamingAlertEvaluator streamingAlertEvaluator;
+
+	public BatchAggregationConsumer(AccessEventMessageReader messageReader, ValkeyAggregationService aggregationService,
+			DisallowedHostAccessCounter disallowedHostAccessCounter, StringRedisTemplate redisTemplate,
+			MessageBatchRecoverer aggregationMessageRecoverer,
+			ObjectProvider<StreamingAlertEvaluator> streamingAlertEvaluator) {
+		this.messageReader = messageReader;
+		this.aggregationService = aggregationService;
+		this.disallowedHostAccessCounter = disallowedHostAccessCounter;
+		this.redisTemplate = redisTemplate;
+		this.messageRecoverer = aggregationMessageRecoverer;
+		this.streamingAlertEvaluator = streamingAlertEvaluator.getIfAvailable();
+	}
+
+	/**
+	 * Processes a batch of access log messages from the aggregation queue.
+	 */
+	@RabbitListener(queues = "aggregation_queue", containerFactory = "aggregationBatchListenerContainerFactory")
+	public void onMessages(List<Message> messages) {
+		List<AccessEvent> events = new ArrayList<>();
+		for (Message message : messages) {
+			events.addAll(this.messageReader.events(message));
+		}
+		if (events.isEmpty()) {
+			return;
+		}
+		List<Object> results;
+		try {
+			results = ValkeyScripts.executeInTransaction(this.redisTemplate, (RedisCallback<Object>) (connection) -> {
+				this.aggregationService.aggregate(events, connection);
+				this.disallowedHostAccessCounter.increment(events, connection);
+				return null;
+			});
+		}
+		catch (RuntimeException ex) {
+			if (isPartiallyApplied(ex)) {
+				log.error("Batch of {} messages ({} events) was partially aggregated, moving it to {}", messages.size(),
+						events.size(), RabbitMqTopologyConfig.AGGREGATION_DEAD_LETTER_QUEUE, ex);
+				this.messageRecoverer.recover(messages, ex);
+				return;
+			}
+			log.error("Failed to aggregate batch of {} messages ({} events)", messages.size(), events.size(), ex);
+			throw ex;
+		}
+		if (results.isEmpty() || !(results.getFirst() instanceof List)) {
+			throw new IllegalStateException(
+					"Transaction of batch of %d messages was discarded".formatted(messages.size()));
+		}
+		// Only committed batches are evaluated, so a retried batch is not counted twice
+		if (this.streamingAlertEvaluator != null) {
+			this.streamingAlertEvaluator.record(events);
+		}
+	}
+
+	/**
+	 * Returns whether the failure is the error reply of a command executed by
+	 * {@code EXEC}, as opposed to a failure that prevented the transaction from being
+	 * executed, such as {@code EXECABORT} or a connection failure. NOSCRIPT replies are
+	 * not partial (see {@link ValkeyScripts#executeInTransaction}).
+	 */
+	private static boolean isPartiallyApplied(RuntimeException ex) {
+		if (ValkeyScripts.isNoScript(ex)) {
+			return false;
+		}
+		for (Object result : ValkeyScripts.pipelineResult(ex)) {
+			if (result instanceof Throwable failure
+					&& NestedExceptionUtils.getRootCause(failure) instanceof RedisCommandExecutionException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -1,14 +1,10 @@
 package am.ik.accessmonitor.messaging;
 
-import java.util.List;
-
-import am.ik.accessmonitor.event.AccessEvent;
-import am.ik.accessmonitor.event.OtlpLogConverter;
 import am.ik.accessmonitor.streaming.SseSessionManager;
-import tools.jackson.databind.json.JsonMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.Exchange;
 import org.springframework.amqp.rabbit.annotation.Queue;
 import org.springframework.amqp.rabbit.annotation.QueueBinding;
@@ -16,39 +12,37 @@ import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
 
 /**
- * Consumes OTLP log messages from an anonymous exclusive queue bound to the access
+ * Consumes access log messages from an anonymous exclusive queue bound to the access
  * exchange and broadcasts them as JSON to SSE clients. Each instance creates its own
- * exclusive queue so that all instances receive a copy of every message.
+ * exclusive queue so that all instances receive a copy of every message. Messages are
+ * only decoded and rendered while an SSE client is connected to this instance.
  */
 @Component
 public class RealtimeConsumer {
 
 	private static final Logger log = LoggerFactory.getLogger(RealtimeConsumer.class);
 
-	private final OtlpLogConverter otlpLogConverter;
+	private final AccessEventMessageReader messageReader;
 
 	private final SseSessionManager sseSessionManager;
 
-	private final JsonMapper jsonMapper;
-
-	public RealtimeConsumer(OtlpLogConverter otlpLogConverter, SseSessionManager sseSessionManager,
-			JsonMapper jsonMapper) {
-		this.otlpLogConverter = otlpLogConverter;
+	public RealtimeConsumer(AccessEventMessageReader messageReader, SseSessionManager sseSessionManager) {
+		this.messageReader = messageReader;
 		this.sseSessionManager = sseSessionManager;
-		this.jsonMapper = jsonMapper;
 	}
 
 	/**
-	 * Processes an OTLP log message and broadcasts each event to SSE clients.
+	 * Processes an access log message and broadcasts each event to SSE clients.
 	 */
 	@RabbitListener(
 			bindings = @QueueBinding(value = @Queue(exclusive = "true", autoDelete = "true"),
 					exchange = @Exchange(name = "access_exchange", type = "topic"), key = "access_logs"),
 			containerFactory = "sseListenerContainerFactory")
-	public void onMessage(byte[] body) {
-		List<AccessEvent> events = this.otlpLogConverter.convert(body);
-		for (AccessEvent event : events) {
-			String json = this.jsonMapper.writeValueAsString(event);
+	public void onMessage(Message message) {
+		if (!this.sseSessionManager.hasSessions()) {
+			return;
+		}
+		for (String json : this.messageReader.json(message)) {
 			this.sseSessionManager.broadcast(json);
 		}
 	}
@@ -1,33 +1,78 @@
 package am.ik.accessmonitor.query;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 import am.ik.accessmonitor.AccessMonitorProperties;
+import am.ik.accessmonitor.aggregation.AccessMetricsStore;
+import am.ik.accessmonitor.aggregation.AccessMetricsStore.Dimensions;
+import am.ik.accessmonitor.aggregation.AccessMetricsStore.HostSlot;
+import am.ik.accessmonitor.aggregation.AccessMetricsStore.SeriesFilter;
 import am.ik.accessmonitor.aggregation.Granularity;
+import am.ik.accessmonitor.aggregation.LatencyHistogram;
+import am.ik.accessmonitor.aggregation.PathPatternMatcher;
+import am.ik.accessmonitor.aggregation.SeriesDelta;
+import am.ik.accessmonitor.aggregation.SeriesKey;
 import am.ik.accessmonitor.aggregation.ValkeyKeyBuilder;
 
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
 import org.springframework.stereotype.Service;
 
 /**
  * Service for querying aggregated access metrics from Valkey. Supports time-range queries
  * with optional dimension filters and dimension listing.
+ * <p>
+ * The hosts of all slots are resolved first, then the series of every host slot are read
+ * through the {@link AccessMetricsStore} in bulk, so that the number of round trips does
+ * not grow with the number of slots or series.
  */
 @Service
 public class AccessQueryService {
 
+	private static final Comparator<SeriesKey> SERIES_ORDER = Comparator.comparing(SeriesKey::timestamp)
+		.thenComparing(SeriesKey::host)
+		.thenComparing(SeriesKey::path)
+		.thenComparing(SeriesKey::method)
+		.thenComparingInt(SeriesKey::status);
+
+	private static final String METRIC_BOTH = "both";
+
+	private static final String METRIC_UNIQUE_CLIENTS = "uniqueClients";
+
+	private static final List<String> TOP_DIMENSIONS = List.of("paths", "paths-4xx", "paths-5xx", "clients");
+
+	private static final long TOP_UNION_TTL_SECONDS = 60;
+
+	private final AccessMetricsStore store;
+
 	private final StringRedisTemplate redisTemplate;
 
+	private final PathPatternMatcher pathPatternMatcher;
+
 	private final int maxSlots;
 
-	public AccessQueryService(StringRedisTemplate redisTemplate, AccessMonitorProperties properties) {
+	private final boolean uniqueClientsEnabled;
+
+	private final int topKMaxMembers;
+
+	public AccessQueryService(AccessMetricsStore store, StringRedisTemplate redisTemplate,
+			PathPatternMatcher pathPatternMatcher, AccessMonitorProperties properties) {
+		this.store = store;
 		this.redisTemplate = redisTemplate;
+		this.pathPatternMatcher = pathPatternMatcher;
 		this.maxSlots = properties.query().maxSlots();
+		this.uniqueClientsEnabled = properties.aggregation().uniqueClients().enabled();
+		this.topKMaxMembers = properties.aggregation().topK().maxMembers();
 	}
 
 	/**
@@ -45,44 +90,154 @@ public class AccessQueryService {
 						.formatted(slots.size(), this.maxSlots));
 		}
 
+		List<String> timestamps = slots.stream().map(granularity::format).toList();
+		List<List<String>> hostsBySlot = (params.host() != null)
+				? timestamps.stream().map(ts -> List.of(params.host())).toList()
+				: this.store.hosts(granularity, timestamps);
+		Map<String, Instant> slotsByTimestamp = new HashMap<>();
+		List<HostSlot> hostSlots = new ArrayList<>();
+		for (int i = 0; i < timestamps.size(); i++) {
+			slotsByTimestamp.put(timestamps.get(i), slots.get(i));
+			for (String host : hostsBySlot.get(i)) {
+				hostSlots.add(new HostSlot(timestamps.get(i), host));
+			}
+		}
+		List<QueryResult.SeriesEntry> series = METRIC_UNIQUE_CLIENTS.equals(params.metric()) ? List.of()
+				: readSeries(granularity, hostSlots, slotsByTimestamp, params);
+		Long uniqueClients = METRIC_UNIQUE_CLIENTS.equals(params.metric())
+				? countUniqueClients(granularity, hostSlots, params.path()) : null;
+
+		return new QueryResult(params.granularity(), params.from(), params.to(), series, uniqueClients);
+	}
+
+	private List<QueryResult.SeriesEntry> readSeries(Granularity granularity, List<HostSlot> hostSlots,
+			Map<String, Instant> slotsByTimestamp, QueryParams params) {
+		Map<SeriesKey, SeriesDelta> values = this.store.read(granularity, hostSlots,
+				new SeriesFilter(params.path(), params.status(), params.method()));
+
+		// Group the series by (slot, host, path, method) with one entry per status
+		List<SeriesKey> keys = values.keySet().stream().sorted(SERIES_ORDER).toList();
 		List<QueryResult.SeriesEntry> series = new ArrayList<>();
+		SeriesKey previous = null;
+		Map<String, QueryResult.StatusMetrics> statusMetrics = null;
+		for (SeriesKey key : keys) {
+			if (previous == null || !sameEntry(previous, key)) {
+				statusMetrics = new LinkedHashMap<>();
+				series.add(new QueryResult.SeriesEntry(slotsByTimestamp.get(key.timestamp()), key.host(), key.path(),
+						key.method(), statusMetrics));
+				previous = key;
+			}
+			QueryResult.StatusMetrics metrics = buildMetrics(params.metric(), values.get(key));
+			if (metrics != null) {
+				statusMetrics.put(String.valueOf(key.status()), metrics);
+			}
+		}
+		series.removeIf(entry -> entry.statuses().isEmpty());
+		return series;
+	}
+
+	/**
+	 * Counts the distinct client IPs of the host slots with a single PFCOUNT, which
+	 * merges the HyperLogLogs of all slots on the server. Returns {@code null} when
+	 * unique clients are not tracked for the path, i.e. it is neither absent nor a path
+	 * pattern label, or tracking is disabled.
+	 */
+	private Long countUniqueClients(Granularity granularity, List<HostSlot> hostSlots, String path) {
+		if (!this.uniqueClientsEnabled || (path != null && !this.pathPatternMatcher.isLabel(path))) {
+			return null;
+		}
+		String[] keys = hostSlots.stream()
+			.map(hostSlot -> (path != null)
+					? ValkeyKeyBuilder.uniqueClientsKey(granularity, hostSlot.timestamp(), hostSlot.host(), path)
+					: ValkeyKeyBuilder.uniqueClientsKey(granularity, hostSlot.timestamp(), hostSlot.host()))
+			.toArray(String[]::new);
+		if (keys.length == 0) {
+			return 0L;
+		}
+		return this.redisTemplate.opsForHyperLogLog().size(keys);
+	}
+
+	/**
+	 * Queries the members with the highest counts of a leaderboard across a time range.
+	 * The leaderboards of all slots (and of all hosts, unless a host is given) are merged
+	 * on the server with ZUNIONSTORE into a short-lived temporary key, so that a single
+	 * round trip is needed regardless of the number of slots.
+	 * @throws IllegalArgumentException if the dimension is unknown, the limit is out of
+	 * range or the number of time slots exceeds the configured maximum
+	 */
+	public TopResult queryTop(TopParams params) {
+		if (!TOP_DIMENSIONS.contains(params.dimension())) {
+			throw new IllegalArgumentException(
+					"Unknown dimension '%s'. Must be one of %s.".formatted(params.dimension(), TOP_DIMENSIONS));
+		}
+		if (params.limit() < 1 || params.limit() > this.topKMaxMembers) {
+			throw new IllegalArgumentException("Limit must be between 1 and %d.".formatted(this.topKMaxMembers));
+		}
+		Granularity granularity = Granularity.fromLabel(params.granularity());
+		List<Instant> slots = expandSlots(params.from(), params.to(), granularity);
 
-		for (Instant slot : slots) {
-			String ts = granularity.format(slot);
-			List<String> hosts = resolveHosts(granularity, ts, params.host());
-
-			for (String host : hosts) {
-				List<String> paths = resolvePaths(granularity, ts, host, params.path());
-				List<String> methods = resolveMethods(granularity, ts, host, params.method());
-				Set<String> statuses = resolveStatuses(granularity, ts, host, params.status());
-
-				for (String path : paths) {
-					for (String method : methods) {
-						Map<String, QueryResult.StatusMetrics> statusMetrics = new LinkedHashMap<>();
-
-						for (String statusStr : statuses) {
-							int statusCode = Integer.parseInt(statusStr);
-							Long count = getCount(granularity, ts, host, path, statusCode, method);
-							DurationStats duration = getDuration(granularity, ts, host, path, statusCode, method);
-
-							if ((count != null && count > 0) || duration != null) {
-								QueryResult.StatusMetrics metrics = buildMetrics(params.metric(), count, duration);
-								if (metrics != null) {
-									statusMetrics.put(statusStr, metrics);
-								}
-							}
-						}
-
-						if (!statusMetrics.isEmpty()) {
-							series.add(new QueryResult.SeriesEntry(granularity.truncate(slot), host, path, method,
-									statusMetrics));
-						}
-					}
+		if (slots.size() > this.maxSlots) {
+			throw new IllegalArgumentException(
+					"Too many time slots (%d). Maximum is %d. Use a larger granularity or a narrower time range."
+						.formatted(slots.size(), this.maxSlots));
+		}
+
+		List<String> timestamps = slots.stream().map(granularity::format).toList();
+		List<String> keys = new ArrayList<>();
+		if ("clients".equals(params.dimension())) {
+			for (String ts : timestamps) {
+				keys.add(ValkeyKeyBuilder.topClientsKey(granularity, ts));
+			}
+		}
+		else {
+			List<List<String>> hostsBySlot = (params.host() != null)
+					? timestamps.stream().map(ts -> List.of(params.host())).toList()
+					: this.store.hosts(granularity, timestamps);
+			for (int i = 0; i < timestamps.size(); i++) {
+				for (String host : hostsBySlot.get(i)) {
+					keys.add("paths".equals(params.dimension())
+							? ValkeyKeyBuilder.topPathsKey(granularity, timestamps.get(i), host)
+							: ValkeyKeyBuilder.topErrorPathsKey(granularity, timestamps.get(i), host,
+									params.dimension().substring("paths-".length())));
 				}
 			}
 		}
 
-		return new QueryResult(params.granularity(), params.from(), params.to(), series);
+		List<TopResult.TopEntry> entries = readTop(keys, params.limit());
+		return new TopResult(params.granularity(), params.from(), params.to(), params.dimension(), params.host(),
+				entries);
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<TopResult.TopEntry> readTop(List<String> keys, int limit) {
+		Set<TypedTuple<String>> tuples;
+		if (keys.isEmpty()) {
+			return List.of();
+		}
+		else if (keys.size() == 1) {
+			tuples = this.redisTemplate.opsForZSet().reverseRangeWithScores(keys.getFirst(), 0, limit - 1);
+		}
+		else {
+			byte[] destination = ("access:tmp:top:" + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+			byte[][] sources = keys.stream().map(key -> key.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+			List<Object> results = this.redisTemplate.executePipelined((RedisCallback<Object>) (connection) -> {
+				connection.zSetCommands().zUnionStore(destination, sources);
+				connection.keyCommands().expire(destination, TOP_UNION_TTL_SECONDS);
+				connection.zSetCommands().zRevRangeWithScores(destination, 0, limit - 1);
+				connection.keyCommands().del(destination);
+				return null;
+			});
+			tuples = (Set<TypedTuple<String>>) results.get(2);
+		}
+		if (tuples == null) {
+			return List.of();
+		}
+		List<TopResult.TopEntry> entries = new ArrayList<>(tuples.size());
+		for (TypedTuple<String> tuple : tuples) {
+			Double score = tuple.getScore();
+			entries.add(new TopResult.TopEntry(tuple.getValue(), (score != null) ? score.longValue() : 0));
+		}
+		return entries;
 	}
 
 	/**
@@ -102,49 +257,12 @@ public class AccessQueryService {
 		}
 
 		List<String> timestamps = slots.stream().map(granularity::format).distinct().toList();
-
-		// Get all hosts across all slots
-		List<String> hostsKeys = timestamps.stream()
-			.map(ts -> ValkeyKeyBuilder.hostsIndexKey(granularity, ts))
-			.toList();
-		Set<String> allHosts = unionSets(hostsKeys);
-
-		// Determine which hosts to scan for detail dimensions
-		List<String> hostsForDetail = params.host() != null ? List.of(params.host())
-				: allHosts.stream().sorted().toList();
-
-		// Build all keys for paths, methods, statuses
-		List<String> pathKeys = new ArrayList<>();
-		List<String> methodKeys = new ArrayList<>();
-		List<String> statusKeys = new ArrayList<>();
-
-		for (String ts : timestamps) {
-			for (String host : hostsForDetail) {
-				pathKeys.add(ValkeyKeyBuilder.pathsIndexKey(granularity, ts, host));
-				methodKeys.add(ValkeyKeyBuilder.methodsIndexKey(granularity, ts, host));
-				statusKeys.add(ValkeyKeyBuilder.statusesIndexKey(granularity, ts, host));
-			}
-		}
-
-		Set<String> allPaths = unionSets(pathKeys);
-		Set<String> allMethods = unionSets(methodKeys);
-		Set<String> allStatuses = unionSets(statusKeys);
+		Dimensions dimensions = this.store.dimensions(granularity, timestamps, params.host());
 
 		return new DimensionResult(params.granularity(), params.from(), params.to(), params.host(),
-				allHosts.stream().sorted().toList(), allPaths.stream().sorted().toList(),
-				allStatuses.stream().sorted().map(Integer::parseInt).toList(), allMethods.stream().sorted().toList());
-	}
-
-	private Set<String> unionSets(List<String> keys) {
-		if (keys.isEmpty()) {
-			return Set.of();
-		}
-		if (keys.size() == 1) {
-			Set<String> result = this.redisTemplate.opsForSet().members(keys.getFirst());
-			return result != null ? result : Set.of();
-		}
-		Set<String> result = this.redisTemplate.opsForSet().union(keys.getFirst(), keys.subList(1, keys.size()));
-		return result != null ? result : Set.of();
+				dimensions.hosts().stream().sorted().toList(), dimensions.paths().stream().sorted().toList(),
+				dimensions.statuses().stream().sorted().map(Integer::parseInt).toList(),
+				dimensions.methods().stream().sorted().toList());
 	}
 
 	private List<Instant> expandSlots(Instant from, Instant to, Granularity granularity) {
@@ -158,81 +276,39 @@ public class AccessQueryService {
 		return slots;
 	}
 
-	private List<String> resolveHosts(Granularity granularity, String ts, String hostFilter) {
-		if (hostFilter != null) {
-			return List.of(hostFilter);
-		}
-		Set<String> hosts = this.redisTemplate.opsForSet().members(ValkeyKeyBuilder.hostsIndexKey(granularity, ts));
-		return hosts != null ? hosts.stream().sorted().toList() : List.of();
-	}
-
-	private List<String> resolvePaths(Granularity granularity, String ts, String host, String pathFilter) {
-		if (pathFilter != null) {
-			return List.of(pathFilter);
-		}
-		Set<String> paths = this.redisTemplate.opsForSet()
-			.members(ValkeyKeyBuilder.pathsIndexKey(granularity, ts, host));
-		return paths != null ? paths.stream().sorted().toList() : List.of();
-	}
-
-	private List<String> resolveMethods(Granularity granularity, String ts, String host, String methodFilter) {
-		if (methodFilter != null) {
-			return List.of(methodFilter);
-		}
-		Set<String> methods = this.redisTemplate.opsForSet()
-			.members(ValkeyKeyBuilder.methodsIndexKey(granularity, ts, host));
-		return methods != null ? methods.stream().sorted().toList() : List.of();
-	}
-
-	private Set<String> resolveStatuses(Granularity granularity, String ts, String host, Integer statusFilter) {
-		if (statusFilter != null) {
-			return Set.of(String.valueOf(statusFilter));
-		}
-		Set<String> statuses = this.redisTemplate.opsForSet()
-			.members(ValkeyKeyBuilder.statusesIndexKey(granularity, ts, host));
-		return statuses != null ? statuses : Set.of();
-	}
-
-	private Long getCount(Granularity granularity, String ts, String host, String path, int status, String method) {
-		String key = ValkeyKeyBuilder.countKey(granularity, ts, host, path, status, method);
-		String value = this.redisTemplate.opsForValue().get(key);
-		return value != null ? Long.parseLong(value) : null;
-	}
-
-	private DurationStats getDuration(Granularity granularity, String ts, String host, String path, int status,
-			String method) {
-		String key = ValkeyKeyBuilder.durationKey(granularity, ts, host, path, status, method);
-		Map<Object, Object> hash = this.redisTemplate.opsForHash().entries(key);
-		if (hash.isEmpty()) {
-			return null;
-		}
-		String sumStr = (String) hash.get("sum");
-		String countStr = (String) hash.get("count");
-		if (sumStr == null || countStr == null) {
-			return null;
-		}
-		return new DurationStats(Long.parseLong(sumStr), Long.parseLong(countStr));
+	private static boolean sameEntry(SeriesKey a, SeriesKey b) {
+		return a.timestamp().equals(b.timestamp()) && a.host().equals(b.host()) && a.path().equals(b.path())
+				&& a.method().equals(b.method());
 	}
 
-	private QueryResult.StatusMetrics buildMetrics(String metric, Long count, DurationStats duration) {
-		String metricType = metric != null ? metric : "both";
+	private QueryResult.StatusMetrics buildMetrics(String metric, SeriesDelta value) {
+		String metricType = metric != null ? metric : METRIC_BOTH;
 		Long resultCount = null;
 		Double durationMsAvg = null;
+		Double durationMsP50 = null;
+		Double durationMsP90 = null;
+		Double durationMsP99 = null;
 
-		if ("count".equals(metricType) || "both".equals(metricType)) {
-			resultCount = count;
+		if ("count".equals(metricType) || METRIC_BOTH.equals(metricType)) {
+			resultCount = value.count();
 		}
-		if ("duration".equals(metricType) || "both".equals(metricType)) {
-			if (duration != null && duration.count() > 0) {
-				durationMsAvg = (double) duration.sum() / duration.count() / 1_000_000.0;
+		if ("duration".equals(metricType) || METRIC_BOTH.equals(metricType)) {
+			if (value.count() > 0) {
+				durationMsAvg = (double) value.durationSum() / value.count() / 1_000_000.0;
+			}
+			LatencyHistogram histogram = value.histogram();
+			if (!histogram.isEmpty()) {
+				durationMsP50 = histogram.percentileNs(50) / 1_000_000.0;
+				durationMsP90 = histogram.percentileNs(90) / 1_000_000.0;
+				durationMsP99 = histogram.percentileNs(99) / 1_000_000.0;
 			}
 		}
 
-		if (resultCount == null && durationMsAvg == null) {
+		if (resultCount == null && durationMsAvg == null && durationMsP50 == null) {
 			return null;
 		}
 
-		return new QueryResult.StatusMetrics(resultCount, durationMsAvg);
+		return new QueryResult.StatusMetrics(resultCount, durationMsAvg, durationMsP50, durationMsP90, durationMsP99);
 	}
 
 	/**
@@ -249,9 +325,20 @@ public class AccessQueryService {
 	}
 
 	/**
-	 * Result of an access metrics query.
+	 * Parameters for a top-K query. {@code dimension} is one of {@code paths},
+	 * {@code paths-4xx}, {@code paths-5xx} and {@code clients}; {@code host} is ignored
+	 * for {@code clients}.
 	 */
-	public record QueryResult(String granularity, Instant from, Instant to, List<SeriesEntry> series) {
+	public record TopParams(String granularity, Instant from, Instant to, String dimension, String host, int limit) {
+	}
+
+	/**
+	 * Result of an access metrics query. {@code uniqueClients} is only set for the
+	 * {@code uniqueClients} metric and is the estimated number of distinct client IPs of
+	 * the matching hosts across the whole range, ignoring the status and method filters.
+	 */
+	public record QueryResult(String granularity, Instant from, Instant to, List<SeriesEntry> series,
+			Long uniqueClients) {
 
 		/**
 		 * A single time series entry with aggregated metrics by status code.
@@ -261,9 +348,26 @@ public class AccessQueryService {
 		}
 
 		/**
-		 * Metrics for a specific status code within a series entry.
+		 * Metrics for a specific status code within a series entry. Percentiles are
+		 * estimated from the latency histogram and are {@code null} for series written
+		 * without one.
 		 */
-		public record StatusMetrics(Long count, Double durationMsAvg) {
+		public record StatusMetrics(Long count, Double durationMsAvg, Double durationMsP50, Double durationMsP90,
+				Double durationMsP99) {
+		}
+	}
+
+	/**
+	 * Result of a top-K query, ordered by descending count. Counts are approximate for
+	 * members that were trimmed from a leaderboard in some slot.
+	 */
+	public record TopResult(String granularity, Instant from, Instant to, String dimension, String host,
+			List<TopEntry> entries) {
+
+		/**
+		 * A member of a leaderboard with its count.
+		 */
+		public record TopEntry(String member, long count) {
 		}
 	}
 
@@ -274,7 +378,4 @@ public class AccessQueryService {
 			List<String> paths, List<Integer> statuses, List<String> methods) {
 	}
 
-	private record DurationStats(long sum, long count) {
-	}
-
 }
@@ -8,6 +8,8 @@ import am.ik.accessmonitor.query.AccessQueryService.DimensionParams;
 import am.ik.accessmonitor.query.AccessQueryService.DimensionResult;
 import am.ik.accessmonitor.query.AccessQueryService.QueryParams;
 import am.ik.accessmonitor.query.AccessQueryService.QueryResult;
+import am.ik.accessmonitor.query.AccessQueryService.TopParams;
+import am.ik.accessmonitor.query.AccessQueryService.TopResult;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -44,6 +46,24 @@ public class AccessQueryController {
 		}
 	}
 
+	/**
+	 * Queries the paths or client IPs with the highest request counts within a time
+	 * range.
+	 */
+	@GetMapping("/api/query/top")
+	public ResponseEntity<?> queryTop(@RequestParam String granularity, @RequestParam Instant from,
+			@RequestParam Instant to, @RequestParam String dimension, @RequestParam(required = false) String host,
+			@RequestParam(defaultValue = "20") int limit) {
+		try {
+			TopParams params = new TopParams(granularity, from, to, dimension, host, limit);
+			TopResult result = this.queryService.queryTop(params);
+			return ResponseEntity.ok(result);
+		}
+		catch (IllegalArgumentException ex) {
+			return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
+		}
+	}
+
 	/**
 	 * Queries available dimension values for a time range or single time slot. Accepts
 	 * either {@code from}/{@code to} for range queries, or {@code timestamp} for
@@ -55,6 +55,13 @@ public class SseSessionManager implements DisposableBean {
 		return emitter;
 	}
 
+	/**
+	 * Returns whether any SSE session is connected.
+	 */
+	public boolean hasSessions() {
+		return !this.sessions.isEmpty();
+	}
+
 	/**
 	 * Broadcasts a JSON string to all connected SSE sessions. If a session's queue is
 	 * full, the oldest event is dropped to make room.
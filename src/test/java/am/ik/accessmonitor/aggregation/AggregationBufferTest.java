@@ -0,0 +1,107 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AggregationBufferTest {
+
+	@Test
+	void addMergesDeltasForSameKey() {
+		AggregationBuffer buffer = new AggregationBuffer(100);
+		SeriesKey key = seriesKey("/entries/1");
+
+		buffer.add(key, delta(100));
+		buffer.add(key, delta(200));
+
+		assertThat(buffer.size()).isEqualTo(1);
+		Map<SeriesKey, SeriesDelta> drained = buffer.drain();
+		assertThat(drained).hasSize(1);
+		assertThat(drained.get(key).count()).isEqualTo(2);
+		assertThat(drained.get(key).durationSum()).isEqualTo(300);
+	}
+
+	@Test
+	void drainEmptiesBuffer() {
+		AggregationBuffer buffer = new AggregationBuffer(100);
+		buffer.add(seriesKey("/entries/1"), delta(100));
+		buffer.add(seriesKey("/entries/2"), delta(100));
+
+		assertThat(buffer.drain()).hasSize(2);
+		assertThat(buffer.size()).isZero();
+		assertThat(buffer.drain()).isEmpty();
+	}
+
+	@Test
+	void rejectsNewKeysWhenFull() {
+		AggregationBuffer buffer = new AggregationBuffer(2);
+		SeriesKey key1 = seriesKey("/entries/1");
+
+		assertThat(buffer.add(key1, delta(100))).isTrue();
+		assertThat(buffer.add(seriesKey("/entries/2"), delta(100))).isTrue();
+		assertThat(buffer.add(seriesKey("/entries/3"), delta(100))).isFalse();
+		// Existing keys can still be incremented
+		assertThat(buffer.add(key1, delta(100))).isTrue();
+		assertThat(buffer.size()).isEqualTo(2);
+	}
+
+	@Test
+	void restoreReturnsNumberOfRejectedKeys() {
+		AggregationBuffer buffer = new AggregationBuffer(2);
+		buffer.add(seriesKey("/entries/1"), delta(100));
+		buffer.add(seriesKey("/entries/2"), delta(100));
+		Map<SeriesKey, SeriesDelta> drained = buffer.drain();
+
+		buffer.add(seriesKey("/entries/3"), delta(100));
+		int rejected = buffer.restore(drained);
+
+		assertThat(rejected).isEqualTo(1);
+		assertThat(buffer.size()).isEqualTo(2);
+	}
+
+	@Test
+	void concurrentAddsAreNotLost() throws Exception {
+		AggregationBuffer buffer = new AggregationBuffer(1000);
+		int threads = 8;
+		int iterations = 10_000;
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			tasks.add(() -> {
+				for (int i = 0; i < iterations; i++) {
+					buffer.add(seriesKey("/entries/" + (i % 10)), delta(1));
+				}
+				return null;
+			});
+		}
+		long total = 0;
+		try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+			List<Future<Void>> futures = executor.invokeAll(tasks);
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		}
+		for (SeriesDelta delta : buffer.drain().values()) {
+			total += delta.count();
+		}
+		assertThat(total).isEqualTo((long) threads * iterations);
+	}
+
+	private static SeriesKey seriesKey(String path) {
+		return new SeriesKey(Granularity.ONE_MINUTE, "202602061530", "ik.am", path, 200, "GET");
+	}
+
+	private static SeriesDelta delta(long durationNs) {
+		SeriesDelta delta = new SeriesDelta();
+		delta.add(durationNs);
+		return delta;
+	}
+
+}
@@ -70,6 +70,31 @@ class GranularityTest {
 		assertThat(Granularity.ONE_DAY.format(instant)).isEqualTo("20260206");
 	}
 
+	@Test
+	void formatReturnsCachedValueWithinSlot() {
+		String first = Granularity.ONE_HOUR.format(Instant.parse("2026-02-06T15:00:00Z"));
+		String second = Granularity.ONE_HOUR.format(Instant.parse("2026-02-06T15:59:59.999Z"));
+		assertThat(second).isEqualTo("2026020615").isSameAs(first);
+	}
+
+	@Test
+	void formatAcrossSlotsSharingCacheEntry() {
+		// 8 slots apart, so both map to the same cache entry
+		Instant instant = Instant.parse("2026-02-06T15:30:00Z");
+		Instant later = instant.plus(Duration.ofMinutes(40));
+
+		assertThat(Granularity.FIVE_MINUTES.format(instant)).isEqualTo("202602061530");
+		assertThat(Granularity.FIVE_MINUTES.format(later)).isEqualTo("202602061610");
+		assertThat(Granularity.FIVE_MINUTES.format(instant)).isEqualTo("202602061530");
+	}
+
+	@Test
+	void truncateBeforeEpoch() {
+		Instant instant = Instant.parse("1969-12-31T23:59:59.500Z");
+		assertThat(Granularity.ONE_DAY.truncate(instant)).isEqualTo(Instant.parse("1969-12-31T00:00:00Z"));
+		assertThat(Granularity.FIVE_MINUTES.format(instant)).isEqualTo("196912312355");
+	}
+
 	@Test
 	void ttlSeconds() {
 		AccessMonitorProperties.ValkeyProperties.TtlProperties ttl = new AccessMonitorProperties.ValkeyProperties.TtlProperties(
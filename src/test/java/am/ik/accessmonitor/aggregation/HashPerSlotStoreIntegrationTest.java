@@ -0,0 +1,106 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+
+import am.ik.accessmonitor.TestcontainersConfiguration;
+import am.ik.accessmonitor.event.AccessEvent;
+import am.ik.accessmonitor.query.AccessQueryService;
+import am.ik.accessmonitor.query.AccessQueryService.DimensionParams;
+import am.ik.accessmonitor.query.AccessQueryService.DimensionResult;
+import am.ik.accessmonitor.query.AccessQueryService.QueryParams;
+import am.ik.accessmonitor.query.AccessQueryService.QueryResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest(properties = "access-monitor.valkey.layout=hash-per-slot")
+class HashPerSlotStoreIntegrationTest {
+
+	@Autowired
+	ValkeyAggregationService aggregationService;
+
+	@Autowired
+	AccessQueryService queryService;
+
+	@Autowired
+	AccessMetricsStore store;
+
+	@Autowired
+	StringRedisTemplate redisTemplate;
+
+	@BeforeEach
+	void setUp() {
+		Set<String> keys = this.redisTemplate.keys("access:*");
+		if (keys != null && !keys.isEmpty()) {
+			this.redisTemplate.delete(keys);
+		}
+	}
+
+	@Test
+	void aggregateWritesOneHashPerHostSlot() {
+		Instant timestamp = Instant.parse("2026-02-06T15:30:00Z");
+		this.aggregationService.aggregate(event(timestamp, "/entries/896", 200, 114720000L));
+		this.aggregationService.aggregate(event(timestamp, "/entries/896", 200, 85280000L));
+		this.aggregationService.aggregate(event(timestamp, "/entries/897", 500, 10000000L));
+
+		assertThat(this.store).isInstanceOf(HashPerSlotStore.class);
+		Map<Object, Object> fields = this.redisTemplate.opsForHash().entries("access:slot:1m:202602061530:ik.am");
+		assertThat(fields).containsEntry("/entries/896\u001f200\u001fGET\u001fcount", "2")
+			.containsEntry("/entries/896\u001f200\u001fGET\u001fsum", "200000000")
+			.containsEntry("/entries/*\u001f200\u001fGET\u001fcount", "2")
+			.containsEntry("/entries/897\u001f500\u001fGET\u001fcount", "1");
+		assertThat(this.redisTemplate.getExpire("access:slot:1m:202602061530:ik.am")).isPositive();
+		assertThat(this.redisTemplate.opsForSet().members("access:idx:1m:202602061530:hosts")).containsExactly("ik.am");
+		assertThat(this.redisTemplate.keys("access:cnt:*")).isEmpty();
+		assertThat(this.redisTemplate.keys("access:dur:*")).isEmpty();
+	}
+
+	@Test
+	void queryReadsSeriesFromHostSlots() {
+		Instant timestamp = Instant.parse("2026-02-06T15:30:00Z");
+		this.aggregationService.aggregate(event(timestamp, "/entries/896", 200, 114720000L));
+		this.aggregationService.aggregate(event(timestamp, "/entries/896", 200, 85280000L));
+		this.aggregationService.aggregate(event(timestamp, "/entries/896", 404, 10000000L));
+
+		QueryResult result = this.queryService
+			.query(new QueryParams("1m", timestamp, timestamp, "ik.am", "/entries/896", null, "GET", null));
+
+		assertThat(result.series()).hasSize(1);
+		QueryResult.SeriesEntry entry = result.series().getFirst();
+		assertThat(entry.timestamp()).isEqualTo(timestamp);
+		assertThat(entry.statuses()).containsOnlyKeys("200", "404");
+		assertThat(entry.statuses().get("200").count()).isEqualTo(2L);
+		assertThat(entry.statuses().get("200").durationMsAvg()).isEqualTo(100.0);
+		assertThat(entry.statuses().get("404").count()).isEqualTo(1L);
+	}
+
+	@Test
+	void queryDimensionsReadsFieldNames() {
+		Instant timestamp = Instant.parse("2026-02-06T15:30:00Z");
+		this.aggregationService.aggregate(event(timestamp, "/entries/896", 200, 114720000L));
+		this.aggregationService.aggregate(event(timestamp, "/entries/897", 500, 10000000L));
+
+		DimensionResult result = this.queryService
+			.queryDimensions(new DimensionParams("1m", timestamp, timestamp, null));
+
+		assertThat(result.hosts()).containsExactly("ik.am");
+		assertThat(result.paths()).containsExactly("/entries/*", "/entries/896", "/entries/897");
+		assertThat(result.statuses()).containsExactly(200, 500);
+		assertThat(result.methods()).containsExactly("GET");
+	}
+
+	private static AccessEvent event(Instant timestamp, String path, int status, long durationNs) {
+		return new AccessEvent(timestamp, "ik.am", path, "GET", status, durationNs, "47.128.110.92", "https",
+				"HTTP/2.0", "web-service", "web-router", status, 100000000L, 14720000L, "abc123", "def456", 0);
+	}
+
+}
@@ -0,0 +1,57 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyBufferTest {
+
+	@Test
+	void countAndDurationKeysMatchStringKeys() {
+		KeyBuffer series = ValkeyKeyBuilder.series(new KeyBuffer(), Granularity.ONE_MINUTE, "202602061530", "ik.am",
+				"/entries/896", 200, "GET");
+
+		assertThat(ValkeyKeyBuilder.countKey(series)).isEqualTo(
+				ValkeyKeyBuilder.countKey(Granularity.ONE_MINUTE, "202602061530", "ik.am", "/entries/896", 200, "GET")
+					.getBytes(StandardCharsets.UTF_8));
+		assertThat(ValkeyKeyBuilder.durationKey(series)).isEqualTo(ValkeyKeyBuilder
+			.durationKey(Granularity.ONE_MINUTE, "202602061530", "ik.am", "/entries/896", 200, "GET")
+			.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void encodesNonAsciiAsUtf8() {
+		String path = "/tags/日本語/entries/😀?q=é";
+		KeyBuffer series = ValkeyKeyBuilder.series(new KeyBuffer(), Granularity.ONE_HOUR, "2026020615", "ik.am", path,
+				404, "GET");
+
+		assertThat(new String(ValkeyKeyBuilder.countKey(series), StandardCharsets.UTF_8))
+			.isEqualTo("access:cnt:1h:2026020615:ik.am:" + path + ":404:GET");
+	}
+
+	@Test
+	void growsBeyondInitialCapacity() {
+		String path = "/" + "a".repeat(300);
+		KeyBuffer buffer = new KeyBuffer(4).append(path).append(':').append(200);
+
+		assertThat(buffer.length()).isEqualTo(path.length() + 4);
+		assertThat(new String(buffer.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(path + ":200");
+	}
+
+	@Test
+	void resetDiscardsPreviousSeries() {
+		KeyBuffer buffer = new KeyBuffer();
+		SeriesKey first = new SeriesKey(Granularity.ONE_MINUTE, "202602061530", "ik.am", "/entries/896/long/path", 200,
+				"GET");
+		SeriesKey second = new SeriesKey(Granularity.ONE_DAY, "20260206", "ik.am", "/", 500, "POST");
+
+		first.writeTo(buffer);
+		second.writeTo(buffer);
+
+		assertThat(new String(ValkeyKeyBuilder.durationKey(buffer), StandardCharsets.UTF_8))
+			.isEqualTo(second.durationKey());
+	}
+
+}
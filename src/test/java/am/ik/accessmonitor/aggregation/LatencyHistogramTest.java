@@ -0,0 +1,89 @@
+package am.ik.accessmonitor.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTest {
+
+	@Test
+	void bucketsBelowSixteenMicrosecondsAreLinear() {
+		assertThat(LatencyHistogram.bucketOf(0)).isEqualTo(0);
+		assertThat(LatencyHistogram.bucketOf(999)).isEqualTo(0);
+		assertThat(LatencyHistogram.bucketOf(1_000)).isEqualTo(1);
+		assertThat(LatencyHistogram.bucketOf(15_999)).isEqualTo(15);
+		assertThat(LatencyHistogram.bucketOf(-1)).isEqualTo(0);
+	}
+
+	@Test
+	void bucketsAreContiguous() {
+		for (int bucket = 0; bucket < 600; bucket++) {
+			long lower = LatencyHistogram.lowerBoundNs(bucket);
+			long upper = LatencyHistogram.lowerBoundNs(bucket + 1);
+			assertThat(upper).isGreaterThan(lower);
+			assertThat(LatencyHistogram.bucketOf(lower)).isEqualTo(bucket);
+			assertThat(LatencyHistogram.bucketOf(upper - 1_000)).isEqualTo(bucket);
+		}
+	}
+
+	@Test
+	void bucketWidthIsBoundedRelativeToValue() {
+		for (long durationNs = 16_000; durationNs < 60_000_000_000L; durationNs = durationNs * 3 / 2) {
+			int bucket = LatencyHistogram.bucketOf(durationNs);
+			long width = LatencyHistogram.lowerBoundNs(bucket + 1) - LatencyHistogram.lowerBoundNs(bucket);
+			assertThat((double) width / LatencyHistogram.lowerBoundNs(bucket)).isLessThanOrEqualTo(1.0 / 16);
+		}
+	}
+
+	@Test
+	void recordKeepsBucketsSorted() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(100_000_000L);
+		histogram.record(1_000_000L);
+		histogram.record(10_000_000L);
+		histogram.record(1_000_000L);
+
+		assertThat(histogram.size()).isEqualTo(3);
+		assertThat(histogram.bucket(0)).isLessThan(histogram.bucket(1));
+		assertThat(histogram.bucket(1)).isLessThan(histogram.bucket(2));
+		assertThat(histogram.count(0)).isEqualTo(2);
+		assertThat(histogram.totalCount()).isEqualTo(4);
+	}
+
+	@Test
+	void mergeAddsBuckets() {
+		LatencyHistogram a = new LatencyHistogram();
+		a.record(1_000_000L);
+		a.record(5_000_000L);
+		LatencyHistogram b = new LatencyHistogram();
+		b.record(1_000_000L);
+		b.record(50_000_000L);
+
+		a.merge(b);
+
+		assertThat(a.size()).isEqualTo(3);
+		assertThat(a.count(0)).isEqualTo(2);
+		assertThat(a.totalCount()).isEqualTo(4);
+		assertThat(b.totalCount()).isEqualTo(2);
+	}
+
+	@Test
+	void percentileIsWithinBucketError() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1_000_000L);
+		}
+
+		assertThat(histogram.percentileNs(50) / 1_000_000.0).isCloseTo(500, within(500 / 16.0));
+		assertThat(histogram.percentileNs(90) / 1_000_000.0).isCloseTo(900, within(900 / 16.0));
+		assertThat(histogram.percentileNs(99) / 1_000_000.0).isCloseTo(990, within(990 / 16.0));
+		assertThat(histogram.percentileNs(100) / 1_000_000.0).isCloseTo(1000, within(1000 / 16.0));
+	}
+
+	@Test
+	void percentileOfEmptyHistogram() {
+		assertThat(new LatencyHistogram().percentileNs(99)).isEqualTo(-1);
+	}
+
+}
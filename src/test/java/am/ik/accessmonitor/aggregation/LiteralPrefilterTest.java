@@ -0,0 +1,75 @@
+package am.ik.accessmonitor.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LiteralPrefilterTest {
+
+	@Test
+	void prefixFromCharacterClassPattern() {
+		LiteralPrefilter prefilter = LiteralPrefilter.of("^/entries/[0-9]+(\\?.*)?$");
+
+		assertThat(prefilter.prefix()).isEqualTo("/entries/");
+		assertThat(prefilter.suffix()).isEmpty();
+		assertThat(prefilter.mayMatch("/entries/896")).isTrue();
+		assertThat(prefilter.mayMatch("/tags/java")).isFalse();
+	}
+
+	@Test
+	void prefixAndSuffixWithEscapedMetaCharacters() {
+		LiteralPrefilter prefilter = LiteralPrefilter.of("^/entries/[0-9]+/en\\.md(\\?.*)?$");
+
+		assertThat(prefilter.prefix()).isEqualTo("/entries/");
+		assertThat(prefilter.suffix()).isEqualTo("/en.md");
+		assertThat(prefilter.mayMatch("/entries/896/en.md")).isTrue();
+		assertThat(prefilter.mayMatch("/entries/896/en.md?raw=true")).isTrue();
+		assertThat(prefilter.mayMatch("/entries/896")).isFalse();
+	}
+
+	@Test
+	void suffixOnlyPattern() {
+		LiteralPrefilter prefilter = LiteralPrefilter.of("^/.+\\.php(\\?.*)?$");
+
+		assertThat(prefilter.prefix()).isEqualTo("/");
+		assertThat(prefilter.suffix()).isEqualTo(".php");
+		assertThat(prefilter.mayMatch("/wp-login.php")).isTrue();
+		assertThat(prefilter.mayMatch("/index.php?x=1")).isTrue();
+		assertThat(prefilter.mayMatch("/entries/896")).isFalse();
+	}
+
+	@Test
+	void suffixWithoutOptionalQuery() {
+		LiteralPrefilter prefilter = LiteralPrefilter.of("^/tags/[^/]+/entries$");
+
+		assertThat(prefilter.prefix()).isEqualTo("/tags/");
+		assertThat(prefilter.suffix()).isEqualTo("/entries");
+		assertThat(prefilter.mayMatch("/tags/java/entries?page=2")).isFalse();
+	}
+
+	@Test
+	void quantifiedCharacterEndsPrefix() {
+		LiteralPrefilter prefilter = LiteralPrefilter.of("^/entries?/[0-9]+$");
+
+		assertThat(prefilter.prefix()).isEqualTo("/entrie");
+		assertThat(prefilter.mayMatch("/entrie/1")).isTrue();
+	}
+
+	@Test
+	void noPrefilterForAlternation() {
+		LiteralPrefilter prefilter = LiteralPrefilter.of("^/\\.env|/\\.git/.*$");
+
+		assertThat(prefilter.prefix()).isEmpty();
+		assertThat(prefilter.suffix()).isEmpty();
+		assertThat(prefilter.mayMatch("/anything")).isTrue();
+	}
+
+	@Test
+	void noSuffixForEscapeSequence() {
+		LiteralPrefilter prefilter = LiteralPrefilter.of("^/notes/\\d+/view$");
+
+		assertThat(prefilter.prefix()).isEqualTo("/notes/");
+		assertThat(prefilter.suffix()).isEmpty();
+	}
+
+}
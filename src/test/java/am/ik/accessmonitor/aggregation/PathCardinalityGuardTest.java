@@ -0,0 +1,77 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PathCardinalityGuardTest {
+
+	private static final Instant SLOT = Instant.parse("2026-02-06T15:30:00Z");
+
+	@Test
+	void admitsPathsUpToBudget() {
+		PathCardinalityGuard guard = new PathCardinalityGuard(2);
+
+		assertThat(guard.admit(Granularity.ONE_MINUTE, SLOT, "ik.am", "/a")).isEqualTo("/a");
+		assertThat(guard.admit(Granularity.ONE_MINUTE, SLOT, "ik.am", "/b")).isEqualTo("/b");
+		assertThat(guard.admit(Granularity.ONE_MINUTE, SLOT, "ik.am", "/c"))
+			.isEqualTo(PathCardinalityGuard.OVERFLOW_PATH);
+		assertThat(guard.admit(Granularity.ONE_MINUTE, SLOT, "ik.am", "/a")).isEqualTo("/a");
+	}
+
+	@Test
+	void budgetIsPerHostSlotAndGranularity() {
+		PathCardinalityGuard guard = new PathCardinalityGuard(1);
+		guard.admit(Granularity.ONE_MINUTE, SLOT, "ik.am", "/a");
+
+		assertThat(guard.admit(Granularity.ONE_MINUTE, SLOT, "www.ik.am", "/b")).isEqualTo("/b");
+		assertThat(guard.admit(Granularity.ONE_HOUR, SLOT, "ik.am", "/b")).isEqualTo("/b");
+		assertThat(guard.admit(Granularity.ONE_MINUTE, SLOT.plusSeconds(60), "ik.am", "/b")).isEqualTo("/b");
+		assertThat(guard.admit(Granularity.ONE_MINUTE, SLOT, "ik.am", "/b"))
+			.isEqualTo(PathCardinalityGuard.OVERFLOW_PATH);
+	}
+
+	@Test
+	void evictsSlotsOlderThanThePreviousSlot() {
+		PathCardinalityGuard guard = new PathCardinalityGuard(1);
+		guard.admit(Granularity.ONE_MINUTE, SLOT, "ik.am", "/a");
+		guard.admit(Granularity.ONE_HOUR, SLOT, "ik.am", "/a");
+		guard.admit(Granularity.ONE_MINUTE, SLOT.plusSeconds(60), "ik.am", "/a");
+		assertThat(guard.trackedSlots()).isEqualTo(3);
+
+		guard.admit(Granularity.ONE_MINUTE, SLOT.plusSeconds(120), "ik.am", "/a");
+
+		assertThat(guard.trackedSlots()).isEqualTo(3);
+	}
+
+	@Test
+	void evictionKeepsOtherHostsOfThePreviousSlot() {
+		PathCardinalityGuard guard = new PathCardinalityGuard(1);
+		guard.admit(Granularity.ONE_MINUTE, SLOT, "ik.am", "/a");
+		guard.admit(Granularity.ONE_MINUTE, SLOT.plusSeconds(60), "ik.am", "/a");
+		guard.admit(Granularity.ONE_MINUTE, SLOT.plusSeconds(60), "www.ik.am", "/a");
+
+		guard.admit(Granularity.ONE_MINUTE, SLOT.plusSeconds(120), "www.ik.am", "/b");
+
+		assertThat(guard.trackedSlots()).isEqualTo(3);
+		assertThat(guard.admit(Granularity.ONE_MINUTE, SLOT.plusSeconds(60), "ik.am", "/b"))
+			.isEqualTo(PathCardinalityGuard.OVERFLOW_PATH);
+	}
+
+	@Test
+	void seededPathsCountAgainstTheBudget() {
+		PathCardinalityGuard guard = new PathCardinalityGuard(2);
+		guard.seed(Granularity.ONE_HOUR, SLOT, "ik.am", () -> List.of("/a", "/b"));
+		guard.seed(Granularity.ONE_HOUR, SLOT, "ik.am", () -> {
+			throw new AssertionError("A tracked slot must not be seeded again");
+		});
+
+		assertThat(guard.admit(Granularity.ONE_HOUR, SLOT, "ik.am", "/a")).isEqualTo("/a");
+		assertThat(guard.admit(Granularity.ONE_HOUR, SLOT, "ik.am", "/c"))
+			.isEqualTo(PathCardinalityGuard.OVERFLOW_PATH);
+	}
+
+}
@@ -1,20 +1,17 @@
 package am.ik.accessmonitor.aggregation;
 
-import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import am.ik.accessmonitor.AccessMonitorProperties;
-import am.ik.accessmonitor.AccessMonitorProperties.AggregationProperties;
 import am.ik.accessmonitor.AccessMonitorProperties.AggregationProperties.PathPatternProperties;
-import am.ik.accessmonitor.AccessMonitorProperties.AlertsProperties;
-import am.ik.accessmonitor.AccessMonitorProperties.BlacklistProperties;
-import am.ik.accessmonitor.AccessMonitorProperties.QueryProperties;
-import am.ik.accessmonitor.AccessMonitorProperties.SseProperties;
-import am.ik.accessmonitor.AccessMonitorProperties.ValkeyProperties;
-import am.ik.accessmonitor.AccessMonitorProperties.ValkeyProperties.TtlProperties;
 import am.ik.accessmonitor.aggregation.PathPatternMatcher.MatchResult;
 import org.junit.jupiter.api.Test;
 
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 class PathPatternMatcherTest {
@@ -49,6 +46,15 @@ class PathPatternMatcherTest {
 		assertThat(result.dropOriginalPath()).isFalse();
 	}
 
+	@Test
+	void isLabel() {
+		PathPatternMatcher matcher = createMatcher(
+				List.of(new PathPatternProperties("/entries/*", "^/entries/[^/]+$", false)));
+
+		assertThat(matcher.isLabel("/entries/*")).isTrue();
+		assertThat(matcher.isLabel("/entries/896")).isFalse();
+	}
+
 	@Test
 	void emptyPatterns() {
 		PathPatternMatcher matcher = createMatcher(List.of());
@@ -98,14 +104,60 @@ class PathPatternMatcherTest {
 		assertThat(result.dropOriginalPath()).isFalse();
 	}
 
+	@Test
+	void noMatchResultIsShared() {
+		PathPatternMatcher matcher = createMatcher(
+				List.of(new PathPatternProperties("/entries/*", "^/entries/[^/]+$", false)), 0);
+
+		assertThat(matcher.match("/about")).isSameAs(matcher.match("/tags"));
+	}
+
+	@Test
+	void cachedResultIsReturnedForSamePath() {
+		PathPatternMatcher matcher = createMatcher(List.of(new PathPatternProperties("/all/*", "^/.+$", false),
+				new PathPatternProperties("/entries/*", "^/entries/[^/]+$", false)));
+
+		MatchResult first = matcher.match("/entries/896");
+		MatchResult second = matcher.match("/entries/896");
+		assertThat(second).isSameAs(first);
+		assertThat(second.labels()).containsExactly("/all/*", "/entries/*");
+	}
+
+	@Test
+	void cachedAndUncachedMatchersReturnSameResults() {
+		List<PathPatternProperties> patterns = List.of(
+				new PathPatternProperties("/entries/*/en.md", "^/entries/[0-9]+/en\\.md(\\?.*)?$", false),
+				new PathPatternProperties("/entries/*", "^/entries/[0-9]+(\\?.*)?$", false),
+				new PathPatternProperties("/tags/*/entries", "^/tags/.+/entries(\\?.*)?$", true),
+				new PathPatternProperties("/webapi/entry.cgi", "^/webapi/entry\\.cgi(\\?.*)?$", true),
+				new PathPatternProperties("*.php", "^/.+\\.php(\\?.*)?$", true),
+				new PathPatternProperties("/.env", "^/\\.env|/\\.git/.*$", true));
+		PathPatternMatcher cached = createMatcher(patterns, 2);
+		PathPatternMatcher uncached = createMatcher(patterns, 0);
+
+		for (String path : List.of("/entries/896", "/entries/896/en.md", "/entries/896?foo=bar", "/entries/abc",
+				"/tags/java/entries", "/tags/java/entries?page=2", "/tags/a?b/entries", "/webapi/entry.cgi?api=x",
+				"/wp-login.php", "/index.php?x=1", "/php", "/.env", "/.git/config", "/entries/896")) {
+			assertThat(cached.match(path)).as(path).isEqualTo(uncached.match(path));
+		}
+	}
+
 	private PathPatternMatcher createMatcher(List<PathPatternProperties> patterns) {
-		AccessMonitorProperties properties = new AccessMonitorProperties(new SseProperties(1000, 10),
-				new AggregationProperties(200, patterns),
-				new ValkeyProperties(new TtlProperties(Duration.ofDays(1), Duration.ofDays(7), Duration.ofDays(30),
-						Duration.ofDays(90))),
-				new AlertsProperties(true, null, null, Duration.ofSeconds(15), List.of()), new BlacklistProperties(true,
-						Duration.ofSeconds(15), List.of(), 100, Duration.ofMinutes(1), Duration.ofMinutes(10), null),
-				new QueryProperties(1440));
+		return createMatcher(patterns, 10000);
+	}
+
+	private PathPatternMatcher createMatcher(List<PathPatternProperties> patterns, int pathMatchCacheSize) {
+		Map<String, String> source = new HashMap<>();
+		source.put("access-monitor.aggregation.path-match-cache-size", String.valueOf(pathMatchCacheSize));
+		for (int i = 0; i < patterns.size(); i++) {
+			String prefix = "access-monitor.aggregation.path-patterns[" + i + "].";
+			source.put(prefix + "label", patterns.get(i).label());
+			source.put(prefix + "regex", patterns.get(i).regex());
+			source.put(prefix + "drop-original-path", String.valueOf(patterns.get(i).dropOriginalPath()));
+		}
+		AccessMonitorProperties properties = new Binder(new MapConfigurationPropertySource(source))
+			.bind("access-monitor", AccessMonitorProperties.class)
+			.get();
 		return new PathPatternMatcher(properties);
 	}
 
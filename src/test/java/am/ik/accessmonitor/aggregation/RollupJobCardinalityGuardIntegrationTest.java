@@ -0,0 +1,72 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.time.Instant;
+import java.time.InstantSource;
+import java.util.Set;
+
+import am.ik.accessmonitor.TestcontainersConfiguration;
+import am.ik.accessmonitor.event.AccessEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest(properties = { "access-monitor.aggregation.rollup.enabled=true",
+		"access-monitor.aggregation.rollup.interval=1h", "access-monitor.aggregation.rollup.delay=2m",
+		"access-monitor.aggregation.cardinality-guard.enabled=true",
+		"access-monitor.aggregation.cardinality-guard.max-paths-per-slot=2" })
+class RollupJobCardinalityGuardIntegrationTest {
+
+	@Autowired
+	ValkeyAggregationService aggregationService;
+
+	@Autowired
+	RollupJob rollupJob;
+
+	@MockitoBean
+	InstantSource instantSource;
+
+	@Autowired
+	StringRedisTemplate redisTemplate;
+
+	@BeforeEach
+	void setUp() {
+		Set<String> keys = this.redisTemplate.keys("access*");
+		if (keys != null && !keys.isEmpty()) {
+			this.redisTemplate.delete(keys);
+		}
+	}
+
+	@Test
+	void coarserSlotsAreBoundedAcrossMinutes() {
+		// Each minute stays within the budget, but together they exceed it
+		this.aggregationService.aggregate(event(Instant.parse("2026-02-06T15:30:10Z"), "/a"));
+		this.aggregationService.aggregate(event(Instant.parse("2026-02-06T15:30:20Z"), "/b"));
+		this.aggregationService.aggregate(event(Instant.parse("2026-02-06T15:31:10Z"), "/c"));
+		this.aggregationService.aggregate(event(Instant.parse("2026-02-06T15:31:20Z"), "/a"));
+		given(this.instantSource.instant()).willReturn(Instant.parse("2026-02-06T15:35:00Z"));
+
+		this.rollupJob.rollup();
+
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1m:202602061531:ik.am:/c:200:GET")).isEqualTo("1");
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:5m:202602061530:ik.am:/a:200:GET")).isEqualTo("2");
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1h:2026020615:ik.am:__other__:200:GET"))
+			.isEqualTo("1");
+		assertThat(this.redisTemplate.opsForSet().members("access:idx:1d:20260206:ik.am:paths"))
+			.containsExactlyInAnyOrder("/a", "/b", "__other__");
+	}
+
+	private static AccessEvent event(Instant timestamp, String path) {
+		return new AccessEvent(timestamp, "ik.am", path, "GET", 200, 100000000L, "47.128.110.92", "https", "HTTP/2.0",
+				"web", "router", 200, 100000000L, 0L, "t1", "s1", 0);
+	}
+
+}
@@ -0,0 +1,158 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.time.Instant;
+import java.time.InstantSource;
+import java.util.Map;
+import java.util.Set;
+
+import am.ik.accessmonitor.TestcontainersConfiguration;
+import am.ik.accessmonitor.event.AccessEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest(properties = { "access-monitor.aggregation.rollup.enabled=true",
+		"access-monitor.aggregation.rollup.interval=1h", "access-monitor.aggregation.rollup.delay=2m",
+		"access-monitor.aggregation.unique-clients.enabled=true", "access-monitor.aggregation.top-k.enabled=true",
+		"access-monitor.aggregation.top-k.max-members=2" })
+class RollupJobIntegrationTest {
+
+	@Autowired
+	ValkeyAggregationService aggregationService;
+
+	@Autowired
+	RollupJob rollupJob;
+
+	@MockitoBean
+	InstantSource instantSource;
+
+	@Autowired
+	StringRedisTemplate redisTemplate;
+
+	@BeforeEach
+	void setUp() {
+		Set<String> keys = this.redisTemplate.keys("access*");
+		if (keys != null && !keys.isEmpty()) {
+			this.redisTemplate.delete(keys);
+		}
+	}
+
+	@Test
+	void hotPathWritesOnlyOneMinuteKeys() {
+		this.aggregationService.aggregate(event(Instant.parse("2026-02-06T15:30:10Z"), 100000000L));
+
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1m:202602061530:ik.am:/entries/1:200:GET"))
+			.isEqualTo("1");
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:5m:202602061530:ik.am:/entries/1:200:GET"))
+			.isNull();
+		assertThat(this.redisTemplate.opsForSet().members("access:idx:1m:202602061530:series")).hasSize(2);
+	}
+
+	@Test
+	void closedSlotsAreRolledUpExactlyOnce() {
+		this.aggregationService.aggregate(event(Instant.parse("2026-02-06T15:30:10Z"), 100000000L));
+		this.aggregationService.aggregate(event(Instant.parse("2026-02-06T15:31:20Z"), 200000000L));
+		// Still open when the rollup runs
+		this.aggregationService.aggregate(event(Instant.parse("2026-02-06T15:33:30Z"), 400000000L));
+		given(this.instantSource.instant()).willReturn(Instant.parse("2026-02-06T15:35:00Z"));
+
+		this.rollupJob.rollup();
+
+		String fiveMinuteKey = "access:cnt:5m:202602061530:ik.am:/entries/1:200:GET";
+		assertThat(this.redisTemplate.opsForValue().get(fiveMinuteKey)).isEqualTo("2");
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1h:2026020615:ik.am:/entries/*:200:GET"))
+			.isEqualTo("2");
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1d:20260206:ik.am:/entries/1:200:GET"))
+			.isEqualTo("2");
+		Map<Object, Object> durHash = this.redisTemplate.opsForHash()
+			.entries("access:dur:5m:202602061530:ik.am:/entries/1:200:GET");
+		assertThat(durHash.get("sum")).isEqualTo("300000000");
+		assertThat(durHash.get("count")).isEqualTo("2");
+		assertThat(this.redisTemplate.opsForSet().members("access:idx:5m:202602061530:ik.am:paths"))
+			.containsExactlyInAnyOrder("/entries/1", "/entries/*");
+		assertThat(this.redisTemplate.getExpire(fiveMinuteKey)).isPositive();
+		assertThat(this.redisTemplate.opsForHash().entries("access:tot:5m:202602061530:ik.am"))
+			.containsEntry("count", "2")
+			.containsEntry("sum", "300000000")
+			.containsEntry("class:2xx", "2");
+		assertThat(this.redisTemplate.opsForHash().entries("access:tot:1d:20260206")).containsEntry("count", "2");
+		assertThat(this.redisTemplate.opsForValue().get(ValkeyKeyBuilder.rollupWatermarkKey()))
+			.isEqualTo(String.valueOf(Instant.parse("2026-02-06T15:32:00Z").getEpochSecond()));
+
+		// A second run must not roll up the same slots again
+		this.redisTemplate.delete("access-monitor:lock:rollup");
+		this.rollupJob.rollup();
+
+		assertThat(this.redisTemplate.opsForValue().get(fiveMinuteKey)).isEqualTo("2");
+
+		// The next run picks up the newly closed slot
+		this.redisTemplate.delete("access-monitor:lock:rollup");
+		given(this.instantSource.instant()).willReturn(Instant.parse("2026-02-06T15:36:00Z"));
+		this.rollupJob.rollup();
+
+		assertThat(this.redisTemplate.opsForValue().get(fiveMinuteKey)).isEqualTo("3");
+	}
+
+	@Test
+	void uniqueClientsAreMergedIntoCoarserSlots() {
+		this.aggregationService.aggregate(event(Instant.parse("2026-02-06T15:30:10Z"), 100000000L));
+		this.aggregationService
+			.aggregate(event(Instant.parse("2026-02-06T15:31:20Z"), 200000000L, "10.0.0.1", "/entries/2"));
+		this.aggregationService.aggregate(event(Instant.parse("2026-02-06T15:31:30Z"), 300000000L));
+		given(this.instantSource.instant()).willReturn(Instant.parse("2026-02-06T15:35:00Z"));
+
+		assertThat(this.redisTemplate.hasKey("access:hll:5m:202602061530:ik.am")).isFalse();
+
+		this.rollupJob.rollup();
+
+		assertThat(this.redisTemplate.opsForHyperLogLog().size("access:hll:5m:202602061530:ik.am")).isEqualTo(2);
+		assertThat(this.redisTemplate.opsForHyperLogLog().size("access:hll:1h:2026020615:ik.am:/entries/*"))
+			.isEqualTo(2);
+		assertThat(this.redisTemplate.opsForHyperLogLog().size("access:hll:1d:20260206:ik.am")).isEqualTo(2);
+		assertThat(this.redisTemplate.getExpire("access:hll:5m:202602061530:ik.am")).isPositive();
+		// Labels without clients in the slot are not created
+		assertThat(this.redisTemplate.keys("access:hll:5m:*")).hasSize(2);
+	}
+
+	@Test
+	void topKLeaderboardsAreSummedIntoCoarserSlots() {
+		this.aggregationService.aggregate(event(Instant.parse("2026-02-06T15:30:10Z"), 100000000L));
+		this.aggregationService
+			.aggregate(event(Instant.parse("2026-02-06T15:31:20Z"), 200000000L, "10.0.0.1", "/entries/2"));
+		this.aggregationService.aggregate(event(Instant.parse("2026-02-06T15:31:30Z"), 300000000L));
+		this.aggregationService
+			.aggregate(event(Instant.parse("2026-02-06T15:32:30Z"), 300000000L, "10.0.0.2", "/entries/3"));
+		given(this.instantSource.instant()).willReturn(Instant.parse("2026-02-06T15:36:00Z"));
+
+		assertThat(this.redisTemplate.hasKey("access:top:5m:202602061530:ik.am:paths")).isFalse();
+
+		this.rollupJob.rollup();
+
+		String pathsKey = "access:top:5m:202602061530:ik.am:paths";
+		assertThat(this.redisTemplate.opsForZSet().score(pathsKey, "/entries/1")).isEqualTo(2.0);
+		// Trimmed to max-members
+		assertThat(this.redisTemplate.opsForZSet().zCard(pathsKey)).isEqualTo(2);
+		assertThat(this.redisTemplate.getExpire(pathsKey)).isPositive();
+		assertThat(this.redisTemplate.opsForZSet().score("access:top:1d:20260206:clients", "47.128.110.92"))
+			.isEqualTo(2.0);
+	}
+
+	private static AccessEvent event(Instant timestamp, long durationNs) {
+		return event(timestamp, durationNs, "47.128.110.92", "/entries/1");
+	}
+
+	private static AccessEvent event(Instant timestamp, long durationNs, String clientIp, String path) {
+		return new AccessEvent(timestamp, "ik.am", path, "GET", 200, durationNs, clientIp, "https", "HTTP/2.0", "web",
+				"router", 200, durationNs, 0L, "t1", "s1", 0);
+	}
+
+}
@@ -0,0 +1,26 @@
+package am.ik.accessmonitor.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class SeriesKeyTest {
+
+	@Test
+	void memberRoundTrip() {
+		SeriesKey key = new SeriesKey(Granularity.ONE_MINUTE, "202602061530", "ik.am", "/entries/1:2", 404, "GET");
+
+		SeriesKey restored = SeriesKey.fromMember(Granularity.ONE_MINUTE, "202602061530", key.member());
+
+		assertThat(restored).isEqualTo(key);
+		assertThat(restored.countKey()).isEqualTo("access:cnt:1m:202602061530:ik.am:/entries/1:2:404:GET");
+	}
+
+	@Test
+	void fromMemberRejectsMalformedMember() {
+		assertThatIllegalArgumentException()
+			.isThrownBy(() -> SeriesKey.fromMember(Granularity.ONE_MINUTE, "202602061530", "ik.am:/entries/1"));
+	}
+
+}
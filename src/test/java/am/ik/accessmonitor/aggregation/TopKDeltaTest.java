@@ -0,0 +1,37 @@
+package am.ik.accessmonitor.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TopKDeltaTest {
+
+	@Test
+	void incrementCountsEntries() {
+		TopKDelta delta = new TopKDelta();
+		delta.increment(Granularity.ONE_MINUTE, "top:a", "/entries/1");
+		delta.increment(Granularity.ONE_MINUTE, "top:a", "/entries/1");
+		delta.increment(Granularity.ONE_MINUTE, "top:a", "/entries/2");
+		delta.increment(Granularity.ONE_MINUTE, "top:b", "/entries/1");
+
+		assertThat(delta.size()).isEqualTo(2);
+		assertThat(delta.entries()).isEqualTo(3);
+	}
+
+	@Test
+	void mergeDropsNewMembersBeyondLimit() {
+		TopKDelta pending = new TopKDelta();
+		pending.increment(Granularity.ONE_MINUTE, "top:a", "/entries/1");
+		TopKDelta other = new TopKDelta();
+		other.increment(Granularity.ONE_MINUTE, "top:a", "/entries/1");
+		other.increment(Granularity.ONE_MINUTE, "top:a", "/entries/2");
+		other.increment(Granularity.ONE_MINUTE, "top:b", "/entries/3");
+
+		int dropped = pending.merge(other, 1);
+
+		// Increments of pending members are merged regardless of the limit
+		assertThat(dropped).isEqualTo(1);
+		assertThat(pending.entries()).isEqualTo(2);
+	}
+
+}
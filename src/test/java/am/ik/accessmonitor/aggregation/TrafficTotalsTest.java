@@ -0,0 +1,84 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrafficTotalsTest {
+
+	@Test
+	void addBreaksDownByStatusAndClass() {
+		TrafficTotals totals = new TrafficTotals();
+		totals.add(200, 10_000_000L);
+		totals.add(200, 20_000_000L);
+		totals.add(503, 30_000_000L);
+		totals.add(500, 40_000_000L);
+
+		assertThat(totals.count()).isEqualTo(4);
+		assertThat(totals.durationSum()).isEqualTo(100_000_000L);
+		assertThat(totals.statusCount(200)).isEqualTo(2);
+		assertThat(totals.statusCount(404)).isZero();
+		assertThat(totals.classCount(2)).isEqualTo(2);
+		assertThat(totals.classCount(5)).isEqualTo(2);
+		assertThat(totals.classCount(4)).isZero();
+		assertThat(totals.histogram().totalCount()).isEqualTo(4);
+	}
+
+	@Test
+	void fieldsRoundTrip() {
+		TrafficTotals totals = new TrafficTotals();
+		totals.add(200, 10_000_000L);
+		totals.add(503, 30_000_000L);
+
+		Map<String, String> fields = toMap(totals.toFieldsAndIncrements());
+		assertThat(fields).containsEntry("count", "2")
+			.containsEntry("sum", "40000000")
+			.containsEntry("status:200", "1")
+			.containsEntry("status:503:sum", "30000000")
+			.containsEntry("class:5xx", "1")
+			.containsEntry("class:2xx:sum", "10000000");
+
+		TrafficTotals parsed = TrafficTotals.of(fields);
+		assertThat(parsed.count()).isEqualTo(2);
+		assertThat(parsed.durationSum()).isEqualTo(40_000_000L);
+		assertThat(parsed.statusCount(503)).isEqualTo(1);
+		assertThat(parsed.classCount(5)).isEqualTo(1);
+		assertThat(parsed.histogram().totalCount()).isEqualTo(2);
+	}
+
+	@Test
+	void mergeAddsTotals() {
+		TrafficTotals a = new TrafficTotals();
+		a.add(200, 10_000_000L);
+		TrafficTotals b = new TrafficTotals();
+		b.add(500, 20_000_000L);
+
+		a.merge(b);
+
+		assertThat(a.count()).isEqualTo(2);
+		assertThat(a.classCount(5)).isEqualTo(1);
+		assertThat(a.histogram().totalCount()).isEqualTo(2);
+	}
+
+	@Test
+	void ofEmptyFields() {
+		TrafficTotals totals = TrafficTotals.of(Map.of());
+
+		assertThat(totals.count()).isZero();
+		assertThat(totals.histogram().isEmpty()).isTrue();
+	}
+
+	private static Map<String, String> toMap(byte[][] fieldsAndIncrements) {
+		Map<String, String> fields = new LinkedHashMap<>();
+		for (int i = 0; i < fieldsAndIncrements.length; i += 2) {
+			fields.put(new String(fieldsAndIncrements[i], StandardCharsets.UTF_8),
+					new String(fieldsAndIncrements[i + 1], StandardCharsets.UTF_8));
+		}
+		return fields;
+	}
+
+}
@@ -0,0 +1,35 @@
+package am.ik.accessmonitor.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UniqueClientsDeltaTest {
+
+	@Test
+	void addCountsDistinctClientsPerKey() {
+		UniqueClientsDelta delta = new UniqueClientsDelta();
+		delta.add(Granularity.ONE_MINUTE, "hll:a", "10.0.0.1");
+		delta.add(Granularity.ONE_MINUTE, "hll:a", "10.0.0.1");
+		delta.add(Granularity.ONE_MINUTE, "hll:b", "10.0.0.1");
+
+		assertThat(delta.size()).isEqualTo(2);
+		assertThat(delta.entries()).isEqualTo(2);
+	}
+
+	@Test
+	void mergeDropsNewClientsBeyondLimit() {
+		UniqueClientsDelta pending = new UniqueClientsDelta();
+		pending.add(Granularity.ONE_MINUTE, "hll:a", "10.0.0.1");
+		UniqueClientsDelta other = new UniqueClientsDelta();
+		other.add(Granularity.ONE_MINUTE, "hll:a", "10.0.0.1");
+		other.add(Granularity.ONE_MINUTE, "hll:a", "10.0.0.2");
+		other.add(Granularity.ONE_MINUTE, "hll:b", "10.0.0.3");
+
+		assertThat(pending.merge(other, 1)).isEqualTo(1);
+		assertThat(pending.entries()).isEqualTo(2);
+		assertThat(pending.merge(other, 0)).isEqualTo(1);
+		assertThat(pending.entries()).isEqualTo(2);
+	}
+
+}
@@ -0,0 +1,89 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import am.ik.accessmonitor.TestcontainersConfiguration;
+import am.ik.accessmonitor.event.AccessEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest(properties = { "access-monitor.aggregation.buffer.enabled=true",
+		"access-monitor.aggregation.buffer.flush-interval=1h" })
+class ValkeyAggregationServiceBufferIntegrationTest {
+
+	@Autowired
+	ValkeyAggregationService aggregationService;
+
+	@Autowired
+	StringRedisTemplate redisTemplate;
+
+	@BeforeEach
+	void setUp() {
+		this.aggregationService.flush();
+		Set<String> keys = this.redisTemplate.keys("access:*");
+		if (keys != null && !keys.isEmpty()) {
+			this.redisTemplate.delete(keys);
+		}
+	}
+
+	@Test
+	void incrementsAreBufferedUntilFlush() {
+		Instant timestamp = Instant.parse("2026-02-06T15:30:00Z");
+		AccessEvent event1 = new AccessEvent(timestamp, "ik.am", "/entries/1", "GET", 200, 100000000L, "47.128.110.92",
+				"https", "HTTP/2.0", "web", "router", 200, 90000000L, 10000000L, "t1", "s1", 0);
+		AccessEvent event2 = new AccessEvent(timestamp, "ik.am", "/entries/1", "GET", 200, 200000000L, "47.128.110.93",
+				"https", "HTTP/2.0", "web", "router", 200, 180000000L, 20000000L, "t2", "s2", 0);
+
+		this.aggregationService.aggregate(event1);
+		this.aggregationService.aggregate(event2);
+
+		String countKey = "access:cnt:1m:202602061530:ik.am:/entries/1:200:GET";
+		assertThat(this.redisTemplate.opsForValue().get(countKey)).isNull();
+
+		this.aggregationService.flush();
+
+		assertThat(this.redisTemplate.opsForValue().get(countKey)).isEqualTo("2");
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1d:20260206:ik.am:/entries/1:200:GET"))
+			.isEqualTo("2");
+
+		Map<Object, Object> durHash = this.redisTemplate.opsForHash()
+			.entries("access:dur:1m:202602061530:ik.am:/entries/1:200:GET");
+		assertThat(durHash.get("sum")).isEqualTo("300000000");
+		assertThat(durHash.get("count")).isEqualTo("2");
+
+		// Verify path pattern aggregation and dimension indexes
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1m:202602061530:ik.am:/entries/*:200:GET"))
+			.isEqualTo("2");
+		assertThat(this.redisTemplate.opsForSet().members("access:idx:1m:202602061530:ik.am:paths"))
+			.containsExactlyInAnyOrder("/entries/1", "/entries/*");
+		assertThat(this.redisTemplate.getExpire(countKey)).isPositive();
+	}
+
+	@Test
+	void batchesBypassTheBuffer() {
+		Instant timestamp = Instant.parse("2026-02-06T15:30:00Z");
+		AccessEvent event = new AccessEvent(timestamp, "ik.am", "/entries/1", "GET", 200, 100000000L, "47.128.110.92",
+				"https", "HTTP/2.0", "web", "router", 200, 90000000L, 10000000L, "t1", "s1", 0);
+
+		this.redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+			this.aggregationService.aggregate(List.of(event, event), connection);
+			return null;
+		});
+
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1m:202602061530:ik.am:/entries/1:200:GET"))
+			.isEqualTo("2");
+	}
+
+}
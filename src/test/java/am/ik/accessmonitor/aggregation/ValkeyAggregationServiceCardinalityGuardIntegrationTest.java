@@ -0,0 +1,91 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.time.Instant;
+import java.util.Set;
+
+import am.ik.accessmonitor.TestcontainersConfiguration;
+import am.ik.accessmonitor.event.AccessEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest(properties = { "access-monitor.aggregation.cardinality-guard.enabled=true",
+		"access-monitor.aggregation.cardinality-guard.max-paths-per-slot=2",
+		"access-monitor.aggregation.cardinality-guard.strip-query-string=true",
+		"access-monitor.aggregation.top-k.enabled=true" })
+class ValkeyAggregationServiceCardinalityGuardIntegrationTest {
+
+	@Autowired
+	ValkeyAggregationService aggregationService;
+
+	@Autowired
+	StringRedisTemplate redisTemplate;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@BeforeEach
+	void setUp() {
+		Set<String> keys = this.redisTemplate.keys("access:*");
+		if (keys != null && !keys.isEmpty()) {
+			this.redisTemplate.delete(keys);
+		}
+	}
+
+	@Test
+	void pathsBeyondBudgetAreCollapsed() {
+		Instant timestamp = Instant.parse("2026-02-06T15:30:00Z");
+		double collapsedBefore = collapsed("1m");
+		for (String path : new String[] { "/a", "/b", "/c", "/d", "/a" }) {
+			this.aggregationService.aggregate(event(timestamp, "scan.ik.am", path));
+		}
+
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1m:202602061530:scan.ik.am:/a:404:GET"))
+			.isEqualTo("2");
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1m:202602061530:scan.ik.am:/b:404:GET"))
+			.isEqualTo("1");
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1m:202602061530:scan.ik.am:__other__:404:GET"))
+			.isEqualTo("2");
+		assertThat(this.redisTemplate.hasKey("access:cnt:1m:202602061530:scan.ik.am:/c:404:GET")).isFalse();
+		assertThat(this.redisTemplate.opsForSet().members("access:idx:1m:202602061530:scan.ik.am:paths"))
+			.containsExactlyInAnyOrder("/a", "/b", "__other__");
+		assertThat(this.redisTemplate.opsForZSet().score("access:top:1m:202602061530:scan.ik.am:paths", "__other__"))
+			.isEqualTo(2.0);
+		assertThat(this.redisTemplate.opsForZSet().score("access:top:1m:202602061530:scan.ik.am:paths", "/c")).isNull();
+		assertThat(collapsed("1m") - collapsedBefore).isEqualTo(2.0);
+	}
+
+	@Test
+	void queryStringIsStripped() {
+		Instant timestamp = Instant.parse("2026-02-06T16:30:00Z");
+		this.aggregationService.aggregate(event(timestamp, "query.ik.am", "/?id=1"));
+		this.aggregationService.aggregate(event(timestamp, "query.ik.am", "/?id=2"));
+		this.aggregationService.aggregate(event(timestamp, "query.ik.am", "/?id=3"));
+
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1m:202602061630:query.ik.am:/:404:GET"))
+			.isEqualTo("3");
+		assertThat(this.redisTemplate.opsForSet().members("access:idx:1m:202602061630:query.ik.am:paths"))
+			.containsExactly("/");
+	}
+
+	private double collapsed(String granularity) {
+		return this.meterRegistry.get("access.monitor.aggregation.paths.collapsed")
+			.tag("granularity", granularity)
+			.counter()
+			.count();
+	}
+
+	private static AccessEvent event(Instant timestamp, String host, String path) {
+		return new AccessEvent(timestamp, host, path, "GET", 404, 1000000L, "47.128.110.92", "https", "HTTP/2.0",
+				"web-service", "web-router", 404, 1000000L, 0L, "abc123", "def456", 0);
+	}
+
+}
@@ -1,5 +1,6 @@
 package am.ik.accessmonitor.aggregation;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
 import java.util.Set;
@@ -12,12 +13,14 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 @Import(TestcontainersConfiguration.class)
-@SpringBootTest
+@SpringBootTest(properties = { "access-monitor.aggregation.unique-clients.enabled=true",
+		"access-monitor.aggregation.top-k.enabled=true" })
 class ValkeyAggregationServiceIntegrationTest {
 
 	@Autowired
@@ -34,6 +37,22 @@ class ValkeyAggregationServiceIntegrationTest {
 		}
 	}
 
+	@Test
+	void aggregateReloadsFlushedScripts() {
+		this.redisTemplate.execute((RedisCallback<Object>) (connection) -> {
+			connection.scriptingCommands().scriptFlush();
+			return null;
+		});
+		AccessEvent event = new AccessEvent(Instant.parse("2026-02-06T15:30:00Z"), "ik.am", "/entries/1", "GET", 200,
+				100000000L, "47.128.110.92", "https", "HTTP/2.0", "web", "router", 200, 90000000L, 10000000L, "t1",
+				"s1", 0);
+
+		this.aggregationService.aggregate(event);
+
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1m:202602061530:ik.am:/entries/1:200:GET"))
+			.isEqualTo("1");
+	}
+
 	@Test
 	void aggregateWritesCountAndDurationKeys() {
 		Instant timestamp = Instant.parse("2026-02-06T15:30:00Z");
@@ -81,6 +100,111 @@ class ValkeyAggregationServiceIntegrationTest {
 		assertThat(patternDurHash.get("count")).isEqualTo("1");
 	}
 
+	@Test
+	void aggregateWritesLatencyHistogramBuckets() {
+		Instant timestamp = Instant.parse("2026-02-06T15:30:00Z");
+		for (long durationNs : new long[] { 114720000L, 114720000L, 3000000L }) {
+			this.aggregationService.aggregate(new AccessEvent(timestamp, "ik.am", "/entries/896", "GET", 200,
+					durationNs, "47.128.110.92", "https", "HTTP/2.0", "web-service", "web-router", 200, 100000000L,
+					14720000L, "abc123", "def456", 0));
+		}
+
+		String durKey = "access:dur:1m:202602061530:ik.am:/entries/896:200:GET";
+		Map<Object, Object> durHash = this.redisTemplate.opsForHash().entries(durKey);
+		assertThat(durHash).containsEntry("count", "3")
+			.containsEntry("b" + LatencyHistogram.bucketOf(114720000L), "2")
+			.containsEntry("b" + LatencyHistogram.bucketOf(3000000L), "1")
+			.hasSize(4);
+	}
+
+	@Test
+	void aggregateAddsClientIpsToUniqueClients() {
+		Instant timestamp = Instant.parse("2026-02-06T15:30:00Z");
+		for (String clientIp : new String[] { "47.128.110.92", "47.128.110.93", "47.128.110.92" }) {
+			this.aggregationService.aggregate(new AccessEvent(timestamp, "ik.am", "/entries/896", "GET", 200,
+					114720000L, clientIp, "https", "HTTP/2.0", "web-service", "web-router", 200, 100000000L, 14720000L,
+					"abc123", "def456", 0));
+		}
+
+		assertThat(this.redisTemplate.opsForHyperLogLog().size("access:hll:1m:202602061530:ik.am")).isEqualTo(2);
+		assertThat(this.redisTemplate.opsForHyperLogLog().size("access:hll:1d:20260206:ik.am")).isEqualTo(2);
+		assertThat(this.redisTemplate.opsForHyperLogLog().size("access:hll:1m:202602061530:ik.am:/entries/*"))
+			.isEqualTo(2);
+		assertThat(this.redisTemplate.getExpire("access:hll:1m:202602061530:ik.am")).isPositive();
+		assertThat(this.redisTemplate.hasKey("access:hll:1m:202602061530:ik.am:/entries/896")).isFalse();
+	}
+
+	@Test
+	void aggregateWritesHostAndGlobalTotals() {
+		Instant timestamp = Instant.parse("2026-02-06T15:30:00Z");
+		for (int status : new int[] { 200, 200, 503 }) {
+			this.aggregationService.aggregate(new AccessEvent(timestamp, "ik.am", "/entries/896", "GET", status,
+					100000000L, "47.128.110.92", "https", "HTTP/2.0", "web-service", "web-router", status, 100000000L,
+					0L, "abc123", "def456", 0));
+		}
+		this.aggregationService
+			.aggregate(new AccessEvent(timestamp, "www.ik.am", "/", "GET", 200, 100000000L, "47.128.110.92", "https",
+					"HTTP/2.0", "web-service", "web-router", 200, 100000000L, 0L, "abc123", "def456", 0));
+
+		Map<Object, Object> host = this.redisTemplate.opsForHash().entries("access:tot:1m:202602061530:ik.am");
+		assertThat(host).containsEntry("count", "3")
+			.containsEntry("sum", "300000000")
+			.containsEntry("status:200", "2")
+			.containsEntry("class:5xx", "1");
+		Map<Object, Object> global = this.redisTemplate.opsForHash().entries("access:tot:1d:20260206");
+		assertThat(global).containsEntry("count", "4").containsEntry("class:2xx", "3");
+		assertThat(this.redisTemplate.getExpire("access:tot:1m:202602061530")).isPositive();
+	}
+
+	@Test
+	void aggregateIncrementsTopKLeaderboards() {
+		Instant timestamp = Instant.parse("2026-02-06T15:30:00Z");
+		for (int status : new int[] { 200, 200, 404 }) {
+			this.aggregationService.aggregate(new AccessEvent(timestamp, "ik.am", "/entries/896", "GET", status,
+					114720000L, "47.128.110.92", "https", "HTTP/2.0", "web-service", "web-router", status, 100000000L,
+					14720000L, "abc123", "def456", 0));
+		}
+
+		assertThat(this.redisTemplate.opsForZSet().score("access:top:1m:202602061530:ik.am:paths", "/entries/896"))
+			.isEqualTo(3.0);
+		assertThat(this.redisTemplate.opsForZSet().score("access:top:1d:20260206:ik.am:paths", "/entries/896"))
+			.isEqualTo(3.0);
+		assertThat(this.redisTemplate.opsForZSet().score("access:top:1m:202602061530:ik.am:paths:4xx", "/entries/896"))
+			.isEqualTo(1.0);
+		assertThat(this.redisTemplate.hasKey("access:top:1m:202602061530:ik.am:paths:5xx")).isFalse();
+		assertThat(this.redisTemplate.opsForZSet().score("access:top:1m:202602061530:clients", "47.128.110.92"))
+			.isEqualTo(3.0);
+		assertThat(this.redisTemplate.getExpire("access:top:1m:202602061530:ik.am:paths")).isPositive();
+	}
+
+	@Test
+	void aggregateSetsTtlOnlyWhenKeyIsCreated() {
+		Instant timestamp = Instant.parse("2026-02-06T15:30:00Z");
+		AccessEvent event = new AccessEvent(timestamp, "ik.am", "/entries/896", "GET", 200, 114720000L, "47.128.110.92",
+				"https", "HTTP/2.0", "web-service", "web-router", 200, 100000000L, 14720000L, "abc123", "def456", 0);
+		String countKey = "access:cnt:1m:202602061530:ik.am:/entries/896:200:GET";
+		String durKey = "access:dur:1m:202602061530:ik.am:/entries/896:200:GET";
+		String pathsKey = "access:idx:1m:202602061530:ik.am:paths";
+
+		this.aggregationService.aggregate(event);
+
+		assertThat(this.redisTemplate.getExpire(countKey)).isBetween(86300L, 86400L);
+		assertThat(this.redisTemplate.getExpire(durKey)).isBetween(86300L, 86400L);
+		assertThat(this.redisTemplate.getExpire(pathsKey)).isBetween(86300L, 86400L);
+
+		// Shorten the TTLs; further increments must not refresh them
+		this.redisTemplate.expire(countKey, Duration.ofSeconds(100));
+		this.redisTemplate.expire(durKey, Duration.ofSeconds(100));
+		this.redisTemplate.expire(pathsKey, Duration.ofSeconds(100));
+		this.aggregationService.aggregate(event);
+
+		assertThat(this.redisTemplate.opsForValue().get(countKey)).isEqualTo("2");
+		assertThat(this.redisTemplate.opsForHash().get(durKey, "count")).isEqualTo("2");
+		assertThat(this.redisTemplate.getExpire(countKey)).isLessThanOrEqualTo(100L);
+		assertThat(this.redisTemplate.getExpire(durKey)).isLessThanOrEqualTo(100L);
+		assertThat(this.redisTemplate.getExpire(pathsKey)).isLessThanOrEqualTo(100L);
+	}
+
 	@Test
 	void aggregateDropsOriginalPathKeysWhenDropOriginalPathIsTrue() {
 		Instant timestamp = Instant.parse("2026-02-06T15:30:00Z");
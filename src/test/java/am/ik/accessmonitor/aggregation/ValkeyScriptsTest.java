@@ -0,0 +1,77 @@
+package am.ik.accessmonitor.aggregation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ValkeyScriptsTest {
+
+	@Test
+	void isNoScriptInspectsCausesAndPipelineResults() {
+		Exception noScript = new InvalidDataAccessApiUsageException("NOSCRIPT No matching script. Please use EVAL.");
+		Exception wrongType = new InvalidDataAccessApiUsageException(
+				"WRONGTYPE Operation against a key holding the wrong kind of value");
+
+		assertThat(ValkeyScripts.isNoScript(noScript)).isTrue();
+		assertThat(ValkeyScripts.isNoScript(new RedisSystemException("Error in execution", noScript))).isTrue();
+		assertThat(
+				ValkeyScripts.isNoScript(new RedisPipelineException(wrongType, Arrays.asList(1L, wrongType, noScript))))
+			.isTrue();
+		assertThat(ValkeyScripts.isNoScript(new RedisPipelineException(wrongType, Arrays.asList(1L, wrongType))))
+			.isFalse();
+		assertThat(ValkeyScripts.isNoScript(wrongType)).isFalse();
+	}
+
+	@Test
+	void executePipelinedRetriesOnlyCallsThatFailedWithNoScript() {
+		StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+		RedisConnection connection = mock(RedisConnection.class, RETURNS_DEEP_STUBS);
+		RedisConnection retryConnection = mock(RedisConnection.class, RETURNS_DEEP_STUBS);
+		Exception noScript = new InvalidDataAccessApiUsageException("NOSCRIPT No matching script. Please use EVAL.");
+		byte[] succeeded = "access:succeeded".getBytes(StandardCharsets.UTF_8);
+		byte[] failed = "access:failed".getBytes(StandardCharsets.UTF_8);
+		given(redisTemplate.executePipelined(any(RedisCallback.class))).willAnswer((invocation) -> {
+			invocation.getArgument(0, RedisCallback.class).doInRedis(connection);
+			// Lettuce wraps the exception that carries the results
+			throw new RedisPipelineException(new RedisPipelineException(noScript, Arrays.asList(1L, noScript)));
+		}).willAnswer((invocation) -> {
+			invocation.getArgument(0, RedisCallback.class).doInRedis(retryConnection);
+			return List.of(2L);
+		});
+
+		List<Object> results = ValkeyScripts.executePipelined(redisTemplate, (RedisCallback<Object>) (c) -> {
+			ValkeyScripts.incrementCounter(c, succeeded, 1, 60);
+			ValkeyScripts.incrementCounter(c, failed, 2, 60);
+			return null;
+		});
+
+		assertThat(results).containsExactly(1L, 2L);
+		verify(retryConnection.scriptingCommands(), times(1)).eval(any(byte[].class), eq(ReturnType.INTEGER), eq(1),
+				eq(failed), any(byte[].class), any(byte[].class));
+		verify(retryConnection.scriptingCommands(), never()).eval(any(byte[].class), any(ReturnType.class), anyInt(),
+				eq(succeeded), any(byte[].class), any(byte[].class));
+		verify(redisTemplate).execute(any(RedisCallback.class));
+	}
+
+}
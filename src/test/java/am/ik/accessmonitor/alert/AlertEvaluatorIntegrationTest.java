@@ -8,6 +8,7 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.InstantSource;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -80,6 +81,11 @@ class AlertEvaluatorIntegrationTest {
 		registry.add("access-monitor.alerts.rules[1].cooldown", () -> "1s");
 		registry.add("access-monitor.alerts.rules[1].severity", () -> "warning");
 		registry.add("access-monitor.alerts.rules[1].dimensions[0]", () -> "host");
+		registry.add("access-monitor.alerts.rules[2].name", () -> "NoTraffic");
+		registry.add("access-monitor.alerts.rules[2].condition", () -> "zero_requests");
+		registry.add("access-monitor.alerts.rules[2].window", () -> "1m");
+		registry.add("access-monitor.alerts.rules[2].cooldown", () -> "1s");
+		registry.add("access-monitor.alerts.rules[2].severity", () -> "critical");
 	}
 
 	@BeforeEach
@@ -90,7 +96,7 @@ class AlertEvaluatorIntegrationTest {
 		if (keys != null && !keys.isEmpty()) {
 			this.redisTemplate.delete(keys);
 		}
-		this.redisTemplate.delete("access-monitor:lock:alert-evaluator");
+		releaseLeases();
 	}
 
 	@AfterAll
@@ -175,7 +181,7 @@ class AlertEvaluatorIntegrationTest {
 		await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(receivedAlerts).hasSize(1));
 
 		// Second evaluation immediately should not fire again (cooldown 1s)
-		this.redisTemplate.delete("access-monitor:lock:alert-evaluator");
+		releaseLeases();
 		this.alertEvaluator.evaluate();
 
 		// Still only 1 alert due to cooldown (SlowResponse won't fire because no
@@ -185,11 +191,77 @@ class AlertEvaluatorIntegrationTest {
 		// Advance time past cooldown (1s) and evaluate again
 		given(this.instantSource.instant()).willReturn(FIXED_TIME.plusSeconds(2));
 		receivedAlerts.clear();
-		this.redisTemplate.delete("access-monitor:lock:alert-evaluator");
+		releaseLeases();
 		this.alertEvaluator.evaluate();
 		await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(receivedAlerts).isNotEmpty());
 	}
 
+	@Test
+	void firesHighErrorRateAlertFromPreviousSlotWithinWindow() {
+		// 10 seconds into the current slot, 50 seconds of the previous slot are still
+		// within the 1-minute window
+		given(this.instantSource.instant()).willReturn(Instant.parse("2026-01-15T12:31:10Z"));
+		Granularity granularity = Granularity.ONE_MINUTE;
+		String ts = granularity.format(FIXED_TIME);
+		String host = "ik.am";
+
+		seedCount(granularity, ts, host, "/page", 200, "GET", 2);
+		seedCount(granularity, ts, host, "/page", 500, "GET", 8);
+		seedDimensionIndexes(granularity, ts, host, "/page", "200", "500");
+
+		this.alertEvaluator.evaluate();
+
+		await().atMost(Duration.ofSeconds(5))
+			.untilAsserted(() -> assertThat(receivedAlerts).anyMatch(alert -> alert.contains("HighErrorRate")));
+		// The global rule counts the previous slot fully, so it does not report no
+		// traffic
+		assertThat(receivedAlerts).noneMatch(alert -> alert.contains("NoTraffic"));
+	}
+
+	@Test
+	void skipsShardsLeasedByAnotherInstance() {
+		Granularity granularity = Granularity.ONE_MINUTE;
+		String ts = granularity.format(FIXED_TIME);
+		String host = "ik.am";
+		seedCount(granularity, ts, host, "/page", 500, "GET", 10);
+		seedDimensionIndexes(granularity, ts, host, "/page", "500");
+		int shard = Math.floorMod(host.hashCode(), 8);
+		this.redisTemplate.opsForValue()
+			.set("access-monitor:lock:alert-evaluator:0:" + shard, "another-instance", Duration.ofMinutes(1));
+
+		this.alertEvaluator.evaluate();
+
+		assertThat(receivedAlerts).noneMatch(alert -> alert.contains("HighErrorRate"));
+
+		releaseLeases();
+		this.alertEvaluator.evaluate();
+
+		await().atMost(Duration.ofSeconds(5))
+			.untilAsserted(() -> assertThat(receivedAlerts).anyMatch(alert -> alert.contains("HighErrorRate")));
+	}
+
+	@Test
+	void globalRuleDoesNotFireWhileAnyHostHasTraffic() {
+		Granularity granularity = Granularity.ONE_MINUTE;
+		String ts = granularity.format(FIXED_TIME);
+		seedCount(granularity, ts, "ik.am", "/page", 200, "GET", 3);
+		seedCount(granularity, ts, "www.ik.am", "/page", 200, "GET", 2);
+		seedDimensionIndexes(granularity, ts, "ik.am", "/page", "200");
+		seedDimensionIndexes(granularity, ts, "www.ik.am", "/page", "200");
+
+		this.alertEvaluator.evaluate();
+
+		assertThat(receivedAlerts).isEmpty();
+	}
+
+	@Test
+	void globalRuleFiresWithoutTraffic() {
+		this.alertEvaluator.evaluate();
+
+		await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(receivedAlerts).hasSize(1));
+		assertThat(receivedAlerts.getFirst()).contains("NoTraffic").doesNotContain("\"host\"");
+	}
+
 	@Test
 	void endToEndRabbitMqToAlert(@Autowired org.springframework.amqp.rabbit.core.RabbitTemplate rabbitTemplate) {
 		String startUtc = FIXED_TIME.toString();
@@ -224,10 +296,24 @@ class AlertEvaluatorIntegrationTest {
 		});
 	}
 
+	private void releaseLeases() {
+		Set<String> leases = this.redisTemplate.keys("access-monitor:lock:alert-evaluator:*");
+		if (leases != null && !leases.isEmpty()) {
+			this.redisTemplate.delete(leases);
+		}
+		this.redisTemplate.delete("access-monitor:alert-evaluators");
+	}
+
 	private void seedCount(Granularity granularity, String ts, String host, String path, int status, String method,
 			long count) {
 		String key = ValkeyKeyBuilder.countKey(granularity, ts, host, path, status, method);
 		this.redisTemplate.opsForValue().set(key, String.valueOf(count));
+		for (String totalsKey : List.of(ValkeyKeyBuilder.totalsKey(granularity, ts, host),
+				ValkeyKeyBuilder.totalsKey(granularity, ts))) {
+			this.redisTemplate.opsForHash().increment(totalsKey, "count", count);
+			this.redisTemplate.opsForHash().increment(totalsKey, "status:" + status, count);
+			this.redisTemplate.opsForHash().increment(totalsKey, "class:" + status / 100 + "xx", count);
+		}
 	}
 
 	private void seedDuration(Granularity granularity, String ts, String host, String path, int status, String method,
@@ -235,6 +321,12 @@ class AlertEvaluatorIntegrationTest {
 		String key = ValkeyKeyBuilder.durationKey(granularity, ts, host, path, status, method);
 		this.redisTemplate.opsForHash().put(key, "sum", String.valueOf(sumNs));
 		this.redisTemplate.opsForHash().put(key, "count", String.valueOf(count));
+		for (String totalsKey : List.of(ValkeyKeyBuilder.totalsKey(granularity, ts, host),
+				ValkeyKeyBuilder.totalsKey(granularity, ts))) {
+			this.redisTemplate.opsForHash().increment(totalsKey, "sum", sumNs);
+			this.redisTemplate.opsForHash().increment(totalsKey, "status:" + status + ":sum", sumNs);
+			this.redisTemplate.opsForHash().increment(totalsKey, "class:" + status / 100 + "xx:sum", sumNs);
+		}
 	}
 
 	private void seedDimensionIndexes(Granularity granularity, String ts, String host, String path,
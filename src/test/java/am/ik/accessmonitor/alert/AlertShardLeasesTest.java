@@ -0,0 +1,66 @@
+package am.ik.accessmonitor.alert;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import am.ik.accessmonitor.alert.AlertShardLeases.AlertShard;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlertShardLeasesTest {
+
+	private static final List<String> EVALUATORS = List.of("pod-a", "pod-b", "pod-c", "pod-d");
+
+	@Test
+	void ownerIsOneOfTheEvaluators() {
+		for (AlertShard shard : shards()) {
+			assertThat(AlertShardLeases.owner(shard, EVALUATORS)).isIn(EVALUATORS);
+		}
+	}
+
+	@Test
+	void ownerDoesNotDependOnTheOrderOfEvaluators() {
+		List<String> reversed = new ArrayList<>(EVALUATORS).reversed();
+		for (AlertShard shard : shards()) {
+			assertThat(AlertShardLeases.owner(shard, reversed)).isEqualTo(AlertShardLeases.owner(shard, EVALUATORS));
+		}
+	}
+
+	@Test
+	void removingAnEvaluatorOnlyMovesItsShards() {
+		List<String> remaining = EVALUATORS.stream().filter(evaluator -> !evaluator.equals("pod-b")).toList();
+		for (AlertShard shard : shards()) {
+			String owner = AlertShardLeases.owner(shard, EVALUATORS);
+			if (!owner.equals("pod-b")) {
+				assertThat(AlertShardLeases.owner(shard, remaining)).isEqualTo(owner);
+			}
+		}
+	}
+
+	@Test
+	void shardsAreSpreadAcrossEvaluators() {
+		Map<String, Integer> counts = new HashMap<>();
+		List<AlertShard> shards = shards();
+		for (AlertShard shard : shards) {
+			counts.merge(AlertShardLeases.owner(shard, EVALUATORS), 1, Integer::sum);
+		}
+		int expected = shards.size() / EVALUATORS.size();
+		assertThat(counts).hasSize(EVALUATORS.size());
+		assertThat(counts.values())
+			.allSatisfy(count -> assertThat(count).isBetween(expected * 3 / 4, expected * 5 / 4));
+	}
+
+	private static List<AlertShard> shards() {
+		List<AlertShard> shards = new ArrayList<>();
+		for (int rule = 0; rule < 10; rule++) {
+			for (int shard = 0; shard < 100; shard++) {
+				shards.add(new AlertShard(rule, shard));
+			}
+		}
+		return shards;
+	}
+
+}
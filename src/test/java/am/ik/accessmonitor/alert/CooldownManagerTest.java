@@ -38,4 +38,12 @@ class CooldownManagerTest {
 		assertThat(manager.canFire("alert-2", Duration.ofMinutes(5))).isTrue();
 	}
 
+	@Test
+	void canFireAfterFiringIsCleared() {
+		CooldownManager manager = new CooldownManager(InstantSource.system());
+		manager.recordFiring("test-alert");
+		manager.clearFiring("test-alert");
+		assertThat(manager.canFire("test-alert", Duration.ofMinutes(5))).isTrue();
+	}
+
 }
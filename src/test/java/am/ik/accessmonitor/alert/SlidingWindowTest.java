@@ -0,0 +1,75 @@
+package am.ik.accessmonitor.alert;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlidingWindowTest {
+
+	@Test
+	void addAccumulatesTotals() {
+		SlidingWindow window = new SlidingWindow(60, 1, false);
+		window.add(1_000, 200, 10_000_000L);
+		window.add(1_000, 503, 20_000_000L);
+		window.add(1_010, 500, 30_000_000L);
+
+		assertThat(window.count()).isEqualTo(3);
+		assertThat(window.serverErrorCount()).isEqualTo(2);
+		assertThat(window.durationSum()).isEqualTo(60_000_000L);
+		assertThat(window.latestSecond()).isEqualTo(1_010);
+		assertThat(window.histogram()).isNull();
+	}
+
+	@Test
+	void slidingExpiresOldBuckets() {
+		SlidingWindow window = new SlidingWindow(60, 1, false);
+		window.add(1_000, 500, 10_000_000L);
+		window.add(1_030, 200, 20_000_000L);
+
+		window.add(1_060, 200, 30_000_000L);
+		assertThat(window.count()).isEqualTo(2);
+		assertThat(window.serverErrorCount()).isZero();
+		assertThat(window.durationSum()).isEqualTo(50_000_000L);
+
+		window.add(1_200, 200, 40_000_000L);
+		assertThat(window.count()).isEqualTo(1);
+		assertThat(window.durationSum()).isEqualTo(40_000_000L);
+	}
+
+	@Test
+	void addIgnoresRequestsOlderThanWindow() {
+		SlidingWindow window = new SlidingWindow(60, 1, false);
+		window.add(1_100, 200, 10_000_000L);
+
+		assertThat(window.add(1_040, 200, 10_000_000L)).isFalse();
+		assertThat(window.add(1_041, 200, 10_000_000L)).isTrue();
+		assertThat(window.count()).isEqualTo(2);
+		assertThat(window.latestSecond()).isEqualTo(1_100);
+	}
+
+	@Test
+	void wideBucketsGroupSeconds() {
+		SlidingWindow window = new SlidingWindow(600, 10, false);
+		window.add(1_001, 200, 0);
+		window.add(1_009, 200, 0);
+
+		assertThat(window.latestSecond()).isEqualTo(1_000);
+		window.add(1_600, 200, 0);
+		assertThat(window.count()).isEqualTo(1);
+	}
+
+	@Test
+	void histogramSubtractsExpiredBuckets() {
+		SlidingWindow window = new SlidingWindow(60, 1, true);
+		window.add(1_000, 200, 900_000_000L);
+		window.add(1_030, 200, 5_000_000L);
+		window.add(1_030, 200, 5_000_000L);
+		assertThat(window.histogram().totalCount()).isEqualTo(3);
+		assertThat(window.histogram().percentileNs(99)).isGreaterThan(100_000_000L);
+
+		window.add(1_060, 200, 5_000_000L);
+		assertThat(window.histogram().totalCount()).isEqualTo(3);
+		assertThat(window.histogram().percentileNs(99)).isLessThan(100_000_000L);
+	}
+
+}
@@ -0,0 +1,218 @@
+package am.ik.accessmonitor.alert;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.InstantSource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import am.ik.accessmonitor.AccessMonitorProperties;
+import am.ik.accessmonitor.AccessMonitorProperties.AlertsProperties.AlertRuleProperties;
+import am.ik.accessmonitor.event.AccessEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class StreamingAlertEvaluatorTest {
+
+	private static final Instant T0 = Instant.ofEpochSecond(1_000);
+
+	private final AtomicReference<Instant> now = new AtomicReference<>(T0.plusSeconds(3600));
+
+	private final InstantSource instantSource = this.now::get;
+
+	private final AlertManagerClient alertManagerClient = mock(AlertManagerClient.class);
+
+	private final CooldownManager cooldownManager = new CooldownManager(this.instantSource);
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private AccessMonitorProperties properties;
+
+	private StreamingAlertEvaluator evaluator;
+
+	@AfterEach
+	void tearDown() {
+		if (this.evaluator != null) {
+			this.evaluator.destroy();
+		}
+	}
+
+	@Test
+	void errorRateFiresOnlyOnceTheWindowIsComplete() {
+		this.evaluator = evaluator(errorRateRule());
+
+		this.evaluator.record(event(T0, "www.ik.am", 500));
+		this.evaluator.record(event(T0.plusSeconds(30), "www.ik.am", 500));
+		verify(this.alertManagerClient, after(200).never()).postAlert(any());
+
+		this.evaluator.record(event(T0.plusSeconds(60), "www.ik.am", 500));
+		verify(this.alertManagerClient, timeout(1000))
+			.postAlert(argThat(payload -> "high-error-rate".equals(payload.labels().get("alertname"))
+					&& "www.ik.am".equals(payload.labels().get("host"))));
+	}
+
+	@Test
+	void trafficSpikeFiresOnlyOnceTheBaselineIsComplete() {
+		this.evaluator = evaluator(Map.of("access-monitor.alerts.rules[0].name", "traffic-spike",
+				"access-monitor.alerts.rules[0].condition", "traffic_spike", "access-monitor.alerts.rules[0].window",
+				"1m", "access-monitor.alerts.rules[0].baseline-window", "10m",
+				"access-monitor.alerts.rules[0].multiplier", "2", "access-monitor.alerts.rules[0].cooldown", "5m"));
+		for (int second = 0; second < 600; second += 10) {
+			this.evaluator.record(event(T0.plusSeconds(second), "www.ik.am", 200));
+		}
+		// A burst before the baseline covers its window must not be taken for a spike
+		for (int i = 0; i < 100; i++) {
+			this.evaluator.record(event(T0.plusSeconds(300), "www.ik.am", 200));
+		}
+		verify(this.alertManagerClient, after(200).never()).postAlert(any());
+
+		for (int i = 0; i < 100; i++) {
+			this.evaluator.record(event(T0.plusSeconds(600), "www.ik.am", 200));
+		}
+		verify(this.alertManagerClient, timeout(1000))
+			.postAlert(argThat(payload -> "traffic-spike".equals(payload.labels().get("alertname"))));
+	}
+
+	@Test
+	void futureEventsDoNotMoveTheWindowAhead() {
+		this.now.set(T0);
+		this.evaluator = evaluator(errorRateRule());
+
+		this.evaluator.record(event(T0.plusSeconds(3600), "www.ik.am", 200));
+		this.now.set(T0.plusSeconds(60));
+		this.evaluator.record(event(T0.plusSeconds(60), "www.ik.am", 500));
+
+		verify(this.alertManagerClient, timeout(1000)).postAlert(any());
+	}
+
+	@Test
+	void rejectedAlertsClearTheCooldown() throws Exception {
+		this.evaluator = evaluator(errorRateRule());
+		CountDownLatch release = new CountDownLatch(1);
+		willAnswer(invocation -> {
+			release.await();
+			return null;
+		}).given(this.alertManagerClient).postAlert(any());
+		AlertRuleProperties rule = this.properties.alerts().rules().getFirst();
+		try {
+			// 2 alerts are being posted and 100 are queued, the last one is rejected
+			for (int i = 0; i < 103; i++) {
+				String host = "host" + i + ".ik.am";
+				this.evaluator.record(event(T0, host, 500));
+				this.evaluator.record(event(T0.plusSeconds(60), host, 500));
+			}
+
+			assertThat(this.cooldownManager.canFire(AlertLabels.alertKey(rule, "host0.ik.am"), rule.cooldown()))
+				.isFalse();
+			assertThat(this.cooldownManager.canFire(AlertLabels.alertKey(rule, "host102.ik.am"), rule.cooldown()))
+				.isTrue();
+		}
+		finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	void alertsShareTheCooldownWithAlertEvaluator() {
+		this.evaluator = evaluator(errorRateRule());
+		AlertRuleProperties rule = this.properties.alerts().rules().getFirst();
+		// Fired by AlertEvaluator within the cooldown
+		this.cooldownManager.recordFiring(AlertLabels.alertKey(rule, "www.ik.am"));
+
+		this.evaluator.record(event(T0, "www.ik.am", 500));
+		this.evaluator.record(event(T0.plusSeconds(60), "www.ik.am", 500));
+		this.evaluator.record(event(T0, "blog.ik.am", 500));
+		this.evaluator.record(event(T0.plusSeconds(60), "blog.ik.am", 500));
+
+		verify(this.alertManagerClient, timeout(1000))
+			.postAlert(argThat(payload -> "blog.ik.am".equals(payload.labels().get("host"))));
+		verify(this.alertManagerClient, never())
+			.postAlert(argThat(payload -> "www.ik.am".equals(payload.labels().get("host"))));
+		// AlertEvaluator does not post the alert fired by the streaming evaluation again
+		assertThat(this.cooldownManager.canFire(AlertLabels.alertKey(rule, "blog.ik.am"), rule.cooldown())).isFalse();
+	}
+
+	@Test
+	void evictIdleWindowsRemovesWindowsOlderThanTheWindow() {
+		this.now.set(T0);
+		this.evaluator = evaluator(errorRateRule());
+		this.evaluator.record(event(T0, "www.ik.am", 200));
+		this.evaluator.record(event(T0, "blog.ik.am", 200));
+		this.now.set(T0.plusSeconds(30));
+		this.evaluator.record(event(T0.plusSeconds(30), "blog.ik.am", 200));
+
+		this.now.set(T0.plusSeconds(61));
+		this.evaluator.evictIdleWindows();
+
+		assertThat(this.evaluator.windowCount()).isEqualTo(1);
+	}
+
+	@Test
+	void disallowedHostsDoNotCreateWindows() {
+		Map<String, String> properties = new HashMap<>(errorRateRule());
+		properties.put("access-monitor.blacklist.allowed-hosts[0]", ".ik.am");
+		this.evaluator = evaluator(properties);
+
+		this.evaluator.record(event(T0, "www.ik.am", 200));
+		this.evaluator.record(event(T0, "random.example.com", 200));
+
+		assertThat(this.evaluator.windowCount()).isEqualTo(1);
+	}
+
+	@Test
+	void windowsBeyondTheMaximumAreCountedAsOverflow() {
+		Map<String, String> properties = new HashMap<>(errorRateRule());
+		properties.put("access-monitor.alerts.streaming.max-windows", "2");
+		this.evaluator = evaluator(properties);
+
+		for (int i = 0; i < 5; i++) {
+			this.evaluator.record(event(T0, "host" + i + ".ik.am", 200));
+		}
+		this.evaluator.record(event(T0, "host0.ik.am", 200));
+
+		assertThat(this.evaluator.windowCount()).isEqualTo(2);
+		assertThat(this.meterRegistry.get("access.monitor.alerts.streaming.windows.overflow").counter().count())
+			.isEqualTo(3.0);
+	}
+
+	private static Map<String, String> errorRateRule() {
+		return Map.of("access-monitor.alerts.rules[0].name", "high-error-rate",
+				"access-monitor.alerts.rules[0].condition", "error_rate", "access-monitor.alerts.rules[0].threshold",
+				"0.1", "access-monitor.alerts.rules[0].window", "1m", "access-monitor.alerts.rules[0].cooldown", "5m",
+				"access-monitor.alerts.rules[0].dimensions[0]", "host");
+	}
+
+	private StreamingAlertEvaluator evaluator(Map<String, String> rules) {
+		Map<String, String> source = new HashMap<>(rules);
+		source.put("access-monitor.alerts.streaming.enabled", "true");
+		source.putIfAbsent("access-monitor.blacklist.enabled", "false");
+		this.properties = new Binder(new MapConfigurationPropertySource(source))
+			.bind("access-monitor", AccessMonitorProperties.class)
+			.get();
+		return new StreamingAlertEvaluator(this.properties, this.alertManagerClient, this.cooldownManager,
+				this.instantSource, this.meterRegistry);
+	}
+
+	private static AccessEvent event(Instant timestamp, String host, int status) {
+		return new AccessEvent(timestamp, host, "/", "GET", status, Duration.ofMillis(10).toNanos(), "10.0.0.1",
+				"https", "HTTP/2.0", "web", "router", status, 0L, 0L, "t1", "s1", 0);
+	}
+
+}
@@ -0,0 +1,66 @@
+package am.ik.accessmonitor.alert;
+
+import am.ik.accessmonitor.aggregation.TrafficTotals;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class WeightedTotalsTest {
+
+	@Test
+	void addScalesTotals() {
+		TrafficTotals slot = new TrafficTotals();
+		for (int i = 0; i < 8; i++) {
+			slot.add(200, 10_000_000L);
+		}
+		slot.add(500, 10_000_000L);
+		slot.add(500, 10_000_000L);
+
+		WeightedTotals window = new WeightedTotals();
+		window.add(slot, 0.25);
+
+		assertThat(window.count()).isEqualTo(2.5);
+		assertThat(window.durationSum()).isEqualTo(25_000_000.0);
+		assertThat(window.classCount(2)).isEqualTo(2.0);
+		assertThat(window.classCount(5)).isEqualTo(0.5);
+		assertThat(window.histogram().isEmpty()).isFalse();
+	}
+
+	@Test
+	void errorRateIsNotDistortedByRounding() {
+		// 3 of 4 requests failed in a slot weighted by a half; rounding each counter
+		// separately would yield 2 errors of 2 requests
+		TrafficTotals slot = new TrafficTotals();
+		slot.add(200, 10_000_000L);
+		for (int i = 0; i < 3; i++) {
+			slot.add(503, 10_000_000L);
+		}
+		TrafficTotals current = new TrafficTotals();
+		current.add(200, 10_000_000L);
+
+		WeightedTotals window = new WeightedTotals();
+		window.add(slot, 0.5);
+		window.add(current, 1.0);
+
+		assertThat(window.classCount(5) / window.count()).isCloseTo(0.5, within(1e-9));
+	}
+
+	@Test
+	void histogramKeepsSingleRequestsOfSmallWeights() {
+		TrafficTotals slot = new TrafficTotals();
+		slot.add(200, 900_000_000L);
+		TrafficTotals current = new TrafficTotals();
+		for (int i = 0; i < 3; i++) {
+			current.add(200, 5_000_000L);
+		}
+
+		WeightedTotals window = new WeightedTotals();
+		window.add(slot, 0.4);
+		window.add(current, 1.0);
+
+		assertThat(window.histogram().percentileNs(99)).isGreaterThan(100_000_000L);
+		assertThat(window.histogram().percentileNs(50)).isLessThan(100_000_000L);
+	}
+
+}
@@ -0,0 +1,108 @@
+package am.ik.accessmonitor.alert;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import am.ik.accessmonitor.aggregation.Granularity;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class WindowSlotsTest {
+
+	@Test
+	void oneMinuteWindowWeightsPreviousSlot() {
+		WindowSlots window = WindowSlots.of(Duration.ofMinutes(1), Instant.parse("2026-01-15T12:30:15Z"), true);
+
+		assertThat(window.granularity()).isEqualTo(Granularity.ONE_MINUTE);
+		assertThat(window.timestamps()).containsExactly("202601151229", "202601151230");
+		assertThat(window.slots().get(0).weight()).isCloseTo(0.75, within(1e-9));
+		assertThat(window.slots().get(1).weight()).isEqualTo(1.0);
+	}
+
+	@Test
+	void fiveMinuteWindowSumsFineSlots() {
+		WindowSlots window = WindowSlots.of(Duration.ofMinutes(5), Instant.parse("2026-01-15T12:30:30Z"), true);
+
+		assertThat(window.granularity()).isEqualTo(Granularity.ONE_MINUTE);
+		assertThat(window.timestamps()).containsExactly("202601151225", "202601151226", "202601151227", "202601151228",
+				"202601151229", "202601151230");
+		assertThat(window.slots().getFirst().weight()).isCloseTo(0.5, within(1e-9));
+		assertThat(window.slots().subList(1, 6)).allMatch(slot -> slot.weight() == 1.0);
+	}
+
+	@Test
+	void windowAtSlotBoundaryCoversWholeSlots() {
+		WindowSlots window = WindowSlots.of(Duration.ofMinutes(1), Instant.parse("2026-01-15T12:30:00Z"), true);
+
+		assertThat(window.timestamps()).containsExactly("202601151229", "202601151230");
+		assertThat(window.slots()).allMatch(slot -> slot.weight() == 1.0);
+	}
+
+	@Test
+	void longWindowUsesCoarserGranularity() {
+		WindowSlots hour = WindowSlots.of(Duration.ofHours(1), Instant.parse("2026-01-15T12:30:30Z"), true);
+		assertThat(hour.granularity()).isEqualTo(Granularity.FIVE_MINUTES);
+		assertThat(hour.slots()).hasSize(13);
+
+		WindowSlots day = WindowSlots.of(Duration.ofDays(1), Instant.parse("2026-01-15T12:30:30Z"), true);
+		assertThat(day.granularity()).isEqualTo(Granularity.ONE_HOUR);
+		assertThat(day.slots()).hasSize(25);
+		assertThat(day.slots().size()).isLessThanOrEqualTo(WindowSlots.MAX_SLOTS);
+	}
+
+	@Test
+	void shortWindowWeightsCurrentSlot() {
+		WindowSlots window = WindowSlots.of(Duration.ofSeconds(15), Instant.parse("2026-01-15T12:30:30Z"), true);
+
+		assertThat(window.timestamps()).containsExactly("202601151230");
+		assertThat(window.slots().getFirst().weight()).isCloseTo(0.5, within(1e-9));
+	}
+
+	@Test
+	void unweightedWindowCountsOverlappingSlotsFully() {
+		WindowSlots window = WindowSlots.of(Duration.ofMinutes(1), Instant.parse("2026-01-15T12:30:15Z"), false);
+
+		assertThat(window.slots()).hasSize(2).allMatch(slot -> slot.weight() == 1.0);
+	}
+
+	@Test
+	void rolledUpWindowReadsOpenEdgeFromOneMinuteSlots() {
+		WindowSlots window = WindowSlots.of(Duration.ofHours(1), Instant.parse("2026-01-15T12:30:30Z"), true,
+				Instant.parse("2026-01-15T12:28:00Z"));
+
+		assertThat(window.granularity()).isEqualTo(Granularity.FIVE_MINUTES);
+		assertThat(window.slots()).hasSize(15);
+		// The 12:25 slot only holds the rolled-up 12:25 to 12:27 slots
+		WindowSlots.Slot lastRolledUp = window.slots().get(11);
+		assertThat(lastRolledUp.granularity()).isEqualTo(Granularity.FIVE_MINUTES);
+		assertThat(lastRolledUp.timestamp()).isEqualTo("202601151225");
+		assertThat(lastRolledUp.weight()).isEqualTo(1.0);
+		assertThat(window.timestampsByGranularity().get(Granularity.ONE_MINUTE)).containsExactly("202601151228",
+				"202601151229", "202601151230");
+		assertThat(window.slots().subList(12, 15)).allMatch(slot -> slot.weight() == 1.0);
+	}
+
+	@Test
+	void rolledUpWindowWeightsFirstSlotByRolledUpTime() {
+		WindowSlots window = WindowSlots.of(Duration.ofHours(1), Instant.parse("2026-01-15T12:30:30Z"), true,
+				Instant.parse("2026-01-15T11:33:00Z"));
+
+		assertThat(window.slots().getFirst().timestamp()).isEqualTo("202601151130");
+		// Rolled up for 3 minutes, of which 2.5 minutes fall into the window
+		assertThat(window.slots().getFirst().weight()).isCloseTo(2.5 / 3, within(1e-9));
+		assertThat(window.timestampsByGranularity().get(Granularity.FIVE_MINUTES)).hasSize(1);
+		// Only the last MAX_SLOTS minutes are read from the 1-minute slots
+		assertThat(window.timestampsByGranularity().get(Granularity.ONE_MINUTE)).hasSize(WindowSlots.MAX_SLOTS);
+	}
+
+	@Test
+	void rollupDoesNotAffectOneMinuteWindows() {
+		Instant now = Instant.parse("2026-01-15T12:30:15Z");
+
+		assertThat(WindowSlots.of(Duration.ofMinutes(5), now, true, Instant.parse("2026-01-15T12:28:00Z")))
+			.isEqualTo(WindowSlots.of(Duration.ofMinutes(5), now, true));
+	}
+
+}
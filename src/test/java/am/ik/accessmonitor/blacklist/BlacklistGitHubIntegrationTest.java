@@ -138,8 +138,10 @@ class BlacklistGitHubIntegrationTest {
 		String clientIp = "203.0.113.99";
 
 		// Seed disallowed-host count exceeding threshold (10)
-		String key = "access:disallowed-host:cnt:" + granularity.label() + ":" + ts + ":" + clientIp;
-		this.redisTemplate.opsForValue().set(key, "15");
+		String key = "access:disallowed-host:clients:" + granularity.label() + ":" + ts;
+		this.redisTemplate.opsForZSet().add(key, clientIp, 15);
+		// Below the threshold, so no action is published for it
+		this.redisTemplate.opsForZSet().add(key, "198.51.100.1", 3);
 
 		// Trigger evaluation
 		this.blacklistEvaluator.evaluate();
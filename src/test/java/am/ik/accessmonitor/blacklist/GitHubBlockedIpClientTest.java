@@ -92,7 +92,7 @@ class GitHubBlockedIpClientTest {
 						new am.ik.accessmonitor.AccessMonitorProperties.BlacklistProperties.GitHubProperties(true,
 								"test-token", "http://localhost:" + port, "test-owner", "test-repo", "test/path.yaml",
 								"test-committer", "test@example.com")),
-				null);
+				null, null);
 		return new GitHubBlockedIpClient(RestClient.builder(), properties);
 	}
 
@@ -0,0 +1,256 @@
+package am.ik.accessmonitor.event;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.logs.v1.ScopeLogs;
+import org.junit.jupiter.api.Test;
+
+import static am.ik.accessmonitor.event.OtlpLogConverterTest.intKv;
+import static am.ik.accessmonitor.event.OtlpLogConverterTest.stringKv;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AccessEventBatchCodecTest {
+
+	@Test
+	void roundTripEvents() {
+		AccessEvent first = new AccessEvent(Instant.parse("2026-02-06T15:30:00.123456789Z"), "ik.am", "/entries/896",
+				"GET", 200, 114720000L, "47.128.110.92", "https", "HTTP/2.0", "web-service", "web-router", 200,
+				100000000L, 14720000L, "4bf92f3577b34da6a3ce929d0e0e4736", "00f067aa0ba902b7", 0);
+		AccessEvent second = new AccessEvent(Instant.parse("2026-02-06T15:29:59Z"), "日本語.example", "/検索?q=ü", "POST",
+				503, 5000000L, "2001:db8::1", null, null, null, null, 0, 0L, -3000L, "ABC123", "xyz", 2);
+		AccessEvent third = new AccessEvent(Instant.parse("2026-02-06T15:30:00.5Z"), "ik.am", "/entries/896", "GET",
+				200, 1L, "", "https", "HTTP/2.0", "web-service", "web-router", 200, 0L, 0L, "", null, 0);
+
+		byte[] encoded = AccessEventBatchCodec.encode(List.of(first, second, third));
+
+		assertThat(AccessEventBatchCodec.decodeEvents(encoded)).containsExactly(first, second, third);
+		assertThat(AccessEventBatchCodec.hasJson(encoded)).isFalse();
+	}
+
+	@Test
+	void roundTripEventsWithJson() {
+		AccessEvent first = new AccessEvent(Instant.parse("2026-02-06T15:30:00.123Z"), "ik.am", "/", "GET", 200, 1L,
+				"10.0.0.1", "https", "HTTP/1.1", null, null, 0, 0L, 0L, "abcd", null, 0);
+		AccessEvent second = new AccessEvent(Instant.parse("2026-02-06T15:30:01Z"), "ik.am", "/検索", "POST", 503, 2L,
+				"10.0.0.2", "https", "HTTP/1.1", null, null, 0, 0L, 0L, null, null, 1);
+
+		byte[] encoded = AccessEventBatchCodec.encode(List.of(first, second),
+				List.of("{\"host\":\"ik.am\",\"path\":\"/\"}", "{\"path\":\"/検索\"}"));
+
+		assertThat(AccessEventBatchCodec.hasJson(encoded)).isTrue();
+		assertThat(AccessEventBatchCodec.decodeJson(encoded)).containsExactly("{\"host\":\"ik.am\",\"path\":\"/\"}",
+				"{\"path\":\"/検索\"}");
+		assertThat(AccessEventBatchCodec.decodeEvents(encoded)).containsExactly(first, second);
+	}
+
+	@Test
+	void rejectJsonOfDifferentSize() {
+		AccessEvent event = new AccessEvent(Instant.parse("2026-02-06T15:30:00Z"), "ik.am", "/", "GET", 200, 1L, null,
+				null, null, null, null, 0, 0L, 0L, null, null, 0);
+
+		assertThatThrownBy(() -> AccessEventBatchCodec.encode(List.of(event), List.of()))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void roundTripEmptyBatch() {
+		byte[] encoded = AccessEventBatchCodec.encode(List.of());
+
+		assertThat(AccessEventBatchCodec.decodeEvents(encoded)).isEmpty();
+	}
+
+	@Test
+	void encodedBatchIsSeveralTimesSmallerThanOtlp() {
+		ScopeLogs.Builder scopeLogs = ScopeLogs.newBuilder();
+		List<AccessEvent> events = new ArrayList<>();
+		Instant start = Instant.parse("2026-02-06T15:30:00.123Z");
+		for (int i = 0; i < 100; i++) {
+			Instant timestamp = start.plusMillis(i * 7L);
+			String path = "/entries/" + (800 + i % 10);
+			String clientIp = "47.128.110." + (i % 256);
+			scopeLogs.addLogRecords(LogRecord.newBuilder()
+				.addAttributes(stringKv("RequestHost", "ik.am"))
+				.addAttributes(stringKv("RequestPath", path))
+				.addAttributes(stringKv("RequestMethod", "GET"))
+				.addAttributes(intKv("DownstreamStatus", 200))
+				.addAttributes(intKv("Duration", 114720000L))
+				.addAttributes(stringKv("StartUTC", timestamp.toString()))
+				.addAttributes(stringKv("ClientHost", clientIp))
+				.addAttributes(stringKv("RequestScheme", "https"))
+				.addAttributes(stringKv("RequestProtocol", "HTTP/2.0"))
+				.addAttributes(stringKv("ServiceName", "web-service@kubernetes"))
+				.addAttributes(stringKv("RouterName", "web-router@kubernetes"))
+				.addAttributes(intKv("OriginStatus", 200))
+				.addAttributes(intKv("OriginDuration", 100000000L))
+				.addAttributes(intKv("Overhead", 14720000L))
+				.addAttributes(stringKv("TraceId", "4bf92f3577b34da6a3ce929d0e0e4736"))
+				.addAttributes(stringKv("SpanId", "00f067aa0ba902b7"))
+				.addAttributes(intKv("RetryAttempts", 0)));
+			events.add(new AccessEvent(timestamp, "ik.am", path, "GET", 200, 114720000L, clientIp, "https", "HTTP/2.0",
+					"web-service@kubernetes", "web-router@kubernetes", 200, 100000000L, 14720000L,
+					"4bf92f3577b34da6a3ce929d0e0e4736", "00f067aa0ba902b7", 0));
+		}
+		byte[] otlp = ExportLogsServiceRequest.newBuilder()
+			.addResourceLogs(ResourceLogs.newBuilder().addScopeLogs(scopeLogs))
+			.build()
+			.toByteArray();
+
+		byte[] encoded = AccessEventBatchCodec.encode(events);
+
+		assertThat(encoded.length * 4).isLessThan(otlp.length);
+		assertThat(AccessEventBatchCodec.decodeEvents(encoded)).isEqualTo(events);
+	}
+
+	@Test
+	void decodeRowFormat() throws IOException {
+		AccessEvent event = new AccessEvent(Instant.parse("2026-02-06T15:30:00.123Z"), "ik.am", "/", "GET", 200, 1L,
+				"10.0.0.1", "https", "HTTP/1.1", null, null, 0, 0L, 0L, null, null, 0);
+
+		byte[] encoded = encodeRows(List.of(event, event), List.of("{\"host\":\"ik.am\"}", "{}"));
+
+		assertThat(AccessEventBatchCodec.decodeEvents(encoded)).containsExactly(event, event);
+		assertThat(AccessEventBatchCodec.hasJson(encoded)).isTrue();
+		assertThat(AccessEventBatchCodec.decodeJson(encoded)).containsExactly("{\"host\":\"ik.am\"}", "{}");
+	}
+
+	@Test
+	void rejectDecodeJsonOfBatchWithoutJson() {
+		byte[] encoded = AccessEventBatchCodec.encode(List.of());
+
+		assertThatThrownBy(() -> AccessEventBatchCodec.decodeJson(encoded))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void isEventBatch() {
+		assertThat(AccessEventBatchCodec.isEventBatch(AccessEventBatchCodec.CONTENT_TYPE)).isTrue();
+		assertThat(AccessEventBatchCodec.isEventBatch(AccessEventBatchCodec.MEDIA_TYPE)).isTrue();
+		assertThat(AccessEventBatchCodec.isEventBatch("application/vnd.access-monitor.event-batch;version=1")).isTrue();
+		assertThat(AccessEventBatchCodec.isEventBatch("application/vnd.access-monitor.event-batches")).isFalse();
+		assertThat(AccessEventBatchCodec.isEventBatch("application/x-protobuf")).isFalse();
+		assertThat(AccessEventBatchCodec.isEventBatch(null)).isFalse();
+	}
+
+	@Test
+	void rejectNonBatchMessage() {
+		assertThatThrownBy(() -> AccessEventBatchCodec.decodeEvents(new byte[] { 0x0a, 0x01, 0x02 }))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void rejectUnsupportedVersion() {
+		byte[] encoded = AccessEventBatchCodec.encode(List.of());
+		encoded[2] = 99;
+
+		assertThatThrownBy(() -> AccessEventBatchCodec.decodeEvents(encoded))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("version");
+	}
+
+	@Test
+	void rejectTruncatedMessage() throws IOException {
+		AccessEvent event = new AccessEvent(Instant.parse("2026-02-06T15:30:00Z"), "ik.am", "/", "GET", 200, 1L,
+				"10.0.0.1", "https", "HTTP/1.1", null, null, 0, 0L, 0L, "abcd", null, 0);
+		byte[] columnar = AccessEventBatchCodec.encode(List.of(event));
+		byte[] columnarWithJson = AccessEventBatchCodec.encode(List.of(event), List.of("{}"));
+		byte[] rows = encodeRows(List.of(event), List.of("{}"));
+
+		for (int length = 0; length < columnar.length; length++) {
+			byte[] truncated = Arrays.copyOf(columnar, length);
+			assertThatThrownBy(() -> AccessEventBatchCodec.decodeEvents(truncated))
+				.isInstanceOf(IllegalArgumentException.class);
+		}
+		for (int length = 0; length < columnarWithJson.length; length++) {
+			byte[] truncated = Arrays.copyOf(columnarWithJson, length);
+			assertThatThrownBy(() -> AccessEventBatchCodec.decodeEvents(truncated))
+				.isInstanceOf(IllegalArgumentException.class);
+		}
+		assertThatThrownBy(() -> AccessEventBatchCodec.decodeJson(Arrays.copyOf(columnarWithJson, 6)))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> AccessEventBatchCodec.decodeEvents(Arrays.copyOf(rows, 40)))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> AccessEventBatchCodec.decodeJson(Arrays.copyOf(rows, rows.length - 1)))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void rejectInvalidDictionaryIndex() {
+		AccessEvent event = new AccessEvent(Instant.parse("2026-02-06T15:30:00Z"), "ik.am", "/", "GET", 200, 1L, null,
+				null, null, null, null, 0, 0L, 0L, null, null, 0);
+		byte[] encoded = AccessEventBatchCodec.encode(List.of(event));
+		// header (4), count (1), dictionary size and entries "ik.am", "/", "GET" (1 + 6 +
+		// 2 + 4), seconds (5) and nanos (1) precede the host column
+		int hostIndex = 4 + 1 + 13 + 5 + 1;
+		assertThat(encoded[hostIndex]).isEqualTo((byte) 1);
+		encoded[hostIndex] = 9;
+
+		assertThatThrownBy(() -> AccessEventBatchCodec.decodeEvents(encoded))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("dictionary");
+	}
+
+	/**
+	 * Encodes a batch in the row format (version 1) published by earlier versions.
+	 */
+	private static byte[] encodeRows(List<AccessEvent> events, List<String> json) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte('A');
+		out.writeByte('E');
+		out.writeByte(1);
+		out.writeInt(events.size());
+		out.writeInt(0);
+		for (AccessEvent event : events) {
+			out.writeLong(event.timestamp().getEpochSecond());
+			out.writeInt(event.timestamp().getNano());
+			writeString(out, event.host());
+			writeString(out, event.path());
+			writeString(out, event.method());
+			out.writeInt(event.statusCode());
+			out.writeLong(event.durationNs());
+			writeString(out, event.clientIp());
+			writeString(out, event.scheme());
+			writeString(out, event.protocol());
+			writeString(out, event.serviceName());
+			writeString(out, event.routerName());
+			out.writeInt(event.originStatusCode());
+			out.writeLong(event.originDurationNs());
+			out.writeLong(event.overheadNs());
+			writeString(out, event.traceId());
+			writeString(out, event.spanId());
+			out.writeInt(event.retryAttempts());
+		}
+		int jsonOffset = out.size();
+		for (String value : json) {
+			writeString(out, value);
+		}
+		byte[] encoded = bytes.toByteArray();
+		encoded[7] = (byte) (jsonOffset >>> 24);
+		encoded[8] = (byte) (jsonOffset >>> 16);
+		encoded[9] = (byte) (jsonOffset >>> 8);
+		encoded[10] = (byte) jsonOffset;
+		return encoded;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+}
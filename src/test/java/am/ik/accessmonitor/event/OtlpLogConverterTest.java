@@ -20,27 +20,7 @@ class OtlpLogConverterTest {
 
 	@Test
 	void convertSingleLogRecord() {
-		LogRecord logRecord = LogRecord.newBuilder()
-			.addAttributes(stringKv("RequestHost", "ik.am"))
-			.addAttributes(stringKv("RequestPath", "/entries/896"))
-			.addAttributes(stringKv("RequestMethod", "GET"))
-			.addAttributes(intKv("DownstreamStatus", 200))
-			.addAttributes(intKv("Duration", 114720000L))
-			.addAttributes(stringKv("StartUTC", "2026-02-06T15:30:00.123Z"))
-			.addAttributes(stringKv("ClientHost", "47.128.110.92"))
-			.addAttributes(stringKv("RequestScheme", "https"))
-			.addAttributes(stringKv("RequestProtocol", "HTTP/2.0"))
-			.addAttributes(stringKv("ServiceName", "web-service"))
-			.addAttributes(stringKv("RouterName", "web-router"))
-			.addAttributes(intKv("OriginStatus", 200))
-			.addAttributes(intKv("OriginDuration", 100000000L))
-			.addAttributes(intKv("Overhead", 14720000L))
-			.addAttributes(stringKv("TraceId", "abc123"))
-			.addAttributes(stringKv("SpanId", "def456"))
-			.addAttributes(intKv("RetryAttempts", 0))
-			.build();
-
-		byte[] bytes = buildRequest(logRecord);
+		byte[] bytes = singleLogRecordRequest();
 		List<AccessEvent> events = this.converter.convert(bytes);
 
 		assertThat(events).hasSize(1);
@@ -68,23 +48,7 @@ class OtlpLogConverterTest {
 
 	@Test
 	void convertMultipleLogRecords() {
-		LogRecord logRecord1 = LogRecord.newBuilder()
-			.addAttributes(stringKv("RequestHost", "ik.am"))
-			.addAttributes(stringKv("RequestPath", "/entries/1"))
-			.addAttributes(stringKv("RequestMethod", "GET"))
-			.addAttributes(intKv("DownstreamStatus", 200))
-			.addAttributes(stringKv("StartUTC", "2026-02-06T15:30:00Z"))
-			.build();
-
-		LogRecord logRecord2 = LogRecord.newBuilder()
-			.addAttributes(stringKv("RequestHost", "www.ik.am"))
-			.addAttributes(stringKv("RequestPath", "/entries/2"))
-			.addAttributes(stringKv("RequestMethod", "POST"))
-			.addAttributes(intKv("DownstreamStatus", 404))
-			.addAttributes(stringKv("StartUTC", "2026-02-06T15:31:00Z"))
-			.build();
-
-		byte[] bytes = buildRequest(logRecord1, logRecord2);
+		byte[] bytes = multipleLogRecordsRequest();
 		List<AccessEvent> events = this.converter.convert(bytes);
 
 		assertThat(events).hasSize(2);
@@ -95,19 +59,71 @@ class OtlpLogConverterTest {
 
 	@Test
 	void convertInvalidProtobuf() {
-		List<AccessEvent> events = this.converter.convert(new byte[] { 0x00, 0x01, 0x02 });
+		List<AccessEvent> events = this.converter.convert(invalidRequest());
 		assertThat(events).isEmpty();
 	}
 
 	@Test
 	void convertEmptyMessage() {
-		byte[] bytes = ExportLogsServiceRequest.getDefaultInstance().toByteArray();
+		byte[] bytes = emptyRequest();
 		List<AccessEvent> events = this.converter.convert(bytes);
 		assertThat(events).isEmpty();
 	}
 
 	@Test
 	void fallbackToTimeUnixNano() {
+		byte[] bytes = timeUnixNanoRequest();
+		List<AccessEvent> events = this.converter.convert(bytes);
+
+		assertThat(events).hasSize(1);
+		assertThat(events.getFirst().timestamp()).isEqualTo(Instant.parse("2026-02-06T15:30:00Z"));
+	}
+
+	static byte[] singleLogRecordRequest() {
+		LogRecord logRecord = LogRecord.newBuilder()
+			.addAttributes(stringKv("RequestHost", "ik.am"))
+			.addAttributes(stringKv("RequestPath", "/entries/896"))
+			.addAttributes(stringKv("RequestMethod", "GET"))
+			.addAttributes(intKv("DownstreamStatus", 200))
+			.addAttributes(intKv("Duration", 114720000L))
+			.addAttributes(stringKv("StartUTC", "2026-02-06T15:30:00.123Z"))
+			.addAttributes(stringKv("ClientHost", "47.128.110.92"))
+			.addAttributes(stringKv("RequestScheme", "https"))
+			.addAttributes(stringKv("RequestProtocol", "HTTP/2.0"))
+			.addAttributes(stringKv("ServiceName", "web-service"))
+			.addAttributes(stringKv("RouterName", "web-router"))
+			.addAttributes(intKv("OriginStatus", 200))
+			.addAttributes(intKv("OriginDuration", 100000000L))
+			.addAttributes(intKv("Overhead", 14720000L))
+			.addAttributes(stringKv("TraceId", "abc123"))
+			.addAttributes(stringKv("SpanId", "def456"))
+			.addAttributes(intKv("RetryAttempts", 0))
+			.build();
+
+		return buildRequest(logRecord);
+	}
+
+	static byte[] multipleLogRecordsRequest() {
+		LogRecord logRecord1 = LogRecord.newBuilder()
+			.addAttributes(stringKv("RequestHost", "ik.am"))
+			.addAttributes(stringKv("RequestPath", "/entries/1"))
+			.addAttributes(stringKv("RequestMethod", "GET"))
+			.addAttributes(intKv("DownstreamStatus", 200))
+			.addAttributes(stringKv("StartUTC", "2026-02-06T15:30:00Z"))
+			.build();
+
+		LogRecord logRecord2 = LogRecord.newBuilder()
+			.addAttributes(stringKv("RequestHost", "www.ik.am"))
+			.addAttributes(stringKv("RequestPath", "/entries/2"))
+			.addAttributes(stringKv("RequestMethod", "POST"))
+			.addAttributes(intKv("DownstreamStatus", 404))
+			.addAttributes(stringKv("StartUTC", "2026-02-06T15:31:00Z"))
+			.build();
+
+		return buildRequest(logRecord1, logRecord2);
+	}
+
+	static byte[] timeUnixNanoRequest() {
 		long nanos = Instant.parse("2026-02-06T15:30:00Z").getEpochSecond() * 1_000_000_000L;
 		LogRecord logRecord = LogRecord.newBuilder()
 			.setTimeUnixNano(nanos)
@@ -117,14 +133,18 @@ class OtlpLogConverterTest {
 			.addAttributes(intKv("DownstreamStatus", 200))
 			.build();
 
-		byte[] bytes = buildRequest(logRecord);
-		List<AccessEvent> events = this.converter.convert(bytes);
+		return buildRequest(logRecord);
+	}
 
-		assertThat(events).hasSize(1);
-		assertThat(events.getFirst().timestamp()).isEqualTo(Instant.parse("2026-02-06T15:30:00Z"));
+	static byte[] invalidRequest() {
+		return new byte[] { 0x00, 0x01, 0x02 };
+	}
+
+	static byte[] emptyRequest() {
+		return ExportLogsServiceRequest.getDefaultInstance().toByteArray();
 	}
 
-	private byte[] buildRequest(LogRecord... logRecords) {
+	static byte[] buildRequest(LogRecord... logRecords) {
 		ScopeLogs.Builder scopeLogsBuilder = ScopeLogs.newBuilder();
 		for (LogRecord record : logRecords) {
 			scopeLogsBuilder.addLogRecords(record);
@@ -136,11 +156,11 @@ class OtlpLogConverterTest {
 			.toByteArray();
 	}
 
-	private KeyValue stringKv(String key, String value) {
+	static KeyValue stringKv(String key, String value) {
 		return KeyValue.newBuilder().setKey(key).setValue(AnyValue.newBuilder().setStringValue(value)).build();
 	}
 
-	private KeyValue intKv(String key, long value) {
+	static KeyValue intKv(String key, long value) {
 		return KeyValue.newBuilder().setKey(key).setValue(AnyValue.newBuilder().setIntValue(value)).build();
 	}
 
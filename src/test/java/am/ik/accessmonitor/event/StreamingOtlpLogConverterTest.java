@@ -0,0 +1,123 @@
+package am.ik.accessmonitor.event;
+
+import java.time.Instant;
+import java.time.InstantSource;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.google.protobuf.ByteString;
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.InstrumentationScope;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.logs.v1.ScopeLogs;
+import io.opentelemetry.proto.resource.v1.Resource;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static am.ik.accessmonitor.event.OtlpLogConverterTest.buildRequest;
+import static am.ik.accessmonitor.event.OtlpLogConverterTest.intKv;
+import static am.ik.accessmonitor.event.OtlpLogConverterTest.stringKv;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Conformance test checking that {@link StreamingOtlpLogConverter} produces the same
+ * events as {@link OtlpLogConverter}.
+ */
+class StreamingOtlpLogConverterTest {
+
+	private final InstantSource instantSource = InstantSource.fixed(Instant.parse("2026-02-06T15:30:00Z"));
+
+	private final OtlpLogConverter reference = new OtlpLogConverter(this.instantSource);
+
+	private final StreamingOtlpLogConverter converter = new StreamingOtlpLogConverter(this.instantSource);
+
+	static Stream<Arguments> requests() {
+		return Stream.of(Arguments.of("single log record", OtlpLogConverterTest.singleLogRecordRequest()),
+				Arguments.of("multiple log records", OtlpLogConverterTest.multipleLogRecordsRequest()),
+				Arguments.of("time unix nano fallback", OtlpLogConverterTest.timeUnixNanoRequest()),
+				Arguments.of("invalid protobuf", OtlpLogConverterTest.invalidRequest()),
+				Arguments.of("empty message", OtlpLogConverterTest.emptyRequest()),
+				Arguments.of("unknown fields and attributes", unknownFieldsRequest()),
+				Arguments.of("string and non-integer values", mixedValuesRequest()),
+				Arguments.of("duplicate attributes", duplicateAttributesRequest()),
+				Arguments.of("no timestamp",
+						buildRequest(LogRecord.newBuilder()
+							.addAttributes(stringKv("RequestHost", "ik.am"))
+							.addAttributes(stringKv("StartUTC", "not-a-timestamp"))
+							.build())),
+				Arguments.of("truncated message", truncate(OtlpLogConverterTest.singleLogRecordRequest())));
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("requests")
+	void producesSameEventsAsReferenceConverter(String name, byte[] request) {
+		List<AccessEvent> expected = this.reference.convert(request);
+
+		List<AccessEvent> actual = this.converter.convert(request);
+
+		assertThat(actual).isEqualTo(expected);
+	}
+
+	private static byte[] unknownFieldsRequest() {
+		LogRecord logRecord = LogRecord.newBuilder()
+			.setTimeUnixNano(1_770_391_800_000_000_000L)
+			.setObservedTimeUnixNano(1_770_391_801_000_000_000L)
+			.setSeverityText("INFO")
+			.setBody(AnyValue.newBuilder().setStringValue("GET /entries/896"))
+			.setTraceId(ByteString.copyFrom(new byte[16]))
+			.addAttributes(stringKv("RequestHost", "ik.am"))
+			.addAttributes(stringKv("RequestHostname", "should-be-ignored"))
+			.addAttributes(KeyValue.newBuilder()
+				.setKey("request_Referer")
+				.setValue(AnyValue.newBuilder().setBytesValue(ByteString.copyFromUtf8("https://ik.am"))))
+			.addAttributes(stringKv("RequestPath", "/entries/896"))
+			.addAttributes(intKv("DownstreamStatus", 200))
+			.build();
+		return ExportLogsServiceRequest.newBuilder()
+			.addResourceLogs(ResourceLogs.newBuilder()
+				.setResource(Resource.newBuilder().addAttributes(stringKv("service.name", "traefik")))
+				.setSchemaUrl("https://opentelemetry.io/schemas/1.24.0")
+				.addScopeLogs(ScopeLogs.newBuilder()
+					.setScope(InstrumentationScope.newBuilder().setName("traefik"))
+					.addLogRecords(logRecord)))
+			.build()
+			.toByteArray();
+	}
+
+	private static byte[] mixedValuesRequest() {
+		LogRecord logRecord = LogRecord.newBuilder()
+			.addAttributes(stringKv("RequestHost", "ik.am"))
+			.addAttributes(stringKv("DownstreamStatus", "404"))
+			.addAttributes(stringKv("Duration", "123456789"))
+			.addAttributes(stringKv("OriginStatus", "not-a-number"))
+			.addAttributes(stringKv("RetryAttempts", "3000000000"))
+			.addAttributes(intKv("RequestPath", 42))
+			.addAttributes(KeyValue.newBuilder().setKey("Overhead").setValue(AnyValue.newBuilder().setDoubleValue(1.5)))
+			.addAttributes(KeyValue.newBuilder().setKey("RequestMethod"))
+			.addAttributes(stringKv("StartUTC", "2026-02-06T15:30:00.123Z"))
+			.build();
+		return buildRequest(logRecord);
+	}
+
+	private static byte[] duplicateAttributesRequest() {
+		LogRecord logRecord = LogRecord.newBuilder()
+			.addAttributes(stringKv("RequestHost", "first.ik.am"))
+			.addAttributes(stringKv("RequestHost", "ik.am"))
+			.addAttributes(intKv("DownstreamStatus", 200))
+			.addAttributes(intKv("DownstreamStatus", 503))
+			.addAttributes(stringKv("StartUTC", "2026-02-06T15:30:00Z"))
+			.build();
+		return buildRequest(logRecord, logRecord);
+	}
+
+	private static byte[] truncate(byte[] request) {
+		byte[] truncated = new byte[request.length - 3];
+		System.arraycopy(request, 0, truncated, 0, truncated.length);
+		return truncated;
+	}
+
+}
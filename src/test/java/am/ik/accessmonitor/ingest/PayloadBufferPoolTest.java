@@ -0,0 +1,162 @@
+package am.ik.accessmonitor.ingest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PayloadBufferPoolTest {
+
+	@Test
+	void readStreamLargerThanInitialCapacity() throws IOException {
+		PayloadBufferPool pool = new PayloadBufferPool(1024 * 1024);
+		byte[] data = new byte[PayloadBufferPool.INITIAL_CAPACITY * 3 + 17];
+		Arrays.fill(data, (byte) 7);
+
+		try (PayloadBuffer buffer = pool.acquire()) {
+			buffer.readFrom(new ByteArrayInputStream(data));
+
+			assertThat(buffer.size()).isEqualTo(data.length);
+			assertThat(Arrays.copyOf(buffer.array(), buffer.size())).isEqualTo(data);
+		}
+	}
+
+	@Test
+	void readStreamOfExactlyMaxSize() throws IOException {
+		PayloadBufferPool pool = new PayloadBufferPool(1000);
+
+		try (PayloadBuffer buffer = pool.acquire()) {
+			buffer.readFrom(new ByteArrayInputStream(new byte[1000]));
+
+			assertThat(buffer.size()).isEqualTo(1000);
+		}
+	}
+
+	@Test
+	void rejectStreamExceedingMaxSizeWithoutReadingFurther() {
+		PayloadBufferPool pool = new PayloadBufferPool(1000);
+		CountingStream input = new CountingStream(1_000_000);
+
+		try (PayloadBuffer buffer = pool.acquire()) {
+			assertThatThrownBy(() -> buffer.readFrom(input)).isInstanceOf(PayloadTooLargeException.class)
+				.hasMessageContaining("1000");
+		}
+		assertThat(input.read).isEqualTo(1001);
+	}
+
+	@Test
+	void extendInChunksBeyondInitialCapacity() {
+		PayloadBufferPool pool = new PayloadBufferPool(1024 * 1024);
+		int chunk = 16 * 1024;
+		int chunks = PayloadBufferPool.INITIAL_CAPACITY * 3 / chunk + 1;
+
+		try (PayloadBuffer buffer = pool.acquire()) {
+			for (int i = 0; i < chunks; i++) {
+				int offset = buffer.size();
+				Arrays.fill(buffer.extend(chunk), offset, offset + chunk, (byte) i);
+			}
+
+			assertThat(buffer.size()).isEqualTo(chunk * chunks);
+			assertThat(buffer.array().length).isLessThan(chunk * chunks * 2);
+			for (int i = 0; i < chunks; i++) {
+				assertThat(buffer.array()[i * chunk]).isEqualTo((byte) i);
+				assertThat(buffer.array()[(i + 1) * chunk - 1]).isEqualTo((byte) i);
+			}
+		}
+	}
+
+	@Test
+	void rejectExtendBeyondMaxSize() {
+		PayloadBufferPool pool = new PayloadBufferPool(1000);
+
+		try (PayloadBuffer buffer = pool.acquire()) {
+			buffer.extend(600);
+
+			assertThatThrownBy(() -> buffer.extend(401)).isInstanceOf(PayloadTooLargeException.class);
+			assertThat(buffer.size()).isEqualTo(600);
+		}
+	}
+
+	@Test
+	void reuseReleasedArrays() throws IOException {
+		PayloadBufferPool pool = new PayloadBufferPool(1024 * 1024);
+		byte[] array;
+		try (PayloadBuffer buffer = pool.acquire()) {
+			buffer.readFrom(new ByteArrayInputStream(new byte[10]));
+			array = buffer.array();
+		}
+		assertThat(pool.pooledArrays()).isEqualTo(1);
+
+		try (PayloadBuffer buffer = pool.acquire()) {
+			assertThat(buffer.array()).isSameAs(array);
+			buffer.readFrom(new ByteArrayInputStream(new byte[3]));
+			assertThat(buffer.size()).isEqualTo(3);
+		}
+	}
+
+	@Test
+	void doNotRetainArraysGrownBeyondMaxRetainedCapacity() throws IOException {
+		PayloadBufferPool pool = new PayloadBufferPool(PayloadBufferPool.MAX_RETAINED_CAPACITY * 2);
+
+		try (PayloadBuffer buffer = pool.acquire()) {
+			buffer.readFrom(new ByteArrayInputStream(new byte[PayloadBufferPool.MAX_RETAINED_CAPACITY + 1]));
+		}
+
+		assertThat(pool.pooledArrays()).isZero();
+	}
+
+	@Test
+	void keepAtMostMaxPooledArrays() {
+		PayloadBufferPool pool = new PayloadBufferPool(1024);
+		PayloadBuffer[] buffers = new PayloadBuffer[PayloadBufferPool.MAX_POOLED_ARRAYS + 4];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = pool.acquire();
+		}
+		for (PayloadBuffer buffer : buffers) {
+			buffer.close();
+		}
+
+		assertThat(pool.pooledArrays()).isEqualTo(PayloadBufferPool.MAX_POOLED_ARRAYS);
+	}
+
+	/**
+	 * Stream of zeros that counts the bytes read from it.
+	 */
+	static final class CountingStream extends InputStream {
+
+		private final int length;
+
+		int read;
+
+		CountingStream(int length) {
+			this.length = length;
+		}
+
+		@Override
+		public int read() {
+			if (this.read >= this.length) {
+				return -1;
+			}
+			this.read++;
+			return 0;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (this.read >= this.length) {
+				return -1;
+			}
+			int n = Math.min(len, this.length - this.read);
+			Arrays.fill(b, off, off + n, (byte) 0);
+			this.read += n;
+			return n;
+		}
+
+	}
+
+}
@@ -0,0 +1,149 @@
+package am.ik.accessmonitor.ingest.encoding;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import am.ik.accessmonitor.ingest.PayloadBuffer;
+import am.ik.accessmonitor.ingest.PayloadBufferPool;
+import am.ik.accessmonitor.ingest.PayloadTooLargeException;
+import io.airlift.compress.snappy.SnappyCompressor;
+import io.airlift.compress.snappy.SnappyFramedOutputStream;
+import io.airlift.compress.zstd.ZstdOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContentDecoderTest {
+
+	private static final int MAX_SIZE = 256 * 1024;
+
+	private final PayloadBufferPool pool = new PayloadBufferPool(MAX_SIZE);
+
+	private final ContentDecoders decoders = new ContentDecoders(
+			List.of(new GzipContentDecoder(), new DeflateContentDecoder(), new ZstdContentDecoder(),
+					new SnappyContentDecoder(this.pool), new SnappyFramedContentDecoder()));
+
+	@ParameterizedTest
+	@ValueSource(strings = { "gzip", "deflate", "zstd", "snappy", "x-snappy-framed" })
+	void decodeCompressedPayload(String encoding) throws IOException {
+		byte[] data = payload(200 * 1024);
+
+		assertThat(decode(encoding, compress(encoding, data))).isEqualTo(data);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "gzip", "deflate", "zstd", "snappy", "x-snappy-framed" })
+	void decodeEmptyPayload(String encoding) throws IOException {
+		assertThat(decode(encoding, compress(encoding, new byte[0]))).isEmpty();
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "gzip", "deflate", "zstd", "snappy", "x-snappy-framed" })
+	void rejectPayloadExceedingMaxSizeAfterDecompression(String encoding) throws IOException {
+		byte[] compressed = compress(encoding, new byte[MAX_SIZE + 1]);
+
+		assertThatThrownBy(() -> decode(encoding, compressed)).isInstanceOf(PayloadTooLargeException.class);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "gzip", "deflate", "zstd", "snappy", "x-snappy-framed" })
+	void rejectMalformedPayload(String encoding) {
+		byte[] garbage = "definitely not compressed, but long enough for a header".getBytes(StandardCharsets.UTF_8);
+
+		assertThatThrownBy(() -> decode(encoding, garbage)).isInstanceOf(MalformedContentException.class)
+			.hasMessageContaining(encoding);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "gzip", "deflate", "zstd", "snappy", "x-snappy-framed" })
+	void rejectTruncatedPayload(String encoding) throws IOException {
+		byte[] compressed = compress(encoding, payload(64 * 1024));
+		byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+		assertThatThrownBy(() -> decode(encoding, truncated)).isInstanceOf(MalformedContentException.class);
+	}
+
+	@Test
+	void decodeSnappyFramedPayloadSentAsSnappy() throws IOException {
+		byte[] data = payload(100 * 1024);
+
+		assertThat(decode("snappy", compress("x-snappy-framed", data))).isEqualTo(data);
+	}
+
+	@Test
+	void rejectSnappyBlockDeclaringLengthAboveMaxSize() {
+		// varint of 16 MB followed by no data
+		byte[] header = { (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x08, 0x00 };
+
+		assertThatThrownBy(() -> decode("snappy", header)).isInstanceOf(PayloadTooLargeException.class);
+	}
+
+	@Test
+	void findDecoderIgnoringCaseAndWhitespace() {
+		assertThat(this.decoders.find(" ZSTD ")).isInstanceOf(ZstdContentDecoder.class);
+		assertThat(this.decoders.find("br")).isNull();
+		assertThat(this.decoders.find("gzip, zstd")).isNull();
+		assertThat(this.decoders.encodings()).containsExactly("deflate", "gzip", "snappy", "x-snappy-framed", "zstd");
+	}
+
+	@Test
+	void isIdentity() {
+		assertThat(ContentDecoders.isIdentity(null)).isTrue();
+		assertThat(ContentDecoders.isIdentity("")).isTrue();
+		assertThat(ContentDecoders.isIdentity("Identity")).isTrue();
+		assertThat(ContentDecoders.isIdentity("gzip")).isFalse();
+	}
+
+	private byte[] decode(String encoding, byte[] body) throws IOException {
+		try (PayloadBuffer payload = this.pool.acquire()) {
+			this.decoders.find(encoding).decode(new ByteArrayInputStream(body), payload);
+			return Arrays.copyOf(payload.array(), payload.size());
+		}
+	}
+
+	/**
+	 * Returns compressible content resembling protobuf-encoded access logs.
+	 */
+	private static byte[] payload(int length) {
+		Random random = new Random(42);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+		while (out.size() < length) {
+			out.writeBytes(("RequestPath/entries/%d DownstreamStatus %d ClientHost 10.0.%d.%d\n"
+				.formatted(random.nextInt(1000), 200 + random.nextInt(4), random.nextInt(256), random.nextInt(256)))
+				.getBytes(StandardCharsets.UTF_8));
+		}
+		return Arrays.copyOf(out.toByteArray(), length);
+	}
+
+	static byte[] compress(String encoding, byte[] data) throws IOException {
+		if (encoding.equals("snappy")) {
+			SnappyCompressor compressor = new SnappyCompressor();
+			byte[] compressed = new byte[compressor.maxCompressedLength(data.length)];
+			int length = compressor.compress(data, 0, data.length, compressed, 0, compressed.length);
+			return Arrays.copyOf(compressed, length);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = switch (encoding) {
+			case "gzip" -> new GZIPOutputStream(bytes);
+			case "deflate" -> new DeflaterOutputStream(bytes);
+			case "zstd" -> new ZstdOutputStream(bytes);
+			case "x-snappy-framed" -> new SnappyFramedOutputStream(bytes);
+			default -> throw new IllegalArgumentException(encoding);
+		}) {
+			out.write(data);
+		}
+		return bytes.toByteArray();
+	}
+
+}
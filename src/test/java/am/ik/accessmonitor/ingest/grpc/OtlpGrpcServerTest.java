@@ -0,0 +1,386 @@
+package am.ik.accessmonitor.ingest.grpc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import am.ik.accessmonitor.AccessMonitorProperties.OtlpProperties.GrpcProperties;
+import am.ik.accessmonitor.ingest.AccessEventPublisher;
+import am.ik.accessmonitor.ingest.PayloadBufferPool;
+import am.ik.accessmonitor.ingest.encoding.ContentDecoders;
+import am.ik.accessmonitor.ingest.encoding.GzipContentDecoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.util.unit.DataSize;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+
+class OtlpGrpcServerTest {
+
+	private static final String AUTHORIZATION = "Basic "
+			+ Base64.getEncoder().encodeToString("user:password".getBytes(StandardCharsets.UTF_8));
+
+	private final AccessEventPublisher publisher = mock(AccessEventPublisher.class);
+
+	private final List<byte[]> published = new CopyOnWriteArrayList<>();
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private OtlpGrpcServer server;
+
+	private HttpClient client;
+
+	@BeforeEach
+	void setUp() {
+		willAnswer(invocation -> this.published
+			.add(Arrays.copyOf(invocation.getArgument(0, byte[].class), invocation.getArgument(1, Integer.class))))
+			.given(this.publisher)
+			.publishOtlp(any(byte[].class), anyInt());
+		start(properties(2, 4, 16, DataSize.ofMegabytes(1), Duration.ofSeconds(10)));
+	}
+
+	private void start(GrpcProperties properties) {
+		InMemoryUserDetailsManager users = new InMemoryUserDetailsManager(
+				User.withUsername("user").password("{noop}password").build());
+		PayloadBufferPool pool = new PayloadBufferPool(64 * 1024);
+		this.meterRegistry = new SimpleMeterRegistry();
+		this.server = new OtlpGrpcServer(properties, this.publisher, pool,
+				new ContentDecoders(List.of(new GzipContentDecoder())), new BasicAuthenticator(users),
+				this.meterRegistry);
+		this.server.start();
+		this.client = HttpClient.create()
+			.protocol(HttpProtocol.H2C)
+			.baseUrl("http://localhost:" + this.server.port())
+			.responseTimeout(Duration.ofSeconds(10));
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.server.stop();
+	}
+
+	@Test
+	void exportPublishesMessage() {
+		byte[] message = "otlp logs".getBytes(StandardCharsets.UTF_8);
+
+		GrpcResponse response = export(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null, frame(0, message));
+
+		assertThat(response.httpStatus()).isEqualTo(200);
+		assertThat(response.grpcStatus()).isEqualTo("0");
+		assertThat(response.body()).containsExactly(0, 0, 0, 0, 0);
+		assertThat(this.published).containsExactly(message);
+		assertThat(this.meterRegistry.get("access.monitor.ingest.grpc.requests").tag("status", "OK").counter().count())
+			.isEqualTo(1);
+	}
+
+	@Test
+	void exportPublishesCompressedMessage() throws IOException {
+		byte[] message = "otlp logs ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+		GrpcResponse response = export(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, "gzip", frame(1, gzip(message)));
+
+		assertThat(response.grpcStatus()).isEqualTo("0");
+		assertThat(this.published).containsExactly(message);
+	}
+
+	@Test
+	void exportsOnOneConnectionAreServedConcurrently() {
+		List<GrpcResponse> responses = Mono
+			.zip(exportAsync(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null, frame(0, new byte[] { 1 })),
+					exportAsync(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null, frame(0, new byte[] { 2 })),
+					exportAsync(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null, frame(0, new byte[] { 3 })))
+			.map(tuple -> List.of(tuple.getT1(), tuple.getT2(), tuple.getT3()))
+			.block(Duration.ofSeconds(10));
+
+		assertThat(responses).extracting(GrpcResponse::grpcStatus).containsOnly("0");
+		assertThat(this.published).hasSize(3);
+	}
+
+	@Test
+	void respondOnlyOncePublished() throws InterruptedException {
+		CountDownLatch publishing = new CountDownLatch(1);
+		CountDownLatch broker = new CountDownLatch(1);
+		willAnswer(invocation -> {
+			publishing.countDown();
+			broker.await();
+			return null;
+		}).given(this.publisher).publishOtlp(any(byte[].class), anyInt());
+		Mono<GrpcResponse> response = exportAsync(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null,
+				frame(0, new byte[] { 1 }))
+			.cache();
+		response.subscribe();
+
+		assertThat(publishing.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(response.toFuture()).isNotDone();
+		broker.countDown();
+		assertThat(response.block(Duration.ofSeconds(10)).grpcStatus()).isEqualTo("0");
+	}
+
+	@Test
+	void rejectInvalidCredentials() {
+		String authorization = "Basic "
+				+ Base64.getEncoder().encodeToString("user:wrong".getBytes(StandardCharsets.UTF_8));
+
+		GrpcResponse response = export(OtlpGrpcHandler.EXPORT_PATH, authorization, null, frame(0, new byte[10]));
+
+		assertThat(response.grpcStatus()).isEqualTo("16");
+		assertThat(this.published).isEmpty();
+	}
+
+	@Test
+	void rejectMissingCredentials() {
+		GrpcResponse response = export(OtlpGrpcHandler.EXPORT_PATH, null, null, frame(0, new byte[10]));
+
+		assertThat(response.grpcStatus()).isEqualTo("16");
+		assertThat(this.published).isEmpty();
+	}
+
+	@Test
+	void rejectUnknownMethod() {
+		GrpcResponse response = export("/opentelemetry.proto.collector.trace.v1.TraceService/Export", AUTHORIZATION,
+				null, frame(0, new byte[10]));
+
+		assertThat(response.grpcStatus()).isEqualTo("12");
+		assertThat(this.published).isEmpty();
+	}
+
+	@Test
+	void rejectUnsupportedEncoding() {
+		GrpcResponse response = export(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, "br", frame(1, new byte[10]));
+
+		assertThat(response.grpcStatus()).isEqualTo("12");
+		assertThat(response.grpcMessage()).contains("br");
+		assertThat(this.published).isEmpty();
+	}
+
+	@Test
+	void rejectMessageExceedingMaxSize() {
+		GrpcResponse response = export(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null,
+				frame(0, new byte[64 * 1024 + 1]));
+
+		assertThat(response.grpcStatus()).isEqualTo("8");
+		assertThat(this.published).isEmpty();
+	}
+
+	@Test
+	void rejectCompressedMessageExceedingMaxSizeAfterDecompression() throws IOException {
+		GrpcResponse response = export(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, "gzip",
+				frame(1, gzip(new byte[1024 * 1024])));
+
+		assertThat(response.grpcStatus()).isEqualTo("8");
+		assertThat(this.published).isEmpty();
+	}
+
+	@Test
+	void rejectCompressedMessageWithoutEncoding() {
+		GrpcResponse response = export(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null, frame(1, new byte[10]));
+
+		assertThat(response.grpcStatus()).isEqualTo("13");
+		assertThat(this.published).isEmpty();
+	}
+
+	@Test
+	void rejectTruncatedMessage() {
+		byte[] frame = frame(0, new byte[100]);
+
+		GrpcResponse response = export(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null,
+				Arrays.copyOf(frame, frame.length - 1));
+
+		assertThat(response.grpcStatus()).isEqualTo("13");
+		assertThat(this.published).isEmpty();
+	}
+
+	@Test
+	void reportUnavailableWhenPublishFails() {
+		willThrow(new IllegalStateException("broker down")).given(this.publisher)
+			.publishOtlp(any(byte[].class), anyInt());
+
+		GrpcResponse response = export(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null, frame(0, new byte[10]));
+
+		assertThat(response.grpcStatus()).isEqualTo("14");
+	}
+
+	@Test
+	void reportUnavailableWhenPublishExecutorIsFull() throws InterruptedException {
+		this.server.stop();
+		start(properties(2, 1, 0, DataSize.ofMegabytes(1), Duration.ofSeconds(10)));
+		CountDownLatch publishing = new CountDownLatch(1);
+		CountDownLatch broker = new CountDownLatch(1);
+		willAnswer(invocation -> {
+			publishing.countDown();
+			broker.await();
+			return null;
+		}).given(this.publisher).publishOtlp(any(byte[].class), anyInt());
+		Mono<GrpcResponse> first = exportAsync(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null,
+				frame(0, new byte[] { 1 }))
+			.cache();
+		first.subscribe();
+		assertThat(publishing.await(10, TimeUnit.SECONDS)).isTrue();
+
+		GrpcResponse rejected = export(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null, frame(0, new byte[] { 2 }));
+
+		assertThat(rejected.grpcStatus()).isEqualTo("14");
+		assertThat(this.meterRegistry.get("access.monitor.ingest.grpc.requests")
+			.tag("status", "UNAVAILABLE")
+			.counter()
+			.count()).isEqualTo(1);
+		broker.countDown();
+		assertThat(first.block(Duration.ofSeconds(10)).grpcStatus()).isEqualTo("0");
+	}
+
+	@Test
+	void exportPublishesMessageSpanningManyFrames() {
+		byte[] message = new byte[60 * 1024];
+		Arrays.fill(message, (byte) 7);
+
+		GrpcResponse response = export(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null, frame(0, message));
+
+		assertThat(response.grpcStatus()).isEqualTo("0");
+		assertThat(this.published).containsExactly(message);
+		assertThat(this.meterRegistry.get("access.monitor.ingest.grpc.buffered").gauge().value()).isZero();
+	}
+
+	@Test
+	void rejectMessageExceedingBufferBudget() {
+		this.server.stop();
+		start(properties(2, 4, 16, DataSize.ofKilobytes(16), Duration.ofSeconds(10)));
+
+		GrpcResponse response = export(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null,
+				frame(0, new byte[16 * 1024 + 1]));
+
+		assertThat(response.grpcStatus()).isEqualTo("8");
+		assertThat(this.published).isEmpty();
+	}
+
+	@Test
+	void reportUnavailableWhenBufferBudgetIsExhausted() throws InterruptedException {
+		this.server.stop();
+		start(properties(2, 4, 16, DataSize.ofKilobytes(48), Duration.ofSeconds(10)));
+		CountDownLatch publishing = new CountDownLatch(1);
+		CountDownLatch broker = new CountDownLatch(1);
+		willAnswer(invocation -> {
+			publishing.countDown();
+			broker.await();
+			return null;
+		}).given(this.publisher).publishOtlp(any(byte[].class), anyInt());
+		Mono<GrpcResponse> first = exportAsync(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null,
+				frame(0, new byte[32 * 1024]))
+			.cache();
+		first.subscribe();
+		assertThat(publishing.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(this.meterRegistry.get("access.monitor.ingest.grpc.buffered").gauge().value()).isEqualTo(32 * 1024);
+
+		GrpcResponse rejected = export(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null, frame(0, new byte[32 * 1024]));
+
+		assertThat(rejected.grpcStatus()).isEqualTo("14");
+		broker.countDown();
+		assertThat(first.block(Duration.ofSeconds(10)).grpcStatus()).isEqualTo("0");
+		assertThat(this.meterRegistry.get("access.monitor.ingest.grpc.buffered").gauge().value()).isZero();
+	}
+
+	@Test
+	void rejectStalledRequestAfterRequestTimeout() {
+		this.server.stop();
+		start(properties(2, 4, 16, DataSize.ofMegabytes(1), Duration.ofMillis(200)));
+		byte[] frame = frame(0, new byte[100]);
+
+		GrpcResponse response = exportAsync(OtlpGrpcHandler.EXPORT_PATH, AUTHORIZATION, null,
+				Flux.concat(Mono.just(Unpooled.wrappedBuffer(Arrays.copyOf(frame, 50))), Mono.never()))
+			.block(Duration.ofSeconds(10));
+
+		assertThat(response.grpcStatus()).isEqualTo("4");
+		assertThat(this.published).isEmpty();
+		assertThat(this.meterRegistry.get("access.monitor.ingest.grpc.buffered").gauge().value()).isZero();
+	}
+
+	@Test
+	void percentEncodeMessage() {
+		assertThat(OtlpGrpcHandler.percentEncode("Invalid 100% ü")).isEqualTo("Invalid 100%25 %C3%BC");
+	}
+
+	private GrpcResponse export(String path, String authorization, String encoding, byte[] body) {
+		return exportAsync(path, authorization, encoding, body).block(Duration.ofSeconds(10));
+	}
+
+	private Mono<GrpcResponse> exportAsync(String path, String authorization, String encoding, byte[] body) {
+		return exportAsync(path, authorization, encoding, Mono.just(Unpooled.wrappedBuffer(body)));
+	}
+
+	private Mono<GrpcResponse> exportAsync(String path, String authorization, String encoding,
+			Publisher<? extends ByteBuf> body) {
+		return this.client.headers(headers -> {
+			headers.set("content-type", "application/grpc");
+			headers.set("te", "trailers");
+			if (authorization != null) {
+				headers.set("authorization", authorization);
+			}
+			if (encoding != null) {
+				headers.set("grpc-encoding", encoding);
+			}
+		})
+			.post()
+			.uri(path)
+			.send(body)
+			.responseSingle((response, content) -> content.asByteArray()
+				.defaultIfEmpty(new byte[0])
+				.zipWith(response.trailerHeaders().defaultIfEmpty(HttpHeaders.EMPTY_HEADERS))
+				.map(tuple -> {
+					HttpHeaders headers = response.responseHeaders();
+					HttpHeaders trailers = tuple.getT2();
+					String status = trailers.contains("grpc-status") ? trailers.get("grpc-status")
+							: headers.get("grpc-status");
+					String message = trailers.contains("grpc-message") ? trailers.get("grpc-message")
+							: headers.get("grpc-message");
+					return new GrpcResponse(response.status().code(), status, message, tuple.getT1());
+				}));
+	}
+
+	private static GrpcProperties properties(int maxConcurrentStreams, int publishThreads, int publishQueueCapacity,
+			DataSize maxBufferedSize, Duration requestTimeout) {
+		return new GrpcProperties(true, 0, maxConcurrentStreams, publishThreads, publishQueueCapacity, maxBufferedSize,
+				requestTimeout);
+	}
+
+	private static byte[] frame(int flag, byte[] message) {
+		return ByteBuffer.allocate(5 + message.length).put((byte) flag).putInt(message.length).put(message).array();
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(data);
+		}
+		return bytes.toByteArray();
+	}
+
+	record GrpcResponse(int httpStatus, String grpcStatus, String grpcMessage, byte[] body) {
+	}
+
+}
@@ -1,9 +1,11 @@
 package am.ik.accessmonitor.ingest.web;
 
+import java.time.Instant;
+import java.util.List;
+
 import am.ik.accessmonitor.TestcontainersConfiguration;
-import com.google.protobuf.InvalidProtocolBufferException;
-import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
-import io.opentelemetry.proto.logs.v1.LogRecord;
+import am.ik.accessmonitor.event.AccessEvent;
+import am.ik.accessmonitor.event.AccessEventBatchCodec;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -24,7 +26,8 @@ import org.springframework.test.web.servlet.client.RestTestClient;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @Import(TestcontainersConfiguration.class)
-@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+		properties = "access-monitor.otlp.publish-format=event-batch")
 class AccessLogControllerIntegrationTest {
 
 	RestTestClient client;
@@ -55,7 +58,7 @@ class AccessLogControllerIntegrationTest {
 	}
 
 	@Test
-	void ingestJsonForwardsToRabbitMqAsProtobuf() throws InvalidProtocolBufferException {
+	void ingestJsonForwardsToRabbitMqAsEventBatch() {
 		this.client.post().uri("/api/ingest").contentType(MediaType.APPLICATION_JSON).body("""
 				{
 				  "timestamp": "2026-02-06T15:30:00Z",
@@ -72,16 +75,18 @@ class AccessLogControllerIntegrationTest {
 		Message received = this.rabbitTemplate.receive(this.testQueue, 5000);
 		assertThat(received).isNotNull();
 
-		ExportLogsServiceRequest request = ExportLogsServiceRequest.parseFrom(received.getBody());
-		LogRecord logRecord = request.getResourceLogs(0).getScopeLogs(0).getLogRecords(0);
-		assertThat(getStringAttribute(logRecord, "RequestHost")).isEqualTo("ik.am");
-		assertThat(getStringAttribute(logRecord, "RequestPath")).isEqualTo("/test/json");
-		assertThat(getStringAttribute(logRecord, "RequestMethod")).isEqualTo("GET");
-		assertThat(getIntAttribute(logRecord, "DownstreamStatus")).isEqualTo(200);
-		assertThat(getIntAttribute(logRecord, "Duration")).isEqualTo(50000000L);
-		assertThat(getStringAttribute(logRecord, "ClientHost")).isEqualTo("10.0.0.1");
-		assertThat(getStringAttribute(logRecord, "StartUTC")).isEqualTo("2026-02-06T15:30:00Z");
-		assertThat(getStringAttribute(logRecord, "TraceId")).isEqualTo("abc123def456");
+		assertThat(received.getMessageProperties().getContentType()).isEqualTo(AccessEventBatchCodec.CONTENT_TYPE);
+		List<AccessEvent> events = AccessEventBatchCodec.decodeEvents(received.getBody());
+		assertThat(events).hasSize(1);
+		AccessEvent event = events.get(0);
+		assertThat(event.host()).isEqualTo("ik.am");
+		assertThat(event.path()).isEqualTo("/test/json");
+		assertThat(event.method()).isEqualTo("GET");
+		assertThat(event.statusCode()).isEqualTo(200);
+		assertThat(event.durationNs()).isEqualTo(50000000L);
+		assertThat(event.clientIp()).isEqualTo("10.0.0.1");
+		assertThat(event.timestamp()).isEqualTo(Instant.parse("2026-02-06T15:30:00Z"));
+		assertThat(event.traceId()).isEqualTo("abc123def456");
 	}
 
 	@Test
@@ -96,22 +101,4 @@ class AccessLogControllerIntegrationTest {
 				""").exchange().expectStatus().isUnauthorized();
 	}
 
-	private String getStringAttribute(LogRecord logRecord, String key) {
-		return logRecord.getAttributesList()
-			.stream()
-			.filter(kv -> kv.getKey().equals(key))
-			.map(kv -> kv.getValue().getStringValue())
-			.findFirst()
-			.orElse(null);
-	}
-
-	private long getIntAttribute(LogRecord logRecord, String key) {
-		return logRecord.getAttributesList()
-			.stream()
-			.filter(kv -> kv.getKey().equals(key))
-			.map(kv -> kv.getValue().getIntValue())
-			.findFirst()
-			.orElse(0L);
-	}
-
 }
@@ -57,16 +57,24 @@ class OtlpCollectorIntegrationTest {
 
 	private static final int OTLP_HTTP_GZIP_PORT = 4320;
 
+	private static final int OTLP_HTTP_ZSTD_PORT = 4321;
+
+	private static final int OTLP_HTTP_SNAPPY_PORT = 4322;
+
+	private static final int OTLP_GRPC_EXPORTER_PORT = 4323;
+
 	private static final int RABBITMQ_EXPORTER_PORT = 4319;
 
 	private static final int HEALTH_CHECK_PORT = 13133;
 
 	private static final int port = getFreePort();
 
+	private static final int grpcPort = getFreePort();
+
 	private static final Network network = Network.newNetwork();
 
 	static {
-		org.testcontainers.Testcontainers.exposeHostPorts(port);
+		org.testcontainers.Testcontainers.exposeHostPorts(port, grpcPort);
 	}
 
 	@Container
@@ -84,10 +92,12 @@ class OtlpCollectorIntegrationTest {
 	static GenericContainer<?> collector = new GenericContainer<>(DockerImageName.parse(COLLECTOR_IMAGE))
 		.withNetwork(network)
 		.withEnv("OTLP_EXPORTER_ENDPOINT", "http://host.testcontainers.internal:" + port)
+		.withEnv("OTLP_GRPC_EXPORTER_ENDPOINT", "host.testcontainers.internal:" + grpcPort)
 		.withClasspathResourceMapping("otel-collector-config.yaml", "/otel-collector-config.yaml", BindMode.READ_ONLY)
 		.withCommand("--config", "/otel-collector-config.yaml")
 		.withLogConsumer(new Slf4jLogConsumer(LoggerFactory.getLogger("otel-collector")))
-		.withExposedPorts(OTLP_HTTP_PORT, OTLP_HTTP_GZIP_PORT, RABBITMQ_EXPORTER_PORT, HEALTH_CHECK_PORT)
+		.withExposedPorts(OTLP_HTTP_PORT, OTLP_HTTP_GZIP_PORT, OTLP_HTTP_ZSTD_PORT, OTLP_HTTP_SNAPPY_PORT,
+				OTLP_GRPC_EXPORTER_PORT, RABBITMQ_EXPORTER_PORT, HEALTH_CHECK_PORT)
 		.waitingFor(Wait.forHttp("/").forPort(HEALTH_CHECK_PORT))
 		.dependsOn(rabbit);
 
@@ -98,11 +108,19 @@ class OtlpCollectorIntegrationTest {
 
 	RestClient otlpHttpGzipClient;
 
+	RestClient otlpHttpZstdClient;
+
+	RestClient otlpHttpSnappyClient;
+
+	RestClient otlpGrpcExporterClient;
+
 	RestClient rabbitmqExporterClient;
 
 	@DynamicPropertySource
 	static void updateProperties(DynamicPropertyRegistry registry) {
 		registry.add("server.port", () -> port);
+		registry.add("access-monitor.otlp.grpc.enabled", () -> "true");
+		registry.add("access-monitor.otlp.grpc.port", () -> grpcPort);
 		registry.add("spring.rabbitmq.addresses",
 				() -> "amqp://guest:guest@" + rabbit.getHost() + ":" + rabbit.getAmqpPort());
 		registry.add("spring.rabbitmq.username", () -> "guest");
@@ -122,6 +140,15 @@ class OtlpCollectorIntegrationTest {
 		this.otlpHttpGzipClient = restClientBuilder
 			.baseUrl("http://localhost:" + collector.getMappedPort(OTLP_HTTP_GZIP_PORT))
 			.build();
+		this.otlpHttpZstdClient = restClientBuilder
+			.baseUrl("http://localhost:" + collector.getMappedPort(OTLP_HTTP_ZSTD_PORT))
+			.build();
+		this.otlpHttpSnappyClient = restClientBuilder
+			.baseUrl("http://localhost:" + collector.getMappedPort(OTLP_HTTP_SNAPPY_PORT))
+			.build();
+		this.otlpGrpcExporterClient = restClientBuilder
+			.baseUrl("http://localhost:" + collector.getMappedPort(OTLP_GRPC_EXPORTER_PORT))
+			.build();
 		this.rabbitmqExporterClient = restClientBuilder
 			.baseUrl("http://localhost:" + collector.getMappedPort(RABBITMQ_EXPORTER_PORT))
 			.build();
@@ -165,6 +192,63 @@ class OtlpCollectorIntegrationTest {
 		});
 	}
 
+	@Test
+	void otlpLogViaOtlpHttpZstdExporter() {
+		byte[] body = buildOtlpMessage("ik.am", "/entries/160", "GET", 200, 100000000L, "2026-02-06T15:30:00.789Z",
+				"172.16.0.2");
+
+		this.otlpHttpZstdClient.post()
+			.uri("/v1/logs")
+			.contentType(MediaType.APPLICATION_PROTOBUF)
+			.body(body)
+			.retrieve()
+			.toBodilessEntity();
+
+		await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+			String countValue = this.redisTemplate.opsForValue()
+				.get("access:cnt:1m:202602061530:ik.am:/entries/160:200:GET");
+			assertThat(countValue).isEqualTo("1");
+		});
+	}
+
+	@Test
+	void otlpLogViaOtlpHttpSnappyExporter() {
+		byte[] body = buildOtlpMessage("ik.am", "/entries/170", "GET", 200, 100000000L, "2026-02-06T15:30:00.789Z",
+				"172.16.0.3");
+
+		this.otlpHttpSnappyClient.post()
+			.uri("/v1/logs")
+			.contentType(MediaType.APPLICATION_PROTOBUF)
+			.body(body)
+			.retrieve()
+			.toBodilessEntity();
+
+		await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+			String countValue = this.redisTemplate.opsForValue()
+				.get("access:cnt:1m:202602061530:ik.am:/entries/170:200:GET");
+			assertThat(countValue).isEqualTo("1");
+		});
+	}
+
+	@Test
+	void otlpLogViaOtlpGrpcExporter() {
+		byte[] body = buildOtlpMessage("ik.am", "/entries/180", "GET", 200, 100000000L, "2026-02-06T15:30:00.789Z",
+				"172.16.0.4");
+
+		this.otlpGrpcExporterClient.post()
+			.uri("/v1/logs")
+			.contentType(MediaType.APPLICATION_PROTOBUF)
+			.body(body)
+			.retrieve()
+			.toBodilessEntity();
+
+		await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+			String countValue = this.redisTemplate.opsForValue()
+				.get("access:cnt:1m:202602061530:ik.am:/entries/180:200:GET");
+			assertThat(countValue).isEqualTo("1");
+		});
+	}
+
 	@Test
 	void otlpLogViaRabbitMqExporter() {
 		byte[] body = buildOtlpMessage("ik.am", "/entries/200", "POST", 201, 80000000L, "2026-02-06T15:30:00.456Z",
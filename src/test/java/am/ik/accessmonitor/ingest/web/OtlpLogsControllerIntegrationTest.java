@@ -2,10 +2,12 @@ package am.ik.accessmonitor.ingest.web;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.List;
 import java.util.zip.GZIPOutputStream;
 
 import am.ik.accessmonitor.TestcontainersConfiguration;
-import com.google.protobuf.InvalidProtocolBufferException;
+import am.ik.accessmonitor.event.AccessEvent;
+import am.ik.accessmonitor.event.AccessEventBatchCodec;
 import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
 import io.opentelemetry.proto.common.v1.AnyValue;
 import io.opentelemetry.proto.common.v1.KeyValue;
@@ -32,7 +34,8 @@ import org.springframework.test.web.servlet.client.RestTestClient;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @Import(TestcontainersConfiguration.class)
-@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+		properties = { "access-monitor.otlp.max-payload-size=64KB", "access-monitor.otlp.publish-format=event-batch" })
 class OtlpLogsControllerIntegrationTest {
 
 	RestTestClient client;
@@ -64,7 +67,7 @@ class OtlpLogsControllerIntegrationTest {
 	}
 
 	@Test
-	void receiveLogsForwardsToRabbitMq() throws InvalidProtocolBufferException {
+	void receiveLogsForwardsToRabbitMq() {
 		byte[] message = buildOtlpMessage("ik.am", "/test/ingest", "GET", 200);
 
 		this.client.post()
@@ -78,11 +81,14 @@ class OtlpLogsControllerIntegrationTest {
 		Message received = this.rabbitTemplate.receive(this.testQueue, 5000);
 		assertThat(received).isNotNull();
 
-		ExportLogsServiceRequest request = ExportLogsServiceRequest.parseFrom(received.getBody());
-		LogRecord logRecord = request.getResourceLogs(0).getScopeLogs(0).getLogRecords(0);
-		assertThat(getStringAttribute(logRecord, "RequestHost")).isEqualTo("ik.am");
-		assertThat(getStringAttribute(logRecord, "RequestPath")).isEqualTo("/test/ingest");
-		assertThat(getStringAttribute(logRecord, "RequestMethod")).isEqualTo("GET");
+		assertThat(received.getMessageProperties().getContentType()).isEqualTo(AccessEventBatchCodec.CONTENT_TYPE);
+		List<AccessEvent> events = AccessEventBatchCodec.decodeEvents(received.getBody());
+		assertThat(events).hasSize(1);
+		assertThat(events.get(0).host()).isEqualTo("ik.am");
+		assertThat(events.get(0).path()).isEqualTo("/test/ingest");
+		assertThat(events.get(0).method()).isEqualTo("GET");
+		assertThat(AccessEventBatchCodec.decodeJson(received.getBody())).singleElement()
+			.satisfies(json -> assertThat(json).contains("\"path\":\"/test/ingest\""));
 	}
 
 	@Test
@@ -123,7 +129,7 @@ class OtlpLogsControllerIntegrationTest {
 	}
 
 	@Test
-	void receiveGzipCompressedLogs() throws InvalidProtocolBufferException, IOException {
+	void receiveGzipCompressedLogs() throws IOException {
 		byte[] message = buildOtlpMessage("ik.am", "/test/gzip", "GET", 200);
 		byte[] compressed = gzipCompress(message);
 
@@ -139,11 +145,77 @@ class OtlpLogsControllerIntegrationTest {
 		Message received = this.rabbitTemplate.receive(this.testQueue, 5000);
 		assertThat(received).isNotNull();
 
-		ExportLogsServiceRequest request = ExportLogsServiceRequest.parseFrom(received.getBody());
-		LogRecord logRecord = request.getResourceLogs(0).getScopeLogs(0).getLogRecords(0);
-		assertThat(getStringAttribute(logRecord, "RequestHost")).isEqualTo("ik.am");
-		assertThat(getStringAttribute(logRecord, "RequestPath")).isEqualTo("/test/gzip");
-		assertThat(getStringAttribute(logRecord, "RequestMethod")).isEqualTo("GET");
+		assertThat(received.getMessageProperties().getContentType()).isEqualTo(AccessEventBatchCodec.CONTENT_TYPE);
+		List<AccessEvent> events = AccessEventBatchCodec.decodeEvents(received.getBody());
+		assertThat(events).hasSize(1);
+		assertThat(events.get(0).host()).isEqualTo("ik.am");
+		assertThat(events.get(0).path()).isEqualTo("/test/gzip");
+		assertThat(events.get(0).method()).isEqualTo("GET");
+	}
+
+	@Test
+	void rejectPayloadExceedingMaxSize() {
+		this.client.post()
+			.uri("/v1/logs")
+			.contentType(MediaType.APPLICATION_PROTOBUF)
+			.body(new byte[64 * 1024 + 1])
+			.exchange()
+			.expectStatus()
+			.isEqualTo(413);
+
+		assertThat(this.rabbitTemplate.receive(this.testQueue, 1000)).isNull();
+	}
+
+	@Test
+	void rejectGzipCompressedPayloadExceedingMaxSizeAfterDecompression() throws IOException {
+		// 1 MB of zeros compresses to about 1 KB
+		byte[] compressed = gzipCompress(new byte[1024 * 1024]);
+
+		this.client.post()
+			.uri("/v1/logs")
+			.contentType(MediaType.APPLICATION_PROTOBUF)
+			.header("Content-Encoding", "gzip")
+			.body(compressed)
+			.exchange()
+			.expectStatus()
+			.isEqualTo(413);
+
+		assertThat(this.rabbitTemplate.receive(this.testQueue, 1000)).isNull();
+	}
+
+	@Test
+	void rejectUnsupportedContentEncoding() {
+		byte[] message = buildOtlpMessage("ik.am", "/test/br", "GET", 200);
+
+		this.client.post()
+			.uri("/v1/logs")
+			.contentType(MediaType.APPLICATION_PROTOBUF)
+			.header("Content-Encoding", "br")
+			.body(message)
+			.exchange()
+			.expectStatus()
+			.isEqualTo(415)
+			.expectHeader()
+			.value("Accept-Encoding", value -> assertThat(value).contains("gzip").contains("zstd"))
+			.expectBody()
+			.jsonPath("$.message")
+			.value(String.class, value -> assertThat(value).contains("br").contains("zstd"));
+
+		assertThat(this.rabbitTemplate.receive(this.testQueue, 1000)).isNull();
+	}
+
+	@Test
+	void rejectMalformedCompressedPayload() {
+		this.client.post()
+			.uri("/v1/logs")
+			.contentType(MediaType.APPLICATION_PROTOBUF)
+			.header("Content-Encoding", "zstd")
+			.body(buildOtlpMessage("ik.am", "/test/malformed", "GET", 200))
+			.exchange()
+			.expectStatus()
+			.isBadRequest();
+
+		assertThat(this.rabbitTemplate.receive(this.testQueue, 1000)).isNull();
 	}
 
 	private byte[] gzipCompress(byte[] data) throws IOException {
@@ -169,15 +241,6 @@ class OtlpLogsControllerIntegrationTest {
 			.toByteArray();
 	}
 
-	private String getStringAttribute(LogRecord logRecord, String key) {
-		return logRecord.getAttributesList()
-			.stream()
-			.filter(kv -> kv.getKey().equals(key))
-			.map(kv -> kv.getValue().getStringValue())
-			.findFirst()
-			.orElse(null);
-	}
-
 	private KeyValue stringKv(String key, String value) {
 		return KeyValue.newBuilder().setKey(key).setValue(AnyValue.newBuilder().setStringValue(value)).build();
 	}
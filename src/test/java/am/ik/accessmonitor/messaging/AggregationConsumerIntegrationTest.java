@@ -156,13 +156,15 @@ class AggregationConsumerIntegrationTest {
 		this.rabbitTemplate.convertAndSend("access_exchange", "access_logs", message);
 
 		await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> {
-			String countValue = this.redisTemplate.opsForValue()
-				.get("access:disallowed-host:cnt:1m:202602061530:203.0.113.50");
-			assertThat(countValue).isEqualTo("1");
+			Double score = this.redisTemplate.opsForZSet()
+				.score("access:disallowed-host:clients:1m:202602061530", "203.0.113.50");
+			assertThat(score).isEqualTo(1.0);
 		});
 
-		assertThat(this.redisTemplate.opsForValue().get("access:disallowed-host:cnt:5m:202602061530:203.0.113.50"))
-			.isEqualTo("1");
+		assertThat(
+				this.redisTemplate.opsForZSet().score("access:disallowed-host:clients:5m:202602061530", "203.0.113.50"))
+			.isEqualTo(1.0);
+		assertThat(this.redisTemplate.getExpire("access:disallowed-host:clients:1m:202602061530")).isPositive();
 	}
 
 	@Test
@@ -181,10 +183,10 @@ class AggregationConsumerIntegrationTest {
 		});
 
 		// Verify no disallowed-host count was recorded for this client IP
-		assertThat(this.redisTemplate.opsForValue().get("access:disallowed-host:cnt:1m:202602061530:198.51.100.10"))
-			.isNull();
-		assertThat(this.redisTemplate.opsForValue().get("access:disallowed-host:cnt:5m:202602061530:198.51.100.10"))
-			.isNull();
+		assertThat(this.redisTemplate.opsForZSet()
+			.score("access:disallowed-host:clients:1m:202602061530", "198.51.100.10")).isNull();
+		assertThat(this.redisTemplate.opsForZSet()
+			.score("access:disallowed-host:clients:5m:202602061530", "198.51.100.10")).isNull();
 	}
 
 	@Test
@@ -0,0 +1,118 @@
+package am.ik.accessmonitor.messaging;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+import am.ik.accessmonitor.TestcontainersConfiguration;
+import am.ik.accessmonitor.config.RabbitMqTopologyConfig;
+import io.opentelemetry.proto.collector.logs.v1.ExportLogsServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.logs.v1.LogRecord;
+import io.opentelemetry.proto.logs.v1.ResourceLogs;
+import io.opentelemetry.proto.logs.v1.ScopeLogs;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest(properties = { "access-monitor.aggregation.batch.enabled=true",
+		"access-monitor.aggregation.batch.size=10", "access-monitor.aggregation.batch.receive-timeout=200ms" })
+class BatchAggregationConsumerIntegrationTest {
+
+	@Autowired
+	RabbitTemplate rabbitTemplate;
+
+	@Autowired
+	StringRedisTemplate redisTemplate;
+
+	@BeforeEach
+	void setUp() {
+		Set<String> keys = this.redisTemplate.keys("access:*");
+		if (keys != null && !keys.isEmpty()) {
+			this.redisTemplate.delete(keys);
+		}
+	}
+
+	@Test
+	void batchOfMessagesIsAggregatedIntoValkey() {
+		for (int i = 0; i < 5; i++) {
+			this.rabbitTemplate.convertAndSend("access_exchange", "access_logs", buildOtlpMessage("ik.am", "/entries/1",
+					"GET", 200, 100000000L, "2026-02-06T15:30:10Z", "10.0.0." + i));
+		}
+		this.rabbitTemplate.convertAndSend("access_exchange", "access_logs", buildOtlpMessage("evil.example.com",
+				"/probe", "GET", 404, 5000000L, "2026-02-06T15:30:00Z", "203.0.113.50"));
+
+		await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> {
+			assertThat(this.redisTemplate.opsForValue().get("access:cnt:1m:202602061530:ik.am:/entries/1:200:GET"))
+				.isEqualTo("5");
+			assertThat(this.redisTemplate.opsForZSet()
+				.score("access:disallowed-host:clients:1m:202602061530", "203.0.113.50")).isEqualTo(1.0);
+		});
+
+		Map<Object, Object> durHash = this.redisTemplate.opsForHash()
+			.entries("access:dur:1m:202602061530:ik.am:/entries/1:200:GET");
+		assertThat(durHash.get("sum")).isEqualTo("500000000");
+		assertThat(durHash.get("count")).isEqualTo("5");
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1d:20260206:ik.am:/entries/*:200:GET"))
+			.isEqualTo("5");
+		assertThat(this.redisTemplate.opsForSet().members("access:idx:1m:202602061530:hosts")).contains("ik.am",
+				"evil.example.com");
+	}
+
+	@Test
+	void partiallyAggregatedBatchIsMovedToDeadLetterQueue() {
+		// A key of the wrong type makes one command of the transaction fail
+		String countKey = "access:cnt:1m:202602061540:ik.am:/entries/2:200:GET";
+		this.redisTemplate.opsForSet().add(countKey, "conflict");
+		while (this.rabbitTemplate.receive(RabbitMqTopologyConfig.AGGREGATION_DEAD_LETTER_QUEUE) != null) {
+			// drain messages left by other tests
+		}
+
+		this.rabbitTemplate.convertAndSend("access_exchange", "access_logs",
+				buildOtlpMessage("ik.am", "/entries/2", "GET", 200, 100000000L, "2026-02-06T15:40:10Z", "10.0.0.1"));
+
+		Message deadLettered = this.rabbitTemplate.receive(RabbitMqTopologyConfig.AGGREGATION_DEAD_LETTER_QUEUE,
+				10_000);
+		assertThat(deadLettered).isNotNull();
+		// The commands that succeeded are applied once and not retried
+		assertThat(this.redisTemplate.opsForValue().get("access:cnt:1d:20260206:ik.am:/entries/2:200:GET"))
+			.isEqualTo("1");
+	}
+
+	private byte[] buildOtlpMessage(String host, String path, String method, int status, long durationNs,
+			String startUtc, String clientIp) {
+		LogRecord logRecord = LogRecord.newBuilder()
+			.addAttributes(stringKv("RequestHost", host))
+			.addAttributes(stringKv("RequestPath", path))
+			.addAttributes(stringKv("RequestMethod", method))
+			.addAttributes(intKv("DownstreamStatus", status))
+			.addAttributes(intKv("Duration", durationNs))
+			.addAttributes(stringKv("StartUTC", startUtc))
+			.addAttributes(stringKv("ClientHost", clientIp))
+			.build();
+		return ExportLogsServiceRequest.newBuilder()
+			.addResourceLogs(ResourceLogs.newBuilder().addScopeLogs(ScopeLogs.newBuilder().addLogRecords(logRecord)))
+			.build()
+			.toByteArray();
+	}
+
+	private KeyValue stringKv(String key, String value) {
+		return KeyValue.newBuilder().setKey(key).setValue(AnyValue.newBuilder().setStringValue(value)).build();
+	}
+
+	private KeyValue intKv(String key, long value) {
+		return KeyValue.newBuilder().setKey(key).setValue(AnyValue.newBuilder().setIntValue(value)).build();
+	}
+
+}
@@ -15,7 +15,8 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.test.web.servlet.client.RestTestClient;
 
 @Import(TestcontainersConfiguration.class)
-@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"access-monitor.aggregation.unique-clients.enabled=true", "access-monitor.aggregation.top-k.enabled=true" })
 class AccessQueryControllerIntegrationTest {
 
 	RestTestClient client;
@@ -95,6 +96,97 @@ class AccessQueryControllerIntegrationTest {
 					""");
 	}
 
+	@Test
+	void queryAccessAcrossSlotsWithoutHostFilter() {
+		this.client.get()
+			.uri("/api/query/access?granularity=1m&from=2026-02-06T15:29:00Z&to=2026-02-06T15:31:00Z&path=/entries/896")
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody()
+			.json("""
+					{
+					  "granularity": "1m",
+					  "from": "2026-02-06T15:29:00Z",
+					  "to": "2026-02-06T15:31:00Z",
+					  "series": [
+					    {
+					      "timestamp": "2026-02-06T15:30:00Z",
+					      "host": "ik.am",
+					      "path": "/entries/896",
+					      "method": "GET",
+					      "statuses": {
+					        "200": {
+					          "count": 15,
+					          "durationMsAvg": 114.72
+					        }
+					      }
+					    }
+					  ]
+					}
+					""");
+	}
+
+	@Test
+	void queryUniqueClientsAcrossSlots() {
+		this.redisTemplate.opsForHyperLogLog()
+			.add("access:hll:1m:202602061530:ik.am:/entries/*", "10.0.0.1", "10.0.0.2");
+		this.redisTemplate.opsForHyperLogLog()
+			.add("access:hll:1m:202602061531:ik.am:/entries/*", "10.0.0.2", "10.0.0.3");
+		this.redisTemplate.opsForSet().add("access:idx:1m:202602061531:hosts", "ik.am");
+
+		this.client.get()
+			.uri("/api/query/access?granularity=1m&from=2026-02-06T15:30:00Z&to=2026-02-06T15:31:00Z&path=/entries/*&metric=uniqueClients")
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody()
+			.json("""
+					{
+					  "granularity": "1m",
+					  "series": [],
+					  "uniqueClients": 3
+					}
+					""");
+	}
+
+	@Test
+	void queryTopPathsAcrossSlots() {
+		this.redisTemplate.opsForZSet().add("access:top:1m:202602061530:ik.am:paths", "/entries/896", 5);
+		this.redisTemplate.opsForZSet().add("access:top:1m:202602061530:ik.am:paths", "/entries/897", 2);
+		this.redisTemplate.opsForZSet().add("access:top:1m:202602061531:ik.am:paths", "/entries/897", 4);
+		this.redisTemplate.opsForZSet().add("access:top:1m:202602061531:ik.am:paths", "/feed", 1);
+		this.redisTemplate.opsForSet().add("access:idx:1m:202602061531:hosts", "ik.am");
+
+		this.client.get()
+			.uri("/api/query/top?granularity=1m&from=2026-02-06T15:30:00Z&to=2026-02-06T15:31:00Z&dimension=paths&limit=2")
+			.exchange()
+			.expectStatus()
+			.isOk()
+			.expectBody()
+			.jsonPath("$.dimension")
+			.isEqualTo("paths")
+			.jsonPath("$.entries.length()")
+			.isEqualTo(2)
+			.jsonPath("$.entries[0].member")
+			.isEqualTo("/entries/897")
+			.jsonPath("$.entries[0].count")
+			.isEqualTo(6)
+			.jsonPath("$.entries[1].member")
+			.isEqualTo("/entries/896")
+			.jsonPath("$.entries[1].count")
+			.isEqualTo(5);
+	}
+
+	@Test
+	void queryTopWithUnknownDimension() {
+		this.client.get()
+			.uri("/api/query/top?granularity=1m&from=2026-02-06T15:30:00Z&to=2026-02-06T15:31:00Z&dimension=hosts")
+			.exchange()
+			.expectStatus()
+			.isBadRequest();
+	}
+
 	@Test
 	void queryDimensions() {
 		this.client.get()
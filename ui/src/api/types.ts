@@ -21,6 +21,9 @@ export interface AccessEvent {
 export interface StatusMetrics {
   count: number | null;
   durationMsAvg: number | null;
+  durationMsP50: number | null;
+  durationMsP90: number | null;
+  durationMsP99: number | null;
 }
 
 export interface SeriesEntry {
@@ -36,6 +39,7 @@ export interface QueryResult {
   from: string;
   to: string;
   series: SeriesEntry[];
+  uniqueClients: number | null;
 }
 
 export interface DimensionResult {
@@ -41,6 +41,7 @@ interface DetailRow {
   status: number;
   count: number | null;
   durationMsAvg: number | null;
+  durationMsP99: number | null;
 }
 
 type SortKey = keyof DetailRow;
@@ -57,6 +58,7 @@ export function Query() {
 
   const [dimensions, setDimensions] = useState<Dimensions>({ hosts: [], paths: [], methods: [], statuses: [] });
   const [results, setResults] = useState<SeriesEntry[]>([]);
+  const [uniqueClients, setUniqueClients] = useState<number | null>(null);
   const [chartData, setChartData] = useState<ChartRow[]>([]);
   const [loading, setLoading] = useState(false);
   const [error, setError] = useState('');
@@ -105,6 +107,7 @@ export function Query() {
         status: status ? Number(status) : undefined,
       });
       setResults(result.series);
+      setUniqueClients(result.uniqueClients);
       setChartData(aggregateChart(result.series));
     } catch (err) {
       setError(err instanceof Error ? err.message : 'Query failed');
@@ -123,6 +126,7 @@ export function Query() {
         status: Number(statusCode),
         count: metrics.count,
         durationMsAvg: metrics.durationMsAvg,
+        durationMsP99: metrics.durationMsP99,
       })),
     );
     rows.sort((a, b) => {
@@ -239,6 +243,9 @@ export function Query() {
       {detailRows.length > 0 && (
         <div className="query-results" data-testid="query-results">
           <h3>Details</h3>
+          {uniqueClients != null && (
+            <p data-testid="query-unique-clients">Unique clients: {uniqueClients.toLocaleString()}</p>
+          )}
           <div className="table-wrapper">
             <table>
               <thead>
@@ -250,6 +257,7 @@ export function Query() {
                   <th className="sortable" onClick={() => handleSort('status')}>Status{sortIndicator('status')}</th>
                   <th className="sortable" onClick={() => handleSort('count')}>Count{sortIndicator('count')}</th>
                   <th className="sortable" onClick={() => handleSort('durationMsAvg')}>Avg Duration{sortIndicator('durationMsAvg')}</th>
+                  <th className="sortable" onClick={() => handleSort('durationMsP99')}>p99 Duration{sortIndicator('durationMsP99')}</th>
                 </tr>
               </thead>
               <tbody data-testid="query-results-body">
@@ -262,6 +270,7 @@ export function Query() {
                     <td>{row.status}</td>
                     <td>{row.count ?? '-'}</td>
                     <td>{row.durationMsAvg != null ? `${row.durationMsAvg.toFixed(1)} ms` : '-'}</td>
+                    <td>{row.durationMsP99 != null ? `${row.durationMsP99.toFixed(1)} ms` : '-'}</td>
                   </tr>
                 ))}
               </tbody>